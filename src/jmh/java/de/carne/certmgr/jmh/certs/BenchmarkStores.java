@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.jmh.certs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Security;
+import java.util.Date;
+import java.util.Objects;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.certmgr.certs.CertObjectStore;
+import de.carne.certmgr.certs.PasswordCallback;
+import de.carne.certmgr.certs.StaticPassword;
+import de.carne.certmgr.certs.UserCertStore;
+import de.carne.certmgr.certs.UserCertStoreEntry;
+import de.carne.certmgr.certs.io.DERCertReaderWriter;
+import de.carne.certmgr.certs.io.IOResource;
+import de.carne.certmgr.certs.io.PEMCertReaderWriter;
+import de.carne.certmgr.certs.security.KeyPairAlgorithm;
+import de.carne.certmgr.certs.security.SignatureAlgorithm;
+import de.carne.certmgr.certs.spi.CertGenerator;
+import de.carne.certmgr.certs.x500.X500Names;
+import de.carne.certmgr.certs.x509.BasicConstraintsExtensionData;
+import de.carne.certmgr.certs.x509.GenerateCertRequest;
+import de.carne.certmgr.certs.x509.generator.CertGenerators;
+import de.carne.certmgr.certs.x509.generator.Issuer;
+import de.carne.certmgr.fixture.certs.SyntheticPKIGenerator;
+import de.carne.certmgr.fixture.certs.SyntheticPKIRequest;
+
+/**
+ * Benchmark fixtures.
+ * <p>
+ * Generates stores of a given size consisting of a single root CA, roughly {@code sqrt(size)} intermediate CAs and
+ * leaf certificates evenly distributed across the intermediate CAs (see {@link SyntheticPKIGenerator}).
+ */
+public final class BenchmarkStores {
+
+	private static final char[] BENCHMARK_PASSWORD = "benchmark".toCharArray();
+
+	private static final String KEY_PAIR_ALGORITHM = "EC";
+
+	private static final long VALIDITY_MILLIS = 365L * 24 * 60 * 60 * 1000;
+
+	private static final long SEED = 4711;
+
+	private static final Date NOT_BEFORE = new Date(1609459200000L);
+
+	private static final Date NOT_AFTER = new Date(NOT_BEFORE.getTime() + 100 * VALIDITY_MILLIS);
+
+	static {
+		Security.addProvider(new BouncyCastleProvider());
+	}
+
+	private BenchmarkStores() {
+		// Make sure this class is not instantiated from outside
+	}
+
+	/**
+	 * @return The password callback for benchmark store access.
+	 */
+	public static PasswordCallback password() {
+		return StaticPassword.getInstance(BENCHMARK_PASSWORD);
+	}
+
+	/**
+	 * Create a benchmark store.
+	 * <p>
+	 * The store's content is generated deterministically; hence stores of the same size are identical.
+	 *
+	 * @param storeHome The home directory of the store to create.
+	 * @param size The (approximate) number of entries to generate.
+	 * @return The created store.
+	 * @throws IOException if an I/O error occurs while generating the store.
+	 */
+	public static UserCertStore createStore(Path storeHome, int size) throws IOException {
+		SyntheticPKIRequest request = new SyntheticPKIRequest(SEED, NOT_BEFORE, NOT_AFTER);
+		int caCount = Math.max(1, (int) Math.round(Math.sqrt(size - 1.0)));
+		KeyPairAlgorithm keyPairAlgorithm = keyPairAlgorithm();
+
+		request.addLevel(1);
+		request.addLevel(caCount);
+		request.addLevel(Math.max(1, (int) Math.round((size - 1.0 - caCount) / caCount)));
+		request.addKeyType(keyPairAlgorithm,
+				Objects.requireNonNull(keyPairAlgorithm.getStandardKeySizes(null).getDefault()).intValue(), 1);
+		return new SyntheticPKIGenerator(request).generate(storeHome, password());
+	}
+
+	/**
+	 * Prepare a certificate generation request.
+	 *
+	 * @param store The store to generate the entry in.
+	 * @param issuerEntry The issuer to use or {@code null} to generate a self-signed entry.
+	 * @param name The name to use for the entry's DN.
+	 * @param ca Whether to generate a CA entry.
+	 * @return The prepared request.
+	 */
+	public static GenerateCertRequest generateRequest(UserCertStore store, @Nullable UserCertStoreEntry issuerEntry,
+			String name, boolean ca) {
+		CertGenerator generator = CertGenerators.DEFAULT;
+		KeyPairAlgorithm keyPairAlgorithm = keyPairAlgorithm();
+		GenerateCertRequest request = new GenerateCertRequest(X500Names.fromString("CN=" + name + ",O=Benchmark"),
+				keyPairAlgorithm, Objects.requireNonNull(keyPairAlgorithm.getStandardKeySizes(null).getDefault()));
+		Issuer issuer = Objects.requireNonNull(generator.getIssuers(store, issuerEntry).getDefault());
+		SignatureAlgorithm signatureAlgorithm = Objects.requireNonNull(
+				generator.getSignatureAlgorithms(issuer, keyPairAlgorithm, null, false).getDefault());
+		Date notBefore = new Date();
+
+		request.setIssuer(issuer);
+		request.setSignatureAlgorithm(signatureAlgorithm);
+		request.setNotBefore(notBefore);
+		request.setNotAfter(new Date(notBefore.getTime() + VALIDITY_MILLIS));
+		request.addExtension(new BasicConstraintsExtensionData(false, ca, null));
+		return request;
+	}
+
+	private static KeyPairAlgorithm keyPairAlgorithm() {
+		return Objects.requireNonNull(KeyPairAlgorithm.getDefaultSet(KEY_PAIR_ALGORITHM, false).getDefault());
+	}
+
+	/**
+	 * Collect the CRT objects of all store entries.
+	 *
+	 * @param store The store to collect the CRT objects from.
+	 * @return The collected CRT objects.
+	 * @throws IOException if an I/O error occurs while accessing the store entries.
+	 */
+	public static CertObjectStore exportCRTs(UserCertStore store) throws IOException {
+		CertObjectStore certObjects = new CertObjectStore();
+
+		for (UserCertStoreEntry entry : store.getEntries()) {
+			if (entry.hasCRT()) {
+				certObjects.addCRT(entry.id().getAlias(), entry.getCRT());
+			}
+		}
+		return certObjects;
+	}
+
+	/**
+	 * Encode certificate objects as a PEM bundle.
+	 *
+	 * @param certObjects The certificate objects to encode.
+	 * @return The PEM encoded certificate objects.
+	 * @throws IOException if an I/O error occurs while encoding.
+	 */
+	public static String encodePEM(CertObjectStore certObjects) throws IOException {
+		StringWriter pem = new StringWriter();
+
+		try (IOResource<Writer> out = new IOResource<>(pem, "benchmark.pem")) {
+			new PEMCertReaderWriter().writeString(out, certObjects);
+		}
+		return pem.toString();
+	}
+
+	/**
+	 * Encode certificate objects as a sequence of DER objects.
+	 *
+	 * @param certObjects The certificate objects to encode.
+	 * @return The DER encoded certificate objects.
+	 * @throws IOException if an I/O error occurs while encoding.
+	 */
+	public static byte[] encodeDER(CertObjectStore certObjects) throws IOException {
+		ByteArrayOutputStream der = new ByteArrayOutputStream();
+
+		try (IOResource<OutputStream> out = new IOResource<>(der, "benchmark.der")) {
+			new DERCertReaderWriter().writeBinary(out, certObjects);
+		}
+		return der.toByteArray();
+	}
+
+	/**
+	 * Create a temporary directory for benchmark stores.
+	 *
+	 * @return The created directory.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	public static Path createTempDir() throws IOException {
+		return Files.createTempDirectory(BenchmarkStores.class.getSimpleName());
+	}
+
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.jmh.certs;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.cert.X509CRL;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.carne.certmgr.certs.CertObjectStore;
+import de.carne.certmgr.certs.UserCertStore;
+import de.carne.certmgr.certs.UserCertStoreEntry;
+import de.carne.certmgr.certs.security.SignatureAlgorithm;
+import de.carne.certmgr.certs.x509.GenerateCertRequest;
+import de.carne.certmgr.certs.x509.ReasonFlag;
+import de.carne.certmgr.certs.x509.X509CRLHelper;
+import de.carne.certmgr.certs.x509.generator.CertGenerators;
+import de.carne.certmgr.certs.x509.generator.LocalCertGenerator;
+import de.carne.nio.file.FileUtil;
+import de.carne.util.Late;
+
+/**
+ * Benchmark {@link LocalCertGenerator} and {@link X509CRLHelper} generation functions.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CertGenerationBenchmark {
+
+	/**
+	 * The number of store entries (and revoked serials) to benchmark with.
+	 */
+	@Param({ "10", "100", "1000" })
+	public int storeSize;
+
+	private final Late<Path> tempPath = new Late<>();
+
+	private final Late<GenerateCertRequest> generateRequest = new Late<>();
+
+	private final Late<UserCertStoreEntry> issuerEntry = new Late<>();
+
+	private final Late<KeyPair> issuerKey = new Late<>();
+
+	private final Late<SignatureAlgorithm> crlSignatureAlgorithm = new Late<>();
+
+	private final Map<BigInteger, ReasonFlag> revokeEntries = new HashMap<>();
+
+	/**
+	 * Generate the benchmark store and prepare the generation requests.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Setup
+	public void setupStore() throws IOException {
+		this.tempPath.set(BenchmarkStores.createTempDir());
+
+		try (UserCertStore store = BenchmarkStores.createStore(this.tempPath.get().resolve("store"), this.storeSize)) {
+			UserCertStoreEntry rootEntry = store.getRootEntries().iterator().next();
+			GenerateCertRequest request = BenchmarkStores.generateRequest(store, rootEntry, "Generated", false);
+
+			this.generateRequest.set(request);
+			this.issuerEntry.set(rootEntry);
+			this.issuerKey.set(rootEntry.getKey(BenchmarkStores.password()));
+			// The request's signature algorithm has been chosen for the root entry's key
+			this.crlSignatureAlgorithm.set(Objects.requireNonNull(request.getSignatureAlgorithm()));
+		}
+		for (int revokeIndex = 1; revokeIndex <= this.storeSize; revokeIndex++) {
+			this.revokeEntries.put(BigInteger.valueOf(revokeIndex), ReasonFlag.UNSPECIFIED);
+		}
+	}
+
+	/**
+	 * Delete the benchmark store.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@TearDown
+	public void deleteStore() throws IOException {
+		FileUtil.delete(this.tempPath.get());
+	}
+
+	/**
+	 * Benchmark {@link LocalCertGenerator#generateCert(GenerateCertRequest, de.carne.certmgr.certs.PasswordCallback)}
+	 * (via {@link CertGenerators#DEFAULT}).
+	 *
+	 * @return The generated certificate objects.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Benchmark
+	public CertObjectStore generateCert() throws IOException {
+		return CertGenerators.DEFAULT.generateCert(this.generateRequest.get(), BenchmarkStores.password());
+	}
+
+	/**
+	 * Benchmark {@link X509CRLHelper#generateCRL(X509CRL, Date, Date, Map, javax.security.auth.x500.X500Principal,
+	 * KeyPair, SignatureAlgorithm)}.
+	 *
+	 * @return The generated CRL object.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Benchmark
+	public X509CRL generateCRL() throws IOException {
+		Date lastUpdate = new Date();
+
+		return X509CRLHelper.generateCRL(null, lastUpdate, new Date(lastUpdate.getTime() + 1000), this.revokeEntries,
+				this.issuerEntry.get().dn(), this.issuerKey.get(), this.crlSignatureAlgorithm.get());
+	}
+
+}
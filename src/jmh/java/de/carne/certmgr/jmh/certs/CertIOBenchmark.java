@@ -0,0 +1,143 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.jmh.certs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.carne.certmgr.certs.CertObjectStore;
+import de.carne.certmgr.certs.NoPassword;
+import de.carne.certmgr.certs.UserCertStore;
+import de.carne.certmgr.certs.io.DERCertReaderWriter;
+import de.carne.certmgr.certs.io.IOResource;
+import de.carne.certmgr.certs.io.PEMCertReaderWriter;
+import de.carne.nio.file.FileUtil;
+import de.carne.util.Late;
+
+/**
+ * Benchmark {@link PEMCertReaderWriter} and {@link DERCertReaderWriter} decoding.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CertIOBenchmark {
+
+	/**
+	 * The number of store entries (and therefore encoded CRT objects) to benchmark with.
+	 */
+	@Param({ "10", "100", "1000" })
+	public int storeSize;
+
+	private final Late<String> pemData = new Late<>();
+
+	private final Late<byte[]> derData = new Late<>();
+
+	/**
+	 * Generate the benchmark store and encode its CRT objects.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Setup
+	public void setupData() throws IOException {
+		Path tempPath = BenchmarkStores.createTempDir();
+
+		try (UserCertStore store = BenchmarkStores.createStore(tempPath.resolve("store"), this.storeSize)) {
+			CertObjectStore crtObjects = BenchmarkStores.exportCRTs(store);
+
+			this.pemData.set(BenchmarkStores.encodePEM(crtObjects));
+			this.derData.set(BenchmarkStores.encodeDER(crtObjects));
+		} finally {
+			FileUtil.delete(tempPath);
+		}
+	}
+
+	/**
+	 * Benchmark {@link PEMCertReaderWriter#readObjectsString(IOResource, de.carne.certmgr.certs.PasswordCallback)}.
+	 *
+	 * @return The decoded certificate objects.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Benchmark
+	@Nullable
+	public CertObjectStore readPEM() throws IOException {
+		CertObjectStore certObjects;
+
+		try (IOResource<Reader> in = new IOResource<>(new StringReader(this.pemData.get()), "benchmark.pem")) {
+			certObjects = PEMCertReaderWriter.readObjectsString(in, NoPassword.getInstance());
+		}
+		return certObjects;
+	}
+
+	/**
+	 * Benchmark {@link PEMCertReaderWriter#readObjectsString(IOResource, de.carne.certmgr.certs.PasswordCallback,
+	 * de.carne.certmgr.certs.io.PEMCertReaderWriter.ObjectConsumer)}.
+	 *
+	 * @return The number of decoded PEM objects.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Benchmark
+	public long streamPEM() throws IOException {
+		long pemObjectCount;
+
+		try (IOResource<Reader> in = new IOResource<>(new StringReader(this.pemData.get()), "benchmark.pem")) {
+			pemObjectCount = PEMCertReaderWriter.readObjectsString(in, NoPassword.getInstance(), certObject -> {
+				// Discard the decoded objects to measure the decoding only
+			});
+		}
+		return pemObjectCount;
+	}
+
+	/**
+	 * Benchmark {@link DERCertReaderWriter#readBinary(IOResource, de.carne.certmgr.certs.PasswordCallback)}.
+	 *
+	 * @return The decoded certificate objects.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Benchmark
+	@Nullable
+	public CertObjectStore readDER() throws IOException {
+		CertObjectStore certObjects;
+
+		try (IOResource<InputStream> in = new IOResource<>(new ByteArrayInputStream(this.derData.get()),
+				"benchmark.der")) {
+			certObjects = new DERCertReaderWriter().readBinary(in, NoPassword.getInstance());
+		}
+		return certObjects;
+	}
+
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.jmh.certs;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.carne.certmgr.certs.CertObjectStore;
+import de.carne.certmgr.certs.NoPassword;
+import de.carne.certmgr.certs.UserCertStore;
+import de.carne.certmgr.certs.UserCertStoreEntry;
+import de.carne.certmgr.certs.UserCertStoreImportResult;
+import de.carne.nio.file.FileUtil;
+import de.carne.util.Late;
+
+/**
+ * Benchmark {@link UserCertStore} class functionality.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class UserCertStoreBenchmark {
+
+	/**
+	 * The number of store entries to benchmark with.
+	 */
+	@Param({ "10", "100", "1000" })
+	public int storeSize;
+
+	private final Late<Path> tempPath = new Late<>();
+
+	private final Late<Path> storeHome = new Late<>();
+
+	private final Late<List<CertObjectStore>> entryObjects = new Late<>();
+
+	private final Late<List<CertObjectStore>> reversedCRTObjects = new Late<>();
+
+	/**
+	 * Generate the benchmark store and export its entries.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Setup
+	public void setupStore() throws IOException {
+		this.tempPath.set(BenchmarkStores.createTempDir());
+		this.storeHome.set(this.tempPath.get().resolve("store"));
+
+		List<UserCertStoreEntry> entries;
+
+		try (UserCertStore store = BenchmarkStores.createStore(this.storeHome.get(), this.storeSize)) {
+			entries = new ArrayList<>(store.getEntries());
+		}
+
+		List<CertObjectStore> entryObjectsList = new ArrayList<>(entries.size());
+		List<CertObjectStore> crtObjectsList = new ArrayList<>(entries.size());
+
+		entries.sort(Comparator.comparingInt(UserCertStoreBenchmark::issuerDepth));
+		for (UserCertStoreEntry entry : entries) {
+			CertObjectStore entryObjectStore = new CertObjectStore();
+			CertObjectStore crtObjectStore = new CertObjectStore();
+			String alias = entry.id().getAlias();
+
+			entryObjectStore.addCRT(alias, entry.getCRT());
+			entryObjectStore.addKey(alias, entry.getKey(BenchmarkStores.password()));
+			entryObjectsList.add(entryObjectStore);
+			crtObjectStore.addCRT(alias, entry.getCRT());
+			crtObjectsList.add(crtObjectStore);
+		}
+		// Leaf entries first; hence the issuers are merged after the entries they issued
+		Collections.reverse(crtObjectsList);
+		this.entryObjects.set(entryObjectsList);
+		this.reversedCRTObjects.set(crtObjectsList);
+	}
+
+	private static int issuerDepth(UserCertStoreEntry entry) {
+		UserCertStoreEntry currentEntry = entry;
+		int depth = 0;
+
+		while (!currentEntry.isSelfSigned()) {
+			currentEntry = currentEntry.issuer();
+			depth++;
+		}
+		return depth;
+	}
+
+	/**
+	 * Delete the benchmark store.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@TearDown
+	public void deleteStore() throws IOException {
+		FileUtil.delete(this.tempPath.get());
+	}
+
+	/**
+	 * Benchmark {@link UserCertStore#openStore(Path)}.
+	 *
+	 * @return The number of entries of the opened store.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Benchmark
+	public int openStore() throws IOException {
+		int size;
+
+		try (UserCertStore store = UserCertStore.openStore(this.storeHome.get())) {
+			size = store.size();
+		}
+		return size;
+	}
+
+	/**
+	 * Benchmark merging of certificate objects (CRT and Key) in issuing order into a store.
+	 *
+	 * @return The import result.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Benchmark
+	public UserCertStoreImportResult mergeCertObjects() throws IOException {
+		return emptyStore().importEntries(this.entryObjects.get(), NoPassword.getInstance(), null);
+	}
+
+	/**
+	 * Benchmark issuer resolution while merging CRT objects in reverse issuing order.
+	 *
+	 * @return The import result.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Benchmark
+	public UserCertStoreImportResult resolveIssuers() throws IOException {
+		return emptyStore().importEntries(this.reversedCRTObjects.get(), NoPassword.getInstance(), null);
+	}
+
+	private static UserCertStore emptyStore() throws IOException {
+		return UserCertStore.createFromFiles(Collections.emptyList(), NoPassword.getInstance());
+	}
+
+}
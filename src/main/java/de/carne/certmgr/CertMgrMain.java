@@ -17,7 +17,16 @@
 package de.carne.certmgr;
 
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.security.Security;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.eclipse.jdt.annotation.Nullable;
 
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 
@@ -25,15 +34,33 @@ import de.carne.boot.ApplicationMain;
 import de.carne.boot.Exceptions;
 import de.carne.boot.logging.Log;
 import de.carne.boot.logging.Logs;
+import de.carne.certmgr.certs.UserCertStore;
+import de.carne.certmgr.certs.UserCertStoreEntry;
+import de.carne.certmgr.certs.UserCertStoreExpiryScheduler;
+import de.carne.certmgr.certs.UserCertStoreLayout;
+import de.carne.certmgr.certs.metrics.StoreMetrics;
 import de.carne.certmgr.jfx.CertMgrApplication;
+import de.carne.util.cmdline.CmdLineException;
+import de.carne.util.cmdline.CmdLineProcessor;
 
 /**
  * {@link ApplicationMain} class.
+ * <p>
+ * If invoked with the {@code --headless} switch, no GUI is started. Instead the submitted stores are monitored for
+ * expiring certificates until the application is terminated. If additionally the {@code --migrate-layout} option is
+ * given, the submitted stores are migrated to the given directory layout and the application terminates afterwards.
  */
 public class CertMgrMain implements ApplicationMain {
 
 	private static final Log LOG = new Log();
 
+	private static final String HEADLESS_SWITCH = "--headless";
+
+	private static final String MIGRATE_LAYOUT_OPTION = "--migrate-layout";
+
+	@Nullable
+	private String migrateLayoutName = null;
+
 	static {
 		try {
 			Logs.readConfig(Logs.CONFIG_DEFAULT);
@@ -42,6 +69,7 @@ public class CertMgrMain implements ApplicationMain {
 		}
 		LOG.info("Adding BouncyCastle security provider...");
 		Security.addProvider(new BouncyCastleProvider());
+		StoreMetrics.registerMBean();
 	}
 
 	@Override
@@ -51,8 +79,105 @@ public class CertMgrMain implements ApplicationMain {
 
 	@Override
 	public int run(String[] args) {
-		CertMgrApplication.launch(args);
-		return 0;
+		int status = 0;
+
+		if (Arrays.asList(args).contains(HEADLESS_SWITCH)) {
+			status = runHeadless(args);
+		} else {
+			CertMgrApplication.launch(args);
+		}
+		return status;
+	}
+
+	private int runHeadless(String[] args) {
+		CmdLineProcessor cmdLine = new CmdLineProcessor("certmgr", Arrays.asList(args));
+		List<Path> storeHomes = new ArrayList<>();
+		int status = 0;
+
+		cmdLine.onSwitch((s) -> applyLogConfig(Logs.CONFIG_VERBOSE)).arg("--verbose");
+		cmdLine.onSwitch((s) -> applyLogConfig(Logs.CONFIG_DEBUG)).arg("--debug");
+		cmdLine.onSwitch((s) -> LOG.info("Running in headless mode")).arg(HEADLESS_SWITCH);
+		cmdLine.onOption((arg, option) -> this.migrateLayoutName = option).arg(MIGRATE_LAYOUT_OPTION);
+		cmdLine.onUnnamedOption((s) -> storeHomes.add(Paths.get(s)));
+		try {
+			cmdLine.process();
+			LOG.info("Running command line ''{0}''", cmdLine);
+
+			String checkedMigrateLayoutName = this.migrateLayoutName;
+
+			if (storeHomes.isEmpty()) {
+				LOG.error("No store specified for headless mode");
+				status = -1;
+			} else if (checkedMigrateLayoutName != null) {
+				status = migrateLayout(storeHomes, checkedMigrateLayoutName);
+			} else {
+				for (Path storeHome : storeHomes) {
+					UserCertStore store = UserCertStore.openStore(storeHome);
+
+					UserCertStoreExpiryScheduler.start(store,
+							(event, entries) -> logExpiryEvent(storeHome, event, entries));
+				}
+				LOG.notice("Monitoring {0} store(s) for expiring certificates...", storeHomes.size());
+				// Events are reported by the schedulers' threads until the application is terminated
+				new CountDownLatch(1).await();
+			}
+		} catch (CmdLineException e) {
+			LOG.error(e, "Invalid command line ''{0}''", cmdLine);
+			status = -1;
+		} catch (IOException e) {
+			LOG.error(e, "Failed to open store");
+			status = -1;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return status;
+	}
+
+	private static int migrateLayout(List<Path> storeHomes, String layoutName) throws IOException {
+		UserCertStoreLayout layout = null;
+		int status = 0;
+
+		for (UserCertStoreLayout value : UserCertStoreLayout.values()) {
+			if (value.name().equalsIgnoreCase(layoutName)) {
+				layout = value;
+				break;
+			}
+		}
+		if (layout != null) {
+			for (Path storeHome : storeHomes) {
+				try (UserCertStore store = UserCertStore.openStore(storeHome)) {
+					LOG.notice("Migrating store ''{0}'' to layout {1}...", storeHome, layout);
+					store.migrateLayout(layout);
+				} catch (UnsupportedOperationException e) {
+					LOG.error(e, "Unable to migrate store ''{0}''", storeHome);
+					status = -1;
+				}
+			}
+		} else {
+			LOG.error("Unknown store layout ''{0}'' (expected one of {1})", layoutName,
+					Arrays.toString(UserCertStoreLayout.values()));
+			status = -1;
+		}
+		return status;
+	}
+
+	private static void logExpiryEvent(Path storeHome, UserCertStoreExpiryScheduler.Event event,
+			Set<UserCertStoreEntry> entries) {
+		for (UserCertStoreEntry entry : entries) {
+			if (event == UserCertStoreExpiryScheduler.Event.EXPIRING) {
+				LOG.notice("Certificate ''{0}'' in store ''{1}'' is about to expire", entry.getName(), storeHome);
+			} else {
+				LOG.warning("Certificate ''{0}'' in store ''{1}'' has expired", entry.getName(), storeHome);
+			}
+		}
+	}
+
+	private static void applyLogConfig(String config) {
+		try {
+			Logs.readConfig(config);
+		} catch (IOException e) {
+			LOG.warning(e, "Failed to apply log configuration ''{0}''", config);
+		}
 	}
 
 }
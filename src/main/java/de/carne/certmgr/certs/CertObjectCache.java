@@ -0,0 +1,188 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.certmgr.certs.io.DERCertReaderWriter;
+import de.carne.certmgr.certs.io.IOResource;
+import de.carne.util.SystemProperties;
+
+/**
+ * Support for holding certificate objects in compact (encoded) form.
+ * <p>
+ * Store entries keep their certificate objects in DER encoded form only and decode them on demand. The most recently
+ * used decoded objects are kept in a shared LRU cache; hence the heap usage of the decoded objects is bounded
+ * regardless of the store size. The cache size is controlled via the system property
+ * {@code de.carne.certmgr.certs.decodeCacheSize} and defaults to 1024 objects.
+ * <p>
+ * To avoid a global lock, the cache is split into independently locked segments (selected by the holder's hash code),
+ * each evicting its own least recently used objects. Hence the eviction order is only approximately LRU with respect
+ * to the whole cache.
+ * <p>
+ * If the system property {@code de.carne.certmgr.certs.offHeapEncoding} is set, the encoded data is held outside of
+ * the heap in direct buffers.
+ */
+final class CertObjectCache {
+
+	/**
+	 * The maximum number of decoded objects kept in the cache.
+	 */
+	static final int CACHE_SIZE = Math.max(1, SystemProperties
+			.intValue(CertObjectCache.class.getPackage().getName() + ".decodeCacheSize", 1024));
+
+	/**
+	 * Whether encoded data is held outside of the heap.
+	 */
+	static final boolean OFF_HEAP_ENCODING = SystemProperties
+			.booleanValue(CertObjectCache.class.getPackage().getName() + ".offHeapEncoding", false);
+
+	private static final DERCertReaderWriter DER_READER = new DERCertReaderWriter();
+
+	private static final Segment[] SEGMENTS = createSegments();
+
+	private CertObjectCache() {
+		// Make sure this class is not instantiated from outside
+	}
+
+	/**
+	 * Get the cached decoded object of a holder.
+	 *
+	 * @param holder The holder to get the decoded object for.
+	 * @return The cached decoded object or {@code null} if the object is not (or no longer) cached.
+	 */
+	@Nullable
+	static Object get(Object holder) {
+		Segment segment = segment(holder);
+
+		synchronized (segment) {
+			return segment.get(holder);
+		}
+	}
+
+	/**
+	 * Cache the decoded object of a holder.
+	 *
+	 * @param holder The holder to cache the decoded object for.
+	 * @param object The decoded object.
+	 */
+	static void put(Object holder, Object object) {
+		Segment segment = segment(holder);
+
+		synchronized (segment) {
+			segment.put(holder, object);
+		}
+	}
+
+	private static Segment[] createSegments() {
+		// Use a power of two segment count (for cheap segment selection), but keep at least one object per segment
+		int segmentCount = Math.min(Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4),
+				Integer.highestOneBit(CACHE_SIZE));
+		Segment[] segments = new Segment[segmentCount];
+
+		for (int segmentIndex = 0; segmentIndex < segmentCount; segmentIndex++) {
+			segments[segmentIndex] = new Segment(
+					CACHE_SIZE / segmentCount + (segmentIndex < CACHE_SIZE % segmentCount ? 1 : 0));
+		}
+		return segments;
+	}
+
+	private static Segment segment(Object holder) {
+		int hash = holder.hashCode();
+
+		return SEGMENTS[(hash ^ (hash >>> 16)) & (SEGMENTS.length - 1)];
+	}
+
+	/**
+	 * Store encoded data in compact form.
+	 *
+	 * @param encoded The encoded data to store.
+	 * @return The buffer holding the encoded data.
+	 */
+	static ByteBuffer compact(byte[] encoded) {
+		ByteBuffer compacted;
+
+		if (OFF_HEAP_ENCODING) {
+			compacted = ByteBuffer.allocateDirect(encoded.length);
+			compacted.put(encoded);
+			compacted.flip();
+		} else {
+			compacted = ByteBuffer.wrap(encoded);
+		}
+		return compacted.asReadOnlyBuffer();
+	}
+
+	/**
+	 * Retrieve encoded data stored in compact form.
+	 *
+	 * @param compacted The buffer holding the encoded data.
+	 * @return The encoded data.
+	 */
+	static byte[] expand(ByteBuffer compacted) {
+		byte[] encoded = new byte[compacted.remaining()];
+
+		compacted.duplicate().get(encoded);
+		return encoded;
+	}
+
+	/**
+	 * Decode a certificate object.
+	 *
+	 * @param alias The alias of the certificate object (used for error reporting).
+	 * @param type The expected certificate object type.
+	 * @param encoded The certificate object's DER encoded data.
+	 * @return The decoded certificate object.
+	 * @throws IOException if the data cannot be decoded or does not contain the expected certificate object.
+	 */
+	static CertObjectStore.Entry decode(String alias, CertObjectType type, byte[] encoded) throws IOException {
+		CertObjectStore certObjects = DER_READER.readBinary(new IOResource<>(new ByteArrayInputStream(encoded), alias),
+				NoPassword.getInstance());
+		CertObjectStore.Entry certObject = (certObjects != null && certObjects.size() == 1
+				? certObjects.iterator().next()
+				: null);
+
+		if (certObject == null || certObject.type() != type) {
+			throw new IOException("Invalid " + type + " object stored for alias: " + alias);
+		}
+		return certObject;
+	}
+
+	private static final class Segment extends LinkedHashMap<Object, Object> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.@Nullable Entry<Object, Object> eldest) {
+			return size() > this.capacity;
+		}
+
+	}
+
+}
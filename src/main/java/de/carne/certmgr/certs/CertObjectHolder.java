@@ -18,6 +18,7 @@ package de.carne.certmgr.certs;
 
 import java.io.IOException;
 import java.nio.file.Path;
+import java.util.function.Function;
 
 import org.eclipse.jdt.annotation.Nullable;
 
@@ -28,4 +29,19 @@ interface CertObjectHolder<T> {
 
 	T get() throws IOException;
 
+	/**
+	 * Get the index data derived from the currently held object.
+	 * <p>
+	 * Holders capable of detecting changes of the held object keep the index and rebuild it only if the held object
+	 * has changed. For a specific holder always the same indexer has to be used.
+	 *
+	 * @param <I> The actual index type.
+	 * @param indexer The function used to build the index.
+	 * @return The index data.
+	 * @throws IOException if an I/O error occurs while accessing the held object.
+	 */
+	default <I> I index(Function<? super T, I> indexer) throws IOException {
+		return indexer.apply(get());
+	}
+
 }
@@ -22,13 +22,13 @@ import java.security.cert.CRLException;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
-import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
 import java.util.Set;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import de.carne.certmgr.certs.x509.Fingerprint;
 import de.carne.certmgr.certs.x509.KeyHelper;
 import de.carne.certmgr.certs.x509.PKCS10CertificateRequest;
 
@@ -45,20 +45,22 @@ public final class CertObjectStore implements Iterable<CertObjectStore.Entry> {
 		private final String alias;
 		private final CertObjectType type;
 		private final Object object;
-		private final byte[] encoded;
+		// Only the fingerprint of the encoded data is kept to avoid holding the data twice (the decoded object
+		// already contains it)
+		private final Fingerprint fingerprint;
 
 		Entry(Entry entry) {
 			this.alias = entry.alias;
 			this.type = entry.type;
 			this.object = entry.object;
-			this.encoded = entry.encoded;
+			this.fingerprint = entry.fingerprint;
 		}
 
-		Entry(String alias, CertObjectType type, Object object, byte[] encoded) {
+		Entry(String alias, CertObjectType type, Object object) throws IOException {
 			this.alias = alias;
 			this.type = type;
 			this.object = object;
-			this.encoded = encoded;
+			this.fingerprint = Fingerprint.of(encode(type, object));
 		}
 
 		/**
@@ -124,6 +126,24 @@ public final class CertObjectStore implements Iterable<CertObjectStore.Entry> {
 			return (X509CRL) this.object;
 		}
 
+		/**
+		 * Get the decoded certificate object.
+		 *
+		 * @return The decoded certificate object.
+		 */
+		Object object() {
+			return this.object;
+		}
+
+		/**
+		 * Get the fingerprint of this certificate object's encoded data.
+		 *
+		 * @return The fingerprint of this certificate object's encoded data.
+		 */
+		Fingerprint fingerprint() {
+			return this.fingerprint;
+		}
+
 		@Override
 		public int hashCode() {
 			return this.object.hashCode();
@@ -140,7 +160,7 @@ public final class CertObjectStore implements Iterable<CertObjectStore.Entry> {
 			} else {
 				Entry entryObj = (Entry) obj;
 
-				equals = this.type == entryObj.type && Arrays.equals(this.encoded, entryObj.encoded);
+				equals = this.type == entryObj.type && this.fingerprint.equals(entryObj.fingerprint);
 			}
 			return equals;
 		}
@@ -171,6 +191,17 @@ public final class CertObjectStore implements Iterable<CertObjectStore.Entry> {
 		return store;
 	}
 
+	/**
+	 * Add an entry of another store to this store.
+	 * <p>
+	 * The entry is added with its alias and without re-encoding the entry's certificate object.
+	 *
+	 * @param entry The entry to add.
+	 */
+	public void add(Entry entry) {
+		this.entries.add(new Entry(entry));
+	}
+
 	/**
 	 * Add a CRT object to the store.
 	 *
@@ -190,11 +221,7 @@ public final class CertObjectStore implements Iterable<CertObjectStore.Entry> {
 	 * @throws IOException if an encoding error occurs.
 	 */
 	public void addCRT(String alias, X509Certificate crt) throws IOException {
-		try {
-			this.entries.add(new Entry(alias, CertObjectType.CRT, crt, crt.getEncoded()));
-		} catch (CertificateEncodingException e) {
-			throw new IOException(e.getLocalizedMessage(), e);
-		}
+		this.entries.add(new Entry(alias, CertObjectType.CRT, crt));
 	}
 
 	/**
@@ -216,7 +243,7 @@ public final class CertObjectStore implements Iterable<CertObjectStore.Entry> {
 	 * @throws IOException if an encoding error occurs.
 	 */
 	public void addKey(String alias, KeyPair key) throws IOException {
-		this.entries.add(new Entry(alias, CertObjectType.KEY, key, KeyHelper.encodePrivateKey(key.getPrivate())));
+		this.entries.add(new Entry(alias, CertObjectType.KEY, key));
 	}
 
 	/**
@@ -238,7 +265,7 @@ public final class CertObjectStore implements Iterable<CertObjectStore.Entry> {
 	 * @throws IOException if an encoding error occurs.
 	 */
 	public void addCSR(String alias, PKCS10CertificateRequest csr) throws IOException {
-		this.entries.add(new Entry(alias, CertObjectType.CSR, csr, csr.getEncoded()));
+		this.entries.add(new Entry(alias, CertObjectType.CSR, csr));
 	}
 
 	/**
@@ -260,11 +287,7 @@ public final class CertObjectStore implements Iterable<CertObjectStore.Entry> {
 	 * @throws IOException if an encoding error occurs.
 	 */
 	public void addCRL(String alias, X509CRL crl) throws IOException {
-		try {
-			this.entries.add(new Entry(alias, CertObjectType.CRL, crl, crl.getEncoded()));
-		} catch (CRLException e) {
-			throw new IOException(e.getLocalizedMessage(), e);
-		}
+		this.entries.add(new Entry(alias, CertObjectType.CRL, crl));
 	}
 
 	/**
@@ -281,4 +304,38 @@ public final class CertObjectStore implements Iterable<CertObjectStore.Entry> {
 		return this.entries.iterator();
 	}
 
+	/**
+	 * Get the encoded data of a certificate object.
+	 *
+	 * @param type The certificate object's type.
+	 * @param object The certificate object to encode.
+	 * @return The certificate object's encoded data.
+	 * @throws IOException if an encoding error occurs.
+	 */
+	static byte[] encode(CertObjectType type, Object object) throws IOException {
+		byte[] encoded;
+
+		try {
+			switch (type) {
+			case CRT:
+				encoded = ((X509Certificate) object).getEncoded();
+				break;
+			case KEY:
+				encoded = KeyHelper.encodePrivateKey(((KeyPair) object).getPrivate());
+				break;
+			case CSR:
+				encoded = ((PKCS10CertificateRequest) object).getEncoded();
+				break;
+			case CRL:
+				encoded = ((X509CRL) object).getEncoded();
+				break;
+			default:
+				throw new IllegalArgumentException("Unexpected certificate object type: " + type);
+			}
+		} catch (CertificateEncodingException | CRLException e) {
+			throw new IOException(e.getLocalizedMessage(), e);
+		}
+		return encoded;
+	}
+
 }
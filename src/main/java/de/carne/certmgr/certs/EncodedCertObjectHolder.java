@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * {@link CertObjectHolder} implementation keeping only the certificate object's encoded data.
+ * <p>
+ * The object is decoded on demand via the {@link CertObjectCache}.
+ *
+ * @param <T> The actual certificate object type.
+ */
+final class EncodedCertObjectHolder<T> extends ImmutableCertObjectHolder<T> {
+
+	private final String alias;
+	private final CertObjectType type;
+	private final Class<T> objectType;
+	private final ByteBuffer encoded;
+
+	EncodedCertObjectHolder(String alias, CertObjectType type, Class<T> objectType, T object) throws IOException {
+		this.alias = alias;
+		this.type = type;
+		this.objectType = objectType;
+		this.encoded = CertObjectCache.compact(CertObjectStore.encode(type, object));
+		CertObjectCache.put(this, object);
+	}
+
+	@Override
+	@Nullable
+	public Path path() {
+		return null;
+	}
+
+	@Override
+	public T get() throws IOException {
+		Object object = CertObjectCache.get(this);
+
+		if (object == null) {
+			object = CertObjectCache.decode(this.alias, this.type, CertObjectCache.expand(this.encoded)).object();
+			CertObjectCache.put(this, object);
+		}
+		return this.objectType.cast(object);
+	}
+
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.io.IOException;
+import java.security.PublicKey;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.certmgr.certs.x509.KeyHelper;
+
+/**
+ * Store entry attributes maintained for entry queries.
+ * <p>
+ * The attributes are determined once when the entry is added to the store (or taken from the store index) and allow
+ * evaluating queries as well as the entry's validity without decoding any of the entry's certificate objects.
+ *
+ * @see UserCertStoreQuery
+ */
+final class EntryAttributes {
+
+	/**
+	 * Attributes of an entry without any queryable information.
+	 */
+	static final EntryAttributes NONE = new EntryAttributes(null, null, null, 0, Collections.emptyList());
+
+	// GeneralName type of a dNSName (see RFC 5280)
+	private static final int DNS_NAME_TYPE = 2;
+
+	@Nullable
+	private final Date notBefore;
+	@Nullable
+	private final Date notAfter;
+	@Nullable
+	private final String keyAlgorithm;
+	private final int keySize;
+	private final List<String> dnsNames;
+
+	EntryAttributes(@Nullable Date notBefore, @Nullable Date notAfter, @Nullable String keyAlgorithm, int keySize,
+			List<String> dnsNames) {
+		this.notBefore = notBefore;
+		this.notAfter = notAfter;
+		this.keyAlgorithm = (keyAlgorithm != null ? normalizeKeyAlgorithm(keyAlgorithm) : null);
+		this.keySize = keySize;
+		this.dnsNames = dnsNames;
+	}
+
+	/**
+	 * Determine the attributes of decoded certificate objects.
+	 *
+	 * @param crt The entry's CRT object (may be {@code null}).
+	 * @param publicKey The entry's public key (may be {@code null}).
+	 * @return The determined attributes.
+	 * @throws IOException if an error occurs while decoding the attributes.
+	 */
+	static EntryAttributes of(@Nullable X509Certificate crt, @Nullable PublicKey publicKey) throws IOException {
+		Date notBefore = null;
+		Date notAfter = null;
+		List<String> dnsNames = Collections.emptyList();
+
+		if (crt != null) {
+			notBefore = crt.getNotBefore();
+			notAfter = crt.getNotAfter();
+			dnsNames = getDNSNames(crt);
+		}
+
+		String keyAlgorithm = null;
+		int keySize = 0;
+
+		if (publicKey != null) {
+			Integer publicKeySize = KeyHelper.getKeySize(publicKey);
+
+			keyAlgorithm = publicKey.getAlgorithm();
+			keySize = (publicKeySize != null ? publicKeySize.intValue() : 0);
+		}
+		return new EntryAttributes(notBefore, notAfter, keyAlgorithm, keySize, dnsNames);
+	}
+
+	private static List<String> getDNSNames(X509Certificate crt) throws IOException {
+		Collection<List<?>> subjectAlternativeNames;
+
+		try {
+			subjectAlternativeNames = crt.getSubjectAlternativeNames();
+		} catch (CertificateParsingException e) {
+			throw new CertProviderException(e);
+		}
+
+		List<String> dnsNames = new ArrayList<>();
+
+		if (subjectAlternativeNames != null) {
+			for (List<?> subjectAlternativeName : subjectAlternativeNames) {
+				if (subjectAlternativeName.size() == 2
+						&& Integer.valueOf(DNS_NAME_TYPE).equals(subjectAlternativeName.get(0))
+						&& subjectAlternativeName.get(1) instanceof String) {
+					dnsNames.add(normalizeDNSName((String) subjectAlternativeName.get(1)));
+				}
+			}
+		}
+		return (!dnsNames.isEmpty() ? Collections.unmodifiableList(dnsNames) : Collections.emptyList());
+	}
+
+	/**
+	 * Normalize a key algorithm name for lookup.
+	 *
+	 * @param keyAlgorithm The key algorithm name to normalize.
+	 * @return The normalized key algorithm name.
+	 */
+	static String normalizeKeyAlgorithm(String keyAlgorithm) {
+		return keyAlgorithm.toUpperCase(Locale.ROOT);
+	}
+
+	/**
+	 * Normalize a DNS name for lookup.
+	 *
+	 * @param dnsName The DNS name to normalize.
+	 * @return The normalized DNS name.
+	 */
+	static String normalizeDNSName(String dnsName) {
+		String normalized = dnsName.toLowerCase(Locale.ROOT);
+
+		return (normalized.endsWith(".") ? normalized.substring(0, normalized.length() - 1) : normalized);
+	}
+
+	@Nullable
+	Date notBefore() {
+		return this.notBefore;
+	}
+
+	@Nullable
+	Date notAfter() {
+		return this.notAfter;
+	}
+
+	@Nullable
+	String keyAlgorithm() {
+		return this.keyAlgorithm;
+	}
+
+	int keySize() {
+		return this.keySize;
+	}
+
+	List<String> dnsNames() {
+		return this.dnsNames;
+	}
+
+}
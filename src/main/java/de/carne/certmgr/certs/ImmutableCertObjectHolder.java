@@ -0,0 +1,51 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.io.IOException;
+import java.util.function.Function;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Base class for {@link CertObjectHolder} implementations whose held object never changes.
+ * <p>
+ * Any update of the object results in a new holder; hence the index is built only once and then kept.
+ *
+ * @param <T> The actual certificate object type.
+ */
+abstract class ImmutableCertObjectHolder<T> implements CertObjectHolder<T> {
+
+	@Nullable
+	private volatile Object index = null;
+
+	@Override
+	public <I> I index(Function<? super T, I> indexer) throws IOException {
+		Object checkedIndex = this.index;
+
+		if (checkedIndex == null) {
+			checkedIndex = indexer.apply(get());
+			this.index = checkedIndex;
+		}
+
+		@SuppressWarnings("unchecked")
+		I typedIndex = (I) checkedIndex;
+
+		return typedIndex;
+	}
+
+}
@@ -0,0 +1,820 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.boot.logging.Log;
+import de.carne.certmgr.certs.io.IOResource;
+import de.carne.certmgr.certs.io.PEMCertReaderWriter;
+import de.carne.certmgr.certs.metrics.StoreMetrics;
+import de.carne.certmgr.certs.x509.PKCS10CertificateRequest;
+import de.carne.util.SystemProperties;
+
+/**
+ * {@link UserCertStoreHandler} implementation storing all certificate objects in a single log file.
+ * <p>
+ * Certificate objects are appended to the store's log file ({@code ./store.log}) as records of the following form:
+ *
+ * <pre>
+ * int    record data length
+ * int    record data checksum (CRC32)
+ * byte   operation (put or delete)
+ * byte   certificate object type
+ * short  alias length
+ * byte[] alias (UTF-8)
+ * byte[] certificate object data
+ * </pre>
+ *
+ * CRT, CSR and CRL objects are stored DER encoded. Key objects are stored in the same encrypted PEM form as used by
+ * {@link PersistentUserCertStoreHandler}. Hence keys never need to be decrypted while storing or migrating them.
+ * <p>
+ * While opening the store the log records are read sequentially to build the in-memory offset index. A torn record at
+ * the end of the log (e.g. caused by a crash during writing) is discarded. Afterwards the log file is memory-mapped for
+ * reading and the certificate object data is decoded on demand only.
+ * <p>
+ * As soon as the log contains more superseded than live data, it is compacted by writing the live records to a new log
+ * segment ({@code ./store.<generation>.log}). The segment with the highest generation is the current one. As a mapped
+ * file cannot be replaced (or deleted) on all platforms, a compacted log is never written over the current segment.
+ * Superseded segments are deleted as soon as possible instead. A single log segment is limited to 2 GiB (the maximum
+ * size of a single mapping).
+ */
+final class LogUserCertStoreHandler extends UserCertStoreHandler {
+
+	private static final Log LOG = new Log();
+
+	/**
+	 * The name of the initial log segment.
+	 */
+	static final String LOG_FILENAME = "store.log";
+
+	private static final Pattern SEGMENT_PATTERN = Pattern.compile("store(?:\\.(\\d+))?\\.log");
+
+	// "CMGRLOG" plus format version
+	private static final long LOG_MAGIC = 0x434d47524c4f4701L;
+
+	private static final int LOG_HEADER_SIZE = Long.BYTES;
+
+	private static final int RECORD_HEADER_SIZE = Integer.BYTES + Integer.BYTES;
+
+	private static final int RECORD_DATA_HEADER_SIZE = Byte.BYTES + Byte.BYTES + Short.BYTES;
+
+	private static final byte OP_DELETE = 0;
+	private static final byte OP_PUT = 1;
+
+	private static final int MAX_ALIAS_LENGTH = 0xffff;
+
+	/**
+	 * The minimum amount of superseded data (in bytes) before a log is compacted.
+	 */
+	static final int COMPACTION_THRESHOLD = SystemProperties
+			.intValue(LogUserCertStoreHandler.class.getPackage().getName() + ".logCompactionThreshold", 1024 * 1024);
+
+	private final Path storeHome;
+
+	private long generation;
+
+	private Path logFile;
+
+	private final UserCertStoreDurability durability;
+
+	private int nextId = 1;
+
+	// Live records by alias and type (guarded by this)
+	private Map<String, Map<CertObjectType, Record>> index = new TreeMap<>();
+
+	// Next alias index to probe per alias base (guarded by this)
+	private final Map<String, Integer> aliasIndexes = new HashMap<>();
+
+	private int logSize = LOG_HEADER_SIZE;
+
+	private int liveSize = 0;
+
+	private boolean unforced = false;
+
+	@Nullable
+	private MappedByteBuffer logBuffer = null;
+
+	/**
+	 * Construct {@code LogUserCertStoreHandler} and load the store's log file.
+	 *
+	 * @param storeHome The store's home directory.
+	 * @param durability The durability level to use for writing the log.
+	 * @throws IOException if an I/O error occurs while loading the log.
+	 */
+	LogUserCertStoreHandler(Path storeHome, UserCertStoreDurability durability) throws IOException {
+		this.storeHome = storeHome;
+		this.generation = currentGeneration(storeHome);
+		if (this.generation < 0) {
+			throw new FileNotFoundException("No store log found in: " + storeHome);
+		}
+		this.logFile = segmentFile(storeHome, this.generation);
+		this.durability = durability;
+		loadLog();
+		deleteSupersededSegments();
+		compactIfNeeded();
+	}
+
+	/**
+	 * Check whether a store directory contains a log based store.
+	 *
+	 * @param storeHome The store directory to check.
+	 * @return {@code true} if the store directory contains a log based store.
+	 */
+	static boolean isLogStore(Path storeHome) {
+		boolean isLogStore;
+
+		try {
+			isLogStore = currentGeneration(storeHome) >= 0;
+		} catch (IOException e) {
+			LOG.debug(e, "Unable to scan store directory ''{0}''", storeHome);
+			isLogStore = false;
+		}
+		return isLogStore;
+	}
+
+	private static Path segmentFile(Path storeHome, long generation) {
+		return (generation > 0 ? storeHome.resolve("store." + generation + ".log") : storeHome.resolve(LOG_FILENAME));
+	}
+
+	private static long segmentGeneration(Path file) {
+		Matcher segmentMatcher = SEGMENT_PATTERN.matcher(file.getFileName().toString());
+		long segmentGeneration = -1;
+
+		if (segmentMatcher.matches() && Files.isRegularFile(file)) {
+			String generationString = segmentMatcher.group(1);
+
+			try {
+				segmentGeneration = (generationString != null ? Long.parseLong(generationString) : 0);
+			} catch (NumberFormatException e) {
+				LOG.warning(e, "Ignoring invalid store log segment ''{0}''", file);
+			}
+		}
+		return segmentGeneration;
+	}
+
+	private static long currentGeneration(Path storeHome) throws IOException {
+		long currentGeneration = -1;
+
+		if (Files.isDirectory(storeHome)) {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(storeHome, "store*.log")) {
+				for (Path file : files) {
+					currentGeneration = Math.max(currentGeneration, segmentGeneration(file));
+				}
+			}
+		}
+		return currentGeneration;
+	}
+
+	// Superseded segments may still be mapped (e.g. by a previous handler); in this case they are deleted later
+	private void deleteSupersededSegments() {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(this.storeHome, "store*.log")) {
+			for (Path file : files) {
+				long segmentGeneration = segmentGeneration(file);
+
+				if (0 <= segmentGeneration && segmentGeneration < this.generation) {
+					try {
+						Files.delete(file);
+						LOG.info("Deleted superseded store log segment ''{0}''", file);
+					} catch (IOException e) {
+						LOG.debug(e, "Unable to delete superseded store log segment ''{0}''", file);
+					}
+				}
+			}
+		} catch (IOException e) {
+			LOG.warning(e, "Unable to scan store directory ''{0}''", this.storeHome);
+		}
+	}
+
+	/**
+	 * Create an empty log file.
+	 *
+	 * @param storeHome The store directory to create the log file in.
+	 * @throws IOException if an I/O error occurs while creating the log file.
+	 */
+	static void createLog(Path storeHome) throws IOException {
+		StoreFiles.writeAtomically(storeHome.resolve(LOG_FILENAME), out -> out.write(logHeader()));
+	}
+
+	private static byte[] logHeader() {
+		return ByteBuffer.allocate(LOG_HEADER_SIZE).putLong(LOG_MAGIC).array();
+	}
+
+	@Override
+	public Path storeHome() {
+		return this.storeHome;
+	}
+
+	/**
+	 * Get the store entries contained in the log.
+	 *
+	 * @return The store entries contained in the log (ordered by alias).
+	 */
+	public synchronized Map<UserCertStoreEntryId, PersistentEntry> scanStore() {
+		Map<UserCertStoreEntryId, PersistentEntry> entries = new LinkedHashMap<>(this.index.size());
+
+		for (Map.Entry<String, Map<CertObjectType, Record>> aliasRecords : this.index.entrySet()) {
+			String alias = aliasRecords.getKey();
+			PersistentEntry entry = null;
+
+			for (Map.Entry<CertObjectType, Record> typeRecord : aliasRecords.getValue().entrySet()) {
+				CertObjectType type = typeRecord.getKey();
+
+				entry = new PersistentEntry(entry, (type == CertObjectType.CRT ? newCRTHolder(alias, null) : null),
+						(type == CertObjectType.KEY ? new LogKeyHolder(alias) : null),
+						(type == CertObjectType.CSR ? newCSRHolder(alias, null) : null),
+						(type == CertObjectType.CRL ? newCRLHolder(alias, null) : null), type,
+						typeRecord.getValue().stamp());
+			}
+			entries.put(new UserCertStoreEntryId(0, alias), Objects.requireNonNull(entry));
+		}
+		return entries;
+	}
+
+	/**
+	 * Copy the entries of a directory based store into this log.
+	 * <p>
+	 * Key objects are copied in their encrypted form.
+	 *
+	 * @param entries The directory based store's entries to copy.
+	 * @throws IOException if an I/O error occurs while copying the entries.
+	 */
+	void migrate(Map<UserCertStoreEntryId, PersistentEntry> entries) throws IOException {
+		for (Map.Entry<UserCertStoreEntryId, PersistentEntry> entry : entries.entrySet()) {
+			String alias = Objects.requireNonNull(entry.getKey().getAlias());
+			PersistentEntry persistentEntry = entry.getValue();
+			CertObjectHolder<X509Certificate> crtHolder = persistentEntry.crt();
+			SecureCertObjectHolder<KeyPair> keyHolder = persistentEntry.key();
+			CertObjectHolder<PKCS10CertificateRequest> csrHolder = persistentEntry.csr();
+			CertObjectHolder<X509CRL> crlHolder = persistentEntry.crl();
+
+			LOG.info("Migrating store entry ''{0}''", alias);
+			if (crtHolder != null) {
+				createCRT(entry.getKey(), crtHolder.get());
+			}
+			if (keyHolder != null) {
+				append(OP_PUT, alias, CertObjectType.KEY, Files.readAllBytes(Objects.requireNonNull(keyHolder.path())));
+			}
+			if (csrHolder != null) {
+				createCSR(entry.getKey(), csrHolder.get());
+			}
+			if (crlHolder != null) {
+				createCRL(entry.getKey(), crlHolder.get());
+			}
+		}
+		commit();
+	}
+
+	@Override
+	public synchronized UserCertStoreEntryId nextEntryId(@Nullable String aliasHint) {
+		String alias = null;
+
+		if (aliasHint != null) {
+			if (!this.index.containsKey(aliasHint)) {
+				alias = aliasHint;
+			} else {
+				Matcher indexedAliasMatcher = PersistentUserCertStoreHandler.INDEXED_ALIAS_PATTERN.matcher(aliasHint);
+				String indexedAliasBase = (indexedAliasMatcher.matches() ? indexedAliasMatcher.group(1) : aliasHint);
+				int aliasIndex = this.aliasIndexes.getOrDefault(indexedAliasBase, 1);
+
+				while (true) {
+					alias = String.format(PersistentUserCertStoreHandler.INDEXED_ALIAS_FORMAT, indexedAliasBase,
+							aliasIndex);
+					if (!this.index.containsKey(alias)) {
+						break;
+					}
+					aliasIndex++;
+				}
+				this.aliasIndexes.put(indexedAliasBase, aliasIndex);
+			}
+		}
+		return (alias != null ? new UserCertStoreEntryId(0, alias) : new UserCertStoreEntryId(this.nextId++, null));
+	}
+
+	@Override
+	public CertObjectHolder<X509Certificate> createCRT(UserCertStoreEntryId id, X509Certificate crt)
+			throws IOException {
+		String alias = Objects.requireNonNull(id.getAlias());
+
+		try {
+			append(OP_PUT, alias, CertObjectType.CRT, crt.getEncoded());
+		} catch (GeneralSecurityException e) {
+			throw new CertProviderException(e);
+		}
+		return newCRTHolder(alias, crt);
+	}
+
+	@Override
+	public SecureCertObjectHolder<KeyPair> createKey(UserCertStoreEntryId id, KeyPair key, PasswordCallback newPassword)
+			throws IOException {
+		String alias = Objects.requireNonNull(id.getAlias());
+		ByteArrayOutputStream keyData = new ByteArrayOutputStream();
+
+		PEMCertReaderWriter.writeKeyBinary(new IOResource<>(keyData, alias), key, newPassword);
+		append(OP_PUT, alias, CertObjectType.KEY, keyData.toByteArray());
+		return new LogKeyHolder(alias);
+	}
+
+	@Override
+	public CertObjectHolder<PKCS10CertificateRequest> createCSR(UserCertStoreEntryId id, PKCS10CertificateRequest csr)
+			throws IOException {
+		String alias = Objects.requireNonNull(id.getAlias());
+
+		append(OP_PUT, alias, CertObjectType.CSR, csr.toPKCS10().getEncoded());
+		return newCSRHolder(alias, csr);
+	}
+
+	@Override
+	public CertObjectHolder<X509CRL> createCRL(UserCertStoreEntryId id, X509CRL crl) throws IOException {
+		String alias = Objects.requireNonNull(id.getAlias());
+
+		try {
+			append(OP_PUT, alias, CertObjectType.CRL, crl.getEncoded());
+		} catch (GeneralSecurityException e) {
+			throw new CertProviderException(e);
+		}
+		return newCRLHolder(alias, crl);
+	}
+
+	@Override
+	public synchronized void deleteEntry(UserCertStoreEntryId id) throws IOException {
+		String alias = id.getAlias();
+		Map<CertObjectType, Record> records = (alias != null ? this.index.get(alias) : null);
+
+		if (alias != null && records != null) {
+			for (CertObjectType type : new ArrayList<>(records.keySet())) {
+				append(OP_DELETE, alias, type, new byte[0]);
+			}
+		}
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		// The mapping itself is released as soon as the buffer has been garbage collected
+		this.logBuffer = null;
+	}
+
+	@Override
+	public synchronized void commit() throws IOException {
+		if (this.unforced) {
+			try (FileChannel channel = FileChannel.open(this.logFile, StandardOpenOption.WRITE)) {
+				channel.force(false);
+			}
+			this.unforced = false;
+		}
+		compactIfNeeded();
+	}
+
+	// The log is read via plain channel reads (and mapped afterwards), as a mapped file cannot be truncated on all
+	// platforms
+	private void loadLog() throws IOException {
+		try (FileChannel channel = FileChannel.open(this.logFile, StandardOpenOption.READ)) {
+			this.logSize = (int) Math.min(channel.size(), Integer.MAX_VALUE);
+
+			ByteBuffer header = read(channel, 0, LOG_HEADER_SIZE);
+
+			if (header.limit() < LOG_HEADER_SIZE || header.getLong(0) != LOG_MAGIC) {
+				throw new IOException("Invalid store log: " + this.logFile);
+			}
+
+			int position = LOG_HEADER_SIZE;
+
+			while (position < this.logSize) {
+				ByteBuffer buffer = readRecordBuffer(channel, position);
+				Record record = (buffer != null ? readRecord(buffer, 0) : null);
+
+				if (buffer == null || record == null) {
+					LOG.warning("Discarding {0} bytes of torn data at the end of store log ''{1}''",
+							this.logSize - position, this.logFile);
+					truncateLog(position);
+					break;
+				}
+
+				String alias = recordAlias(buffer, record);
+				CertObjectType type = recordType(buffer, record);
+
+				if (buffer.get(record.offset() + RECORD_HEADER_SIZE) == OP_PUT) {
+					putRecord(alias, type, record.relocate(position));
+				} else {
+					removeRecord(alias, type);
+				}
+				position += record.size();
+			}
+		}
+		LOG.info("Loaded store log ''{0}'' ({1} entries, {2} of {3} bytes live)", this.logFile, this.index.size(),
+				this.liveSize, this.logSize);
+	}
+
+	@Nullable
+	private ByteBuffer readRecordBuffer(FileChannel channel, int position) throws IOException {
+		ByteBuffer header = read(channel, position, RECORD_HEADER_SIZE);
+		ByteBuffer buffer = null;
+
+		if (header.limit() == RECORD_HEADER_SIZE) {
+			int dataLength = header.getInt(0);
+
+			if (RECORD_DATA_HEADER_SIZE <= dataLength && dataLength <= this.logSize - position - RECORD_HEADER_SIZE) {
+				buffer = read(channel, position, RECORD_HEADER_SIZE + dataLength);
+			}
+		}
+		return buffer;
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		int read = 0;
+
+		while (buffer.hasRemaining() && read >= 0) {
+			read = channel.read(buffer, position + buffer.position());
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private void truncateLog(int position) {
+		// Even if truncating fails, the torn data is overwritten by the next append
+		try (FileChannel channel = FileChannel.open(this.logFile, StandardOpenOption.WRITE)) {
+			channel.truncate(position);
+			channel.force(false);
+		} catch (IOException e) {
+			LOG.warning(e, "Unable to truncate store log ''{0}''", this.logFile);
+		}
+		this.logSize = position;
+	}
+
+	@Nullable
+	private static Record readRecord(ByteBuffer buffer, int offset) {
+		Record record = null;
+		int limit = buffer.limit();
+
+		if (limit - offset >= RECORD_HEADER_SIZE + RECORD_DATA_HEADER_SIZE) {
+			int dataLength = buffer.getInt(offset);
+			int checksum = buffer.getInt(offset + Integer.BYTES);
+			int dataOffset = offset + RECORD_HEADER_SIZE;
+
+			if (RECORD_DATA_HEADER_SIZE <= dataLength && dataLength <= limit - dataOffset
+					&& checksum == checksum(buffer, dataOffset, dataLength)) {
+				int aliasLength = Short.toUnsignedInt(buffer.getShort(dataOffset + Byte.BYTES + Byte.BYTES));
+				int typeOrdinal = buffer.get(dataOffset + Byte.BYTES);
+
+				if (RECORD_DATA_HEADER_SIZE + aliasLength <= dataLength && typeOrdinal >= 0
+						&& typeOrdinal < CertObjectType.values().length) {
+					record = new Record(offset, RECORD_HEADER_SIZE + dataLength,
+							RECORD_HEADER_SIZE + RECORD_DATA_HEADER_SIZE + aliasLength, checksum);
+				}
+			}
+		}
+		return record;
+	}
+
+	private static String recordAlias(ByteBuffer buffer, Record record) {
+		int aliasOffset = record.offset() + RECORD_HEADER_SIZE + RECORD_DATA_HEADER_SIZE;
+
+		return new String(bytes(buffer, aliasOffset, record.dataOffset() - aliasOffset), StandardCharsets.UTF_8);
+	}
+
+	private static CertObjectType recordType(ByteBuffer buffer, Record record) {
+		return CertObjectType.values()[buffer.get(record.offset() + RECORD_HEADER_SIZE + Byte.BYTES)];
+	}
+
+	private static int checksum(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer data = buffer.duplicate();
+		CRC32 crc = new CRC32();
+
+		data.limit(offset + length).position(offset);
+		crc.update(data);
+		return (int) crc.getValue();
+	}
+
+	private static byte[] bytes(ByteBuffer buffer, int offset, int length) {
+		ByteBuffer data = buffer.duplicate();
+		byte[] bytes = new byte[length];
+
+		data.position(offset);
+		data.get(bytes);
+		return bytes;
+	}
+
+	private synchronized void append(byte op, String alias, CertObjectType type, byte[] data) throws IOException {
+		byte[] aliasBytes = alias.getBytes(StandardCharsets.UTF_8);
+
+		if (aliasBytes.length > MAX_ALIAS_LENGTH) {
+			throw new IOException("Alias too long: " + alias);
+		}
+
+		int dataLength = RECORD_DATA_HEADER_SIZE + aliasBytes.length + data.length;
+
+		if (dataLength > Integer.MAX_VALUE - RECORD_HEADER_SIZE - this.logSize) {
+			throw new IOException("Store log size limit exceeded: " + this.logFile);
+		}
+
+		ByteBuffer recordBuffer = ByteBuffer.allocate(RECORD_HEADER_SIZE + dataLength);
+
+		recordBuffer.putInt(dataLength).putInt(0);
+		recordBuffer.put(op).put((byte) type.ordinal()).putShort((short) aliasBytes.length);
+		recordBuffer.put(aliasBytes).put(data);
+
+		int checksum = checksum(recordBuffer, RECORD_HEADER_SIZE, dataLength);
+
+		recordBuffer.putInt(Integer.BYTES, checksum);
+		recordBuffer.flip();
+
+		long start = StoreMetrics.start();
+
+		// Always write at the end of the last valid record, overwriting any data of a previously failed write
+		try (FileChannel channel = FileChannel.open(this.logFile, StandardOpenOption.WRITE)) {
+			long position = this.logSize;
+
+			while (recordBuffer.hasRemaining()) {
+				position += channel.write(recordBuffer, position);
+			}
+			if (this.durability == UserCertStoreDurability.SYNC) {
+				channel.force(false);
+			} else if (this.durability == UserCertStoreDurability.GROUP_COMMIT) {
+				this.unforced = true;
+			}
+		}
+		StoreMetrics.record(StoreMetrics.Operation.FILE_WRITE, start);
+
+		Record record = new Record(this.logSize, recordBuffer.limit(), recordBuffer.limit() - data.length, checksum);
+
+		this.logSize += record.size();
+		if (op == OP_PUT) {
+			putRecord(alias, type, record);
+		} else {
+			removeRecord(alias, type);
+		}
+	}
+
+	private void putRecord(String alias, CertObjectType type, Record record) {
+		Record replacedRecord = this.index.computeIfAbsent(alias, key -> new EnumMap<>(CertObjectType.class))
+				.put(type, record);
+
+		if (replacedRecord != null) {
+			this.liveSize -= replacedRecord.size();
+		}
+		this.liveSize += record.size();
+	}
+
+	private void removeRecord(String alias, CertObjectType type) {
+		Map<CertObjectType, Record> records = this.index.get(alias);
+		Record removedRecord = (records != null ? records.remove(type) : null);
+
+		if (removedRecord != null) {
+			this.liveSize -= removedRecord.size();
+			if (Objects.requireNonNull(records).isEmpty()) {
+				this.index.remove(alias);
+			}
+		}
+	}
+
+	private void compactIfNeeded() throws IOException {
+		int supersededSize = this.logSize - LOG_HEADER_SIZE - this.liveSize;
+
+		if (supersededSize >= COMPACTION_THRESHOLD && supersededSize > this.liveSize) {
+			compact();
+		}
+	}
+
+	private void compact() throws IOException {
+		ByteBuffer buffer = mappedLog(this.logSize);
+		Map<String, Map<CertObjectType, Record>> compactedIndex = new TreeMap<>();
+		List<Record> liveRecords = new ArrayList<>();
+		int compactedSize = LOG_HEADER_SIZE;
+
+		for (Map.Entry<String, Map<CertObjectType, Record>> aliasRecords : this.index.entrySet()) {
+			Map<CertObjectType, Record> compactedRecords = new EnumMap<>(CertObjectType.class);
+
+			for (Map.Entry<CertObjectType, Record> typeRecord : aliasRecords.getValue().entrySet()) {
+				Record record = typeRecord.getValue();
+
+				liveRecords.add(record);
+				compactedRecords.put(typeRecord.getKey(), record.relocate(compactedSize));
+				compactedSize += record.size();
+			}
+			compactedIndex.put(aliasRecords.getKey(), compactedRecords);
+		}
+		long compactedGeneration = this.generation + 1;
+		Path compactedLogFile = segmentFile(this.storeHome, compactedGeneration);
+
+		StoreFiles.writeAtomically(compactedLogFile, out -> {
+			out.write(logHeader());
+			for (Record record : liveRecords) {
+				out.write(bytes(buffer, record.offset(), record.size()));
+			}
+		});
+		LOG.info("Compacted store log ''{0}'' into ''{1}'' ({2} -> {3} bytes)", this.logFile, compactedLogFile,
+				this.logSize, compactedSize);
+		this.generation = compactedGeneration;
+		this.logFile = compactedLogFile;
+		this.index = compactedIndex;
+		this.logSize = compactedSize;
+		this.logBuffer = null;
+		this.unforced = false;
+		deleteSupersededSegments();
+	}
+
+	private synchronized ByteBuffer mappedLog(int requiredSize) throws IOException {
+		MappedByteBuffer checkedLogBuffer = this.logBuffer;
+
+		// Remap as soon as records beyond the current mapping are accessed
+		if (checkedLogBuffer == null || checkedLogBuffer.capacity() < requiredSize) {
+			try (FileChannel channel = FileChannel.open(this.logFile, StandardOpenOption.READ)) {
+				checkedLogBuffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, this.logSize);
+			}
+			this.logBuffer = checkedLogBuffer;
+		}
+		return checkedLogBuffer;
+	}
+
+	private synchronized byte[] readData(String alias, CertObjectType type) throws IOException {
+		Map<CertObjectType, Record> records = this.index.get(alias);
+		Record record = (records != null ? records.get(type) : null);
+
+		if (record == null) {
+			throw new FileNotFoundException("No " + type + " object stored for alias: " + alias);
+		}
+
+		long start = StoreMetrics.start();
+		byte[] data = bytes(mappedLog(record.offset() + record.size()), record.dataOffset(), record.dataLength());
+
+		StoreMetrics.record(StoreMetrics.Operation.FILE_READ, start);
+		return data;
+	}
+
+	private CertObjectHolder<X509Certificate> newCRTHolder(String alias, @Nullable X509Certificate crt) {
+		return new LogCertObjectHolder<>(alias, CertObjectType.CRT, crt,
+				data -> CertObjectCache.decode(alias, CertObjectType.CRT, data).getCRT());
+	}
+
+	private CertObjectHolder<PKCS10CertificateRequest> newCSRHolder(String alias,
+			@Nullable PKCS10CertificateRequest csr) {
+		return new LogCertObjectHolder<>(alias, CertObjectType.CSR, csr,
+				data -> CertObjectCache.decode(alias, CertObjectType.CSR, data).getCSR());
+	}
+
+	private CertObjectHolder<X509CRL> newCRLHolder(String alias, @Nullable X509CRL crl) {
+		return new LogCertObjectHolder<>(alias, CertObjectType.CRL, crl,
+				data -> CertObjectCache.decode(alias, CertObjectType.CRL, data).getCRL());
+	}
+
+	private static final class Record {
+
+		private final int offset;
+		private final int size;
+		private final int dataStart;
+		private final int checksum;
+
+		Record(int offset, int size, int dataStart, int checksum) {
+			this.offset = offset;
+			this.size = size;
+			this.dataStart = dataStart;
+			this.checksum = checksum;
+		}
+
+		int offset() {
+			return this.offset;
+		}
+
+		int size() {
+			return this.size;
+		}
+
+		int dataOffset() {
+			return this.offset + this.dataStart;
+		}
+
+		int dataLength() {
+			return this.size - this.dataStart;
+		}
+
+		Record relocate(int newOffset) {
+			return new Record(newOffset, this.size, this.dataStart, this.checksum);
+		}
+
+		String stamp() {
+			// Independent of the record's offset and therefore stable across compactions
+			return Integer.toHexString(this.checksum) + ":" + this.size;
+		}
+
+	}
+
+	@FunctionalInterface
+	private interface Decoder<T> {
+
+		T decode(byte[] data) throws IOException;
+
+	}
+
+	private class LogCertObjectHolder<T> extends ImmutableCertObjectHolder<T> {
+
+		private final String alias;
+		private final CertObjectType type;
+		private final Decoder<T> decoder;
+
+		LogCertObjectHolder(String alias, CertObjectType type, @Nullable T object, Decoder<T> decoder) {
+			this.alias = alias;
+			this.type = type;
+			this.decoder = decoder;
+			if (object != null) {
+				CertObjectCache.put(this, object);
+			}
+		}
+
+		@Override
+		@Nullable
+		public Path path() {
+			return null;
+		}
+
+		@Override
+		public T get() throws IOException {
+			@SuppressWarnings("unchecked")
+			T object = (T) CertObjectCache.get(this);
+
+			if (object == null) {
+				object = this.decoder.decode(readData(this.alias, this.type));
+				CertObjectCache.put(this, object);
+			}
+			return object;
+		}
+
+	}
+
+	private class LogKeyHolder implements SecureCertObjectHolder<KeyPair> {
+
+		private final String alias;
+
+		LogKeyHolder(String alias) {
+			this.alias = alias;
+		}
+
+		@Override
+		@Nullable
+		public Path path() {
+			return null;
+		}
+
+		@Override
+		public KeyPair get() throws IOException {
+			throw new PasswordRequiredException(this.alias);
+		}
+
+		@Override
+		public boolean isSecured() {
+			return true;
+		}
+
+		@Override
+		public KeyPair get(PasswordCallback password) throws IOException {
+			byte[] keyData = readData(this.alias, CertObjectType.KEY);
+
+			return PEMCertReaderWriter.readKeyBinary(new IOResource<>(new ByteArrayInputStream(keyData), this.alias),
+					password);
+		}
+
+	}
+
+}
@@ -16,9 +16,12 @@
  */
 package de.carne.certmgr.certs;
 
+import java.nio.file.attribute.BasicFileAttributes;
 import java.security.KeyPair;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.util.EnumMap;
+import java.util.Map;
 
 import org.eclipse.jdt.annotation.Nullable;
 
@@ -34,15 +37,27 @@ final class PersistentEntry {
 	private final CertObjectHolder<PKCS10CertificateRequest> csrHolder;
 	@Nullable
 	private final CertObjectHolder<X509CRL> crlHolder;
+	private final Map<CertObjectType, String> fileStamps;
 
 	PersistentEntry(@Nullable PersistentEntry base, @Nullable CertObjectHolder<X509Certificate> crtHolder,
 			@Nullable SecureCertObjectHolder<KeyPair> keyHolder,
 			@Nullable CertObjectHolder<PKCS10CertificateRequest> csrHolder,
-			@Nullable CertObjectHolder<X509CRL> crlHolder) {
+			@Nullable CertObjectHolder<X509CRL> crlHolder, CertObjectType fileType,
+			BasicFileAttributes fileAttributes) {
+		this(base, crtHolder, keyHolder, csrHolder, crlHolder, fileType,
+				fileAttributes.lastModifiedTime().toMillis() + ":" + fileAttributes.size());
+	}
+
+	PersistentEntry(@Nullable PersistentEntry base, @Nullable CertObjectHolder<X509Certificate> crtHolder,
+			@Nullable SecureCertObjectHolder<KeyPair> keyHolder,
+			@Nullable CertObjectHolder<PKCS10CertificateRequest> csrHolder,
+			@Nullable CertObjectHolder<X509CRL> crlHolder, CertObjectType fileType, String fileStamp) {
 		this.crtHolder = (crtHolder != null ? crtHolder : (base != null ? base.crtHolder : null));
 		this.keyHolder = (keyHolder != null ? keyHolder : (base != null ? base.keyHolder : null));
 		this.csrHolder = (csrHolder != null ? csrHolder : (base != null ? base.csrHolder : null));
 		this.crlHolder = (crlHolder != null ? crlHolder : (base != null ? base.crlHolder : null));
+		this.fileStamps = (base != null ? new EnumMap<>(base.fileStamps) : new EnumMap<>(CertObjectType.class));
+		this.fileStamps.put(fileType, fileStamp);
 	}
 
 	@Nullable
@@ -65,4 +80,24 @@ final class PersistentEntry {
 		return this.crlHolder;
 	}
 
+	/**
+	 * Get the combined modification stamp of all of this entry's files.
+	 * <p>
+	 * The stamp changes whenever one of the entry's files is added, removed or modified (as indicated by file time
+	 * and size).
+	 *
+	 * @return The combined modification stamp of all of this entry's files.
+	 */
+	public String fileStamp() {
+		StringBuilder buffer = new StringBuilder();
+
+		for (CertObjectType type : CertObjectType.values()) {
+			if (buffer.length() > 0) {
+				buffer.append(',');
+			}
+			buffer.append(this.fileStamps.getOrDefault(type, "-"));
+		}
+		return buffer.toString();
+	}
+
 }
@@ -0,0 +1,459 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Immutable hash map supporting updates via structural sharing (hash array mapped trie).
+ * <p>
+ * Each update returns a new map instance which shares all nodes not affected by the update with the original map.
+ * Hence an update costs O(log n) time and memory, regardless of how many map instances are kept alive.
+ *
+ * @param <K> The key type.
+ * @param <V> The value type.
+ */
+final class PersistentHashMap<K, V> {
+
+	private static final int BITS = 5;
+	private static final int MASK = (1 << BITS) - 1;
+
+	private static final PersistentHashMap<?, ?> EMPTY = new PersistentHashMap<>(null, 0);
+
+	@Nullable
+	private final Object root;
+	private final int size;
+
+	@Nullable
+	private Set<K> keySet = null;
+
+	private PersistentHashMap(@Nullable Object root, int size) {
+		this.root = root;
+		this.size = size;
+	}
+
+	/**
+	 * Get the empty map.
+	 *
+	 * @param <K> The key type.
+	 * @param <V> The value type.
+	 * @return The empty map.
+	 */
+	@SuppressWarnings("unchecked")
+	static <K, V> PersistentHashMap<K, V> empty() {
+		return (PersistentHashMap<K, V>) EMPTY;
+	}
+
+	/**
+	 * Get this map's size.
+	 *
+	 * @return This map's size.
+	 */
+	int size() {
+		return this.size;
+	}
+
+	/**
+	 * Get the value mapped to a key.
+	 *
+	 * @param key The key to get the value for.
+	 * @return The mapped value, or {@code null} if the key is not mapped.
+	 */
+	@Nullable
+	@SuppressWarnings("unchecked")
+	V get(Object key) {
+		Leaf leaf = find(this.root, hash(key), key, 0);
+
+		return (leaf != null ? (V) leaf.value : null);
+	}
+
+	/**
+	 * Check whether a key is mapped.
+	 *
+	 * @param key The key to check.
+	 * @return {@code true} if the key is mapped.
+	 */
+	boolean containsKey(Object key) {
+		return find(this.root, hash(key), key, 0) != null;
+	}
+
+	/**
+	 * Derive a map with an additional or replaced mapping.
+	 * <p>
+	 * An already existing mapping is replaced including its key (in case the submitted key is a different but equal
+	 * object).
+	 *
+	 * @param key The key to map.
+	 * @param value The value to map.
+	 * @return The updated map.
+	 */
+	PersistentHashMap<K, V> put(K key, V value) {
+		Leaf leaf = new Leaf(hash(key), key, value);
+		Leaf replacedLeaf = find(this.root, leaf.hash, key, 0);
+		PersistentHashMap<K, V> updated;
+
+		if (replacedLeaf != null && replacedLeaf.key == key && replacedLeaf.value == value) {
+			updated = this;
+		} else {
+			updated = new PersistentHashMap<>(insert(this.root, leaf, 0),
+					(replacedLeaf != null ? this.size : this.size + 1));
+		}
+		return updated;
+	}
+
+	/**
+	 * Derive a map without a specific mapping.
+	 *
+	 * @param key The key to remove.
+	 * @return The updated map.
+	 */
+	PersistentHashMap<K, V> remove(Object key) {
+		int hash = hash(key);
+		PersistentHashMap<K, V> updated;
+
+		if (find(this.root, hash, key, 0) != null) {
+			updated = new PersistentHashMap<>(delete(Objects.requireNonNull(this.root), hash, key, 0), this.size - 1);
+		} else {
+			updated = this;
+		}
+		return updated;
+	}
+
+	/**
+	 * Get this map's keys.
+	 *
+	 * @return This map's keys (read-only).
+	 */
+	Set<K> keySet() {
+		Set<K> checkedKeySet = this.keySet;
+
+		// The view is stateless; hence a racy initialization is harmless
+		if (checkedKeySet == null) {
+			checkedKeySet = this.keySet = newKeySet();
+		}
+		return checkedKeySet;
+	}
+
+	private Set<K> newKeySet() {
+		return new AbstractSet<K>() {
+
+			@Override
+			public int size() {
+				return PersistentHashMap.this.size;
+			}
+
+			@Override
+			public boolean contains(@Nullable Object o) {
+				return o != null && containsKey(o);
+			}
+
+			@Override
+			public Iterator<K> iterator() {
+				return new KeyIterator<>(PersistentHashMap.this.root);
+			}
+
+		};
+	}
+
+	private static int hash(Object key) {
+		int h = key.hashCode();
+
+		return h ^ (h >>> 16);
+	}
+
+	private static int bit(int hash, int shift) {
+		return 1 << ((hash >>> shift) & MASK);
+	}
+
+	@Nullable
+	private static Leaf find(@Nullable Object node, int hash, Object key, int shift) {
+		Leaf found = null;
+
+		if (node instanceof Leaf) {
+			Leaf leaf = (Leaf) node;
+
+			if (leaf.hash == hash && leaf.key.equals(key)) {
+				found = leaf;
+			}
+		} else if (node instanceof Collision) {
+			Collision collision = (Collision) node;
+
+			if (collision.hash == hash) {
+				found = collision.find(key);
+			}
+		} else if (node instanceof Branch) {
+			Branch branch = (Branch) node;
+			int bit = bit(hash, shift);
+
+			if ((branch.bitmap & bit) != 0) {
+				found = find(branch.slots[branch.index(bit)], hash, key, shift + BITS);
+			}
+		}
+		return found;
+	}
+
+	private static Object insert(@Nullable Object node, Leaf leaf, int shift) {
+		Object inserted;
+
+		if (node == null) {
+			inserted = leaf;
+		} else if (node instanceof Leaf) {
+			Leaf nodeLeaf = (Leaf) node;
+
+			if (nodeLeaf.hash == leaf.hash) {
+				inserted = (nodeLeaf.key.equals(leaf.key) ? leaf
+						: new Collision(leaf.hash, new Leaf[] { nodeLeaf, leaf }));
+			} else {
+				inserted = merge(nodeLeaf, nodeLeaf.hash, leaf, shift);
+			}
+		} else if (node instanceof Collision) {
+			Collision collision = (Collision) node;
+
+			inserted = (collision.hash == leaf.hash ? collision.insert(leaf)
+					: merge(collision, collision.hash, leaf, shift));
+		} else {
+			Branch branch = (Branch) node;
+			int bit = bit(leaf.hash, shift);
+			int index = branch.index(bit);
+
+			if ((branch.bitmap & bit) != 0) {
+				Object[] slots = branch.slots.clone();
+
+				slots[index] = insert(slots[index], leaf, shift + BITS);
+				inserted = new Branch(branch.bitmap, slots);
+			} else {
+				Object[] slots = new Object[branch.slots.length + 1];
+
+				System.arraycopy(branch.slots, 0, slots, 0, index);
+				slots[index] = leaf;
+				System.arraycopy(branch.slots, index, slots, index + 1, branch.slots.length - index);
+				inserted = new Branch(branch.bitmap | bit, slots);
+			}
+		}
+		return inserted;
+	}
+
+	// The hashes differ; hence the recursion ends at the latest when the last hash bits are reached
+	private static Branch merge(Object node, int nodeHash, Leaf leaf, int shift) {
+		int nodeBit = bit(nodeHash, shift);
+		int leafBit = bit(leaf.hash, shift);
+		Branch merged;
+
+		if (nodeBit == leafBit) {
+			merged = new Branch(nodeBit, new Object[] { merge(node, nodeHash, leaf, shift + BITS) });
+		} else if (Integer.compareUnsigned(nodeBit, leafBit) < 0) {
+			merged = new Branch(nodeBit | leafBit, new Object[] { node, leaf });
+		} else {
+			merged = new Branch(nodeBit | leafBit, new Object[] { leaf, node });
+		}
+		return merged;
+	}
+
+	// Must only be invoked for contained keys
+	@Nullable
+	private static Object delete(Object node, int hash, Object key, int shift) {
+		Object deleted;
+
+		if (node instanceof Leaf) {
+			deleted = null;
+		} else if (node instanceof Collision) {
+			deleted = ((Collision) node).delete(key);
+		} else {
+			Branch branch = (Branch) node;
+			int bit = bit(hash, shift);
+			int index = branch.index(bit);
+			Object slot = delete(branch.slots[index], hash, key, shift + BITS);
+
+			if (slot != null) {
+				if (branch.slots.length == 1 && !(slot instanceof Branch)) {
+					// Pull up single leaves to keep the trie compact
+					deleted = slot;
+				} else {
+					Object[] slots = branch.slots.clone();
+
+					slots[index] = slot;
+					deleted = new Branch(branch.bitmap, slots);
+				}
+			} else if (branch.slots.length == 1) {
+				deleted = null;
+			} else {
+				Object[] slots = new Object[branch.slots.length - 1];
+
+				System.arraycopy(branch.slots, 0, slots, 0, index);
+				System.arraycopy(branch.slots, index + 1, slots, index, slots.length - index);
+				deleted = (slots.length == 1 && !(slots[0] instanceof Branch) ? slots[0]
+						: new Branch(branch.bitmap & ~bit, slots));
+			}
+		}
+		return deleted;
+	}
+
+	@Override
+	public String toString() {
+		return "PersistentHashMap (" + this.size + " entries)";
+	}
+
+	private static final class Leaf {
+
+		final int hash;
+		final Object key;
+		final Object value;
+
+		Leaf(int hash, Object key, Object value) {
+			this.hash = hash;
+			this.key = key;
+			this.value = value;
+		}
+
+	}
+
+	private static final class Branch {
+
+		final int bitmap;
+		final Object[] slots;
+
+		Branch(int bitmap, Object[] slots) {
+			this.bitmap = bitmap;
+			this.slots = slots;
+		}
+
+		int index(int bit) {
+			return Integer.bitCount(this.bitmap & (bit - 1));
+		}
+
+	}
+
+	// Leaves with different keys but identical hashes
+	private static final class Collision {
+
+		final int hash;
+		final Leaf[] leaves;
+
+		Collision(int hash, Leaf[] leaves) {
+			this.hash = hash;
+			this.leaves = leaves;
+		}
+
+		private int indexOf(Object key) {
+			int index = -1;
+
+			for (int leafIndex = 0; leafIndex < this.leaves.length && index < 0; leafIndex++) {
+				if (this.leaves[leafIndex].key.equals(key)) {
+					index = leafIndex;
+				}
+			}
+			return index;
+		}
+
+		@Nullable
+		Leaf find(Object key) {
+			int index = indexOf(key);
+
+			return (index >= 0 ? this.leaves[index] : null);
+		}
+
+		Collision insert(Leaf leaf) {
+			int index = indexOf(leaf.key);
+			Leaf[] insertedLeaves;
+
+			if (index >= 0) {
+				insertedLeaves = this.leaves.clone();
+				insertedLeaves[index] = leaf;
+			} else {
+				insertedLeaves = Arrays.copyOf(this.leaves, this.leaves.length + 1);
+				insertedLeaves[this.leaves.length] = leaf;
+			}
+			return new Collision(this.hash, insertedLeaves);
+		}
+
+		Object delete(Object key) {
+			int index = indexOf(key);
+			Leaf[] deletedLeaves = new Leaf[this.leaves.length - 1];
+
+			System.arraycopy(this.leaves, 0, deletedLeaves, 0, index);
+			System.arraycopy(this.leaves, index + 1, deletedLeaves, index, deletedLeaves.length - index);
+			return (deletedLeaves.length == 1 ? deletedLeaves[0] : new Collision(this.hash, deletedLeaves));
+		}
+
+	}
+
+	private static final class KeyIterator<K> implements Iterator<K> {
+
+		private final Deque<Iterator<?>> slots = new ArrayDeque<>();
+
+		@Nullable
+		private Leaf nextLeaf = null;
+
+		KeyIterator(@Nullable Object root) {
+			if (root != null) {
+				this.slots.push(Arrays.asList(root).iterator());
+			}
+			advance();
+		}
+
+		private void advance() {
+			Leaf leaf = null;
+
+			while (leaf == null && !this.slots.isEmpty()) {
+				Iterator<?> slotIterator = this.slots.peek();
+
+				if (!slotIterator.hasNext()) {
+					this.slots.pop();
+				} else {
+					Object slot = slotIterator.next();
+
+					if (slot instanceof Leaf) {
+						leaf = (Leaf) slot;
+					} else if (slot instanceof Collision) {
+						this.slots.push(Arrays.asList(((Collision) slot).leaves).iterator());
+					} else {
+						this.slots.push(Arrays.asList(((Branch) slot).slots).iterator());
+					}
+				}
+			}
+			this.nextLeaf = leaf;
+		}
+
+		@Override
+		public boolean hasNext() {
+			return this.nextLeaf != null;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public K next() {
+			Leaf leaf = this.nextLeaf;
+
+			if (leaf == null) {
+				throw new NoSuchElementException();
+			}
+			advance();
+			return (K) leaf.key;
+		}
+
+	}
+
+}
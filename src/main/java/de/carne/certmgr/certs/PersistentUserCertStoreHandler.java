@@ -18,32 +18,49 @@ package de.carne.certmgr.certs;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
-import java.lang.ref.SoftReference;
-import java.nio.file.FileVisitResult;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.PathMatcher;
-import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.nio.file.attribute.FileTime;
 import java.security.KeyPair;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.CRC32;
 
 import org.eclipse.jdt.annotation.Nullable;
 
+import de.carne.boot.Exceptions;
 import de.carne.boot.logging.Log;
 import de.carne.certmgr.certs.io.IOResource;
 import de.carne.certmgr.certs.io.PEMCertReaderWriter;
+import de.carne.certmgr.certs.metrics.StoreMetrics;
+import de.carne.certmgr.certs.x509.Fingerprint;
 import de.carne.certmgr.certs.x509.PKCS10CertificateRequest;
+import de.carne.certmgr.certs.x509.SignatureVerificationCache;
 import de.carne.nio.file.attribute.FileAttributes;
+import de.carne.util.SystemProperties;
 
 /**
  * {@link UserCertStoreHandler} implementation providing file based storage.
@@ -58,14 +75,24 @@ import de.carne.nio.file.attribute.FileAttributes;
  * ./private/*.key (encrypted key files)
  * </pre>
  *
- * A certificate object's file names are determined based upon the corresponding entry id's alias attributes.
+ * A certificate object's file names are determined based upon the corresponding entry id's alias attributes. If the
+ * store is configured for the {@link UserCertStoreLayout#SHARDED} layout, new files are placed in two levels of
+ * sub-directories derived from a hash of the alias (e.g. {@code ./certs/ab/cd/alias.crt}). Files are found in either
+ * layout; hence a store can be migrated between layouts while it is in use.
+ * <p>
+ * Cached certificate objects are checked for external modifications either by checking the underlying file's time on
+ * every access or (if supported by the file system) by watching the store directories for changes.
+ * <p>
+ * Certificate object files are always written atomically (via a temporary file which is renamed afterwards). Whether
+ * and when the written files are forced to disk is determined by the store's {@link UserCertStoreDurability}. In
+ * {@link UserCertStoreDurability#GROUP_COMMIT} mode written files remain pending until {@link #commit()} is invoked.
  */
 class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 
 	private static final Log LOG = new Log();
 
-	private static final Pattern INDEXED_ALIAS_PATTERN = Pattern.compile("(.*)\\d+$");
-	private static final String INDEXED_ALIAS_FORMAT = "%s%d";
+	static final Pattern INDEXED_ALIAS_PATTERN = Pattern.compile("(.*)\\d+$");
+	static final String INDEXED_ALIAS_FORMAT = "%s%d";
 
 	static final String DIR_CRT = "certs";
 	static final String DIR_KEY = "private";
@@ -77,12 +104,59 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 	static final String EXTENSION_CSR = ".csr";
 	static final String EXTENSION_CRL = ".crl";
 
+	/**
+	 * Whether store directories are watched for changes (if supported by the file system).
+	 */
+	static final boolean WATCH_STORE = SystemProperties
+			.booleanValue(PersistentUserCertStoreHandler.class.getPackage().getName() + ".watchStore", true);
+
+	private static final int SHARD_LEVELS = 2;
+
+	private static final Pattern SHARD_NAME_PATTERN = Pattern.compile("[0-9a-f]{2}");
+
+	// Temporary files may still be pending in another instance accessing the same store; hence only temporary files
+	// which have not been touched for a while are considered stale
+	private static final long STALE_TEMP_FILE_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+	private static final List<ScanDirectory> SCAN_DIRECTORIES = Arrays.asList(
+			new ScanDirectory(DIR_CRT, EXTENSION_CRT, CertObjectType.CRT),
+			new ScanDirectory(DIR_KEY, EXTENSION_KEY, CertObjectType.KEY),
+			new ScanDirectory(DIR_CSR, EXTENSION_CSR, CertObjectType.CSR),
+			new ScanDirectory(DIR_CRL, EXTENSION_CRL, CertObjectType.CRL));
+
 	private int nextId = 1;
 
 	private final Path storeHome;
 
-	PersistentUserCertStoreHandler(Path storeHome) {
+	private final UserCertStoreDurability durability;
+
+	private volatile UserCertStoreLayout layout;
+
+	// Written but not yet committed files (mapped to their temporary files)
+	private final Map<Path, Path> pendingFiles = new ConcurrentHashMap<>();
+
+	private final Map<Path, FileTime> knownFileTimes = new ConcurrentHashMap<>();
+
+	private final Set<Path> changedPaths = ConcurrentHashMap.newKeySet();
+
+	// Aliases currently in use (guarded by itself)
+	private final Set<String> aliases = new HashSet<>();
+
+	// Next alias index to probe per alias base (guarded by aliases)
+	private final Map<String, Integer> aliasIndexes = new HashMap<>();
+
+	private volatile boolean watching = false;
+
+	@Nullable
+	private volatile PersistentUserCertStoreWatcher watcher = null;
+
+	@Nullable
+	private volatile ChangeListener changeListener = null;
+
+	PersistentUserCertStoreHandler(Path storeHome, UserCertStoreDurability durability, UserCertStoreLayout layout) {
 		this.storeHome = storeHome;
+		this.durability = durability;
+		this.layout = layout;
 	}
 
 	@Override
@@ -90,35 +164,288 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 		return this.storeHome;
 	}
 
+	/**
+	 * Scan the store's directories for certificate object files.
+	 * <p>
+	 * The different certificate object directories are scanned in parallel. The scan result is ordered by entry alias
+	 * and therefore independent of the actual scan order. Stale temporary files left behind by writes which have
+	 * never been committed (e.g. due to a crash) are deleted during the scan. A temporary file is considered stale if
+	 * it has not been modified for an hour.
+	 *
+	 * @return The found store entries.
+	 * @throws IOException if an I/O error occurs while scanning the store.
+	 */
 	public Map<UserCertStoreEntryId, PersistentEntry> scanStore() throws IOException {
-		PersistentEntryPathsScanner scanner = new PersistentEntryPathsScanner(LOG);
+		List<List<ScanFile>> scanFiles = StoreExecutor.map(SCAN_DIRECTORIES,
+				scanDirectory -> scanDirectory(scanDirectory, true));
+		Map<String, PersistentEntry> result = new TreeMap<>();
+
+		for (List<ScanFile> directoryScanFiles : scanFiles) {
+			for (ScanFile scanFile : directoryScanFiles) {
+				UserCertStoreEntryId id = pathId(scanFile.file());
+				String alias = Objects.requireNonNull(id.getAlias());
+
+				result.put(alias, scanFile.toEntry(id, result.get(alias)));
+			}
+		}
+
+		Map<UserCertStoreEntryId, PersistentEntry> entries = new LinkedHashMap<>(result.size());
+
+		for (List<ScanFile> directoryScanFiles : scanFiles) {
+			for (ScanFile scanFile : directoryScanFiles) {
+				scanFile.recordFileTime();
+			}
+		}
 
-		Files.walkFileTree(storeHome(), scanner);
-		return scanner.getResult();
+		for (Map.Entry<String, PersistentEntry> resultEntry : result.entrySet()) {
+			entries.put(new UserCertStoreEntryId(0, resultEntry.getKey()), resultEntry.getValue());
+			registerAlias(resultEntry.getKey(), true);
+		}
+		return entries;
+	}
+
+	/**
+	 * Scan the files of a single store entry.
+	 *
+	 * @param id The id of the store entry to scan.
+	 * @return The found store entry, or {@code null} if none of the entry's files exists.
+	 * @throws IOException if an I/O error occurs while scanning the entry.
+	 */
+	@Nullable
+	PersistentEntry scanEntry(UserCertStoreEntryId id) throws IOException {
+		String alias = Objects.requireNonNull(id.getAlias());
+		PersistentEntry entry = null;
+
+		for (ScanDirectory scanDirectory : SCAN_DIRECTORIES) {
+			boolean found = false;
+
+			for (Path file : entryPaths(scanDirectory.dir(), alias, scanDirectory.ext())) {
+				if (!found && Files.isRegularFile(file)) {
+					ScanFile scanFile = new ScanFile(file, scanDirectory.type(),
+							Files.readAttributes(file, BasicFileAttributes.class));
+
+					entry = scanFile.toEntry(id, entry);
+					scanFile.recordFileTime();
+					found = true;
+				} else {
+					recordFileTime(file, null);
+				}
+			}
+		}
+		registerAlias(alias, entry != null);
+		return entry;
+	}
+
+	/**
+	 * Check whether any of a store entry's files has been modified since it has been accessed by this handler.
+	 *
+	 * @param id The id of the store entry to check.
+	 * @return {@code true} if any of the entry's files has been created, modified or deleted externally.
+	 */
+	boolean isEntryModified(UserCertStoreEntryId id) {
+		String alias = Objects.requireNonNull(id.getAlias());
+		boolean modified = false;
+
+		for (ScanDirectory scanDirectory : SCAN_DIRECTORIES) {
+			for (Path file : entryPaths(scanDirectory.dir(), alias, scanDirectory.ext())) {
+				modified = modified || !Objects.equals(this.knownFileTimes.get(file), currentFileTime(file));
+			}
+		}
+		return modified;
+	}
+
+	/**
+	 * Start watching this store's directories for external changes.
+	 * <p>
+	 * If watching is not enabled or not supported by the file system, modifications are still detected by checking
+	 * the file times on every access. However, no change events are reported in this case.
+	 *
+	 * @param listener The listener to report changed store entries to.
+	 */
+	void startWatching(ChangeListener listener) {
+		if (WATCH_STORE) {
+			PersistentUserCertStoreWatcher startedWatcher = PersistentUserCertStoreWatcher.start(this,
+					Arrays.asList(DIR_CRT, DIR_KEY, DIR_CSR, DIR_CRL));
+
+			this.changeListener = listener;
+			this.watcher = startedWatcher;
+			this.watching = startedWatcher != null;
+		}
 	}
 
 	@Override
-	public UserCertStoreEntryId nextEntryId(@Nullable String aliasHint) {
-		String alias = null;
+	public void close() throws IOException {
+		PersistentUserCertStoreWatcher currentWatcher = this.watcher;
+
+		this.watching = false;
+		this.changeListener = null;
+		this.watcher = null;
+		if (currentWatcher != null) {
+			currentWatcher.close();
+		}
+	}
 
-		if (aliasHint != null) {
-			if (!isAliasInUse(aliasHint)) {
-				alias = aliasHint;
-			} else {
-				Matcher indexedAliasMatcher = INDEXED_ALIAS_PATTERN.matcher(aliasHint);
-				String indexedAliasBase = (indexedAliasMatcher.matches() ? indexedAliasMatcher.group(1) : aliasHint);
-				int aliasIndex = 1;
+	void filesChanged(@Nullable Collection<Path> files) {
+		Collection<Path> checkFiles = files;
 
-				while (true) {
-					alias = String.format(INDEXED_ALIAS_FORMAT, indexedAliasBase, aliasIndex);
-					if (!isAliasInUse(alias)) {
+		if (checkFiles == null) {
+			// Events have been lost; check all files
+			checkFiles = new HashSet<>(this.knownFileTimes.keySet());
+			try {
+				for (ScanDirectory scanDirectory : SCAN_DIRECTORIES) {
+					for (ScanFile scanFile : scanDirectory(scanDirectory)) {
+						checkFiles.add(scanFile.file());
+					}
+				}
+			} catch (IOException e) {
+				LOG.warning(e, "Failed to rescan store ''{0}''", this.storeHome);
+			}
+		}
+
+		Set<UserCertStoreEntryId> changedIds = new HashSet<>();
+
+		for (Path file : checkFiles) {
+			if (isEntryFile(file) && !Objects.equals(this.knownFileTimes.get(file), currentFileTime(file))) {
+				LOG.info("Detected external change of file ''{0}''", file);
+				this.changedPaths.add(file);
+				changedIds.add(pathId(file));
+			}
+		}
+
+		ChangeListener checkedChangeListener = this.changeListener;
+
+		if (checkedChangeListener != null && !changedIds.isEmpty()) {
+			try {
+				checkedChangeListener.entriesChanged(changedIds);
+			} catch (IOException | RuntimeException e) {
+				LOG.error(e, "Failed to process changes of store ''{0}''", this.storeHome);
+			}
+		}
+	}
+
+	void watchFailed() {
+		this.watching = false;
+		this.changeListener = null;
+	}
+
+	private boolean isEntryFile(Path file) {
+		boolean isEntryFile = false;
+
+		if (file.startsWith(this.storeHome)) {
+			Path relativeFile = this.storeHome.relativize(file);
+			int nameCount = relativeFile.getNameCount();
+
+			if (nameCount == 2 || nameCount == 2 + SHARD_LEVELS) {
+				String dirName = relativeFile.getName(0).toString();
+				String fileName = relativeFile.getFileName().toString();
+
+				for (ScanDirectory scanDirectory : SCAN_DIRECTORIES) {
+					if (scanDirectory.dir().equals(dirName) && fileName.endsWith(scanDirectory.ext())) {
+						isEntryFile = true;
 						break;
 					}
-					aliasIndex++;
 				}
 			}
 		}
-		return (alias != null ? new UserCertStoreEntryId(0, alias) : new UserCertStoreEntryId(this.nextId++, null));
+		return isEntryFile;
+	}
+
+	@Nullable
+	private static FileTime currentFileTime(Path file) {
+		FileTime fileTime;
+
+		try {
+			fileTime = Files.getLastModifiedTime(file);
+		} catch (IOException e) {
+			fileTime = null;
+		}
+		return fileTime;
+	}
+
+	private boolean isStaleTempFile(Path file, BasicFileAttributes fileAttributes) {
+		return !this.pendingFiles.containsValue(file)
+				&& fileAttributes.lastModifiedTime().toMillis() < System.currentTimeMillis() - STALE_TEMP_FILE_MILLIS;
+	}
+
+	private void recordFileTime(Path file, @Nullable FileTime fileTime) {
+		if (fileTime != null) {
+			this.knownFileTimes.put(file, fileTime);
+		} else {
+			this.knownFileTimes.remove(file);
+		}
+	}
+
+	private List<ScanFile> scanDirectory(ScanDirectory scanDirectory) throws IOException {
+		return scanDirectory(scanDirectory, false);
+	}
+
+	private List<ScanFile> scanDirectory(ScanDirectory scanDirectory, boolean deleteTempFiles) throws IOException {
+		List<ScanFile> scanFiles = new ArrayList<>();
+
+		scanDirectory(scanDirectory, storeHome().resolve(scanDirectory.dir()), 0, scanFiles, deleteTempFiles);
+		return scanFiles;
+	}
+
+	private void scanDirectory(ScanDirectory scanDirectory, Path directory, int level, List<ScanFile> scanFiles,
+			boolean deleteTempFiles) throws IOException {
+		if (Files.isDirectory(directory)) {
+			try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+				for (Path file : files) {
+					BasicFileAttributes fileAttributes = Files.readAttributes(file, BasicFileAttributes.class);
+					String fileName = file.getFileName().toString();
+
+					// Entry files are either located in the top-level directory (flat layout) or in the
+					// lowest-level shard directories (sharded layout)
+					if (fileAttributes.isRegularFile() && (level == 0 || level == SHARD_LEVELS)
+							&& fileName.endsWith(scanDirectory.ext())) {
+						LOG.info("Found {0} file: ''{1}''", scanDirectory.type(), file);
+						scanFiles.add(new ScanFile(file, scanDirectory.type(), fileAttributes));
+					} else if (deleteTempFiles && fileAttributes.isRegularFile() && (level == 0 || level == SHARD_LEVELS)
+							&& StoreFiles.isTempFile(file) && isStaleTempFile(file, fileAttributes)) {
+						LOG.warning("Deleting stale temporary file: ''{0}''", file);
+						Files.deleteIfExists(file);
+					} else if (fileAttributes.isDirectory() && level < SHARD_LEVELS
+							&& SHARD_NAME_PATTERN.matcher(fileName).matches()) {
+						scanDirectory(scanDirectory, file, level + 1, scanFiles, deleteTempFiles);
+					} else {
+						LOG.debug("Ignoring file: ''{0}''", file);
+					}
+				}
+			}
+		}
+	}
+
+	@Override
+	public UserCertStoreEntryId nextEntryId(@Nullable String aliasHint) {
+		UserCertStoreEntryId entryId;
+
+		synchronized (this.aliases) {
+			String alias = null;
+
+			if (aliasHint != null) {
+				if (!isAliasInUse(aliasHint)) {
+					alias = aliasHint;
+				} else {
+					Matcher indexedAliasMatcher = INDEXED_ALIAS_PATTERN.matcher(aliasHint);
+					String indexedAliasBase = (indexedAliasMatcher.matches() ? indexedAliasMatcher.group(1)
+							: aliasHint);
+					// Indexes below the recorded one have already been found in use; hence start probing from there
+					int aliasIndex = this.aliasIndexes.getOrDefault(indexedAliasBase, 1);
+
+					while (true) {
+						alias = String.format(INDEXED_ALIAS_FORMAT, indexedAliasBase, aliasIndex);
+						if (!isAliasInUse(alias)) {
+							break;
+						}
+						aliasIndex++;
+					}
+					this.aliasIndexes.put(indexedAliasBase, aliasIndex);
+				}
+			}
+			entryId = (alias != null ? new UserCertStoreEntryId(0, alias)
+					: new UserCertStoreEntryId(this.nextId++, null));
+		}
+		return entryId;
 	}
 
 	@Override
@@ -127,12 +454,12 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 		String alias = Objects.requireNonNull(id.getAlias());
 		Path crtPath = entryPath(DIR_CRT, alias, EXTENSION_CRT);
 
-		Files.createDirectories(crtPath.getParent(), FileAttributes.userDirectoryDefault(storeHome()));
-		try (IOResource<OutputStream> out = IOResource.newOutputStream(alias, crtPath, StandardOpenOption.CREATE,
-				StandardOpenOption.TRUNCATE_EXISTING)) {
-			PEMCertReaderWriter.writeCRTBinary(out, crt);
-		}
-		return new PersistentCRTEntry(id, crt, Files.getLastModifiedTime(crtPath));
+		registerAlias(alias, true);
+
+		FileTime crtFileTime = writeEntryFile(crtPath,
+				out -> PEMCertReaderWriter.writeCRTBinary(new IOResource<>(out, alias), crt));
+
+		return new PersistentCRTEntry(id, crtPath, crt, crtFileTime);
 	}
 
 	@Override
@@ -141,12 +468,10 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 		String alias = Objects.requireNonNull(id.getAlias());
 		Path keyPath = entryPath(DIR_KEY, alias, EXTENSION_KEY);
 
-		Files.createDirectories(keyPath.getParent(), FileAttributes.userDirectoryDefault(storeHome()));
-		try (IOResource<OutputStream> out = IOResource.newOutputStream(alias, keyPath, StandardOpenOption.CREATE,
-				StandardOpenOption.TRUNCATE_EXISTING)) {
-			PEMCertReaderWriter.writeKeyBinary(out, key, newPassword);
-		}
-		return new PersistentKeyEntry(id);
+		registerAlias(alias, true);
+		recordFileTime(keyPath, writeEntryFile(keyPath,
+				out -> PEMCertReaderWriter.writeKeyBinary(new IOResource<>(out, alias), key, newPassword)));
+		return new PersistentKeyEntry(id, keyPath);
 	}
 
 	@Override
@@ -155,12 +480,12 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 		String alias = Objects.requireNonNull(id.getAlias());
 		Path csrPath = entryPath(DIR_CSR, alias, EXTENSION_CSR);
 
-		Files.createDirectories(csrPath.getParent(), FileAttributes.userDirectoryDefault(storeHome()));
-		try (IOResource<OutputStream> out = IOResource.newOutputStream(alias, csrPath, StandardOpenOption.CREATE,
-				StandardOpenOption.TRUNCATE_EXISTING)) {
-			PEMCertReaderWriter.writeCSRBinary(out, csr);
-		}
-		return new PersistentCSREntry(id, csr, Files.getLastModifiedTime(csrPath));
+		registerAlias(alias, true);
+
+		FileTime csrFileTime = writeEntryFile(csrPath,
+				out -> PEMCertReaderWriter.writeCSRBinary(new IOResource<>(out, alias), csr));
+
+		return new PersistentCSREntry(id, csrPath, csr, csrFileTime);
 	}
 
 	@Override
@@ -168,12 +493,12 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 		String alias = Objects.requireNonNull(id.getAlias());
 		Path crlPath = entryPath(DIR_CRL, alias, EXTENSION_CRL);
 
-		Files.createDirectories(crlPath.getParent(), FileAttributes.userDirectoryDefault(storeHome()));
-		try (IOResource<OutputStream> out = IOResource.newOutputStream(alias, crlPath, StandardOpenOption.CREATE,
-				StandardOpenOption.TRUNCATE_EXISTING)) {
-			PEMCertReaderWriter.writeCRLBinary(out, crl);
-		}
-		return new PersistentCRLEntry(id, crl, Files.getLastModifiedTime(crlPath));
+		registerAlias(alias, true);
+
+		FileTime crlFileTime = writeEntryFile(crlPath,
+				out -> PEMCertReaderWriter.writeCRLBinary(new IOResource<>(out, alias), crl));
+
+		return new PersistentCRLEntry(id, crlPath, crl, crlFileTime);
 	}
 
 	@Override
@@ -181,26 +506,207 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 		String alias = id.getAlias();
 
 		if (alias != null) {
-			Files.deleteIfExists(entryPath(DIR_CRT, alias, EXTENSION_CRT));
-			Files.deleteIfExists(entryPath(DIR_KEY, alias, EXTENSION_KEY));
-			Files.deleteIfExists(entryPath(DIR_CSR, alias, EXTENSION_CSR));
-			Files.deleteIfExists(entryPath(DIR_CRL, alias, EXTENSION_CRL));
+			for (ScanDirectory scanDirectory : SCAN_DIRECTORIES) {
+				for (Path file : entryPaths(scanDirectory.dir(), alias, scanDirectory.ext())) {
+					Path tempFile = this.pendingFiles.remove(file);
+
+					if (tempFile != null) {
+						Files.deleteIfExists(tempFile);
+					}
+					Files.deleteIfExists(file);
+					recordFileTime(file, null);
+				}
+			}
+			registerAlias(alias, false);
 		}
 	}
 
+	@Override
+	public void commit() throws IOException {
+		if (!this.pendingFiles.isEmpty()) {
+			Map<Path, Path> commitFiles = new HashMap<>(this.pendingFiles);
+
+			try {
+				StoreFiles.commit(commitFiles);
+				LOG.info("Committed {0} file(s) to store ''{1}''", commitFiles.size(), this.storeHome);
+			} finally {
+				// Files which have not been moved remain pending and are retried during the next commit
+				for (Map.Entry<Path, Path> commitFile : commitFiles.entrySet()) {
+					if (!Files.exists(commitFile.getValue())) {
+						this.pendingFiles.remove(commitFile.getKey(), commitFile.getValue());
+					}
+				}
+			}
+		}
+	}
+
+	private FileTime writeEntryFile(Path file, StoreFiles.Writer writer) throws IOException {
+		Files.createDirectories(file.getParent(), FileAttributes.userDirectoryDefault(storeHome()));
+
+		Path writtenFile;
+
+		switch (this.durability) {
+		case GROUP_COMMIT:
+			writtenFile = StoreFiles.writeTemp(file, writer, false);
+			this.pendingFiles.put(file, writtenFile);
+			break;
+		case SYNC:
+			StoreFiles.writeAtomically(file, writer, true);
+			writtenFile = file;
+			break;
+		default:
+			StoreFiles.writeAtomically(file, writer, false);
+			writtenFile = file;
+		}
+		// The file time is retained while the temporary file is renamed
+		return Files.getLastModifiedTime(writtenFile);
+	}
+
+	private Path currentPath(Path path) {
+		return this.pendingFiles.getOrDefault(path, path);
+	}
+
+	private void registerAlias(String alias, boolean inUse) {
+		synchronized (this.aliases) {
+			if (inUse) {
+				this.aliases.add(alias);
+			} else {
+				this.aliases.remove(alias);
+			}
+		}
+	}
+
+	// The registry is kept current by scanStore, the create and delete operations and the watcher. Without a watcher
+	// files created externally are not reported; hence they are checked in the current layout in this case
 	private boolean isAliasInUse(String alias) {
-		return Files.exists(entryPath(DIR_CRT, alias, EXTENSION_CRT))
-				|| Files.exists(entryPath(DIR_KEY, alias, EXTENSION_KEY))
-				|| Files.exists(entryPath(DIR_CSR, alias, EXTENSION_CSR))
-				|| Files.exists(entryPath(DIR_CRL, alias, EXTENSION_CRL));
+		boolean inUse = this.aliases.contains(alias);
+
+		if (!inUse && !this.watching && isAliasFileInUse(alias)) {
+			this.aliases.add(alias);
+			inUse = true;
+		}
+		return inUse;
 	}
 
-	PathMatcher entryMatcher(String dir, String ext) {
-		return storeHome().getFileSystem().getPathMatcher("glob:**/" + dir + "/*" + ext);
+	private boolean isAliasFileInUse(String alias) {
+		UserCertStoreLayout currentLayout = this.layout;
+		boolean inUse = false;
+
+		for (ScanDirectory scanDirectory : SCAN_DIRECTORIES) {
+			if (Files.exists(entryPath(scanDirectory.dir(), alias, scanDirectory.ext(), currentLayout))) {
+				inUse = true;
+				break;
+			}
+		}
+		return inUse;
+	}
+
+	/**
+	 * Migrate this store's files to a different layout.
+	 * <p>
+	 * Files are moved one by one; hence the store remains consistent even if the migration is interrupted.
+	 *
+	 * @param newLayout The layout to migrate to.
+	 * @return The ids of the store entries whose files have been moved.
+	 * @throws IOException if an I/O error occurs during the migration.
+	 */
+	Set<UserCertStoreEntryId> migrateLayout(UserCertStoreLayout newLayout) throws IOException {
+		Set<UserCertStoreEntryId> migratedIds = new HashSet<>();
+
+		this.layout = newLayout;
+		for (ScanDirectory scanDirectory : SCAN_DIRECTORIES) {
+			for (ScanFile scanFile : scanDirectory(scanDirectory)) {
+				Path file = scanFile.file();
+				UserCertStoreEntryId id = pathId(file);
+				Path migratedFile = entryPath(scanDirectory.dir(), Objects.requireNonNull(id.getAlias()),
+						scanDirectory.ext(), newLayout);
+
+				if (!file.equals(migratedFile)) {
+					if (Files.exists(migratedFile)) {
+						LOG.warning("Not migrating file ''{0}'' as target file ''{1}'' already exists", file,
+								migratedFile);
+					} else {
+						Files.createDirectories(migratedFile.getParent(),
+								FileAttributes.userDirectoryDefault(storeHome()));
+						Files.move(file, migratedFile, StandardCopyOption.ATOMIC_MOVE);
+						deleteEmptyShardDirectories(file.getParent());
+						migratedIds.add(id);
+					}
+				}
+			}
+		}
+		LOG.info("Migrated {0} store entries to layout {1}", migratedIds.size(), newLayout);
+		return migratedIds;
+	}
+
+	private void deleteEmptyShardDirectories(@Nullable Path dir) throws IOException {
+		Path shardDir = dir;
+
+		while (shardDir != null && !this.storeHome.equals(shardDir.getParent())) {
+			try {
+				Files.deleteIfExists(shardDir);
+			} catch (DirectoryNotEmptyException e) {
+				Exceptions.ignore(e);
+				break;
+			}
+			shardDir = shardDir.getParent();
+		}
 	}
 
+	/**
+	 * Get the path of a certificate object file.
+	 * <p>
+	 * If the file is known to exist in any layout, the existing file's path is returned. Otherwise the path according
+	 * to the store's current layout is returned. Known files are the ones recorded during scanning, writing and change
+	 * detection; hence no file system access is needed.
+	 *
+	 * @param dir The directory of the certificate object type.
+	 * @param alias The entry alias.
+	 * @param ext The extension of the certificate object type.
+	 * @return The certificate object file path.
+	 */
 	Path entryPath(String dir, String alias, String ext) {
-		return storeHome().resolve(dir).resolve(alias + ext);
+		List<Path> entryPaths = entryPaths(dir, alias, ext);
+		Path entryPath = entryPaths.get(0);
+
+		for (Path path : entryPaths) {
+			if (this.knownFileTimes.containsKey(path)) {
+				entryPath = path;
+				break;
+			}
+		}
+		return entryPath;
+	}
+
+	// The candidate paths of a file in all layouts (current layout first)
+	private List<Path> entryPaths(String dir, String alias, String ext) {
+		UserCertStoreLayout currentLayout = this.layout;
+		List<Path> entryPaths = new ArrayList<>(UserCertStoreLayout.values().length);
+
+		entryPaths.add(entryPath(dir, alias, ext, currentLayout));
+		for (UserCertStoreLayout otherLayout : UserCertStoreLayout.values()) {
+			if (otherLayout != currentLayout) {
+				entryPaths.add(entryPath(dir, alias, ext, otherLayout));
+			}
+		}
+		return entryPaths;
+	}
+
+	private Path entryPath(String dir, String alias, String ext, UserCertStoreLayout entryLayout) {
+		Path entryDir = storeHome().resolve(dir);
+
+		if (entryLayout == UserCertStoreLayout.SHARDED) {
+			CRC32 aliasHash = new CRC32();
+
+			aliasHash.update(alias.getBytes(StandardCharsets.UTF_8));
+
+			String shards = String.format("%08x", aliasHash.getValue());
+
+			for (int shardLevel = 0; shardLevel < SHARD_LEVELS; shardLevel++) {
+				entryDir = entryDir.resolve(shards.substring(shardLevel * 2, shardLevel * 2 + 2));
+			}
+		}
+		return entryDir.resolve(alias + ext);
 	}
 
 	UserCertStoreEntryId pathId(Path path) {
@@ -212,94 +718,136 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 
 	@Nullable
 	CertObjectHolder<X509Certificate> toCRT(UserCertStoreEntryId id, @Nullable Path crtPath) {
-		return (crtPath != null ? new PersistentCRTEntry(id) : null);
+		return (crtPath != null ? new PersistentCRTEntry(id, crtPath) : null);
 	}
 
 	@Nullable
 	SecureCertObjectHolder<KeyPair> toKey(UserCertStoreEntryId id, @Nullable Path keyPath) {
-		return (keyPath != null ? new PersistentKeyEntry(id) : null);
+		return (keyPath != null ? new PersistentKeyEntry(id, keyPath) : null);
 	}
 
 	@Nullable
 	CertObjectHolder<PKCS10CertificateRequest> toCSR(UserCertStoreEntryId id, @Nullable Path csrPath) {
-		return (csrPath != null ? new PersistentCSREntry(id) : null);
+		return (csrPath != null ? new PersistentCSREntry(id, csrPath) : null);
 	}
 
 	@Nullable
 	CertObjectHolder<X509CRL> toCRL(UserCertStoreEntryId id, @Nullable Path crlPath) {
-		return (crlPath != null ? new PersistentCRLEntry(id) : null);
+		return (crlPath != null ? new PersistentCRLEntry(id, crlPath) : null);
 	}
 
-	private class PersistentEntryPathsScanner extends SimpleFileVisitor<Path> {
+	/**
+	 * Listener interface used to report externally changed store entries.
+	 */
+	@FunctionalInterface
+	interface ChangeListener {
 
-		private final PathMatcher crtMatcher = entryMatcher(DIR_CRT, EXTENSION_CRT);
-		private final PathMatcher keyMatcher = entryMatcher(DIR_KEY, EXTENSION_KEY);
-		private final PathMatcher csrMatcher = entryMatcher(DIR_CSR, EXTENSION_CSR);
-		private final PathMatcher crlMatcher = entryMatcher(DIR_CRL, EXTENSION_CRL);
+		/**
+		 * Called whenever any of the files of one or more store entries has been changed externally.
+		 *
+		 * @param ids The ids of the changed store entries.
+		 * @throws IOException if an I/O error occurs while processing the change.
+		 */
+		void entriesChanged(Set<UserCertStoreEntryId> ids) throws IOException;
 
-		private final Log log;
+	}
+
+	private static final class ScanDirectory {
 
-		private final Map<UserCertStoreEntryId, PersistentEntry> result = new HashMap<>();
+		private final String dir;
+		private final String ext;
+		private final CertObjectType type;
 
-		PersistentEntryPathsScanner(Log log) {
-			this.log = log;
+		ScanDirectory(String dir, String ext, CertObjectType type) {
+			this.dir = dir;
+			this.ext = ext;
+			this.type = type;
 		}
 
-		public Map<UserCertStoreEntryId, PersistentEntry> getResult() {
-			return this.result;
+		String dir() {
+			return this.dir;
 		}
 
-		@Override
-		public FileVisitResult visitFile(@Nullable Path file, @Nullable BasicFileAttributes attrs) throws IOException {
-			assert file != null;
-
-			if (this.crtMatcher.matches(file)) {
-				this.log.info("Found CRT file: ''{0}''", file);
-				updateResult(pathId(file), file, null, null, null);
-			} else if (this.keyMatcher.matches(file)) {
-				this.log.info("Found Key file: ''{0}''", file);
-				updateResult(pathId(file), null, file, null, null);
-			} else if (this.csrMatcher.matches(file)) {
-				this.log.info("Found CSR file: ''{0}''", file);
-				updateResult(pathId(file), null, null, file, null);
-			} else if (this.crlMatcher.matches(file)) {
-				this.log.info("Found CRL file: ''{0}''", file);
-				updateResult(pathId(file), null, null, null, file);
-			} else {
-				this.log.debug("Ignoring file: ''{0}''", file);
-			}
-			return FileVisitResult.CONTINUE;
+		String ext() {
+			return this.ext;
+		}
+
+		CertObjectType type() {
+			return this.type;
+		}
+
+	}
+
+	private final class ScanFile {
+
+		private final Path file;
+		private final CertObjectType type;
+		private final BasicFileAttributes fileAttributes;
+
+		ScanFile(Path file, CertObjectType type, BasicFileAttributes fileAttributes) {
+			this.file = file;
+			this.type = type;
+			this.fileAttributes = fileAttributes;
 		}
 
-		private void updateResult(UserCertStoreEntryId id, @Nullable Path crtPath, @Nullable Path keyPath,
-				@Nullable Path csrPath, @Nullable Path crlPath) {
-			PersistentEntry resultEntry = new PersistentEntry(this.result.get(id), toCRT(id, crtPath),
-					toKey(id, keyPath), toCSR(id, csrPath), toCRL(id, crlPath));
+		Path file() {
+			return this.file;
+		}
 
-			this.result.put(id, resultEntry);
+		void recordFileTime() {
+			PersistentUserCertStoreHandler.this.recordFileTime(this.file, this.fileAttributes.lastModifiedTime());
+		}
+
+		PersistentEntry toEntry(UserCertStoreEntryId id, @Nullable PersistentEntry base) {
+			Path crtPath = (this.type == CertObjectType.CRT ? this.file : null);
+			Path keyPath = (this.type == CertObjectType.KEY ? this.file : null);
+			Path csrPath = (this.type == CertObjectType.CSR ? this.file : null);
+			Path crlPath = (this.type == CertObjectType.CRL ? this.file : null);
+
+			return new PersistentEntry(base, toCRT(id, crtPath), toKey(id, keyPath), toCSR(id, csrPath),
+					toCRL(id, crlPath), this.type, this.fileAttributes);
 		}
 
 	}
 
+	// Keeps the object's encoded data once the file has been read; the decoded object is kept in the shared
+	// CertObjectCache only. Hence the file only needs to be read again if it has been changed.
 	private abstract class PersistentCertObjectHolder<T> implements CertObjectHolder<T> {
 
 		private final UserCertStoreEntryId id;
 
 		private final Path path;
 
-		private SoftReference<T> cached;
+		private final CertObjectType type;
+
+		private final Class<T> objectType;
+
+		@Nullable
+		private ByteBuffer encoded;
 		private FileTime cachedFileTime;
+		@Nullable
+		private Object index = null;
 
-		protected PersistentCertObjectHolder(UserCertStoreEntryId id, Path path) {
-			this(id, path, null, null);
+		protected PersistentCertObjectHolder(UserCertStoreEntryId id, Path path, CertObjectType type,
+				Class<T> objectType) {
+			this.id = id;
+			this.path = path;
+			this.type = type;
+			this.objectType = objectType;
+			this.encoded = null;
+			this.cachedFileTime = FileTime.fromMillis(0);
 		}
 
-		protected PersistentCertObjectHolder(UserCertStoreEntryId id, Path path, @Nullable T object,
-				@Nullable FileTime fileTime) {
+		protected PersistentCertObjectHolder(UserCertStoreEntryId id, Path path, CertObjectType type,
+				Class<T> objectType, T object, FileTime fileTime) throws IOException {
 			this.id = id;
 			this.path = path;
-			this.cached = new SoftReference<>(object);
-			this.cachedFileTime = (fileTime != null ? fileTime : FileTime.fromMillis(0));
+			this.type = type;
+			this.objectType = objectType;
+			this.encoded = CertObjectCache.compact(CertObjectStore.encode(type, object));
+			this.cachedFileTime = fileTime;
+			recordFileTime(path, fileTime);
+			CertObjectCache.put(this, object);
 		}
 
 		@Override
@@ -309,22 +857,89 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 
 		@Override
 		public synchronized T get() throws IOException {
-			T object = this.cached.get();
-			FileTime pathFileTime = Files.getLastModifiedTime(this.path);
+			Object cachedObject = CertObjectCache.get(this);
+			T object = (cachedObject != null ? this.objectType.cast(cachedObject) : null);
+
+			if (object == null || isChangeCandidate()) {
+				T readObject = refresh();
+
+				if (readObject != null) {
+					object = readObject;
+				} else if (object == null) {
+					String alias = Objects.requireNonNull(this.id.getAlias());
+
+					object = this.objectType.cast(CertObjectCache
+							.decode(alias, this.type, CertObjectCache.expand(Objects.requireNonNull(this.encoded)))
+							.object());
+					CertObjectCache.put(this, object);
+				}
+			}
+			return object;
+		}
+
+		@Override
+		public synchronized <I> I index(Function<? super T, I> indexer) throws IOException {
+			Object checkedIndex = this.index;
+			T object = null;
+
+			// The index is dropped by refresh() if the file has been changed; the object is only decoded if the
+			// index has to be rebuilt
+			if (checkedIndex == null || isChangeCandidate()) {
+				object = refresh();
+				checkedIndex = this.index;
+			}
+			if (checkedIndex == null) {
+				checkedIndex = indexer.apply(object != null ? object : get());
+				this.index = checkedIndex;
+			}
+
+			@SuppressWarnings("unchecked")
+			I typedIndex = (I) checkedIndex;
+
+			return typedIndex;
+		}
+
+		// While watching the file time only needs to be checked if the file has been reported as changed
+		private boolean isChangeCandidate() {
+			return !PersistentUserCertStoreHandler.this.watching
+					|| PersistentUserCertStoreHandler.this.changedPaths.remove(this.path);
+		}
+
+		// Re-reads the file if it has been changed since the last read; returns the read object or null if the
+		// encoded data is still current
+		@Nullable
+		private T refresh() throws IOException {
+			Path currentPath = currentPath(this.path);
+			FileTime pathFileTime = Files.getLastModifiedTime(currentPath);
+			ByteBuffer staleEncoded = this.encoded;
+			T object = null;
+
+			if (staleEncoded == null || !this.cachedFileTime.equals(pathFileTime)) {
+				long readStart = StoreMetrics.start();
 
-			if (object == null || !this.cachedFileTime.equals(pathFileTime)) {
 				try (IOResource<InputStream> in = IOResource.newInputStream(Objects.requireNonNull(this.id.getAlias()),
-						this.path, StandardOpenOption.READ)) {
+						currentPath, StandardOpenOption.READ)) {
 					object = read(in);
 				}
-				this.cached = new SoftReference<>(object);
+				StoreMetrics.record(StoreMetrics.Operation.FILE_READ, readStart);
+				this.encoded = CertObjectCache.compact(CertObjectStore.encode(this.type, object));
 				this.cachedFileTime = pathFileTime;
+				this.index = null;
+				recordFileTime(this.path, pathFileTime);
+				if (staleEncoded != null) {
+					invalidate(CertObjectCache.expand(staleEncoded));
+				}
+				CertObjectCache.put(this, object);
 			}
 			return object;
 		}
 
 		protected abstract T read(IOResource<InputStream> in) throws IOException;
 
+		protected void invalidate(byte[] staleEncoded) {
+			// Nothing to do by default
+		}
+
 	}
 
 	private abstract class PersistentSecureCertObjectHolder<T> implements SecureCertObjectHolder<T> {
@@ -355,12 +970,14 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 
 		@Override
 		public T get(PasswordCallback password) throws IOException {
+			long start = StoreMetrics.start();
 			T object;
 
 			try (IOResource<InputStream> in = IOResource.newInputStream(Objects.requireNonNull(this.id.getAlias()),
-					this.path, StandardOpenOption.READ)) {
+					currentPath(this.path), StandardOpenOption.READ)) {
 				object = read(in, password);
 			}
+			StoreMetrics.record(StoreMetrics.Operation.FILE_READ, start);
 			return object;
 		}
 
@@ -370,12 +987,13 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 
 	private class PersistentCRTEntry extends PersistentCertObjectHolder<X509Certificate> {
 
-		PersistentCRTEntry(UserCertStoreEntryId id) {
-			super(id, entryPath(DIR_CRT, Objects.requireNonNull(id.getAlias()), EXTENSION_CRT));
+		PersistentCRTEntry(UserCertStoreEntryId id, Path crtPath) {
+			super(id, crtPath, CertObjectType.CRT, X509Certificate.class);
 		}
 
-		PersistentCRTEntry(UserCertStoreEntryId id, X509Certificate crt, FileTime crtFileTime) {
-			super(id, entryPath(DIR_CRT, Objects.requireNonNull(id.getAlias()), EXTENSION_CRT), crt, crtFileTime);
+		PersistentCRTEntry(UserCertStoreEntryId id, Path crtPath, X509Certificate crt, FileTime crtFileTime)
+				throws IOException {
+			super(id, crtPath, CertObjectType.CRT, X509Certificate.class, crt, crtFileTime);
 		}
 
 		@Override
@@ -383,12 +1001,17 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 			return PEMCertReaderWriter.readCRTBinary(in);
 		}
 
+		@Override
+		protected void invalidate(byte[] staleEncoded) {
+			SignatureVerificationCache.getInstance().invalidate(Fingerprint.of(staleEncoded));
+		}
+
 	}
 
 	private class PersistentKeyEntry extends PersistentSecureCertObjectHolder<KeyPair> {
 
-		PersistentKeyEntry(UserCertStoreEntryId id) {
-			super(id, entryPath(DIR_KEY, Objects.requireNonNull(id.getAlias()), EXTENSION_KEY));
+		PersistentKeyEntry(UserCertStoreEntryId id, Path keyPath) {
+			super(id, keyPath);
 		}
 
 		@Override
@@ -400,12 +1023,13 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 
 	private class PersistentCSREntry extends PersistentCertObjectHolder<PKCS10CertificateRequest> {
 
-		PersistentCSREntry(UserCertStoreEntryId id) {
-			super(id, entryPath(DIR_CSR, Objects.requireNonNull(id.getAlias()), EXTENSION_CSR));
+		PersistentCSREntry(UserCertStoreEntryId id, Path csrPath) {
+			super(id, csrPath, CertObjectType.CSR, PKCS10CertificateRequest.class);
 		}
 
-		PersistentCSREntry(UserCertStoreEntryId id, PKCS10CertificateRequest csr, FileTime csrFileTime) {
-			super(id, entryPath(DIR_CSR, Objects.requireNonNull(id.getAlias()), EXTENSION_CSR), csr, csrFileTime);
+		PersistentCSREntry(UserCertStoreEntryId id, Path csrPath, PKCS10CertificateRequest csr, FileTime csrFileTime)
+				throws IOException {
+			super(id, csrPath, CertObjectType.CSR, PKCS10CertificateRequest.class, csr, csrFileTime);
 		}
 
 		@Override
@@ -417,12 +1041,13 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 
 	private class PersistentCRLEntry extends PersistentCertObjectHolder<X509CRL> {
 
-		PersistentCRLEntry(UserCertStoreEntryId id) {
-			super(id, entryPath(DIR_CRL, Objects.requireNonNull(id.getAlias()), EXTENSION_CRL));
+		PersistentCRLEntry(UserCertStoreEntryId id, Path crlPath) {
+			super(id, crlPath, CertObjectType.CRL, X509CRL.class);
 		}
 
-		PersistentCRLEntry(UserCertStoreEntryId id, X509CRL crl, FileTime crlFileTime) {
-			super(id, entryPath(DIR_CRL, Objects.requireNonNull(id.getAlias()), EXTENSION_CRL), crl, crlFileTime);
+		PersistentCRLEntry(UserCertStoreEntryId id, Path crlPath, X509CRL crl, FileTime crlFileTime)
+				throws IOException {
+			super(id, crlPath, CertObjectType.CRL, X509CRL.class, crl, crlFileTime);
 		}
 
 		@Override
@@ -430,6 +1055,11 @@ class PersistentUserCertStoreHandler extends UserCertStoreHandler {
 			return PEMCertReaderWriter.readCRLBinary(in);
 		}
 
+		@Override
+		protected void invalidate(byte[] staleEncoded) {
+			SignatureVerificationCache.getInstance().invalidate(Fingerprint.of(staleEncoded));
+		}
+
 	}
 
 }
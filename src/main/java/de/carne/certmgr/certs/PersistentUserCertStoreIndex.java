@@ -0,0 +1,372 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.boot.logging.Log;
+import de.carne.certmgr.certs.x500.X500Names;
+import de.carne.certmgr.certs.x509.Fingerprint;
+
+/**
+ * On-disk index of a persistent store's entry metadata.
+ * <p>
+ * The index file is located in the store's home directory and contains one row per store entry. Each row records the
+ * entry's file stamp (file times and sizes of all the entry's files) as well as the entry's metadata required for
+ * opening and querying the store without decoding any of the entry's certificate objects. A row is only used if its
+ * file stamp matches the entry's current files. Otherwise the row is considered stale and the entry is decoded as
+ * usual.
+ */
+final class PersistentUserCertStoreIndex {
+
+	private static final Log LOG = new Log();
+
+	private static final String INDEX_FILENAME = ".index.properties";
+
+	// '/' cannot be part of an alias (alias is a file name)
+	private static final String VERSION_KEY = "/version";
+
+	private static final String VERSION = "2";
+
+	private static final String FIELD_SEPARATOR = ";";
+
+	private static final String LIST_SEPARATOR = ",";
+
+	/**
+	 * Issuer field value used to mark self-issued entries.
+	 */
+	static final String ISSUER_SELF = "";
+
+	/**
+	 * Issuer field value used to mark entries issued by an external issuer.
+	 */
+	static final String ISSUER_EXTERNAL = "*";
+
+	private final Path indexFile;
+
+	PersistentUserCertStoreIndex(Path storeHome) {
+		this.indexFile = storeHome.resolve(INDEX_FILENAME);
+	}
+
+	/**
+	 * Load the index rows.
+	 * <p>
+	 * A missing, outdated or unreadable index is treated like an empty index.
+	 *
+	 * @return The loaded index rows (mapped by the corresponding entry aliases).
+	 */
+	Map<String, Row> load() {
+		Map<String, Row> rows = new HashMap<>();
+
+		if (Files.exists(this.indexFile)) {
+			Properties properties = new Properties();
+
+			try (InputStream in = Files.newInputStream(this.indexFile)) {
+				properties.load(in);
+				if (VERSION.equals(properties.getProperty(VERSION_KEY))) {
+					for (String alias : properties.stringPropertyNames()) {
+						if (!VERSION_KEY.equals(alias)) {
+							rows.put(alias, Row.decode(alias, properties.getProperty(alias)));
+						}
+					}
+				} else {
+					LOG.info("Ignoring outdated store index ''{0}''", this.indexFile);
+				}
+			} catch (IOException | RuntimeException e) {
+				LOG.warning(e, "Ignoring unreadable store index ''{0}''", this.indexFile);
+				rows.clear();
+			}
+		}
+		return rows;
+	}
+
+	/**
+	 * Store the index rows.
+	 *
+	 * @param rows The index rows to store.
+	 * @throws IOException if an I/O error occurs while writing the index.
+	 */
+	void store(Collection<Row> rows) throws IOException {
+		Properties properties = new Properties();
+
+		properties.setProperty(VERSION_KEY, VERSION);
+		for (Row row : rows) {
+			properties.setProperty(row.alias(), row.encode());
+		}
+		StoreFiles.writeAtomically(this.indexFile, out -> properties.store(out, null));
+		LOG.info("Updated store index ''{0}'' ({1} entries)", this.indexFile, rows.size());
+	}
+
+	/**
+	 * A single index row.
+	 */
+	static final class Row {
+
+		private final String alias;
+		private final String fileStamp;
+		private final X500Principal dn;
+		@Nullable
+		private final Fingerprint publicKeyFingerprint;
+		private final List<ByteBuffer> keyIdentifiers;
+		@Nullable
+		private final X500Principal issuerDN;
+		private final byte @Nullable [] authorityKeyIdentifier;
+		@Nullable
+		private final BigInteger serial;
+		private final EntryAttributes attributes;
+		@Nullable
+		private final Fingerprint crtFingerprint;
+		private final String issuer;
+
+		Row(String alias, String fileStamp, X500Principal dn, @Nullable Fingerprint publicKeyFingerprint,
+				List<ByteBuffer> keyIdentifiers, @Nullable X500Principal issuerDN,
+				byte @Nullable [] authorityKeyIdentifier, @Nullable BigInteger serial, EntryAttributes attributes,
+				@Nullable Fingerprint crtFingerprint, String issuer) {
+			this.alias = alias;
+			this.fileStamp = fileStamp;
+			this.dn = dn;
+			this.publicKeyFingerprint = publicKeyFingerprint;
+			this.keyIdentifiers = keyIdentifiers;
+			this.issuerDN = issuerDN;
+			this.authorityKeyIdentifier = authorityKeyIdentifier;
+			this.serial = serial;
+			this.attributes = attributes;
+			this.crtFingerprint = crtFingerprint;
+			this.issuer = issuer;
+		}
+
+		String alias() {
+			return this.alias;
+		}
+
+		String fileStamp() {
+			return this.fileStamp;
+		}
+
+		X500Principal dn() {
+			return this.dn;
+		}
+
+		@Nullable
+		Fingerprint publicKeyFingerprint() {
+			return this.publicKeyFingerprint;
+		}
+
+		List<ByteBuffer> keyIdentifiers() {
+			return this.keyIdentifiers;
+		}
+
+		@Nullable
+		X500Principal issuerDN() {
+			return this.issuerDN;
+		}
+
+		byte @Nullable [] authorityKeyIdentifier() {
+			return this.authorityKeyIdentifier;
+		}
+
+		@Nullable
+		BigInteger serial() {
+			return this.serial;
+		}
+
+		EntryAttributes attributes() {
+			return this.attributes;
+		}
+
+		@Nullable
+		Fingerprint crtFingerprint() {
+			return this.crtFingerprint;
+		}
+
+		/**
+		 * Get the issuer reference of this row.
+		 *
+		 * @return The issuer's alias, {@link PersistentUserCertStoreIndex#ISSUER_SELF} or
+		 *         {@link PersistentUserCertStoreIndex#ISSUER_EXTERNAL}.
+		 */
+		String issuer() {
+			return this.issuer;
+		}
+
+		Row withIssuer(String newIssuer) {
+			return new Row(this.alias, this.fileStamp, this.dn, this.publicKeyFingerprint, this.keyIdentifiers,
+					this.issuerDN, this.authorityKeyIdentifier, this.serial, this.attributes,
+					this.crtFingerprint, newIssuer);
+		}
+
+		String encode() {
+			StringBuilder buffer = new StringBuilder();
+			Fingerprint checkedPublicKeyFingerprint = this.publicKeyFingerprint;
+			X500Principal checkedIssuerDN = this.issuerDN;
+			byte[] checkedAuthorityKeyIdentifier = this.authorityKeyIdentifier;
+			BigInteger checkedSerial = this.serial;
+			Date checkedNotBefore = this.attributes.notBefore();
+			Date checkedNotAfter = this.attributes.notAfter();
+			String checkedKeyAlgorithm = this.attributes.keyAlgorithm();
+			List<String> dnsNames = this.attributes.dnsNames();
+			Fingerprint checkedCRTFingerprint = this.crtFingerprint;
+
+			buffer.append(this.fileStamp).append(FIELD_SEPARATOR);
+			buffer.append(encodeBytes(this.dn.getEncoded())).append(FIELD_SEPARATOR);
+			if (checkedPublicKeyFingerprint != null) {
+				buffer.append(encodeBytes(checkedPublicKeyFingerprint.getDigest()));
+			}
+			buffer.append(FIELD_SEPARATOR);
+			for (int keyIdentifierIndex = 0; keyIdentifierIndex < this.keyIdentifiers.size(); keyIdentifierIndex++) {
+				if (keyIdentifierIndex > 0) {
+					buffer.append(LIST_SEPARATOR);
+				}
+				buffer.append(encodeBytes(toBytes(this.keyIdentifiers.get(keyIdentifierIndex))));
+			}
+			buffer.append(FIELD_SEPARATOR);
+			if (checkedIssuerDN != null) {
+				buffer.append(encodeBytes(checkedIssuerDN.getEncoded()));
+			}
+			buffer.append(FIELD_SEPARATOR);
+			if (checkedAuthorityKeyIdentifier != null) {
+				buffer.append(encodeBytes(checkedAuthorityKeyIdentifier));
+			}
+			buffer.append(FIELD_SEPARATOR);
+			if (checkedSerial != null) {
+				buffer.append(checkedSerial.toString(16));
+			}
+			buffer.append(FIELD_SEPARATOR);
+			if (checkedNotBefore != null) {
+				buffer.append(checkedNotBefore.getTime());
+			}
+			buffer.append(FIELD_SEPARATOR);
+			if (checkedNotAfter != null) {
+				buffer.append(checkedNotAfter.getTime());
+			}
+			buffer.append(FIELD_SEPARATOR);
+			if (checkedCRTFingerprint != null) {
+				buffer.append(encodeBytes(checkedCRTFingerprint.getDigest()));
+			}
+			buffer.append(FIELD_SEPARATOR);
+			if (checkedKeyAlgorithm != null) {
+				buffer.append(checkedKeyAlgorithm);
+			}
+			buffer.append(FIELD_SEPARATOR).append(this.attributes.keySize()).append(FIELD_SEPARATOR);
+			for (int dnsNameIndex = 0; dnsNameIndex < dnsNames.size(); dnsNameIndex++) {
+				if (dnsNameIndex > 0) {
+					buffer.append(LIST_SEPARATOR);
+				}
+				buffer.append(encodeBytes(dnsNames.get(dnsNameIndex).getBytes(StandardCharsets.UTF_8)));
+			}
+			// The issuer alias may contain any character and therefore goes last
+			buffer.append(FIELD_SEPARATOR).append(this.issuer);
+			return buffer.toString();
+		}
+
+		static Row decode(String alias, String encoded) throws IOException {
+			String[] fields = encoded.split(FIELD_SEPARATOR, 14);
+
+			if (fields.length != 14) {
+				throw new IOException("Invalid index row: " + alias);
+			}
+
+			List<ByteBuffer> keyIdentifiers = new ArrayList<>();
+
+			if (!fields[3].isEmpty()) {
+				for (String keyIdentifier : fields[3].split(LIST_SEPARATOR)) {
+					keyIdentifiers.add(ByteBuffer.wrap(decodeBytes(keyIdentifier)));
+				}
+			}
+
+			List<String> dnsNames = new ArrayList<>();
+
+			if (!fields[12].isEmpty()) {
+				for (String dnsName : fields[12].split(LIST_SEPARATOR)) {
+					dnsNames.add(new String(decodeBytes(dnsName), StandardCharsets.UTF_8));
+				}
+			}
+
+			EntryAttributes attributes = new EntryAttributes(
+					(!fields[7].isEmpty() ? new Date(Long.parseLong(fields[7])) : null),
+					(!fields[8].isEmpty() ? new Date(Long.parseLong(fields[8])) : null),
+					(!fields[10].isEmpty() ? fields[10] : null), Integer.parseInt(fields[11]),
+					Collections.unmodifiableList(dnsNames));
+
+			// The index typically contains the same issuer DNs over and over again
+			return new Row(alias, fields[0], X500Names.intern(new X500Principal(decodeBytes(fields[1]))),
+					(!fields[2].isEmpty() ? Fingerprint.valueOf(decodeBytes(fields[2])) : null),
+					Collections.unmodifiableList(keyIdentifiers),
+					(!fields[4].isEmpty() ? X500Names.intern(new X500Principal(decodeBytes(fields[4]))) : null),
+					(!fields[5].isEmpty() ? decodeBytes(fields[5]) : null),
+					(!fields[6].isEmpty() ? new BigInteger(fields[6], 16) : null),
+					attributes, (!fields[9].isEmpty() ? Fingerprint.valueOf(decodeBytes(fields[9])) : null),
+					fields[13]);
+		}
+
+		private static String encodeBytes(byte[] bytes) {
+			return Base64.getEncoder().encodeToString(bytes);
+		}
+
+		private static byte[] decodeBytes(String encoded) {
+			return Base64.getDecoder().decode(encoded);
+		}
+
+		private static byte[] toBytes(ByteBuffer buffer) {
+			ByteBuffer duplicate = buffer.duplicate();
+			byte[] bytes = new byte[duplicate.remaining()];
+
+			duplicate.get(bytes);
+			return bytes;
+		}
+
+		@Override
+		public int hashCode() {
+			return this.alias.hashCode();
+		}
+
+		@Override
+		public boolean equals(@Nullable Object obj) {
+			boolean equal = false;
+
+			if (this == obj) {
+				equal = true;
+			} else if (obj instanceof Row) {
+				Row row = (Row) obj;
+
+				equal = this.alias.equals(row.alias) && encode().equals(row.encode());
+			}
+			return equal;
+		}
+
+	}
+
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.boot.logging.Log;
+
+/**
+ * Background watcher reporting file changes within a persistent store's directories.
+ * <p>
+ * Only the store's top-level directories are watched. As soon as a sub-directory is encountered (e.g. a shard
+ * directory of the {@link UserCertStoreLayout#SHARDED} layout) watching is given up in favor of checking the file times
+ * on access, as watching all shard directories may exceed the platform's watch limits.
+ * <p>
+ * The watcher is stopped either explicitly via {@link #close()} or as soon as the watched store handler has been
+ * garbage collected (the watcher only keeps a weak reference to it).
+ */
+final class PersistentUserCertStoreWatcher implements Runnable, Closeable {
+
+	private static final Log LOG = new Log();
+
+	private static final long POLL_TIMEOUT_SECONDS = 10;
+
+	// The JDK's fallback implementation detects changes by periodically scanning the watched directories, which is
+	// neither faster nor more timely than checking the file times on access
+	private static final String POLLING_WATCH_SERVICE = "PollingWatchService";
+
+	private final WeakReference<PersistentUserCertStoreHandler> handlerReference;
+
+	private final Path storeHome;
+
+	private final Collection<String> watchDirs;
+
+	private final WatchService watchService;
+
+	// Set as soon as a sub-directory has been encountered (only accessed by the watcher thread)
+	private boolean subDirDetected = false;
+
+	private PersistentUserCertStoreWatcher(PersistentUserCertStoreHandler handler, Path storeHome,
+			Collection<String> watchDirs, WatchService watchService) {
+		this.handlerReference = new WeakReference<>(handler);
+		this.storeHome = storeHome;
+		this.watchDirs = watchDirs;
+		this.watchService = watchService;
+	}
+
+	/**
+	 * Start watching a store's directories.
+	 *
+	 * @param handler The handler to report file changes to.
+	 * @param watchDirs The names of the store directories to watch.
+	 * @return The started watcher, or {@code null} if the underlying file system does not support efficient watching
+	 *         or the store directories contain sub-directories.
+	 */
+	@Nullable
+	static PersistentUserCertStoreWatcher start(PersistentUserCertStoreHandler handler, Collection<String> watchDirs) {
+		Path storeHome = handler.storeHome();
+		WatchService watchService = null;
+		PersistentUserCertStoreWatcher watcher = null;
+
+		try {
+			if (hasSubDirs(storeHome, watchDirs)) {
+				LOG.info("Not watching sharded store ''{0}''; falling back to file time checks", storeHome);
+			} else {
+				watchService = storeHome.getFileSystem().newWatchService();
+				if (!watchService.getClass().getName().endsWith(POLLING_WATCH_SERVICE)) {
+					PersistentUserCertStoreWatcher startWatcher = new PersistentUserCertStoreWatcher(handler,
+							storeHome, watchDirs, watchService);
+
+					storeHome.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+					for (String watchDir : watchDirs) {
+						startWatcher.registerDir(storeHome.resolve(watchDir));
+					}
+
+					Thread watcherThread = new Thread(startWatcher,
+							PersistentUserCertStoreWatcher.class.getSimpleName());
+
+					watcherThread.setDaemon(true);
+					watcherThread.start();
+					watcher = startWatcher;
+					LOG.info("Watching store ''{0}'' for changes", storeHome);
+				}
+			}
+		} catch (IOException | UnsupportedOperationException e) {
+			LOG.info(e, "Unable to watch store ''{0}''; falling back to file time checks", storeHome);
+		} finally {
+			if (watcher == null && watchService != null) {
+				closeWatchService(watchService);
+			}
+		}
+		return watcher;
+	}
+
+	/**
+	 * Stop watching.
+	 * <p>
+	 * The watcher thread terminates asynchronously; no further changes are reported after this call.
+	 */
+	@Override
+	public void close() {
+		closeWatchService(this.watchService);
+	}
+
+	private static boolean hasSubDirs(Path storeHome, Collection<String> watchDirs) throws IOException {
+		boolean hasSubDirs = false;
+
+		for (String watchDir : watchDirs) {
+			Path dir = storeHome.resolve(watchDir);
+
+			if (!hasSubDirs && Files.isDirectory(dir)) {
+				try (DirectoryStream<Path> subDirs = Files.newDirectoryStream(dir, Files::isDirectory)) {
+					hasSubDirs = subDirs.iterator().hasNext();
+				}
+			}
+		}
+		return hasSubDirs;
+	}
+
+	private boolean registerDir(Path dir) throws IOException {
+		boolean registered = false;
+
+		if (Files.isDirectory(dir)) {
+			dir.register(this.watchService, StandardWatchEventKinds.ENTRY_CREATE,
+					StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+			registered = true;
+		}
+		return registered;
+	}
+
+	private void collectFiles(Path dir, List<Path> changedFiles) throws IOException {
+		try (DirectoryStream<Path> files = Files.newDirectoryStream(dir)) {
+			for (Path file : files) {
+				if (Files.isDirectory(file)) {
+					this.subDirDetected = true;
+				} else {
+					changedFiles.add(file);
+				}
+			}
+		}
+	}
+
+	@Override
+	public void run() {
+		try {
+			while (!this.subDirDetected && this.handlerReference.get() != null) {
+				WatchKey watchKey = this.watchService.poll(POLL_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+				List<Path> changedFiles = new ArrayList<>();
+				boolean overflow = false;
+
+				// Collect all pending events to report them in one go
+				while (watchKey != null) {
+					overflow = processEvents(watchKey, changedFiles) || overflow;
+					watchKey = this.watchService.poll();
+				}
+
+				PersistentUserCertStoreHandler handler = this.handlerReference.get();
+
+				if (handler != null && (overflow || !changedFiles.isEmpty())) {
+					handler.filesChanged(overflow ? null : changedFiles);
+				}
+			}
+			if (this.subDirDetected) {
+				LOG.info("Store ''{0}'' has been sharded; falling back to file time checks", this.storeHome);
+
+				PersistentUserCertStoreHandler handler = this.handlerReference.get();
+
+				if (handler != null) {
+					// Report all files as changed, as changes within the new sub-directories have not been watched
+					handler.filesChanged(null);
+					handler.watchFailed();
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// Nothing to do here
+		} catch (RuntimeException e) {
+			LOG.error(e, "Store watcher failed; falling back to file time checks");
+
+			PersistentUserCertStoreHandler handler = this.handlerReference.get();
+
+			if (handler != null) {
+				handler.watchFailed();
+			}
+		} finally {
+			closeWatchService(this.watchService);
+			LOG.info("Stopped watching store ''{0}''", this.storeHome);
+		}
+	}
+
+	private boolean processEvents(WatchKey watchKey, List<Path> changedFiles) {
+		Path dir = (Path) watchKey.watchable();
+		boolean overflow = false;
+
+		for (WatchEvent<?> event : watchKey.pollEvents()) {
+			Object context = event.context();
+
+			if (StandardWatchEventKinds.OVERFLOW.equals(event.kind()) || !(context instanceof Path)) {
+				overflow = true;
+			} else {
+				Path file = dir.resolve((Path) context);
+
+				if (dir.equals(this.storeHome)) {
+					overflow = processStoreHomeEvent(file, changedFiles) || overflow;
+				} else if (StandardWatchEventKinds.ENTRY_CREATE.equals(event.kind()) && Files.isDirectory(file)) {
+					this.subDirDetected = true;
+				} else {
+					changedFiles.add(file);
+				}
+			}
+		}
+		if (!watchKey.reset() && !dir.equals(this.storeHome)) {
+			LOG.debug("Stopped watching directory ''{0}''", dir);
+		}
+		return overflow;
+	}
+
+	private boolean processStoreHomeEvent(Path file, List<Path> changedFiles) {
+		boolean overflow = false;
+
+		if (this.watchDirs.contains(file.getFileName().toString())) {
+			overflow = processNewDir(file, changedFiles);
+		}
+		return overflow;
+	}
+
+	private boolean processNewDir(Path dir, List<Path> changedFiles) {
+		boolean overflow = false;
+
+		try {
+			// Any file created before the directory has been registered has to be reported explicitly
+			if (registerDir(dir)) {
+				collectFiles(dir, changedFiles);
+			}
+		} catch (IOException e) {
+			LOG.warning(e, "Unable to watch directory ''{0}''", dir);
+			overflow = true;
+		}
+		return overflow;
+	}
+
+	private static void closeWatchService(@Nullable WatchService watchService) {
+		if (watchService != null) {
+			try {
+				watchService.close();
+			} catch (IOException e) {
+				LOG.warning(e, "Failed to close watch service");
+			}
+		}
+	}
+
+}
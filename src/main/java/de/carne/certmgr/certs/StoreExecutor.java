@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import de.carne.util.SystemProperties;
+
+/**
+ * Worker pool used for parallelizing store I/O and decoding (e.g. while opening a store or reading PEM data).
+ * <p>
+ * The number of worker threads is controlled via the system property
+ * {@code de.carne.certmgr.certs.workerThreads} and defaults to the number of available processors. Idle worker
+ * threads are released automatically.
+ */
+public final class StoreExecutor {
+
+	/**
+	 * The number of worker threads used for parallel store access.
+	 */
+	static final int WORKER_THREADS = Math.max(1, SystemProperties.intValue(
+			StoreExecutor.class.getPackage().getName() + ".workerThreads", Runtime.getRuntime().availableProcessors()));
+
+	private static final ForkJoinPool WORKER_POOL = new ForkJoinPool(WORKER_THREADS);
+
+	private StoreExecutor() {
+		// Make sure this class is not instantiated from outside
+	}
+
+	/**
+	 * Apply a task to a list of items in parallel.
+	 * <p>
+	 * The results are returned in the same order as the submitted items, regardless of the order in which the tasks
+	 * have been executed.
+	 *
+	 * @param <T> The item type.
+	 * @param <R> The result type.
+	 * @param items The items to process.
+	 * @param task The task to apply to each item.
+	 * @return The task results (in item order).
+	 * @throws IOException if one of the tasks fails.
+	 */
+	static <T, R> List<R> map(List<T> items, Task<T, R> task) throws IOException {
+		List<R> results = new ArrayList<>(items.size());
+
+		if (WORKER_THREADS > 1 && items.size() > 1) {
+			List<Callable<R>> callables = new ArrayList<>(items.size());
+
+			for (T item : items) {
+				callables.add(() -> task.apply(item));
+			}
+			for (Future<R> future : WORKER_POOL.invokeAll(callables)) {
+				results.add(get(future));
+			}
+		} else {
+			for (T item : items) {
+				results.add(task.apply(item));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * Submit a single task for asynchronous execution.
+	 * <p>
+	 * The task's result is retrieved via {@link #get(Future)}.
+	 *
+	 * @param <R> The result type.
+	 * @param task The task to execute.
+	 * @return The {@link Future} representing the pending task result.
+	 */
+	public static <R> Future<R> submit(Callable<R> task) {
+		return WORKER_POOL.submit(task);
+	}
+
+	/**
+	 * Wait for a task to complete and retrieve its result.
+	 * <p>
+	 * Any {@link IOException} or {@link RuntimeException} thrown by the task is re-thrown as is.
+	 *
+	 * @param <R> The result type.
+	 * @param future The {@link Future} representing the pending task result.
+	 * @return The task result.
+	 * @throws IOException if the task fails or the calling thread is interrupted while waiting.
+	 */
+	public static <R> R get(Future<R> future) throws IOException {
+		R result;
+
+		try {
+			result = future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException(e.getLocalizedMessage());
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IOException(cause);
+		}
+		return result;
+	}
+
+	/**
+	 * Task applied to a single item.
+	 *
+	 * @param <T> The item type.
+	 * @param <R> The result type.
+	 */
+	@FunctionalInterface
+	interface Task<T, R> {
+
+		/**
+		 * Apply the task to an item.
+		 *
+		 * @param item The item to process.
+		 * @return The task result.
+		 * @throws IOException if an I/O error occurs.
+		 */
+		R apply(T item) throws IOException;
+
+	}
+
+}
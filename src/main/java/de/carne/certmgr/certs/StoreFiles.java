@@ -0,0 +1,212 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.boot.logging.Log;
+import de.carne.certmgr.certs.metrics.StoreMetrics;
+
+/**
+ * Utility class providing crash-safe file operations for store files.
+ */
+final class StoreFiles {
+
+	private static final Log LOG = new Log();
+
+	private static final String TEMP_FILE_SUFFIX = ".tmp";
+
+	private StoreFiles() {
+		// Make sure this class is not instantiated from outside
+	}
+
+	/**
+	 * Write a file atomically.
+	 * <p>
+	 * The data is written to a temporary file which is forced to disk and then renamed to the target file. Hence the
+	 * target file either contains the previous or the new data, but never a partial write.
+	 *
+	 * @param file The file to write.
+	 * @param writer The writer to invoke for writing the file data.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	static void writeAtomically(Path file, Writer writer) throws IOException {
+		writeAtomically(file, writer, true);
+	}
+
+	/**
+	 * Write a file atomically.
+	 * <p>
+	 * The data is written to a temporary file which is then renamed to the target file. If requested, the temporary
+	 * file is forced to disk before it is renamed and the file's directory is forced to disk afterwards to make the
+	 * rename durable.
+	 *
+	 * @param file The file to write.
+	 * @param writer The writer to invoke for writing the file data.
+	 * @param force Whether to force the file data and the rename to disk.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	static void writeAtomically(Path file, Writer writer, boolean force) throws IOException {
+		Path tempFile = writeTemp(file, writer, force);
+
+		move(tempFile, file);
+		if (force) {
+			forceDirectory(file.toAbsolutePath().getParent());
+		}
+	}
+
+	/**
+	 * Write a file's data to the file's temporary file.
+	 * <p>
+	 * The temporary file has to be committed via {@link #commit(Map)} to make it visible under the target file name.
+	 *
+	 * @param file The file to write.
+	 * @param writer The writer to invoke for writing the file data.
+	 * @param force Whether to force the file data to disk.
+	 * @return The written temporary file.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	static Path writeTemp(Path file, Writer writer, boolean force) throws IOException {
+		long start = StoreMetrics.start();
+		Path tempFile = file.resolveSibling(file.getFileName() + TEMP_FILE_SUFFIX);
+
+		try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+			OutputStream out = new UnclosableOutputStream(Channels.newOutputStream(channel));
+
+			writer.write(out);
+			out.flush();
+			if (force) {
+				channel.force(true);
+			}
+		}
+		StoreMetrics.record(StoreMetrics.Operation.FILE_WRITE, start);
+		return tempFile;
+	}
+
+	/**
+	 * Check whether a file is a temporary file created by {@link #writeTemp(Path, Writer, boolean)}.
+	 *
+	 * @param file The file to check.
+	 * @return {@code true} if the file is a temporary file.
+	 */
+	static boolean isTempFile(Path file) {
+		return file.getFileName().toString().endsWith(TEMP_FILE_SUFFIX);
+	}
+
+	/**
+	 * Commit multiple temporary files in one go.
+	 * <p>
+	 * All temporary files are forced to disk (in parallel) before any of them is renamed to its target file. Finally
+	 * the affected directories are forced to disk to make the renames durable.
+	 *
+	 * @param tempFiles The temporary files to commit (mapped by their target files).
+	 * @throws IOException if an I/O error occurs.
+	 */
+	static void commit(Map<Path, Path> tempFiles) throws IOException {
+		StoreExecutor.map(new ArrayList<>(tempFiles.values()), tempFile -> {
+			try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+				channel.force(true);
+			}
+			return tempFile;
+		});
+
+		Set<Path> dirs = new LinkedHashSet<>();
+
+		for (Map.Entry<Path, Path> tempFile : tempFiles.entrySet()) {
+			Path file = tempFile.getKey();
+
+			move(tempFile.getValue(), file);
+			dirs.add(file.toAbsolutePath().getParent());
+		}
+		for (Path dir : dirs) {
+			forceDirectory(dir);
+		}
+	}
+
+	private static void move(Path tempFile, Path file) throws IOException {
+		try {
+			Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (AtomicMoveNotSupportedException e) {
+			LOG.warning(e, "Atomic move not supported; falling back to plain move for file ''{0}''", file);
+			Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private static void forceDirectory(@Nullable Path dir) {
+		if (dir != null) {
+			// Not supported on all platforms (e.g. Windows); the renames are durable anyway in this case
+			try (FileChannel channel = FileChannel.open(dir, StandardOpenOption.READ)) {
+				channel.force(true);
+			} catch (IOException e) {
+				LOG.debug(e, "Unable to force directory ''{0}''", dir);
+			}
+		}
+	}
+
+	// Writers may close the stream they are writing to; as the stream's channel is still needed afterwards, we only
+	// flush in this case
+	private static class UnclosableOutputStream extends FilterOutputStream {
+
+		UnclosableOutputStream(OutputStream out) {
+			super(out);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			this.out.write(b, off, len);
+		}
+
+		@Override
+		public void close() throws IOException {
+			flush();
+		}
+
+	}
+
+	/**
+	 * Function used to write file data.
+	 */
+	@FunctionalInterface
+	interface Writer {
+
+		/**
+		 * Write the file data.
+		 *
+		 * @param out The stream to write to.
+		 * @throws IOException if an I/O error occurs.
+		 */
+		void write(OutputStream out) throws IOException;
+
+	}
+
+}
@@ -42,7 +42,7 @@ class TransientUserCertStoreHandler extends UserCertStoreHandler {
 	@Override
 	public CertObjectHolder<X509Certificate> createCRT(UserCertStoreEntryId id, X509Certificate crt)
 			throws IOException {
-		return new TransientCertObjectHolder<>(crt);
+		return new EncodedCertObjectHolder<>(id.toString(), CertObjectType.CRT, X509Certificate.class, crt);
 	}
 
 	@Override
@@ -54,12 +54,12 @@ class TransientUserCertStoreHandler extends UserCertStoreHandler {
 	@Override
 	public CertObjectHolder<PKCS10CertificateRequest> createCSR(UserCertStoreEntryId id, PKCS10CertificateRequest csr)
 			throws IOException {
-		return new TransientCertObjectHolder<>(csr);
+		return new EncodedCertObjectHolder<>(id.toString(), CertObjectType.CSR, PKCS10CertificateRequest.class, csr);
 	}
 
 	@Override
 	public CertObjectHolder<X509CRL> createCRL(UserCertStoreEntryId id, X509CRL crl) throws IOException {
-		return new TransientCertObjectHolder<>(crl);
+		return new EncodedCertObjectHolder<>(id.toString(), CertObjectType.CRL, X509CRL.class, crl);
 	}
 
 	@Override
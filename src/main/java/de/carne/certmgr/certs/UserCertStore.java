@@ -16,27 +16,45 @@
  */
 package de.carne.certmgr.certs;
 
+import java.io.Closeable;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
 import java.net.URL;
+import java.nio.ByteBuffer;
 import java.nio.file.FileAlreadyExistsException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.security.KeyPair;
 import java.security.PublicKey;
 import java.security.cert.CRLException;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.Certificate;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
 import java.util.Objects;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.prefs.BackingStoreException;
+import java.util.stream.Collectors;
 
 import javax.security.auth.x500.X500Principal;
 
@@ -44,22 +62,42 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import de.carne.boot.logging.Log;
 import de.carne.certmgr.certs.io.CertReaders;
+import de.carne.certmgr.certs.io.IOResource;
 import de.carne.certmgr.certs.io.JKSCertReaderWriter;
+import de.carne.certmgr.certs.io.PEMCertReaderWriter;
+import de.carne.certmgr.certs.metrics.StoreMetrics;
 import de.carne.certmgr.certs.net.SSLPeer;
 import de.carne.certmgr.certs.security.PlatformKeyStore;
 import de.carne.certmgr.certs.spi.CertGenerator;
+import de.carne.certmgr.certs.x509.Fingerprint;
 import de.carne.certmgr.certs.x509.GenerateCertRequest;
 import de.carne.certmgr.certs.x509.KeyHelper;
 import de.carne.certmgr.certs.x509.PKCS10CertificateRequest;
+import de.carne.certmgr.certs.x509.RevokedSerials;
 import de.carne.certmgr.certs.x509.UpdateCRLRequest;
 import de.carne.certmgr.certs.x509.X509CRLHelper;
 import de.carne.certmgr.certs.x509.X509CertificateHelper;
 import de.carne.nio.file.attribute.FileAttributes;
+import de.carne.util.SystemProperties;
 
 /**
  * This class provides the actual certificate store functionality.
  * <p>
  * The actual kind of certificate store provided by this class depends on how the instance was created.
+ * <p>
+ * Store access is guarded by a {@link ReentrantReadWriteLock}. Any number of read accesses (e.g.
+ * {@link #getEntries()}) may run in parallel, whereas modifying accesses (e.g.
+ * {@link #importEntry(UserCertStoreEntry, PasswordCallback, String)}) are serialized and exclude any concurrent read
+ * access. The collections returned by {@link #getEntries()} and {@link #findEntries(UserCertStoreQuery)} are detached
+ * copies, whereas {@link #getRootEntries()} and {@link #getIssuedEntries(UserCertStoreEntry)} return read-only views of
+ * the current snapshot. Neither requires further locking. Readers requiring a consistent view of the whole store (e.g.
+ * for traversing the issuer hierarchy) use the lock free {@link #snapshot()} instead.
+ * <p>
+ * Consumers maintaining their own view of the store (e.g. the UI) register a {@linkplain UserCertStoreChange.Listener
+ * change listener} to receive the individual changes applied by each modification.
+ * <p>
+ * Stores opened via {@link #openStore(Path)} may hold background resources (e.g. a directory watcher) which are
+ * released via {@link #close()}.
  *
  * @see #createStore(Path)
  * @see #openStore(Path)
@@ -69,18 +107,68 @@ import de.carne.nio.file.attribute.FileAttributes;
  * @see #createFromServer(SSLPeer.Protocol, String, int)
  * @see #createFromData(String, String, PasswordCallback)
  */
-public final class UserCertStore {
+public final class UserCertStore implements Closeable {
 
 	private static final Log LOG = new Log();
 
+	/**
+	 * The maximum number of certificate objects imported in one go during streaming imports.
+	 * <p>
+	 * The batch size is controlled via the system property {@code de.carne.certmgr.certs.importBatchSize} and
+	 * defaults to 1024.
+	 */
+	public static final int IMPORT_BATCH_SIZE = Math.max(1,
+			SystemProperties.intValue(UserCertStore.class.getPackage().getName() + ".importBatchSize", 1024));
+
 	private final UserCertStoreHandler storeHandler;
 
+	private final ReentrantReadWriteLock storeLock = new ReentrantReadWriteLock();
+
 	private final Map<UserCertStoreEntryId, Entry> storeEntries = new HashMap<>();
 
 	private final Map<Entry, Entry> issuerCache = new HashMap<>();
 
+	private final Map<Entry, Set<Entry>> issuedCache = new HashMap<>();
+
+	private final Set<Entry> rootEntries = new HashSet<>();
+
+	private final Map<X500Principal, Entry> externalIssuers = new HashMap<>();
+
+	private final Set<Entry> unresolvedIssuers = new HashSet<>();
+
+	private final Map<X500Principal, Set<Entry>> dnIndex = new HashMap<>();
+
+	private final Map<Fingerprint, Set<Entry>> publicKeyIndex = new HashMap<>();
+
+	private final Map<Fingerprint, Entry> crlSignerIndex = new HashMap<>();
+
+	private final Set<Entry> pendingCRLEntries = new HashSet<>();
+
+	private final Map<ByteBuffer, Set<Entry>> keyIdentifierIndex = new HashMap<>();
+
+	private final NavigableMap<Date, Set<Entry>> notAfterIndex = new TreeMap<>();
+
+	private final Map<String, Set<Entry>> dnsNameIndex = new HashMap<>();
+
+	private final Map<String, Set<Entry>> keyAlgorithmIndex = new HashMap<>();
+
+	private final List<UserCertStoreChange.Listener> changeListeners = new CopyOnWriteArrayList<>();
+
+	private final List<UserCertStoreChange> changes = new ArrayList<>();
+
+	private final ConcurrentLinkedQueue<List<UserCertStoreChange>> pendingChanges = new ConcurrentLinkedQueue<>();
+
+	private final AtomicBoolean dispatchingChanges = new AtomicBoolean();
+
+	private final UserCertStoreSerials serials;
+
+	private final Set<Entry> snapshotEntries = new HashSet<>();
+
+	private volatile UserCertStoreSnapshot snapshot = UserCertStoreSnapshot.EMPTY;
+
 	private UserCertStore(UserCertStoreHandler storeHandler) {
 		this.storeHandler = storeHandler;
+		this.serials = new UserCertStoreSerials(storeHandler.storeHome());
 	}
 
 	/**
@@ -95,29 +183,109 @@ public final class UserCertStore {
 	 * @see PersistentUserCertStoreHandler
 	 */
 	public static UserCertStore createStore(Path storeHome) throws IOException {
+		return createStore(storeHome, UserCertStoreBackend.DIRECTORY);
+	}
+
+	/**
+	 * Create a certificate store backed up by a local directory using a specific storage backend.
+	 * <p>
+	 * The created certificate store supports read and write access.
+	 *
+	 * @param storeHome The directory path to use for certificate storage.
+	 * @param backend The storage backend to use.
+	 * @return The created certificate store.
+	 * @throws FileAlreadyExistsException if the directory path already exists.
+	 * @throws IOException if an I/O error occurs while creating the store.
+	 * @see PersistentUserCertStoreHandler
+	 * @see LogUserCertStoreHandler
+	 */
+	public static UserCertStore createStore(Path storeHome, UserCertStoreBackend backend) throws IOException {
+		if (Files.exists(storeHome)) {
+			throw new FileAlreadyExistsException("Store home path already exists: " + storeHome);
+		}
+
+		Path createdStoreHome = Files.createDirectories(storeHome, FileAttributes.userDirectoryDefault(storeHome));
+
+		if (backend == UserCertStoreBackend.LOG) {
+			LogUserCertStoreHandler.createLog(createdStoreHome);
+		}
+		return openStore(createdStoreHome);
+	}
+
+	/**
+	 * Migrate a directory based certificate store to a new log based certificate store.
+	 * <p>
+	 * The source store is not modified. Key objects are migrated in their encrypted form; hence no password is
+	 * required for the migration.
+	 *
+	 * @param sourceStoreHome The directory path of the directory based store to migrate.
+	 * @param storeHome The directory path to use for the migrated store.
+	 * @return The migrated certificate store.
+	 * @throws FileAlreadyExistsException if the target directory path already exists.
+	 * @throws IOException if an I/O error occurs during the migration.
+	 */
+	public static UserCertStore migrateStore(Path sourceStoreHome, Path storeHome) throws IOException {
+		if (LogUserCertStoreHandler.isLogStore(sourceStoreHome)) {
+			throw new IOException("Store is already log based: " + sourceStoreHome);
+		}
 		if (Files.exists(storeHome)) {
 			throw new FileAlreadyExistsException("Store home path already exists: " + storeHome);
 		}
 
 		Path createdStoreHome = Files.createDirectories(storeHome, FileAttributes.userDirectoryDefault(storeHome));
 
+		// Store settings and serial counters are carried over as is
+		for (String storeFilename : Arrays.asList(UserCertStorePreferences.PREFERENCES_FILENAME,
+				UserCertStoreSerials.SERIALS_FILENAME)) {
+			Path storeFile = sourceStoreHome.resolve(storeFilename);
+
+			if (Files.exists(storeFile)) {
+				Files.copy(storeFile, createdStoreHome.resolve(storeFilename));
+			}
+		}
+		LogUserCertStoreHandler.createLog(createdStoreHome);
+
+		UserCertStorePreferences preferences = new UserCertStorePreferences(createdStoreHome);
+		PersistentUserCertStoreHandler sourceStoreHandler = new PersistentUserCertStoreHandler(sourceStoreHome,
+				preferences.getDurability(), preferences.getLayout());
+
+		new LogUserCertStoreHandler(createdStoreHome, preferences.getDurability())
+				.migrate(sourceStoreHandler.scanStore());
 		return openStore(createdStoreHome);
 	}
 
 	/**
 	 * Open a certificate store previously created via a {@link #createStore(Path)} call.
+	 * <p>
+	 * The store's backend is detected automatically.
 	 *
 	 * @param storeHome The directory path to use for certificate storage.
 	 * @return The opened certificate store.
 	 * @throws IOException if an I/O error occurs while opening the store.
 	 */
 	public static UserCertStore openStore(Path storeHome) throws IOException {
-		PersistentUserCertStoreHandler persistentStoreHandler = new PersistentUserCertStoreHandler(storeHome);
+		long start = StoreMetrics.start();
+		UserCertStorePreferences preferences = new UserCertStorePreferences(storeHome);
+		UserCertStore store;
 
-		Map<UserCertStoreEntryId, PersistentEntry> persistentEntries = persistentStoreHandler.scanStore();
-		UserCertStore store = new UserCertStore(persistentStoreHandler);
+		if (LogUserCertStoreHandler.isLogStore(storeHome)) {
+			LogUserCertStoreHandler logStoreHandler = new LogUserCertStoreHandler(storeHome,
+					preferences.getDurability());
 
-		store.loadPersistentEntries(persistentEntries);
+			store = new UserCertStore(logStoreHandler);
+			store.loadPersistentEntries(logStoreHandler.scanStore(), new PersistentUserCertStoreIndex(storeHome));
+		} else {
+			PersistentUserCertStoreHandler persistentStoreHandler = new PersistentUserCertStoreHandler(storeHome,
+					preferences.getDurability(), preferences.getLayout());
+			Map<UserCertStoreEntryId, PersistentEntry> persistentEntries = persistentStoreHandler.scanStore();
+			UserCertStore persistentStore = new UserCertStore(persistentStoreHandler);
+
+			persistentStore.loadPersistentEntries(persistentEntries, new PersistentUserCertStoreIndex(storeHome));
+			persistentStoreHandler.startWatching(
+					ids -> persistentStore.refreshPersistentEntries(persistentStoreHandler, ids));
+			store = persistentStore;
+		}
+		StoreMetrics.record(StoreMetrics.Operation.STORE_OPEN, start);
 		return store;
 	}
 
@@ -313,16 +481,27 @@ public final class UserCertStore {
 	 * @param password The password callback to use for password querying.
 	 * @throws IOException if an I/O error occurs during the update.
 	 */
-	public synchronized void updateEntryCRL(UserCertStoreEntry issuerEntry, UpdateCRLRequest request,
-			PasswordCallback password) throws IOException {
-		Entry storeEntry = this.storeEntries.get(issuerEntry.id());
-		X509CRL currentCRL = (storeEntry.hasCRL() ? storeEntry.getCRL() : null);
-
-		X509CRL crl = X509CRLHelper.generateCRL(currentCRL, request.lastUpdate(), request.nextUpdate(),
-				request.getRevokeEntries(), storeEntry.dn(), storeEntry.getKey(password), request.signatureAlgorithm());
-		CertObjectHolder<X509CRL> crlHolder = this.storeHandler.createCRL(storeEntry.id(), crl);
+	public void updateEntryCRL(UserCertStoreEntry issuerEntry, UpdateCRLRequest request, PasswordCallback password)
+			throws IOException {
+		Lock writeLock = this.storeLock.writeLock();
 
-		storeEntry.setCRL(crlHolder);
+		writeLock.lock();
+		try {
+			Entry storeEntry = this.storeEntries.get(issuerEntry.id());
+			X509CRL currentCRL = (storeEntry.hasCRL() ? storeEntry.getCRL() : null);
+
+			X509CRL crl = X509CRLHelper.generateCRL(currentCRL, request.lastUpdate(), request.nextUpdate(),
+					request.getRevokeEntries(), storeEntry.dn(), storeEntry.getKey(password),
+					request.signatureAlgorithm());
+			CertObjectHolder<X509CRL> crlHolder = this.storeHandler.createCRL(storeEntry.id(), crl);
+
+			storeEntry.setCRL(crlHolder);
+			reindexEntry(storeEntry);
+			recordChange(UserCertStoreChange.Type.CRL_UPDATED, storeEntry, null, CertObjectType.CRL);
+			commitChanges();
+		} finally {
+			releaseWriteLock(writeLock);
+		}
 	}
 
 	/**
@@ -359,218 +538,826 @@ public final class UserCertStore {
 	}
 
 	/**
-	 * Delete a store entry.
+	 * Import multiple sets of certificate objects in one go.
+	 * <p>
+	 * In contrast to merging the submitted certificate objects one by one, the certificate objects are decoded and
+	 * fingerprinted in parallel, duplicate certificate objects are skipped up front and the issuers of the affected
+	 * store entries are resolved only once after all certificate objects have been merged.
 	 *
-	 * @param entryId The entry id to delete.
-	 * @throws IOException if an I/O error occurs during deletion.
+	 * @param certObjectStores The certificate objects to import.
+	 * @param newPassword The password callback to use for new password querying.
+	 * @param aliasHint The preferred alias for entry id generation or {@code null} to use the certificate objects'
+	 *        own aliases.
+	 * @return The import result.
+	 * @throws IOException if an I/O error occurs during import.
+	 */
+	public UserCertStoreImportResult importEntries(Collection<CertObjectStore> certObjectStores,
+			PasswordCallback newPassword, @Nullable String aliasHint) throws IOException {
+		return importCertObjects(certObjectStores, newPassword, aliasHint, true);
+	}
+
+	/**
+	 * Import all certificate objects from a PEM encoded {@link InputStream} resource.
+	 * <p>
+	 * The certificate objects are streamed from the resource and imported in batches of at most
+	 * {@link #IMPORT_BATCH_SIZE} objects (see {@link #importEntries(Collection, PasswordCallback, String)}). Hence the
+	 * memory required for reading is independent of the resource size (e.g. when importing a huge CA bundle).
+	 *
+	 * @param in The stream resource to read from.
+	 * @param password The callback to use for querying passwords (if needed).
+	 * @param newPassword The password callback to use for new password querying.
+	 * @param aliasHint The preferred alias for entry id generation or {@code null} to use the certificate objects'
+	 *        own aliases.
+	 * @return The import result.
+	 * @throws IOException if an I/O error occurs during reading or import.
+	 * @see PEMCertReaderWriter#readObjectsBinary(IOResource, PasswordCallback, PEMCertReaderWriter.ObjectConsumer)
 	 */
-	public synchronized void deleteEntry(UserCertStoreEntryId entryId) throws IOException {
-		if (!this.storeEntries.containsKey(entryId)) {
-			throw new IllegalArgumentException("Invalid entry: " + entryId);
+	public UserCertStoreImportResult importPEMEntries(IOResource<InputStream> in, PasswordCallback password,
+			PasswordCallback newPassword, @Nullable String aliasHint) throws IOException {
+		StreamingImport streamingImport = new StreamingImport(newPassword, aliasHint);
+
+		PEMCertReaderWriter.readObjectsBinary(in, password, streamingImport::add);
+		return streamingImport.finish();
+	}
+
+	private UserCertStoreImportResult importCertObjects(Collection<CertObjectStore> certObjectStores,
+			PasswordCallback newPassword, @Nullable String aliasHint, boolean useObjectAliases) throws IOException {
+		long decodeStart = StoreMetrics.start();
+		List<CertObjectStore.Entry> certObjects = new ArrayList<>();
+
+		for (CertObjectStore certObjectStore : certObjectStores) {
+			for (CertObjectStore.Entry certObject : certObjectStore) {
+				certObjects.add(certObject);
+			}
+		}
+
+		List<ImportObject> decodedObjects = certObjects.parallelStream()
+				.map(certObject -> new ImportObject(certObject,
+						(aliasHint == null && useObjectAliases ? certObject.alias() : aliasHint)))
+				.collect(Collectors.toList());
+		Map<Fingerprint, ImportObject> importObjects = new LinkedHashMap<>(decodedObjects.size());
+
+		for (ImportObject decodedObject : decodedObjects) {
+			importObjects.putIfAbsent(decodedObject.fingerprint(), decodedObject);
+		}
+
+		long decodeNanos = StoreMetrics.record(StoreMetrics.Operation.IMPORT_DECODE, decodeStart);
+		Lock writeLock = this.storeLock.writeLock();
+		Set<UserCertStoreEntry> mergedEntries;
+		long mergeNanos;
+		long resolveNanos;
+
+		writeLock.lock();
+		try {
+			// Both phases record their own metrics; only the phase times of the import result are taken here
+			long mergeStart = StoreMetrics.start();
+
+			try {
+				mergedEntries = mergeImportObjects(importObjects.values(), newPassword);
+			} finally {
+				mergeNanos = StoreMetrics.elapsed(mergeStart);
+
+				long resolveStart = StoreMetrics.start();
+
+				resolveIssuers();
+				resolveNanos = StoreMetrics.elapsed(resolveStart);
+			}
+		} finally {
+			try {
+				commitChanges();
+			} finally {
+				releaseWriteLock(writeLock);
+			}
 		}
-		this.storeEntries.remove(entryId);
-		this.storeHandler.deleteEntry(entryId);
-		resetIssuers();
+
+		UserCertStoreImportResult result = new UserCertStoreImportResult(mergedEntries, certObjects.size(),
+				certObjects.size() - importObjects.size(), decodeNanos, mergeNanos, resolveNanos);
+
+		LOG.debug("Imported certificate objects ({0})", result);
+		return result;
 	}
 
 	/**
-	 * Get this store's entry count.
+	 * Allocate the next serial number for issuing a CRT via a specific store entry.
+	 * <p>
+	 * Serial numbers are allocated per CA hierarchy (identified by the hierarchy's root entry). The first allocation
+	 * seeds the hierarchy's counter with the highest serial number currently in use within the hierarchy. All
+	 * subsequent allocations are served from the counter without accessing the hierarchy's entries.
 	 *
-	 * @return This store's entry count.
+	 * @param issuerEntry The store entry to allocate the serial number for.
+	 * @return The allocated serial number.
+	 * @throws IOException if an I/O error occurs during serial allocation.
 	 */
-	public synchronized int size() {
-		return this.storeEntries.size();
+	public BigInteger nextSerial(UserCertStoreEntry issuerEntry) throws IOException {
+		Lock readLock = this.storeLock.readLock();
+
+		readLock.lock();
+		try {
+			Entry storeEntry = this.storeEntries.get(issuerEntry.id());
+
+			if (storeEntry == null) {
+				throw new IllegalArgumentException("Invalid entry: " + issuerEntry);
+			}
+
+			Entry rootEntry = rootIssuer(storeEntry);
+
+			if (!rootEntry.hasCRT()) {
+				throw new IOException("Incomplete CA; unable to determine next serial");
+			}
+			return this.serials.next(serialsKey(rootEntry), () -> maxIssuedSerial(rootEntry, BigInteger.ONE));
+		} finally {
+			readLock.unlock();
+		}
 	}
 
 	/**
-	 * Get this store's entries.
+	 * Release any background resources held by this store (e.g. the directory watcher of a persistent store).
+	 * <p>
+	 * The store remains accessible after it has been closed. However, external modifications are no longer reported
+	 * to the registered change listeners but only detected on access.
 	 *
-	 * @return This store's entries.
+	 * @throws IOException if an I/O error occurs while releasing the resources.
 	 */
-	public synchronized Set<UserCertStoreEntry> getEntries() {
-		return new HashSet<>(this.storeEntries.values());
+	@Override
+	public void close() throws IOException {
+		this.storeHandler.close();
 	}
 
 	/**
-	 * Get this store's root entries.
+	 * Delete a store entry.
 	 *
-	 * @return This store's root entries.
+	 * @param entryId The entry id to delete.
+	 * @throws IOException if an I/O error occurs during deletion.
 	 */
-	public synchronized Set<UserCertStoreEntry> getRootEntries() {
-		Set<UserCertStoreEntry> rootEntries = new HashSet<>();
+	public void deleteEntry(UserCertStoreEntryId entryId) throws IOException {
+		Lock writeLock = this.storeLock.writeLock();
 
-		for (Entry entry : this.storeEntries.values()) {
-			if (entry.isSelfSigned()) {
-				rootEntries.add(entry);
+		writeLock.lock();
+		try {
+			if (!this.storeEntries.containsKey(entryId)) {
+				throw new IllegalArgumentException("Invalid entry: " + entryId);
 			}
+			removeEntry(entryId);
+			this.storeHandler.deleteEntry(entryId);
+			resolveIssuers();
+			commitChanges();
+		} finally {
+			releaseWriteLock(writeLock);
 		}
-		return rootEntries;
 	}
 
 	/**
-	 * Get this store's entries which are issued by a specific store entry.
+	 * Migrate this store's files to a different directory layout.
+	 * <p>
+	 * The migration is performed online. The store remains usable afterwards and the new layout is recorded in the
+	 * store's preferences.
 	 *
-	 * @param entry The store entry to get the issued entries for.
-	 * @return The store entries which are issued by the submitted store entry.
+	 * @param layout The layout to migrate to.
+	 * @throws UnsupportedOperationException if this store is not a directory based store.
+	 * @throws IOException if an I/O error occurs during the migration.
+	 * @see UserCertStoreLayout
 	 */
-	public synchronized Set<UserCertStoreEntry> getIssuedEntries(UserCertStoreEntry entry) {
-		Set<UserCertStoreEntry> issuedEntries = new HashSet<>();
+	public void migrateLayout(UserCertStoreLayout layout) throws IOException {
+		if (!(this.storeHandler instanceof PersistentUserCertStoreHandler)) {
+			throw new UnsupportedOperationException("Store is not directory based");
+		}
+
+		PersistentUserCertStoreHandler persistentStoreHandler = (PersistentUserCertStoreHandler) this.storeHandler;
+		UserCertStorePreferences preferences = new UserCertStorePreferences(persistentStoreHandler.storeHome());
+		Lock writeLock = this.storeLock.writeLock();
 
-		for (Entry issuedEntry : this.storeEntries.values()) {
-			if (!entry.equals(issuedEntry) && issuedEntry.issuer().equals(entry)) {
-				issuedEntries.add(issuedEntry);
+		writeLock.lock();
+		try {
+			preferences.layout.put(layout.name());
+			try {
+				preferences.sync();
+			} catch (BackingStoreException e) {
+				throw new IOException(e);
 			}
+			refreshPersistentEntries(persistentStoreHandler, persistentStoreHandler.migrateLayout(layout));
+		} finally {
+			releaseWriteLock(writeLock);
 		}
-		return issuedEntries;
 	}
 
-	private synchronized void loadPersistentEntries(Map<UserCertStoreEntryId, PersistentEntry> entries)
-			throws IOException {
-		for (Map.Entry<UserCertStoreEntryId, PersistentEntry> persistentEntryPathsEntry : entries.entrySet()) {
-			UserCertStoreEntryId entryId = persistentEntryPathsEntry.getKey();
-			PersistentEntry entry = persistentEntryPathsEntry.getValue();
-			CertObjectHolder<X509Certificate> crtHolder = entry.crt();
-			SecureCertObjectHolder<KeyPair> keyHolder = entry.key();
-			CertObjectHolder<PKCS10CertificateRequest> csrHolder = entry.csr();
-			CertObjectHolder<X509CRL> crlHolder = entry.crl();
-			X500Principal entryDN = null;
-
-			if (crtHolder != null) {
-				entryDN = crtHolder.get().getSubjectX500Principal();
-			} else if (csrHolder != null) {
-				entryDN = csrHolder.get().getSubjectX500Principal();
-			} else if (crlHolder != null) {
-				entryDN = crlHolder.get().getIssuerX500Principal();
-			} else {
-				LOG.warning("Ignoring incompliete store entry ''{0}''", entryId);
-			}
-			if (entryDN != null) {
-				Entry storeEntry = new Entry(entryId, entryDN, crtHolder, keyHolder, csrHolder, crlHolder);
+	/**
+	 * Get this store's entry count.
+	 *
+	 * @return This store's entry count.
+	 */
+	public int size() {
+		Lock readLock = this.storeLock.readLock();
 
-				this.storeEntries.put(entryId, storeEntry);
-			}
+		readLock.lock();
+		try {
+			return this.storeEntries.size();
+		} finally {
+			readLock.unlock();
 		}
-		resetIssuers();
 	}
 
-	private static UserCertStore createFromCertObjects(CertObjectStore... certObjectStores) throws IOException {
-		UserCertStore store = new UserCertStore(new TransientUserCertStoreHandler());
+	/**
+	 * Get this store's entries.
+	 *
+	 * @return This store's entries.
+	 */
+	public Set<UserCertStoreEntry> getEntries() {
+		Lock readLock = this.storeLock.readLock();
 
-		for (CertObjectStore certObjectStore : certObjectStores) {
-			if (certObjectStore != null && certObjectStore.size() > 0) {
-				store.mergeCertObjects(certObjectStore, NoPassword.getInstance(), null);
-			}
+		readLock.lock();
+		try {
+			return new HashSet<>(this.storeEntries.values());
+		} finally {
+			readLock.unlock();
 		}
-		return store;
 	}
 
-	private synchronized Set<UserCertStoreEntry> mergeCertObjects(CertObjectStore certObjects,
-			PasswordCallback newPassword, @Nullable String aliasHint) throws IOException {
-		Set<UserCertStoreEntry> mergedEntries = new HashSet<>();
+	/**
+	 * Get this store's root entries.
+	 * <p>
+	 * The root entries are taken from the current {@linkplain #snapshot() snapshot}.
+	 *
+	 * @return This store's root entries (read-only).
+	 */
+	public Set<UserCertStoreEntry> getRootEntries() {
+		return this.snapshot.getRootEntries();
+	}
+
+	/**
+	 * Get this store's entries which are issued by a specific store entry.
+	 * <p>
+	 * The issued entries are taken from the current {@linkplain #snapshot() snapshot}.
+	 *
+	 * @param entry The store entry to get the issued entries for.
+	 * @return The store entries which are issued by the submitted store entry (read-only).
+	 */
+	public Set<UserCertStoreEntry> getIssuedEntries(UserCertStoreEntry entry) {
+		return this.snapshot.getIssuedEntries(entry);
+	}
+
+	/**
+	 * Find this store's entries matching a specific query.
+	 * <p>
+	 * The query is evaluated via secondary indices maintained by the store. Only the entries matched by the most
+	 * selective criteria are inspected and none of the entries' certificate objects is decoded.
+	 *
+	 * @param query The query to evaluate.
+	 * @return The matching store entries.
+	 * @see UserCertStoreQuery
+	 */
+	public Set<UserCertStoreEntry> findEntries(UserCertStoreQuery query) {
+		Lock readLock = this.storeLock.readLock();
 
+		readLock.lock();
 		try {
-			// First merge CRT and CSR objects as they provide the entry's DN
-			for (CertObjectStore.Entry certObject : certObjects) {
-				UserCertStoreEntry mergedEntry = null;
-
-				if (certObject.type() == CertObjectType.CRT) {
-					mergedEntry = mergeX509Certificate(certObject.getCRT(), aliasHint);
-				} else if (certObject.type() == CertObjectType.CSR) {
-					mergedEntry = mergePKCS10CertificateRequest(certObject.getCSR(), aliasHint);
-				}
-				if (mergedEntry != null) {
-					mergedEntries.add(mergedEntry);
-				}
-			}
-			for (CertObjectStore.Entry certObject : certObjects) {
-				UserCertStoreEntry mergedEntry = null;
+			Set<UserCertStoreEntry> matchingEntries = new HashSet<>();
 
-				if (certObject.type() == CertObjectType.KEY) {
-					mergedEntry = mergeKey(certObject.getKey(), newPassword);
-				} else if (certObject.type() == CertObjectType.CRL) {
-					mergedEntry = mergeX509CRL(certObject.getCRL(), aliasHint);
-				}
-				if (mergedEntry != null) {
-					mergedEntries.add(mergedEntry);
+			for (Entry entry : queryCandidates(query)) {
+				if (query.matches(entry.attributes())) {
+					matchingEntries.add(entry);
 				}
 			}
+			return matchingEntries;
 		} finally {
-			resetIssuers();
+			readLock.unlock();
 		}
-		return mergedEntries;
 	}
 
-	private Entry mergeX509Certificate(X509Certificate crt, @Nullable String aliasHint) throws IOException {
-		Entry matchingEntry = matchX509Certificate(crt);
+	private Collection<Entry> queryCandidates(UserCertStoreQuery query) {
+		UserCertStoreEntry issuer = query.issuer();
+		String dnsName = query.dnsName();
+		String keyAlgorithm = query.keyAlgorithm();
+		Collection<Entry> candidates = null;
 
-		if (matchingEntry != null) {
-			if (!matchingEntry.hasCRT()) {
-				CertObjectHolder<X509Certificate> crtHolder = this.storeHandler.createCRT(matchingEntry.id(), crt);
+		// Start with the smallest candidate set; any remaining criteria is checked via the entry attributes
+		if (issuer != null) {
+			Set<Entry> issuedEntries = this.issuedCache.get(issuer);
 
-				matchingEntry.setCRT(crtHolder);
-			} else {
-				LOG.debug("Skipping duplicate CRT ''{0}''.", matchingEntry);
-			}
-		} else {
-			UserCertStoreEntryId entryId = this.storeHandler.nextEntryId(aliasHint);
-			CertObjectHolder<X509Certificate> crtHolder = this.storeHandler.createCRT(entryId, crt);
+			candidates = (issuedEntries != null ? issuedEntries : Collections.emptySet());
+		}
+		if (dnsName != null) {
+			List<Entry> dnsNameCandidates = new ArrayList<>(indexedEntries(this.dnsNameIndex, dnsName));
 
-			matchingEntry = new Entry(entryId, crt.getSubjectX500Principal(), crtHolder, null, null, null);
-			this.storeEntries.put(entryId, matchingEntry);
+			dnsNameCandidates.addAll(
+					indexedEntries(this.dnsNameIndex, UserCertStoreQuery.wildcardDNSName(dnsName)));
+			candidates = smallerCandidates(candidates, dnsNameCandidates);
 		}
-		return matchingEntry;
+		if (keyAlgorithm != null) {
+			candidates = smallerCandidates(candidates, indexedEntries(this.keyAlgorithmIndex, keyAlgorithm));
+		}
+		if (candidates == null && query.hasExpiryCriteria()) {
+			candidates = expiryCandidates(query.notAfterFrom(), query.notAfterTo());
+		}
+		return (candidates != null ? candidates : this.storeEntries.values());
 	}
 
-	@Nullable
-	private Entry mergeKey(KeyPair key, PasswordCallback newPassword) throws IOException {
-		Entry matchingEntry = matchKey(key);
+	private static Collection<Entry> smallerCandidates(@Nullable Collection<Entry> candidates1,
+			Collection<Entry> candidates2) {
+		return (candidates1 != null && candidates1.size() <= candidates2.size() ? candidates1 : candidates2);
+	}
 
-		if (matchingEntry != null) {
-			if (!matchingEntry.hasKey()) {
-				SecureCertObjectHolder<KeyPair> keyHolder = this.storeHandler.createKey(matchingEntry.id(), key,
-						newPassword);
+	private Collection<Entry> expiryCandidates(@Nullable Date from, @Nullable Date to) {
+		NavigableMap<Date, Set<Entry>> expiryRange = this.notAfterIndex;
 
-				matchingEntry.setKey(keyHolder);
-			} else {
-				LOG.info("Skipping duplicate Key ''{0}''.", matchingEntry);
-			}
-		} else {
-			LOG.info("Skipping non-matching Key ''{0}''.", KeyHelper.toString(key.getPublic()));
+		if (from != null && to != null) {
+			expiryRange = (from.before(to) ? expiryRange.subMap(from, true, to, false)
+					: Collections.emptyNavigableMap());
+		} else if (from != null) {
+			expiryRange = expiryRange.tailMap(from, true);
+		} else if (to != null) {
+			expiryRange = expiryRange.headMap(to, false);
 		}
-		return matchingEntry;
+
+		List<Entry> candidates = new ArrayList<>();
+
+		for (Set<Entry> entries : expiryRange.values()) {
+			candidates.addAll(entries);
+		}
+		return candidates;
 	}
 
-	private Entry mergePKCS10CertificateRequest(PKCS10CertificateRequest csr, @Nullable String aliasHint)
-			throws IOException {
-		Entry matchingEntry = matchPKCS10CertificateRequest(csr);
+	/**
+	 * Get the most recent snapshot of this store.
+	 * <p>
+	 * A new snapshot is published atomically after each modification of the store. Accessing the snapshot requires no
+	 * locking and is never blocked by concurrent modifications, nor does it block them. Hence long running readers
+	 * (e.g. exports) should work on a snapshot rather than the store itself.
+	 *
+	 * @return The most recent snapshot of this store.
+	 */
+	public UserCertStoreSnapshot snapshot() {
+		return this.snapshot;
+	}
 
-		if (matchingEntry != null) {
-			if (!matchingEntry.hasCSR()) {
-				CertObjectHolder<PKCS10CertificateRequest> csrHolder = this.storeHandler.createCSR(matchingEntry.id(),
-						csr);
+	/**
+	 * Register a listener for store changes.
+	 * <p>
+	 * The listener is invoked after each store modification with the list of changes applied by the modification. As
+	 * changes are only recorded while at least one listener is registered, the listener should be registered before
+	 * the listener's view of the store is initialized.
+	 *
+	 * @param listener The listener to register.
+	 * @see UserCertStoreChange
+	 */
+	public void addChangeListener(UserCertStoreChange.Listener listener) {
+		this.changeListeners.add(listener);
+	}
 
-				matchingEntry.setCSR(csrHolder);
-			} else {
-				LOG.info("Skipping duplicate CSR ''{0}''.", matchingEntry);
-			}
-		} else {
-			UserCertStoreEntryId entryId = this.storeHandler.nextEntryId(aliasHint);
-			CertObjectHolder<PKCS10CertificateRequest> csrHolder = this.storeHandler.createCSR(entryId, csr);
+	/**
+	 * Remove a previously registered store change listener.
+	 *
+	 * @param listener The listener to remove.
+	 */
+	public void removeChangeListener(UserCertStoreChange.Listener listener) {
+		this.changeListeners.remove(listener);
+	}
 
-			matchingEntry = new Entry(entryId, csr.getSubjectX500Principal(), null, null, csrHolder, null);
-			this.storeEntries.put(entryId, matchingEntry);
+	private void recordChange(UserCertStoreChange.Type type, Entry entry, @Nullable Entry issuer,
+			@Nullable CertObjectType objectType) {
+		if (!this.changeListeners.isEmpty()) {
+			this.changes.add(new UserCertStoreChange(type, entry, issuer, objectType));
 		}
-		return matchingEntry;
 	}
 
-	private Entry mergeX509CRL(X509CRL crl, @Nullable String aliasHint) throws IOException {
-		Entry matchingEntry = matchX509CRL(crl);
+	// Serial counters are stored ahead of the store files, so a crash in between can only leave a gap in the serials
+	private void commitChanges() throws IOException {
+		try {
+			this.serials.commit();
+		} finally {
+			this.storeHandler.commit();
+		}
+	}
 
-		if (matchingEntry != null) {
+	private void releaseWriteLock(Lock writeLock) {
+		try {
+			publishSnapshot();
+			if (!this.changes.isEmpty()) {
+				this.pendingChanges.add(Collections.unmodifiableList(new ArrayList<>(this.changes)));
+				this.changes.clear();
+			}
+		} finally {
+			writeLock.unlock();
+		}
+		// Listeners must not be invoked while holding the lock (e.g. in case of nested write operations)
+		if (!this.storeLock.isWriteLockedByCurrentThread()) {
+			dispatchChanges();
+		}
+	}
+
+	private void dispatchChanges() {
+		// Only one thread at a time is dispatching to keep the batches in order; a batch queued while the current
+		// dispatcher is releasing its role is picked up by re-checking the queue afterwards
+		while (!this.pendingChanges.isEmpty() && this.dispatchingChanges.compareAndSet(false, true)) {
+			try {
+				List<UserCertStoreChange> pendingBatch;
+
+				while ((pendingBatch = this.pendingChanges.poll()) != null) {
+					for (UserCertStoreChange.Listener listener : this.changeListeners) {
+						try {
+							listener.onStoreChanged(this, pendingBatch);
+						} catch (RuntimeException e) {
+							LOG.warning(e, "Store change listener failed");
+						}
+					}
+				}
+			} finally {
+				this.dispatchingChanges.set(false);
+			}
+		}
+	}
+
+	/**
+	 * Get the earliest CRT expiry at or after a specific point in time.
+	 *
+	 * @param from The point in time to start searching at.
+	 * @return The earliest CRT expiry at or after the submitted point in time or {@code null} if there is none.
+	 */
+	@Nullable
+	Date nextExpiry(Date from) {
+		Lock readLock = this.storeLock.readLock();
+
+		readLock.lock();
+		try {
+			return this.notAfterIndex.ceilingKey(from);
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	private void publishSnapshot() {
+		if (!this.snapshotEntries.isEmpty()) {
+			// Only the entries affected by the latest changes are submitted; everything else is shared
+			Map<UserCertStoreEntry, UserCertStoreEntry> issuerUpdates = new HashMap<>();
+			Set<UserCertStoreEntry> removedEntries = new HashSet<>();
+
+			for (Entry snapshotEntry : this.snapshotEntries) {
+				// The marked entry object may have been replaced by an equal one in the meantime
+				Entry entry = this.storeEntries.get(snapshotEntry.id());
+				Entry issuer = (entry != null ? this.issuerCache.get(entry) : null);
+
+				if (entry != null && issuer != null) {
+					issuerUpdates.put(entry, issuer);
+				} else {
+					removedEntries.add(snapshotEntry);
+				}
+			}
+			this.snapshot = this.snapshot.next(issuerUpdates, removedEntries);
+			this.snapshotEntries.clear();
+		}
+	}
+
+	private void loadPersistentEntries(Map<UserCertStoreEntryId, PersistentEntry> entries,
+			PersistentUserCertStoreIndex storeIndex) throws IOException {
+		Lock writeLock = this.storeLock.writeLock();
+
+		writeLock.lock();
+		try {
+			loadPersistentEntriesLocked(entries, storeIndex);
+		} finally {
+			releaseWriteLock(writeLock);
+		}
+	}
+
+	private void loadPersistentEntriesLocked(Map<UserCertStoreEntryId, PersistentEntry> entries,
+			PersistentUserCertStoreIndex storeIndex) throws IOException {
+		Map<String, PersistentUserCertStoreIndex.Row> indexRows = storeIndex.load();
+		Map<Entry, PersistentUserCertStoreIndex.Row> freshIndexRows = new HashMap<>();
+		Map<Entry, String> staleEntryFileStamps = new HashMap<>();
+		Map<String, Entry> aliasEntries = new HashMap<>();
+		List<Map.Entry<UserCertStoreEntryId, PersistentEntry>> staleEntries = new ArrayList<>();
+
+		for (Map.Entry<UserCertStoreEntryId, PersistentEntry> persistentEntryPathsEntry : entries.entrySet()) {
+			UserCertStoreEntryId entryId = persistentEntryPathsEntry.getKey();
+			String entryAlias = Objects.requireNonNull(entryId.getAlias());
+			PersistentEntry entry = persistentEntryPathsEntry.getValue();
+			PersistentUserCertStoreIndex.Row indexRow = indexRows.get(entryAlias);
+
+			if (entry.crt() == null && entry.csr() == null && entry.crl() == null) {
+				LOG.warning("Ignoring incompliete store entry ''{0}''", entryId);
+			} else if (indexRow != null && indexRow.fileStamp().equals(entry.fileStamp())) {
+				// Index row is up-to-date; no need to decode any of the entry's certificate objects
+				Entry storeEntry = new Entry(entryId, indexRow.dn(), entry.crt(), entry.key(), entry.csr(),
+						entry.crl());
+
+				this.storeEntries.put(entryId, storeEntry);
+				indexEntry(storeEntry, indexRow.publicKeyFingerprint(), indexRow.keyIdentifiers(),
+						indexRow.attributes());
+				freshIndexRows.put(storeEntry, indexRow);
+				aliasEntries.put(entryAlias, storeEntry);
+			} else {
+				staleEntries.add(persistentEntryPathsEntry);
+			}
+		}
+
+		// Decoding is done in parallel, whereas the decoded entries are added in scan order (to stay deterministic)
+		List<X500Principal> staleEntryDNs = StoreExecutor.map(staleEntries,
+				staleEntry -> decodePersistentEntryDN(staleEntry.getValue()));
+
+		for (int staleEntryIndex = 0; staleEntryIndex < staleEntries.size(); staleEntryIndex++) {
+			UserCertStoreEntryId entryId = staleEntries.get(staleEntryIndex).getKey();
+			PersistentEntry entry = staleEntries.get(staleEntryIndex).getValue();
+			Entry storeEntry = new Entry(entryId, staleEntryDNs.get(staleEntryIndex), entry.crt(), entry.key(),
+					entry.csr(), entry.crl());
+
+			putEntry(storeEntry);
+			staleEntryFileStamps.put(storeEntry, entry.fileStamp());
+			aliasEntries.put(Objects.requireNonNull(entryId.getAlias()), storeEntry);
+		}
+		for (Map.Entry<Entry, PersistentUserCertStoreIndex.Row> freshIndexRow : freshIndexRows.entrySet()) {
+			linkIndexedIssuer(freshIndexRow.getKey(), freshIndexRow.getValue(), freshIndexRows, aliasEntries);
+		}
+		resolveIssuers();
+		LOG.info("Loaded {0} store entries ({1} from index)", aliasEntries.size(), freshIndexRows.size());
+
+		Map<String, PersistentUserCertStoreIndex.Row> updatedIndexRows = new HashMap<>();
+
+		for (Map.Entry<String, Entry> aliasEntry : aliasEntries.entrySet()) {
+			Entry storeEntry = aliasEntry.getValue();
+			String issuerReference = indexIssuerReference(storeEntry);
+			PersistentUserCertStoreIndex.Row freshIndexRow = freshIndexRows.get(storeEntry);
+			PersistentUserCertStoreIndex.Row updatedIndexRow = (freshIndexRow != null
+					? freshIndexRow.withIssuer(issuerReference)
+					: newIndexRow(aliasEntry.getKey(), storeEntry,
+							Objects.requireNonNull(staleEntryFileStamps.get(storeEntry)), issuerReference));
+
+			updatedIndexRows.put(aliasEntry.getKey(), updatedIndexRow);
+		}
+		if (!updatedIndexRows.equals(indexRows)) {
+			try {
+				storeIndex.store(updatedIndexRows.values());
+			} catch (IOException e) {
+				LOG.warning(e, "Failed to update store index");
+			}
+		}
+	}
+
+	private void refreshPersistentEntries(PersistentUserCertStoreHandler persistentStoreHandler,
+			Set<UserCertStoreEntryId> entryIds) throws IOException {
+		Lock writeLock = this.storeLock.writeLock();
+
+		writeLock.lock();
+		try {
+			for (UserCertStoreEntryId entryId : entryIds) {
+				Entry currentEntry = this.storeEntries.get(entryId);
+
+				// Changes caused by this store have already been applied
+				if (currentEntry == null || persistentStoreHandler.isEntryModified(entryId)) {
+					PersistentEntry entry = persistentStoreHandler.scanEntry(entryId);
+
+					LOG.info("Refreshing externally modified store entry ''{0}''", entryId);
+					if (currentEntry != null) {
+						removeEntry(entryId);
+					}
+					if (entry != null && (entry.crt() != null || entry.csr() != null || entry.crl() != null)) {
+						putEntry(new Entry(entryId, decodePersistentEntryDN(entry), entry.crt(), entry.key(),
+								entry.csr(), entry.crl()));
+					}
+				}
+			}
+			resolveIssuers();
+		} finally {
+			releaseWriteLock(writeLock);
+		}
+	}
+
+	private static X500Principal decodePersistentEntryDN(PersistentEntry entry) throws IOException {
+		CertObjectHolder<X509Certificate> crtHolder = entry.crt();
+		CertObjectHolder<PKCS10CertificateRequest> csrHolder = entry.csr();
+		X500Principal entryDN;
+
+		if (crtHolder != null) {
+			entryDN = crtHolder.get().getSubjectX500Principal();
+		} else if (csrHolder != null) {
+			entryDN = csrHolder.get().getSubjectX500Principal();
+		} else {
+			entryDN = Objects.requireNonNull(entry.crl()).get().getIssuerX500Principal();
+		}
+		return entryDN;
+	}
+
+	private void linkIndexedIssuer(Entry entry, PersistentUserCertStoreIndex.Row indexRow,
+			Map<Entry, PersistentUserCertStoreIndex.Row> freshIndexRows, Map<String, Entry> aliasEntries)
+			throws IOException {
+		String issuerReference = indexRow.issuer();
+		X500Principal issuerDN = indexRow.issuerDN();
+		Entry issuer = null;
+
+		if (PersistentUserCertStoreIndex.ISSUER_SELF.equals(issuerReference)) {
+			issuer = entry;
+		} else if (PersistentUserCertStoreIndex.ISSUER_EXTERNAL.equals(issuerReference)) {
+			// The external issuer is only still valid, if no potential issuer has been added or modified
+			if (issuerDN != null && indexedEntries(this.dnIndex, issuerDN).stream()
+					.allMatch(dnEntry -> dnEntry.isExternal() || freshIndexRows.containsKey(dnEntry))) {
+				issuer = externalIssuer(issuerDN);
+			}
+		} else {
+			Entry issuerEntry = aliasEntries.get(issuerReference);
+
+			if (issuerEntry != null && freshIndexRows.containsKey(issuerEntry)) {
+				issuer = issuerEntry;
+			}
+		}
+		if (issuer != null) {
+			linkIssuer(entry, issuer);
+		} else {
+			this.unresolvedIssuers.add(entry);
+		}
+	}
+
+	private String indexIssuerReference(Entry entry) {
+		Entry issuer = Objects.requireNonNull(this.issuerCache.get(entry));
+		String issuerReference;
+
+		if (issuer.equals(entry)) {
+			issuerReference = PersistentUserCertStoreIndex.ISSUER_SELF;
+		} else if (issuer.isExternal()) {
+			issuerReference = PersistentUserCertStoreIndex.ISSUER_EXTERNAL;
+		} else {
+			issuerReference = Objects.requireNonNull(issuer.id().getAlias());
+		}
+		return issuerReference;
+	}
+
+	private static PersistentUserCertStoreIndex.Row newIndexRow(String alias, Entry entry, String fileStamp,
+			String issuerReference) throws IOException {
+		X509Certificate crt = (entry.hasCRT() ? entry.getCRT() : null);
+		PersistentUserCertStoreIndex.Row indexRow;
+
+		if (crt != null) {
+			try {
+				indexRow = new PersistentUserCertStoreIndex.Row(alias, fileStamp, entry.dn(),
+						entry.getPublicKeyFingerprint(), entry.getKeyIdentifiers(), crt.getIssuerX500Principal(),
+						X509CertificateHelper.getAuthorityKeyIdentifier(crt), crt.getSerialNumber(), entry.attributes(),
+						Fingerprint.of(crt.getEncoded()), issuerReference);
+			} catch (CertificateEncodingException e) {
+				throw new CertProviderException(e);
+			}
+		} else {
+			indexRow = new PersistentUserCertStoreIndex.Row(alias, fileStamp, entry.dn(),
+					entry.getPublicKeyFingerprint(), entry.getKeyIdentifiers(), null, null, null, entry.attributes(),
+					null, issuerReference);
+		}
+		return indexRow;
+	}
+
+	private static UserCertStore createFromCertObjects(CertObjectStore... certObjectStores) throws IOException {
+		UserCertStore store = new UserCertStore(new TransientUserCertStoreHandler());
+		List<CertObjectStore> nonEmptyCertObjectStores = new ArrayList<>(certObjectStores.length);
+
+		for (CertObjectStore certObjectStore : certObjectStores) {
+			if (certObjectStore != null && certObjectStore.size() > 0) {
+				nonEmptyCertObjectStores.add(certObjectStore);
+			}
+		}
+		store.importCertObjects(nonEmptyCertObjectStores, NoPassword.getInstance(), null, false);
+		return store;
+	}
+
+	private Set<UserCertStoreEntry> mergeCertObjects(CertObjectStore certObjects, PasswordCallback newPassword,
+			@Nullable String aliasHint) throws IOException {
+		List<ImportObject> importObjects = new ArrayList<>(certObjects.size());
+
+		for (CertObjectStore.Entry certObject : certObjects) {
+			importObjects.add(new ImportObject(certObject, aliasHint));
+		}
+
+		Lock writeLock = this.storeLock.writeLock();
+
+		writeLock.lock();
+		try {
+			return mergeImportObjects(importObjects, newPassword);
+		} finally {
+			try {
+				resolveIssuers();
+			} finally {
+				try {
+					commitChanges();
+				} finally {
+					releaseWriteLock(writeLock);
+				}
+			}
+		}
+	}
+
+	private Set<UserCertStoreEntry> mergeImportObjects(Collection<ImportObject> importObjects,
+			PasswordCallback newPassword) throws IOException {
+		long start = StoreMetrics.start();
+		Set<UserCertStoreEntry> mergedEntries = new HashSet<>();
+
+		// First merge CRT and CSR objects as they provide the entry's DN
+		for (ImportObject importObject : importObjects) {
+			CertObjectStore.Entry certObject = importObject.certObject();
+			UserCertStoreEntry mergedEntry = null;
+
+			if (certObject.type() == CertObjectType.CRT) {
+				mergedEntry = mergeX509Certificate(certObject.getCRT(), importObject.publicKeyFingerprint(),
+						importObject.aliasHint());
+			} else if (certObject.type() == CertObjectType.CSR) {
+				mergedEntry = mergePKCS10CertificateRequest(certObject.getCSR(), importObject.publicKeyFingerprint(),
+						importObject.aliasHint());
+			}
+			if (mergedEntry != null) {
+				mergedEntries.add(mergedEntry);
+			}
+		}
+		for (ImportObject importObject : importObjects) {
+			CertObjectStore.Entry certObject = importObject.certObject();
+			UserCertStoreEntry mergedEntry = null;
+
+			if (certObject.type() == CertObjectType.KEY) {
+				mergedEntry = mergeKey(certObject.getKey(), importObject.publicKeyFingerprint(), newPassword);
+			} else if (certObject.type() == CertObjectType.CRL) {
+				mergedEntry = mergeX509CRL(certObject.getCRL(), importObject.aliasHint());
+			}
+			if (mergedEntry != null) {
+				mergedEntries.add(mergedEntry);
+			}
+		}
+		StoreMetrics.record(StoreMetrics.Operation.MERGE, start);
+		return mergedEntries;
+	}
+
+	private Entry mergeX509Certificate(X509Certificate crt, Fingerprint crtPublicKeyFingerprint,
+			@Nullable String aliasHint) throws IOException {
+		Entry matchingEntry = matchX509Certificate(crt, crtPublicKeyFingerprint);
+
+		if (matchingEntry != null) {
+			if (!matchingEntry.hasCRT()) {
+				CertObjectHolder<X509Certificate> crtHolder = this.storeHandler.createCRT(matchingEntry.id(), crt);
+
+				matchingEntry.setCRT(crtHolder);
+				reindexEntry(matchingEntry);
+				recordChange(UserCertStoreChange.Type.OBJECT_ATTACHED, matchingEntry, null, CertObjectType.CRT);
+			} else {
+				LOG.debug("Skipping duplicate CRT ''{0}''.", matchingEntry);
+			}
+		} else {
+			UserCertStoreEntryId entryId = this.storeHandler.nextEntryId(aliasHint);
+			CertObjectHolder<X509Certificate> crtHolder = this.storeHandler.createCRT(entryId, crt);
+
+			matchingEntry = new Entry(entryId, crt.getSubjectX500Principal(), crtHolder, null, null, null);
+			putEntry(matchingEntry);
+		}
+		return matchingEntry;
+	}
+
+	@Nullable
+	private Entry mergeKey(KeyPair key, Fingerprint publicKeyFingerprint, PasswordCallback newPassword)
+			throws IOException {
+		Entry matchingEntry = matchKey(key, publicKeyFingerprint);
+
+		if (matchingEntry != null) {
+			if (!matchingEntry.hasKey()) {
+				SecureCertObjectHolder<KeyPair> keyHolder = this.storeHandler.createKey(matchingEntry.id(), key,
+						newPassword);
+
+				matchingEntry.setKey(keyHolder);
+				reindexEntry(matchingEntry);
+				recordChange(UserCertStoreChange.Type.OBJECT_ATTACHED, matchingEntry, null, CertObjectType.KEY);
+			} else {
+				LOG.info("Skipping duplicate Key ''{0}''.", matchingEntry);
+			}
+		} else {
+			LOG.info("Skipping non-matching Key ''{0}''.", KeyHelper.toString(key.getPublic()));
+		}
+		return matchingEntry;
+	}
+
+	private Entry mergePKCS10CertificateRequest(PKCS10CertificateRequest csr, Fingerprint csrPublicKeyFingerprint,
+			@Nullable String aliasHint) throws IOException {
+		Entry matchingEntry = matchPKCS10CertificateRequest(csr, csrPublicKeyFingerprint);
+
+		if (matchingEntry != null) {
+			if (!matchingEntry.hasCSR()) {
+				CertObjectHolder<PKCS10CertificateRequest> csrHolder = this.storeHandler.createCSR(matchingEntry.id(),
+						csr);
+
+				matchingEntry.setCSR(csrHolder);
+				reindexEntry(matchingEntry);
+				recordChange(UserCertStoreChange.Type.OBJECT_ATTACHED, matchingEntry, null, CertObjectType.CSR);
+			} else {
+				LOG.info("Skipping duplicate CSR ''{0}''.", matchingEntry);
+			}
+		} else {
+			UserCertStoreEntryId entryId = this.storeHandler.nextEntryId(aliasHint);
+			CertObjectHolder<PKCS10CertificateRequest> csrHolder = this.storeHandler.createCSR(entryId, csr);
+
+			matchingEntry = new Entry(entryId, csr.getSubjectX500Principal(), null, null, csrHolder, null);
+			putEntry(matchingEntry);
+		}
+		return matchingEntry;
+	}
+
+	private Entry mergeX509CRL(X509CRL crl, @Nullable String aliasHint) throws IOException {
+		Entry matchingEntry = matchX509CRL(crl);
+
+		if (matchingEntry != null) {
 			if (!matchingEntry.hasCRL()) {
 				CertObjectHolder<X509CRL> crlHolder = this.storeHandler.createCRL(matchingEntry.id(), crl);
 
 				matchingEntry.setCRL(crlHolder);
+				reindexEntry(matchingEntry);
+				recordChange(UserCertStoreChange.Type.OBJECT_ATTACHED, matchingEntry, null, CertObjectType.CRL);
 			} else {
 				LOG.info("Skipping duplicate CRL ''{0}''.", matchingEntry);
 			}
@@ -579,180 +1366,567 @@ public final class UserCertStore {
 			CertObjectHolder<X509CRL> crlHolder = this.storeHandler.createCRL(entryId, crl);
 
 			matchingEntry = new Entry(entryId, crl.getIssuerX500Principal(), null, null, null, crlHolder);
-			this.storeEntries.put(entryId, matchingEntry);
+			putEntry(matchingEntry);
 		}
 		return matchingEntry;
 	}
 
 	@Nullable
-	private Entry matchX509Certificate(X509Certificate crt) throws IOException {
+	private Entry matchX509Certificate(X509Certificate crt, Fingerprint crtPublicKeyFingerprint) throws IOException {
 		X500Principal crtDN = crt.getSubjectX500Principal();
 		PublicKey crtPublicKey = crt.getPublicKey();
-		Entry matchingEntry = null;
+		Entry matchingEntry = matchIndexedPublicKey(crtDN, crtPublicKeyFingerprint);
 
-		for (Entry entry : this.storeEntries.values()) {
-			if (crtDN.equals(entry.dn())) {
-				if (entry.hasPublicKey()
-						&& Arrays.equals(crtPublicKey.getEncoded(), entry.getPublicKey().getEncoded())) {
-					matchingEntry = entry;
-					break;
-				}
-				if (entry.hasCRL() && X509CRLHelper.isCRLSignedBy(entry.getCRL(), crtPublicKey)) {
-					matchingEntry = entry;
-					break;
-				}
-			}
+		if (matchingEntry == null) {
+			matchingEntry = matchIndexedCRLSigner(crtDN, crtPublicKeyFingerprint);
+		}
+		if (matchingEntry == null) {
+			matchingEntry = matchPendingCRLSigner(crtDN, crtPublicKey, crtPublicKeyFingerprint);
 		}
 		return matchingEntry;
 	}
 
 	@Nullable
-	private Entry matchKey(KeyPair key) throws IOException {
+	private Entry matchKey(KeyPair key, Fingerprint publicKeyFingerprint) throws IOException {
 		PublicKey publicKey = key.getPublic();
+		Entry matchingEntry = matchIndexedPublicKey(null, publicKeyFingerprint);
+
+		if (matchingEntry == null) {
+			matchingEntry = matchIndexedCRLSigner(null, publicKeyFingerprint);
+		}
+		if (matchingEntry == null) {
+			matchingEntry = matchPendingCRLSigner(null, publicKey, publicKeyFingerprint);
+		}
+		return matchingEntry;
+	}
+
+	@Nullable
+	private Entry matchPKCS10CertificateRequest(PKCS10CertificateRequest csr, Fingerprint csrPublicKeyFingerprint)
+			throws IOException {
+		X500Principal csrDN = csr.getSubjectX500Principal();
+		PublicKey csrPublicKey = csr.getPublicKey();
+		Entry matchingEntry = matchIndexedPublicKey(csrDN, csrPublicKeyFingerprint);
+
+		if (matchingEntry == null) {
+			matchingEntry = matchIndexedCRLSigner(null, csrPublicKeyFingerprint);
+		}
+		if (matchingEntry == null) {
+			matchingEntry = matchPendingCRLSigner(null, csrPublicKey, csrPublicKeyFingerprint);
+		}
+		return matchingEntry;
+	}
+
+	@Nullable
+	private Entry matchX509CRL(X509CRL crl) throws IOException {
+		X500Principal crlDN = crl.getIssuerX500Principal();
 		Entry matchingEntry = null;
 
-		for (Entry entry : this.storeEntries.values()) {
-			if (entry.hasPublicKey() && Arrays.equals(publicKey.getEncoded(), entry.getPublicKey().getEncoded())) {
+		for (Entry entry : indexedEntries(this.dnIndex, crlDN)) {
+			if (entry.hasPublicKey() && X509CRLHelper.isCRLSignedBy(crl, entry.getPublicKey())) {
 				matchingEntry = entry;
 				break;
 			}
-			if (entry.hasCRL() && X509CRLHelper.isCRLSignedBy(entry.getCRL(), publicKey)) {
-				matchingEntry = entry;
-				break;
+			try {
+				if (entry.hasCRL() && Arrays.equals(entry.getCRL().getEncoded(), crl.getEncoded())) {
+					matchingEntry = entry;
+					break;
+				}
+			} catch (CRLException e) {
+				throw new CertProviderException(e);
 			}
 		}
 		return matchingEntry;
 	}
 
 	@Nullable
-	private Entry matchPKCS10CertificateRequest(PKCS10CertificateRequest csr) throws IOException {
-		X500Principal csrDN = csr.getSubjectX500Principal();
-		PublicKey csrPublicKey = csr.getPublicKey();
+	private Entry matchIndexedPublicKey(@Nullable X500Principal dn, Fingerprint publicKeyFingerprint) {
 		Entry matchingEntry = null;
 
-		for (Entry entry : this.storeEntries.values()) {
-			if (csrDN.equals(entry.dn()) && entry.hasPublicKey()
-					&& Arrays.equals(csrPublicKey.getEncoded(), entry.getPublicKey().getEncoded())) {
+		for (Entry entry : indexedEntries(this.publicKeyIndex, publicKeyFingerprint)) {
+			if (dn == null || dn.equals(entry.dn())) {
 				matchingEntry = entry;
 				break;
 			}
-			if (entry.hasCRL() && X509CRLHelper.isCRLSignedBy(entry.getCRL(), csrPublicKey)) {
+		}
+		return matchingEntry;
+	}
+
+	@Nullable
+	private Entry matchIndexedCRLSigner(@Nullable X500Principal dn, Fingerprint publicKeyFingerprint) {
+		Entry matchingEntry = this.crlSignerIndex.get(publicKeyFingerprint);
+
+		return (matchingEntry != null && (dn == null || dn.equals(matchingEntry.dn())) ? matchingEntry : null);
+	}
+
+	@Nullable
+	private Entry matchPendingCRLSigner(@Nullable X500Principal dn, PublicKey publicKey,
+			Fingerprint publicKeyFingerprint) throws IOException {
+		// Fallback: Verify all CRLs which have not yet been linked to their signing key
+		Collection<Entry> candidates = (dn != null ? indexedEntries(this.dnIndex, dn) : this.pendingCRLEntries);
+		Entry matchingEntry = null;
+
+		for (Entry entry : candidates) {
+			if (this.pendingCRLEntries.contains(entry) && X509CRLHelper.isCRLSignedBy(entry.getCRL(), publicKey)) {
 				matchingEntry = entry;
 				break;
 			}
 		}
+		if (matchingEntry != null) {
+			this.pendingCRLEntries.remove(matchingEntry);
+			this.crlSignerIndex.put(publicKeyFingerprint, matchingEntry);
+			matchingEntry.setCRLSignerFingerprint(publicKeyFingerprint);
+		}
 		return matchingEntry;
 	}
 
+	private void putEntry(Entry entry) throws IOException {
+		this.storeEntries.put(entry.id(), entry);
+		this.snapshotEntries.add(entry);
+		indexEntry(entry);
+		invalidateIssuers(entry);
+		recordChange(UserCertStoreChange.Type.ENTRY_ADDED, entry, null, null);
+	}
+
 	@Nullable
-	private Entry matchX509CRL(X509CRL crl) throws IOException {
-		X500Principal crlDN = crl.getIssuerX500Principal();
-		Entry matchingEntry = null;
+	private Entry removeEntry(UserCertStoreEntryId entryId) {
+		Entry entry = this.storeEntries.remove(entryId);
 
-		for (Entry entry : this.storeEntries.values()) {
-			if (crlDN.equals(entry.dn())) {
-				if (entry.hasPublicKey() && X509CRLHelper.isCRLSignedBy(crl, entry.getPublicKey())) {
-					matchingEntry = entry;
-					break;
-				}
-				try {
-					if (entry.hasCRL() && Arrays.equals(entry.getCRL().getEncoded(), crl.getEncoded())) {
-						matchingEntry = entry;
-						break;
-					}
-				} catch (CRLException e) {
-					throw new CertProviderException(e);
+		if (entry != null) {
+			unindexEntry(entry);
+
+			Entry issuer = this.issuerCache.remove(entry);
+
+			if (issuer != null && !issuer.equals(entry)) {
+				removeIndexedEntry(this.issuedCache, issuer, entry);
+			}
+			this.snapshotEntries.add(entry);
+			this.rootEntries.remove(entry);
+
+			// All entries issued by the removed entry have to be resolved again
+			Set<Entry> issuedEntries = this.issuedCache.remove(entry);
+
+			if (issuedEntries != null) {
+				this.unresolvedIssuers.addAll(issuedEntries);
+			}
+			this.unresolvedIssuers.remove(entry);
+			this.externalIssuers.remove(entry.dn(), entry);
+			recordChange(UserCertStoreChange.Type.ENTRY_REMOVED, entry, null, null);
+		}
+		return entry;
+	}
+
+	private void reindexEntry(Entry entry) throws IOException {
+		unindexEntry(entry);
+		indexEntry(entry);
+		invalidateIssuers(entry);
+	}
+
+	private void invalidateIssuers(Entry entry) {
+		if (!entry.isExternal()) {
+			this.unresolvedIssuers.add(entry);
+
+			// The entry may be the missing issuer of entries currently referring to an external issuer
+			Entry externalIssuer = this.externalIssuers.get(entry.dn());
+
+			if (externalIssuer != null) {
+				this.unresolvedIssuers.addAll(indexedEntries(this.issuedCache, externalIssuer));
+			}
+		}
+	}
+
+	private void indexEntry(Entry entry) throws IOException {
+		Fingerprint publicKeyFingerprint = null;
+		List<ByteBuffer> keyIdentifiers = Collections.emptyList();
+		EntryAttributes attributes = EntryAttributes.NONE;
+
+		if (entry.hasPublicKey()) {
+			attributes = EntryAttributes.of((entry.hasCRT() ? entry.getCRT() : null), entry.getPublicKey());
+			publicKeyFingerprint = Fingerprint.of(entry.getPublicKey());
+			keyIdentifiers = new ArrayList<>(2);
+			keyIdentifiers.add(ByteBuffer.wrap(KeyHelper.computeKeyIdentifier(entry.getPublicKey())));
+			if (entry.hasCRT()) {
+				byte[] subjectKeyIdentifier = X509CertificateHelper.getSubjectKeyIdentifier(entry.getCRT());
+
+				if (subjectKeyIdentifier != null && !keyIdentifiers.contains(ByteBuffer.wrap(subjectKeyIdentifier))) {
+					keyIdentifiers.add(ByteBuffer.wrap(subjectKeyIdentifier));
 				}
 			}
 		}
-		return matchingEntry;
+		indexEntry(entry, publicKeyFingerprint, keyIdentifiers, attributes);
+	}
+
+	private void indexEntry(Entry entry, @Nullable Fingerprint publicKeyFingerprint, List<ByteBuffer> keyIdentifiers,
+			EntryAttributes attributes) {
+		addIndexedEntry(this.dnIndex, entry.dn(), entry);
+		if (publicKeyFingerprint != null) {
+			addIndexedEntry(this.publicKeyIndex, publicKeyFingerprint, entry);
+			entry.setPublicKeyFingerprint(publicKeyFingerprint);
+		}
+		for (ByteBuffer keyIdentifier : keyIdentifiers) {
+			addIndexedEntry(this.keyIdentifierIndex, keyIdentifier, entry);
+		}
+		entry.setKeyIdentifiers(keyIdentifiers);
+
+		Date notAfter = attributes.notAfter();
+		String keyAlgorithm = attributes.keyAlgorithm();
+
+		if (notAfter != null) {
+			addIndexedEntry(this.notAfterIndex, notAfter, entry);
+		}
+		for (String dnsName : attributes.dnsNames()) {
+			addIndexedEntry(this.dnsNameIndex, dnsName, entry);
+		}
+		if (keyAlgorithm != null) {
+			addIndexedEntry(this.keyAlgorithmIndex, keyAlgorithm, entry);
+		}
+		entry.setAttributes(attributes);
+		if (entry.hasCRL()) {
+			this.pendingCRLEntries.add(entry);
+		}
+	}
+
+	private void unindexEntry(Entry entry) {
+		removeIndexedEntry(this.dnIndex, entry.dn(), entry);
+
+		Fingerprint publicKeyFingerprint = entry.getPublicKeyFingerprint();
+
+		if (publicKeyFingerprint != null) {
+			removeIndexedEntry(this.publicKeyIndex, publicKeyFingerprint, entry);
+			entry.setPublicKeyFingerprint(null);
+		}
+		for (ByteBuffer keyIdentifier : entry.getKeyIdentifiers()) {
+			removeIndexedEntry(this.keyIdentifierIndex, keyIdentifier, entry);
+		}
+		entry.setKeyIdentifiers(Collections.emptyList());
+
+		EntryAttributes attributes = entry.attributes();
+		Date notAfter = attributes.notAfter();
+		String keyAlgorithm = attributes.keyAlgorithm();
+
+		if (notAfter != null) {
+			removeIndexedEntry(this.notAfterIndex, notAfter, entry);
+		}
+		for (String dnsName : attributes.dnsNames()) {
+			removeIndexedEntry(this.dnsNameIndex, dnsName, entry);
+		}
+		if (keyAlgorithm != null) {
+			removeIndexedEntry(this.keyAlgorithmIndex, keyAlgorithm, entry);
+		}
+		entry.setAttributes(EntryAttributes.NONE);
+
+		Fingerprint crlSignerFingerprint = entry.getCRLSignerFingerprint();
+
+		if (crlSignerFingerprint != null) {
+			this.crlSignerIndex.remove(crlSignerFingerprint, entry);
+			entry.setCRLSignerFingerprint(null);
+		}
+		this.pendingCRLEntries.remove(entry);
+	}
+
+	private static <K> Set<Entry> indexedEntries(Map<K, Set<Entry>> index, K key) {
+		Set<Entry> entries = index.get(key);
+
+		return (entries != null ? entries : Collections.emptySet());
+	}
+
+	private static <K> void addIndexedEntry(Map<K, Set<Entry>> index, K key, Entry entry) {
+		index.computeIfAbsent(key, k -> new HashSet<>()).add(entry);
 	}
 
-	private void resetIssuers() throws IOException {
-		// Collect external issuers and remove invalid issuers
-		Map<X500Principal, Entry> externalIssuers = new HashMap<>(this.storeEntries.size());
+	private static <K> void removeIndexedEntry(Map<K, Set<Entry>> index, K key, Entry entry) {
+		Set<Entry> entries = index.get(key);
 
-		for (Entry entry : this.storeEntries.values()) {
-			Entry issuer = this.issuerCache.get(entry);
+		if (entries != null && entries.remove(entry) && entries.isEmpty()) {
+			index.remove(key);
+		}
+	}
+
+	private void resolveIssuers() throws IOException {
+		long start = StoreMetrics.start();
+		List<Entry> resolvedEntries = new ArrayList<>();
+
+		// Only entries affected by the latest changes need to be resolved
+		while (!this.unresolvedIssuers.isEmpty()) {
+			Entry entry = this.unresolvedIssuers.iterator().next();
+
+			if (this.storeEntries.get(entry.id()) == entry) {
+				linkIssuer(entry, findIssuer(entry));
+				resolvedEntries.add(entry);
+			}
+			this.unresolvedIssuers.remove(entry);
+		}
 
-			if (issuer != null) {
-				if (issuer.isExternal()) {
-					externalIssuers.put(issuer.dn(), this.storeEntries.get(issuer.id()));
-				} else if (!this.storeEntries.containsKey(issuer.id())) {
-					this.issuerCache.remove(entry);
+		// Keep serial counters ahead of any CRT added to an already counted hierarchy
+		for (Entry resolvedEntry : resolvedEntries) {
+			if (resolvedEntry.hasCRT() && this.storeEntries.get(resolvedEntry.id()) == resolvedEntry) {
+				Entry rootEntry = rootIssuer(resolvedEntry);
+
+				if (rootEntry != resolvedEntry && rootEntry.hasCRT()) {
+					this.serials.observe(serialsKey(rootEntry), resolvedEntry.getCRT().getSerialNumber());
 				}
 			}
 		}
 
-		// Update all missing and external issuer references
-		Set<UserCertStoreEntryId> usedExternalIssuerIds = new HashSet<>(this.storeEntries.size());
+		// Drop no longer referenced external issuers
+		for (Entry externalIssuer : new ArrayList<>(this.externalIssuers.values())) {
+			if (!this.issuedCache.containsKey(externalIssuer)) {
+				removeEntry(externalIssuer.id());
+			}
+		}
+		StoreMetrics.record(StoreMetrics.Operation.ISSUER_RESOLUTION, start);
+	}
 
-		for (Entry entry : this.storeEntries.values()) {
-			Entry issuer = this.issuerCache.get(entry);
+	private Entry rootIssuer(Entry entry) {
+		Set<Entry> visitedEntries = new HashSet<>();
+		Entry rootEntry = entry;
+		Entry issuerEntry = Objects.requireNonNull(this.issuerCache.get(rootEntry));
 
-			if (issuer == null || issuer.isExternal()) {
-				if (entry.hasCRT()) {
-					X509Certificate entryCRT = entry.getCRT();
-					X500Principal issuerDN = entryCRT.getIssuerX500Principal();
-					Entry foundIssuerEntry = null;
+		while (!issuerEntry.equals(rootEntry) && visitedEntries.add(rootEntry)) {
+			rootEntry = issuerEntry;
+			issuerEntry = Objects.requireNonNull(this.issuerCache.get(rootEntry));
+		}
+		return rootEntry;
+	}
 
-					for (Entry issuerEntry : this.storeEntries.values()) {
-						if (issuerDN.equals(issuerEntry.dn()) && issuerEntry.hasPublicKey()
-								&& X509CertificateHelper.isCRTSignedBy(entryCRT, issuerEntry.getPublicKey())) {
-							foundIssuerEntry = issuerEntry;
-							break;
-						}
-					}
-					if (foundIssuerEntry != null) {
-						this.issuerCache.put(entry, foundIssuerEntry);
-					} else {
-						Entry externalIssuer = externalIssuers.get(issuerDN);
-
-						if (externalIssuer == null) {
-							externalIssuer = new Entry(this.storeHandler.nextEntryId(null), issuerDN);
-							this.issuerCache.put(externalIssuer, externalIssuer);
-							externalIssuers.put(issuerDN, externalIssuer);
-						}
-						this.issuerCache.put(entry, externalIssuer);
-						usedExternalIssuerIds.add(externalIssuer.id());
-					}
-				} else {
-					// Without a CRT an entry is always self-signed
-					this.issuerCache.put(entry, entry);
+	private BigInteger maxIssuedSerial(Entry issuer, BigInteger serial) throws IOException {
+		BigInteger maxSerial = serial;
+
+		if (!issuer.hasCRT()) {
+			throw new IOException("Incomplete CA; unable to determine next serial");
+		}
+		maxSerial = maxSerial.max(issuer.getCRT().getSerialNumber());
+		for (Entry issuedEntry : indexedEntries(this.issuedCache, issuer)) {
+			maxSerial = maxIssuedSerial(issuedEntry, maxSerial);
+		}
+		return maxSerial;
+	}
+
+	private static String serialsKey(Entry rootEntry) {
+		return Objects.requireNonNull(rootEntry.getPublicKeyFingerprint()).toString();
+	}
+
+	private Entry findIssuer(Entry entry) throws IOException {
+		Entry issuer;
+
+		if (entry.hasCRT()) {
+			X509Certificate entryCRT = entry.getCRT();
+			X500Principal issuerDN = entryCRT.getIssuerX500Principal();
+			Entry foundIssuerEntry = null;
+
+			for (Entry issuerEntry : getIssuerCandidates(entryCRT, issuerDN)) {
+				if (issuerEntry.hasPublicKey()
+						&& X509CertificateHelper.isCRTSignedBy(entryCRT, issuerEntry.getPublicKey())) {
+					foundIssuerEntry = issuerEntry;
+					break;
 				}
 			}
+			issuer = (foundIssuerEntry != null ? foundIssuerEntry : externalIssuer(issuerDN));
+		} else {
+			// Without a CRT an entry is always self-signed
+			issuer = entry;
 		}
+		return issuer;
+	}
 
-		// Also update external issuer entries as needed
-		for (Entry externalIssuer : externalIssuers.values()) {
-			UserCertStoreEntryId externalIssuerId = externalIssuer.id();
+	private Entry externalIssuer(X500Principal issuerDN) throws IOException {
+		Entry externalIssuer = this.externalIssuers.get(issuerDN);
 
-			if (usedExternalIssuerIds.contains(externalIssuer.id())) {
-				this.storeEntries.put(externalIssuerId, externalIssuer);
-			} else {
-				this.storeEntries.remove(externalIssuerId);
-				this.issuerCache.remove(externalIssuer);
+		if (externalIssuer == null) {
+			externalIssuer = new Entry(this.storeHandler.nextEntryId(null), issuerDN);
+			this.externalIssuers.put(externalIssuer.dn(), externalIssuer);
+			putEntry(externalIssuer);
+			linkIssuer(externalIssuer, externalIssuer);
+		}
+		return externalIssuer;
+	}
+
+	private Collection<Entry> getIssuerCandidates(X509Certificate crt, X500Principal issuerDN) throws IOException {
+		Collection<Entry> issuerCandidates = indexedEntries(this.dnIndex, issuerDN);
+		byte[] authorityKeyIdentifier = X509CertificateHelper.getAuthorityKeyIdentifier(crt);
+
+		// Narrow down the candidates via the key identifier (if possible) to avoid unnecessary signature checks
+		if (authorityKeyIdentifier != null && issuerCandidates.size() > 1) {
+			List<Entry> keyIdentifierCandidates = new ArrayList<>();
+
+			for (Entry entry : indexedEntries(this.keyIdentifierIndex, ByteBuffer.wrap(authorityKeyIdentifier))) {
+				if (issuerCandidates.contains(entry)) {
+					keyIdentifierCandidates.add(entry);
+				}
+			}
+			if (!keyIdentifierCandidates.isEmpty()) {
+				issuerCandidates = keyIdentifierCandidates;
 			}
 		}
+		return issuerCandidates;
+	}
+
+	private void linkIssuer(Entry entry, Entry issuer) {
+		Entry previousIssuer = this.issuerCache.put(entry, issuer);
+
+		this.snapshotEntries.add(entry);
+		if (previousIssuer != null && !previousIssuer.equals(entry)) {
+			removeIndexedEntry(this.issuedCache, previousIssuer, entry);
+		}
+		if (!issuer.equals(entry)) {
+			addIndexedEntry(this.issuedCache, issuer, entry);
+			this.rootEntries.remove(entry);
+		} else {
+			this.rootEntries.add(entry);
+		}
+		// Entries are equal by id; hence an issuer rebuilt under the same id has to be detected via its identity
+		if (issuer != previousIssuer) {
+			recordChange(UserCertStoreChange.Type.ISSUER_CHANGED, entry, issuer, null);
+		}
 	}
 
 	Entry resolveIssuer(Entry entry) {
-		return Objects.requireNonNull(this.issuerCache.get(entry));
+		Lock readLock = this.storeLock.readLock();
+
+		readLock.lock();
+		try {
+			return Objects.requireNonNull(this.issuerCache.get(entry));
+		} finally {
+			readLock.unlock();
+		}
+	}
+
+	private final class StreamingImport {
+
+		private final PasswordCallback newPassword;
+
+		@Nullable
+		private final String aliasHint;
+
+		private List<CertObjectStore> batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+
+		private final Set<UserCertStoreEntry> importedEntries = new LinkedHashSet<>();
+
+		private int objectCount = 0;
+
+		private int duplicateCount = 0;
+
+		private long decodeNanos = 0;
+
+		private long mergeNanos = 0;
+
+		private long resolveNanos = 0;
+
+		StreamingImport(PasswordCallback newPassword, @Nullable String aliasHint) {
+			this.newPassword = newPassword;
+			this.aliasHint = aliasHint;
+		}
+
+		void add(CertObjectStore.Entry certObject) throws IOException {
+			// Wrap each object individually to keep duplicate objects (and have them counted as such)
+			this.batch.add(CertObjectStore.wrap(certObject));
+			if (this.batch.size() >= IMPORT_BATCH_SIZE) {
+				importBatch();
+			}
+		}
+
+		UserCertStoreImportResult finish() throws IOException {
+			if (!this.batch.isEmpty()) {
+				importBatch();
+			}
+
+			UserCertStoreImportResult result = new UserCertStoreImportResult(this.importedEntries, this.objectCount,
+					this.duplicateCount, this.decodeNanos, this.mergeNanos, this.resolveNanos);
+
+			LOG.debug("Imported streamed certificate objects ({0})", result);
+			return result;
+		}
+
+		private void importBatch() throws IOException {
+			UserCertStoreImportResult batchResult = importCertObjects(this.batch, this.newPassword, this.aliasHint,
+					true);
+
+			this.batch = new ArrayList<>(IMPORT_BATCH_SIZE);
+			this.importedEntries.addAll(batchResult.importedEntries());
+			this.objectCount += batchResult.objectCount();
+			this.duplicateCount += batchResult.duplicateCount();
+			this.decodeNanos += batchResult.decodeTime().toNanos();
+			this.mergeNanos += batchResult.mergeTime().toNanos();
+			this.resolveNanos += batchResult.resolveTime().toNanos();
+		}
+
+	}
+
+	private static class ImportObject {
+
+		private final CertObjectStore.Entry certObject;
+
+		private final Fingerprint fingerprint;
+
+		@Nullable
+		private final Fingerprint publicKeyFingerprint;
+
+		@Nullable
+		private final String aliasHint;
+
+		ImportObject(CertObjectStore.Entry certObject, @Nullable String aliasHint) {
+			PublicKey publicKey;
+
+			switch (certObject.type()) {
+			case CRT:
+				publicKey = certObject.getCRT().getPublicKey();
+				break;
+			case KEY:
+				publicKey = certObject.getKey().getPublic();
+				break;
+			case CSR:
+				publicKey = certObject.getCSR().getPublicKey();
+				break;
+			default:
+				publicKey = null;
+			}
+			this.certObject = certObject;
+			this.fingerprint = certObject.fingerprint();
+			this.publicKeyFingerprint = (publicKey != null ? Fingerprint.of(publicKey) : null);
+			this.aliasHint = aliasHint;
+		}
+
+		CertObjectStore.Entry certObject() {
+			return this.certObject;
+		}
+
+		Fingerprint fingerprint() {
+			return this.fingerprint;
+		}
+
+		Fingerprint publicKeyFingerprint() {
+			return Objects.requireNonNull(this.publicKeyFingerprint);
+		}
+
+		@Nullable
+		String aliasHint() {
+			return this.aliasHint;
+		}
+
 	}
 
 	private class Entry extends UserCertStoreEntry {
 
 		@Nullable
-		private CertObjectHolder<X509Certificate> crtHolder;
+		private volatile CertObjectHolder<X509Certificate> crtHolder;
+
+		@Nullable
+		private volatile SecureCertObjectHolder<KeyPair> keyHolder;
 
 		@Nullable
-		private SecureCertObjectHolder<KeyPair> keyHolder;
+		private volatile CertObjectHolder<PKCS10CertificateRequest> csrHolder;
 
 		@Nullable
-		private CertObjectHolder<PKCS10CertificateRequest> csrHolder;
+		private volatile CertObjectHolder<X509CRL> crlHolder;
 
 		@Nullable
-		private CertObjectHolder<X509CRL> crlHolder;
+		private Fingerprint publicKeyFingerprint;
+
+		@Nullable
+		private Fingerprint crlSignerFingerprint;
+
+		private List<ByteBuffer> keyIdentifiers = Collections.emptyList();
+
+		private EntryAttributes attributes = EntryAttributes.NONE;
 
 		Entry(UserCertStoreEntryId id, X500Principal dn, @Nullable CertObjectHolder<X509Certificate> crtHolder,
 				@Nullable SecureCertObjectHolder<KeyPair> keyHolder,
@@ -842,6 +2016,51 @@ public final class UserCertStore {
 			this.crlHolder = crlHolder;
 		}
 
+		@Override
+		boolean isRevokedByCRL(X509Certificate crt) throws IOException {
+			CertObjectHolder<X509CRL> checkedCRLHolder = ensureHas(this.crlHolder);
+			RevokedSerials revokedSerials = checkedCRLHolder.index(RevokedSerials::of);
+
+			// The CRL itself is only needed for indirect CRL entries not covered by the index
+			return (revokedSerials.isIndirect() ? revokedSerials.isRevoked(checkedCRLHolder.get(), crt)
+					: revokedSerials.isRevoked(crt));
+		}
+
+		@Nullable
+		Fingerprint getPublicKeyFingerprint() {
+			return this.publicKeyFingerprint;
+		}
+
+		void setPublicKeyFingerprint(@Nullable Fingerprint publicKeyFingerprint) {
+			this.publicKeyFingerprint = publicKeyFingerprint;
+		}
+
+		@Nullable
+		Fingerprint getCRLSignerFingerprint() {
+			return this.crlSignerFingerprint;
+		}
+
+		void setCRLSignerFingerprint(@Nullable Fingerprint crlSignerFingerprint) {
+			this.crlSignerFingerprint = crlSignerFingerprint;
+		}
+
+		List<ByteBuffer> getKeyIdentifiers() {
+			return this.keyIdentifiers;
+		}
+
+		void setKeyIdentifiers(List<ByteBuffer> keyIdentifiers) {
+			this.keyIdentifiers = keyIdentifiers;
+		}
+
+		@Override
+		EntryAttributes attributes() {
+			return this.attributes;
+		}
+
+		void setAttributes(EntryAttributes attributes) {
+			this.attributes = attributes;
+		}
+
 		@Override
 		public List<Path> getFilePaths() {
 			List<Path> filePaths = new ArrayList<>();
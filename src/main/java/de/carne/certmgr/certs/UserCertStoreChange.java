@@ -0,0 +1,157 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.util.List;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * A single change of a store's content.
+ * <p>
+ * Changes are reported in batches via {@linkplain Listener listeners} registered with the store (see
+ * {@link UserCertStore#addChangeListener(Listener)}). A batch contains all changes caused by a single store operation
+ * in the order they have been applied. Hence a consumer can keep its view of the store up-to-date by applying the
+ * changes only, rather than re-reading the whole store.
+ */
+public final class UserCertStoreChange {
+
+	private final Type type;
+	private final UserCertStoreEntry entry;
+	@Nullable
+	private final UserCertStoreEntry issuer;
+	@Nullable
+	private final CertObjectType objectType;
+
+	UserCertStoreChange(Type type, UserCertStoreEntry entry, @Nullable UserCertStoreEntry issuer,
+			@Nullable CertObjectType objectType) {
+		this.type = type;
+		this.entry = entry;
+		this.issuer = issuer;
+		this.objectType = objectType;
+	}
+
+	/**
+	 * Get this change's type.
+	 *
+	 * @return This change's type.
+	 */
+	public Type type() {
+		return this.type;
+	}
+
+	/**
+	 * Get the entry affected by this change.
+	 *
+	 * @return The entry affected by this change.
+	 */
+	public UserCertStoreEntry entry() {
+		return this.entry;
+	}
+
+	/**
+	 * Get the entry's new issuer.
+	 *
+	 * @return The entry's new issuer in case of a {@linkplain Type#ISSUER_CHANGED issuer change} or {@code null} for
+	 *         all other change types. For self-signed entries the entry itself is returned.
+	 */
+	@Nullable
+	public UserCertStoreEntry issuer() {
+		return this.issuer;
+	}
+
+	/**
+	 * Get the type of the certificate object attached to the entry.
+	 *
+	 * @return The type of the attached certificate object in case of an {@linkplain Type#OBJECT_ATTACHED object
+	 *         attachment} or {@linkplain Type#CRL_UPDATED CRL update} or {@code null} for all other change types.
+	 */
+	@Nullable
+	public CertObjectType objectType() {
+		return this.objectType;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buffer = new StringBuilder();
+
+		buffer.append(this.type).append(": ").append(this.entry);
+		if (this.issuer != null) {
+			buffer.append(" -> ").append(this.issuer);
+		}
+		if (this.objectType != null) {
+			buffer.append(" (").append(this.objectType).append(')');
+		}
+		return buffer.toString();
+	}
+
+	/**
+	 * Change types.
+	 */
+	public enum Type {
+
+		/**
+		 * An entry has been added to the store.
+		 * <p>
+		 * The entry's issuer is reported by a subsequent {@link #ISSUER_CHANGED} change.
+		 */
+		ENTRY_ADDED,
+
+		/**
+		 * An entry has been removed from the store.
+		 * <p>
+		 * Entries issued by the removed entry are re-linked by subsequent {@link #ISSUER_CHANGED} changes.
+		 */
+		ENTRY_REMOVED,
+
+		/**
+		 * A certificate object has been attached to an existing entry.
+		 */
+		OBJECT_ATTACHED,
+
+		/**
+		 * An entry's issuer has been resolved or has changed.
+		 */
+		ISSUER_CHANGED,
+
+		/**
+		 * An entry's CRL has been generated or updated (see {@link UserCertStore#updateEntryCRL}).
+		 */
+		CRL_UPDATED
+
+	}
+
+	/**
+	 * Listener interface used to report store changes.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * Called after one or more changes have been applied to a store.
+		 * <p>
+		 * The listener is invoked after the store's lock has been released; hence the listener may access the store
+		 * freely. Batches are reported one after another in the order they have been applied.
+		 *
+		 * @param store The changed store.
+		 * @param changes The applied changes.
+		 */
+		void onStoreChanged(UserCertStore store, List<UserCertStoreChange> changes);
+
+	}
+
+}
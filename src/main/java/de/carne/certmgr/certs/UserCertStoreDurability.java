@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The durability levels available for writing a persistent store's certificate object files.
+ * <p>
+ * Regardless of the durability level, certificate object files are always written to a temporary file first and then
+ * renamed to their final name. Hence a certificate object file never contains partially written data.
+ */
+public enum UserCertStoreDurability {
+
+	/**
+	 * Files are written atomically but never forced to disk explicitly.
+	 */
+	NONE,
+
+	/**
+	 * All files written during a single store operation (e.g. a bulk import) are forced to disk in one go at the end
+	 * of the operation.
+	 */
+	GROUP_COMMIT,
+
+	/**
+	 * Every file is forced to disk immediately after it has been written.
+	 */
+	SYNC;
+
+	/**
+	 * The default durability level.
+	 */
+	public static final UserCertStoreDurability DEFAULT = GROUP_COMMIT;
+
+	/**
+	 * Get the durability level for a specific name.
+	 *
+	 * @param name The name to evaluate (may be {@code null}).
+	 * @return The durability level matching the submitted name or {@link #DEFAULT} if the name is {@code null} or
+	 *         unknown.
+	 */
+	public static UserCertStoreDurability valueOfName(@Nullable String name) {
+		UserCertStoreDurability durability = DEFAULT;
+
+		if (name != null) {
+			for (UserCertStoreDurability value : values()) {
+				if (value.name().equalsIgnoreCase(name.trim())) {
+					durability = value;
+					break;
+				}
+			}
+		}
+		return durability;
+	}
+
+}
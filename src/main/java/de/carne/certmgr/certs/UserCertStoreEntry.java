@@ -55,7 +55,8 @@ public abstract class UserCertStoreEntry {
 
 	UserCertStoreEntry(UserCertStoreEntryId id, X500Principal dn) {
 		this.id = id;
-		this.dn = dn;
+		// Shared by all entries with the same DN (e.g. a CA and the external issuer placeholders referring to it)
+		this.dn = X500Names.intern(dn);
 	}
 
 	/**
@@ -293,13 +294,24 @@ public abstract class UserCertStoreEntry {
 		boolean isValid = true;
 
 		if (hasCRT()) {
-			try {
-				X509Certificate crt = getCRT();
-				Date now = new Date();
+			EntryAttributes attributes = attributes();
+			Date notBefore = attributes.notBefore();
+			Date notAfter = attributes.notAfter();
 
-				isValid = crt.getNotBefore().before(now) && crt.getNotAfter().after(now);
-			} catch (IOException e) {
-				Exceptions.warn(e);
+			// Avoid decoding the CRT if the validity range is already known
+			if (notBefore != null && notAfter != null) {
+				long now = System.currentTimeMillis();
+
+				isValid = notBefore.getTime() < now && now < notAfter.getTime();
+			} else {
+				try {
+					X509Certificate crt = getCRT();
+					Date now = new Date();
+
+					isValid = crt.getNotBefore().before(now) && crt.getNotAfter().after(now);
+				} catch (IOException e) {
+					Exceptions.warn(e);
+				}
 			}
 		}
 		return isValid;
@@ -318,7 +330,7 @@ public abstract class UserCertStoreEntry {
 
 			if (issuer.hasCRL()) {
 				try {
-					isRevoked = issuer.getCRL().isRevoked(getCRT());
+					isRevoked = issuer.isRevokedByCRL(getCRT());
 				} catch (IOException e) {
 					Exceptions.warn(e);
 				}
@@ -327,6 +339,26 @@ public abstract class UserCertStoreEntry {
 		return isRevoked;
 	}
 
+	/**
+	 * Check whether a CRT has been revoked by this entry's CRL object.
+	 *
+	 * @param crt The CRT to check.
+	 * @return {@code true} if the CRT has been revoked.
+	 * @throws IOException if an I/O error occurs while accessing the CRL object.
+	 */
+	boolean isRevokedByCRL(X509Certificate crt) throws IOException {
+		return getCRL().isRevoked(crt);
+	}
+
+	/**
+	 * Get this entry's cached attributes.
+	 *
+	 * @return This entry's cached attributes.
+	 */
+	EntryAttributes attributes() {
+		return EntryAttributes.NONE;
+	}
+
 	/**
 	 * Check whether this entry is able to issue other certificates (means has a key and hat it's Basic Constraints CA
 	 * flag set to true).
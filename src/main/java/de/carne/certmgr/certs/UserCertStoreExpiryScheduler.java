@@ -0,0 +1,251 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.time.Clock;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.boot.logging.Log;
+import de.carne.util.SystemProperties;
+
+/**
+ * Scheduler reporting upcoming and actual CRT expirations of a store's entries.
+ * <p>
+ * The scheduler evaluates the store's expiry index and sleeps until the next entry either enters the warning period or
+ * actually expires. Whenever a store change affects the entries' CRTs, the next due time is re-evaluated. Hence no
+ * periodic scanning of the store is required. Events are reported on the scheduler's own (daemon) thread.
+ * <p>
+ * On start all entries already within the warning period are reported as {@linkplain Event#EXPIRING expiring}. Entries
+ * which have already expired at that time are not reported.
+ */
+public final class UserCertStoreExpiryScheduler implements AutoCloseable {
+
+	private static final Log LOG = new Log();
+
+	/**
+	 * The default warning period (in days).
+	 * <p>
+	 * The default warning period is controlled via the system property
+	 * {@code de.carne.certmgr.certs.expiryWarningDays} and defaults to 30 days.
+	 */
+	public static final int DEFAULT_WARNING_DAYS = SystemProperties
+			.intValue(UserCertStoreExpiryScheduler.class.getPackage().getName() + ".expiryWarningDays", 30);
+
+	private final UserCertStore store;
+	private final long warningMillis;
+	private final Listener listener;
+	private final Clock clock;
+	private final ScheduledExecutorService executor;
+	private final UserCertStoreChange.Listener changeListener = this::onStoreChanged;
+	private final Set<UserCertStoreEntry> expiringEntries = new HashSet<>();
+	private Date expiredFrom;
+	@Nullable
+	private ScheduledFuture<?> scheduledCheck = null;
+
+	private UserCertStoreExpiryScheduler(UserCertStore store, int warningDays, Listener listener, Clock clock) {
+		this.store = store;
+		this.warningMillis = TimeUnit.DAYS.toMillis(warningDays);
+		this.listener = listener;
+		this.clock = clock;
+		this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, UserCertStoreExpiryScheduler.class.getSimpleName());
+
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.expiredFrom = new Date(clock.millis());
+	}
+
+	/**
+	 * Start reporting a store's expiry events using the default warning period.
+	 *
+	 * @param store The store to report the expiry events for.
+	 * @param listener The listener to report the expiry events to.
+	 * @return The started scheduler.
+	 * @see #DEFAULT_WARNING_DAYS
+	 */
+	public static UserCertStoreExpiryScheduler start(UserCertStore store, Listener listener) {
+		return start(store, DEFAULT_WARNING_DAYS, listener);
+	}
+
+	/**
+	 * Start reporting a store's expiry events.
+	 *
+	 * @param store The store to report the expiry events for.
+	 * @param warningDays The number of days before expiry an entry is reported as expiring.
+	 * @param listener The listener to report the expiry events to.
+	 * @return The started scheduler.
+	 */
+	public static UserCertStoreExpiryScheduler start(UserCertStore store, int warningDays, Listener listener) {
+		return start(store, warningDays, listener, Clock.systemUTC());
+	}
+
+	/**
+	 * Start reporting a store's expiry events using a specific clock.
+	 * <p>
+	 * The clock determines the current time for evaluating the entries' expiry as well as for scheduling the next
+	 * check.
+	 *
+	 * @param store The store to report the expiry events for.
+	 * @param warningDays The number of days before expiry an entry is reported as expiring.
+	 * @param listener The listener to report the expiry events to.
+	 * @param clock The clock to use for determining the current time.
+	 * @return The started scheduler.
+	 */
+	public static UserCertStoreExpiryScheduler start(UserCertStore store, int warningDays, Listener listener,
+			Clock clock) {
+		UserCertStoreExpiryScheduler scheduler = new UserCertStoreExpiryScheduler(store, warningDays, listener, clock);
+
+		store.addChangeListener(scheduler.changeListener);
+		scheduler.reschedule();
+		return scheduler;
+	}
+
+	private void onStoreChanged(UserCertStore changedStore, List<UserCertStoreChange> changes) {
+		boolean expiryModified = false;
+
+		for (UserCertStoreChange change : changes) {
+			UserCertStoreChange.Type changeType = change.type();
+
+			if (changeType == UserCertStoreChange.Type.ENTRY_ADDED
+					|| changeType == UserCertStoreChange.Type.ENTRY_REMOVED
+					|| change.objectType() == CertObjectType.CRT) {
+				expiryModified = true;
+				break;
+			}
+		}
+		if (expiryModified) {
+			reschedule();
+		}
+	}
+
+	private void reschedule() {
+		try {
+			this.executor.execute(this::check);
+		} catch (RejectedExecutionException e) {
+			LOG.debug(e, "Ignoring reschedule request for stopped scheduler");
+		}
+	}
+
+	// Only invoked on the scheduler thread
+	private void check() {
+		ScheduledFuture<?> checkedScheduledCheck = this.scheduledCheck;
+
+		if (checkedScheduledCheck != null) {
+			checkedScheduledCheck.cancel(false);
+			this.scheduledCheck = null;
+		}
+
+		long now = this.clock.millis();
+		// An entry is expired as soon as the current time is not before its notAfter date
+		Date expiredTo = new Date(now + 1);
+		Date expiringTo = new Date(expiredTo.getTime() + this.warningMillis);
+		Set<UserCertStoreEntry> expiredEntries = this.store
+				.findEntries(new UserCertStoreQuery().expiresBetween(this.expiredFrom, expiredTo));
+		Set<UserCertStoreEntry> currentExpiringEntries = this.store
+				.findEntries(new UserCertStoreQuery().expiresBetween(expiredTo, expiringTo));
+		Set<UserCertStoreEntry> newExpiringEntries = new HashSet<>(currentExpiringEntries);
+
+		newExpiringEntries.removeAll(this.expiringEntries);
+		this.expiringEntries.clear();
+		this.expiringEntries.addAll(currentExpiringEntries);
+		this.expiredFrom = expiredTo;
+		fireEvent(Event.EXPIRING, newExpiringEntries);
+		fireEvent(Event.EXPIRED, expiredEntries);
+
+		Date nextExpiry = this.store.nextExpiry(expiredTo);
+		Date nextExpiring = this.store.nextExpiry(expiringTo);
+		long nextDue = Long.MAX_VALUE;
+
+		if (nextExpiry != null) {
+			nextDue = nextExpiry.getTime();
+		}
+		if (nextExpiring != null) {
+			nextDue = Math.min(nextDue, nextExpiring.getTime() - this.warningMillis);
+		}
+		if (nextDue < Long.MAX_VALUE && !this.executor.isShutdown()) {
+			long delay = Math.max(0, nextDue - this.clock.millis());
+
+			LOG.debug("Next expiry check for store ''{0}'' in {1} ms", this.store.storeName(), delay);
+			this.scheduledCheck = this.executor.schedule(this::check, delay, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	private void fireEvent(Event event, Set<UserCertStoreEntry> entries) {
+		if (!entries.isEmpty()) {
+			try {
+				this.listener.onExpiryEvent(event, Collections.unmodifiableSet(entries));
+			} catch (RuntimeException e) {
+				LOG.warning(e, "Expiry listener failed while processing event {0}", event);
+			}
+		}
+	}
+
+	/**
+	 * Stop reporting expiry events.
+	 */
+	@Override
+	public void close() {
+		this.store.removeChangeListener(this.changeListener);
+		this.executor.shutdownNow();
+	}
+
+	/**
+	 * Expiry event types.
+	 */
+	public enum Event {
+
+		/**
+		 * The entries' CRTs have entered the warning period.
+		 */
+		EXPIRING,
+
+		/**
+		 * The entries' CRTs have expired.
+		 */
+		EXPIRED
+
+	}
+
+	/**
+	 * Listener interface used to report expiry events.
+	 */
+	@FunctionalInterface
+	public interface Listener {
+
+		/**
+		 * Called whenever one or more entries have entered the warning period or have expired.
+		 *
+		 * @param event The event type.
+		 * @param entries The affected entries.
+		 */
+		void onExpiryEvent(Event event, Set<UserCertStoreEntry> entries);
+
+	}
+
+}
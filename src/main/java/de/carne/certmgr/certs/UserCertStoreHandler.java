@@ -55,4 +55,12 @@ abstract class UserCertStoreHandler {
 
 	public abstract void deleteEntry(UserCertStoreEntryId id) throws IOException;
 
+	public void commit() throws IOException {
+		// Nothing to do by default (all changes are applied immediately)
+	}
+
+	public void close() throws IOException {
+		// Nothing to do by default (no resources to release)
+	}
+
 }
@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * Result of a bulk import operation.
+ *
+ * @see UserCertStore#importEntries(java.util.Collection, PasswordCallback, String)
+ */
+public final class UserCertStoreImportResult {
+
+	private final Set<UserCertStoreEntry> importedEntries;
+	private final int objectCount;
+	private final int duplicateCount;
+	private final Duration decodeTime;
+	private final Duration mergeTime;
+	private final Duration resolveTime;
+
+	UserCertStoreImportResult(Set<UserCertStoreEntry> importedEntries, int objectCount, int duplicateCount,
+			long decodeNanos, long mergeNanos, long resolveNanos) {
+		this.importedEntries = Collections.unmodifiableSet(importedEntries);
+		this.objectCount = objectCount;
+		this.duplicateCount = duplicateCount;
+		this.decodeTime = Duration.ofNanos(decodeNanos);
+		this.mergeTime = Duration.ofNanos(mergeNanos);
+		this.resolveTime = Duration.ofNanos(resolveNanos);
+	}
+
+	/**
+	 * Get the store entries which have been created or updated by the import.
+	 *
+	 * @return The store entries which have been created or updated by the import (read-only).
+	 */
+	public Set<UserCertStoreEntry> importedEntries() {
+		return this.importedEntries;
+	}
+
+	/**
+	 * Get the total number of certificate objects submitted for import.
+	 *
+	 * @return The total number of certificate objects submitted for import.
+	 */
+	public int objectCount() {
+		return this.objectCount;
+	}
+
+	/**
+	 * Get the number of submitted certificate objects which have been skipped as duplicates.
+	 *
+	 * @return The number of submitted certificate objects which have been skipped as duplicates.
+	 */
+	public int duplicateCount() {
+		return this.duplicateCount;
+	}
+
+	/**
+	 * Get the time spent for decoding and fingerprinting the submitted certificate objects.
+	 *
+	 * @return The time spent for decoding and fingerprinting the submitted certificate objects.
+	 */
+	public Duration decodeTime() {
+		return this.decodeTime;
+	}
+
+	/**
+	 * Get the time spent for merging the certificate objects into the store (including the writing of store files).
+	 *
+	 * @return The time spent for merging the certificate objects into the store.
+	 */
+	public Duration mergeTime() {
+		return this.mergeTime;
+	}
+
+	/**
+	 * Get the time spent for resolving the issuers of the merged store entries.
+	 *
+	 * @return The time spent for resolving the issuers of the merged store entries.
+	 */
+	public Duration resolveTime() {
+		return this.resolveTime;
+	}
+
+	@Override
+	public String toString() {
+		return "objects: " + this.objectCount + " (duplicates: " + this.duplicateCount + "), entries: "
+				+ this.importedEntries.size() + ", decode: " + this.decodeTime.toMillis() + " ms, merge: "
+				+ this.mergeTime.toMillis() + " ms, resolve: " + this.resolveTime.toMillis() + " ms";
+	}
+
+}
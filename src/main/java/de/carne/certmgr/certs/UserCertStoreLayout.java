@@ -0,0 +1,65 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * The directory layouts available for directory based certificate stores.
+ * <p>
+ * Regardless of the configured layout, existing certificate object files are found in either layout. The configured
+ * layout only determines where new certificate object files are placed.
+ */
+public enum UserCertStoreLayout {
+
+	/**
+	 * All certificate object files of a type are placed in a single directory (e.g. {@code ./certs/alias.crt}).
+	 */
+	FLAT,
+
+	/**
+	 * Certificate object files are distributed across sub-directories derived from a hash of the entry alias (e.g.
+	 * {@code ./certs/ab/cd/alias.crt}). This keeps directories small even for very large stores.
+	 */
+	SHARDED;
+
+	/**
+	 * The default layout.
+	 */
+	public static final UserCertStoreLayout DEFAULT = FLAT;
+
+	/**
+	 * Get the layout for a specific name.
+	 *
+	 * @param name The name to evaluate (may be {@code null}).
+	 * @return The layout matching the submitted name or {@link #DEFAULT} if the name is {@code null} or unknown.
+	 */
+	public static UserCertStoreLayout valueOfName(@Nullable String name) {
+		UserCertStoreLayout layout = DEFAULT;
+
+		if (name != null) {
+			for (UserCertStoreLayout value : values()) {
+				if (value.name().equalsIgnoreCase(name.trim())) {
+					layout = value;
+					break;
+				}
+			}
+		}
+		return layout;
+	}
+
+}
@@ -29,7 +29,7 @@ import de.carne.certmgr.util.StringPreference;
  */
 public final class UserCertStorePreferences {
 
-	private static final String PREFERENCES_FILENAME = ".preferences.properties";
+	static final String PREFERENCES_FILENAME = ".preferences.properties";
 
 	private static final String STORE_NODE = "store";
 
@@ -43,6 +43,10 @@ public final class UserCertStorePreferences {
 
 	private static final String STORE_DEFAULT_SIGNATURE_ALGORITHM = "defsigalg";
 
+	private static final String STORE_DURABILITY = "durability";
+
+	private static final String STORE_LAYOUT = "layout";
+
 	private final Preferences preferences;
 
 	/**
@@ -70,6 +74,16 @@ public final class UserCertStorePreferences {
 	 */
 	public final StringPreference defaultSignatureAlgorithm;
 
+	/**
+	 * Durability level used for writing certificate object files (see {@link UserCertStoreDurability}).
+	 */
+	public final StringPreference durability;
+
+	/**
+	 * Directory layout used for placing certificate object files (see {@link UserCertStoreLayout}).
+	 */
+	public final StringPreference layout;
+
 	UserCertStorePreferences(Path storeHome) {
 		this.preferences = FilePreferencesFactory.customRoot(storeHome.resolve(PREFERENCES_FILENAME));
 
@@ -80,6 +94,27 @@ public final class UserCertStorePreferences {
 		this.defaultKeyPairAlgorithm = new StringPreference(optionsNode, STORE_DEFAULT_KEY_PAIR_ALGORITHM);
 		this.defaultKeySize = new IntPreference(optionsNode, STORE_DEFAULT_KEY_SIZE);
 		this.defaultSignatureAlgorithm = new StringPreference(optionsNode, STORE_DEFAULT_SIGNATURE_ALGORITHM);
+		this.durability = new StringPreference(optionsNode, STORE_DURABILITY);
+		this.layout = new StringPreference(optionsNode, STORE_LAYOUT);
+	}
+
+	/**
+	 * Get the configured durability level.
+	 *
+	 * @return The configured durability level or {@link UserCertStoreDurability#DEFAULT} if none has been
+	 *         configured.
+	 */
+	public UserCertStoreDurability getDurability() {
+		return UserCertStoreDurability.valueOfName(this.durability.get());
+	}
+
+	/**
+	 * Get the configured directory layout.
+	 *
+	 * @return The configured directory layout or {@link UserCertStoreLayout#DEFAULT} if none has been configured.
+	 */
+	public UserCertStoreLayout getLayout() {
+		return UserCertStoreLayout.valueOfName(this.layout.get());
 	}
 
 	/**
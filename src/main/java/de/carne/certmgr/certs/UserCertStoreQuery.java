@@ -0,0 +1,193 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.util.Date;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Parameter container for store entry queries.
+ * <p>
+ * A query matches all entries fulfilling each of the defined criteria. A query without any criteria matches all
+ * entries. Queries are evaluated via the store's secondary indices and therefore never decode any certificate object.
+ *
+ * @see UserCertStore#findEntries(UserCertStoreQuery)
+ */
+public final class UserCertStoreQuery {
+
+	@Nullable
+	private Date notAfterFrom = null;
+	@Nullable
+	private Date notAfterTo = null;
+	@Nullable
+	private String dnsName = null;
+	@Nullable
+	private String keyAlgorithm = null;
+	private int minKeySize = 0;
+	@Nullable
+	private UserCertStoreEntry issuer = null;
+
+	/**
+	 * Restrict the query to entries with a CRT expiring within a specific period of time.
+	 *
+	 * @param from The start of the period (inclusive; may be {@code null} to include already expired CRTs).
+	 * @param to The end of the period (exclusive; may be {@code null} for an unbounded period).
+	 * @return This query.
+	 */
+	public UserCertStoreQuery expiresBetween(@Nullable Date from, @Nullable Date to) {
+		this.notAfterFrom = from;
+		this.notAfterTo = to;
+		return this;
+	}
+
+	/**
+	 * Restrict the query to entries with a CRT which has not yet expired but expires within the given number of days.
+	 * <p>
+	 * Only the CRT's expiry date is considered; CRTs which are not yet valid are matched as well.
+	 *
+	 * @param days The number of days.
+	 * @return This query.
+	 */
+	public UserCertStoreQuery expiresWithin(int days) {
+		long now = System.currentTimeMillis();
+
+		return expiresBetween(new Date(now), new Date(now + days * 24L * 60L * 60L * 1000L));
+	}
+
+	/**
+	 * Restrict the query to entries with a CRT matching a specific DNS name.
+	 * <p>
+	 * The DNS name is compared case-insensitive against the CRT's Subject Alternative Names. Wildcard names (e.g.
+	 * {@code *.example.org}) match any DNS name within the wildcard's domain.
+	 *
+	 * @param name The DNS name to match.
+	 * @return This query.
+	 */
+	public UserCertStoreQuery dnsName(String name) {
+		this.dnsName = EntryAttributes.normalizeDNSName(name);
+		return this;
+	}
+
+	/**
+	 * Restrict the query to entries with a specific key algorithm.
+	 *
+	 * @param algorithm The key algorithm name (e.g. {@code RSA}) to match.
+	 * @param minSize The minimum key size (in bits) to match (use {@code 0} to match any key size).
+	 * @return This query.
+	 */
+	public UserCertStoreQuery keyAlgorithm(String algorithm, int minSize) {
+		this.keyAlgorithm = EntryAttributes.normalizeKeyAlgorithm(algorithm);
+		this.minKeySize = minSize;
+		return this;
+	}
+
+	/**
+	 * Restrict the query to entries issued by a specific store entry.
+	 *
+	 * @param issuerEntry The issuer entry to match.
+	 * @return This query.
+	 */
+	public UserCertStoreQuery issuer(UserCertStoreEntry issuerEntry) {
+		this.issuer = issuerEntry;
+		return this;
+	}
+
+	boolean hasExpiryCriteria() {
+		return this.notAfterFrom != null || this.notAfterTo != null;
+	}
+
+	@Nullable
+	Date notAfterFrom() {
+		return this.notAfterFrom;
+	}
+
+	@Nullable
+	Date notAfterTo() {
+		return this.notAfterTo;
+	}
+
+	@Nullable
+	String dnsName() {
+		return this.dnsName;
+	}
+
+	@Nullable
+	String keyAlgorithm() {
+		return this.keyAlgorithm;
+	}
+
+	@Nullable
+	UserCertStoreEntry issuer() {
+		return this.issuer;
+	}
+
+	/**
+	 * Check whether an entry's attributes match this query's attribute criteria.
+	 * <p>
+	 * The issuer criteria is not considered by this function.
+	 *
+	 * @param attributes The entry attributes to check.
+	 * @return {@code true} if the attributes match.
+	 */
+	boolean matches(EntryAttributes attributes) {
+		return matchesExpiry(attributes) && matchesDNSName(attributes) && matchesKeyAlgorithm(attributes);
+	}
+
+	private boolean matchesExpiry(EntryAttributes attributes) {
+		Date notAfter = attributes.notAfter();
+		boolean matches;
+
+		if (hasExpiryCriteria()) {
+			Date checkedNotAfterFrom = this.notAfterFrom;
+			Date checkedNotAfterTo = this.notAfterTo;
+
+			matches = notAfter != null && (checkedNotAfterFrom == null || !notAfter.before(checkedNotAfterFrom))
+					&& (checkedNotAfterTo == null || notAfter.before(checkedNotAfterTo));
+		} else {
+			matches = true;
+		}
+		return matches;
+	}
+
+	private boolean matchesDNSName(EntryAttributes attributes) {
+		String checkedDNSName = this.dnsName;
+
+		return checkedDNSName == null || attributes.dnsNames().contains(checkedDNSName)
+				|| attributes.dnsNames().contains(wildcardDNSName(checkedDNSName));
+	}
+
+	private boolean matchesKeyAlgorithm(EntryAttributes attributes) {
+		String checkedKeyAlgorithm = this.keyAlgorithm;
+
+		return checkedKeyAlgorithm == null
+				|| (checkedKeyAlgorithm.equals(attributes.keyAlgorithm()) && attributes.keySize() >= this.minKeySize);
+	}
+
+	/**
+	 * Get the wildcard name covering a DNS name.
+	 *
+	 * @param dnsName The (normalized) DNS name to get the wildcard name for.
+	 * @return The wildcard name covering the DNS name.
+	 */
+	static String wildcardDNSName(String dnsName) {
+		int domainIndex = dnsName.indexOf('.');
+
+		return "*" + (domainIndex >= 0 ? dnsName.substring(domainIndex) : "." + dnsName);
+	}
+
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.boot.logging.Log;
+
+/**
+ * Serial number counters used for certificate issuance.
+ * <p>
+ * A counter is maintained per CA hierarchy and is seeded once from the existing hierarchy on first use. Afterwards the
+ * next serial is allocated in constant time. For persistent stores the counters are stored in the store's home
+ * directory. The counter file is replaced atomically and forced to disk before an allocated serial is handed out;
+ * hence a serial is never handed out twice even if the application terminates unexpectedly.
+ */
+final class UserCertStoreSerials {
+
+	private static final Log LOG = new Log();
+
+	static final String SERIALS_FILENAME = ".serials.properties";
+
+	@Nullable
+	private final Path storeHome;
+
+	@Nullable
+	private Map<String, BigInteger> serials = null;
+
+	private boolean modified = false;
+
+	UserCertStoreSerials(@Nullable Path storeHome) {
+		this.storeHome = storeHome;
+	}
+
+	/**
+	 * Allocate the next serial for a specific counter.
+	 *
+	 * @param key The key of the counter to use.
+	 * @param seed The function to invoke for seeding the counter in case it has not yet been used.
+	 * @return The allocated serial.
+	 * @throws IOException if an I/O error occurs while seeding or storing the counter.
+	 */
+	synchronized BigInteger next(String key, Seed seed) throws IOException {
+		Map<String, BigInteger> currentSerials = loadSerials();
+		BigInteger lastSerial = currentSerials.get(key);
+
+		if (lastSerial == null) {
+			lastSerial = seed.get();
+			LOG.info("Seeded serial counter ''{0}'' with {1}", key, lastSerial);
+		}
+
+		BigInteger nextSerial = lastSerial.add(BigInteger.ONE);
+
+		currentSerials.put(key, nextSerial);
+		storeSerials(currentSerials);
+		return nextSerial;
+	}
+
+	/**
+	 * Record a serial which has been issued outside of this counter (e.g. by importing an externally issued CRT).
+	 * <p>
+	 * Counters which have not yet been used are not affected, as they are seeded on first use anyway. The updated
+	 * counter is only advanced in memory and stored by the next {@link #commit()} call (or the next allocation).
+	 *
+	 * @param key The key of the counter to update.
+	 * @param serial The serial to record.
+	 * @throws IOException if an I/O error occurs while loading the counters.
+	 */
+	synchronized void observe(String key, BigInteger serial) throws IOException {
+		Map<String, BigInteger> currentSerials = loadSerials();
+		BigInteger lastSerial = currentSerials.get(key);
+
+		if (lastSerial != null && lastSerial.compareTo(serial) < 0) {
+			currentSerials.put(key, serial);
+			this.modified = true;
+		}
+	}
+
+	/**
+	 * Store all counters which have been updated via {@link #observe(String, BigInteger)} since the last store.
+	 *
+	 * @throws IOException if an I/O error occurs while storing the counters.
+	 */
+	synchronized void commit() throws IOException {
+		Map<String, BigInteger> currentSerials = this.serials;
+
+		if (this.modified && currentSerials != null) {
+			storeSerials(currentSerials);
+		}
+	}
+
+	private Map<String, BigInteger> loadSerials() throws IOException {
+		Map<String, BigInteger> loadedSerials = this.serials;
+
+		if (loadedSerials == null) {
+			loadedSerials = new HashMap<>();
+
+			Path serialsFile = (this.storeHome != null ? this.storeHome.resolve(SERIALS_FILENAME) : null);
+
+			if (serialsFile != null && Files.exists(serialsFile)) {
+				Properties properties = new Properties();
+
+				try (InputStream in = Files.newInputStream(serialsFile)) {
+					properties.load(in);
+				}
+				for (String key : properties.stringPropertyNames()) {
+					try {
+						loadedSerials.put(key, new BigInteger(properties.getProperty(key)));
+					} catch (NumberFormatException e) {
+						LOG.warning(e, "Ignoring invalid serial counter ''{0}'' in file ''{1}''", key, serialsFile);
+					}
+				}
+			}
+			this.serials = loadedSerials;
+		}
+		return loadedSerials;
+	}
+
+	private void storeSerials(Map<String, BigInteger> currentSerials) throws IOException {
+		Path checkedStoreHome = this.storeHome;
+
+		if (checkedStoreHome != null) {
+			Properties properties = new Properties();
+
+			for (Map.Entry<String, BigInteger> serial : currentSerials.entrySet()) {
+				properties.setProperty(serial.getKey(), serial.getValue().toString());
+			}
+			StoreFiles.writeAtomically(checkedStoreHome.resolve(SERIALS_FILENAME), out -> properties.store(out, null));
+		}
+		this.modified = false;
+	}
+
+	/**
+	 * Function used to seed a serial counter.
+	 */
+	@FunctionalInterface
+	interface Seed {
+
+		/**
+		 * Determine the highest serial currently in use.
+		 *
+		 * @return The highest serial currently in use.
+		 * @throws IOException if an I/O error occurs while determining the serial.
+		 */
+		BigInteger get() throws IOException;
+
+	}
+
+}
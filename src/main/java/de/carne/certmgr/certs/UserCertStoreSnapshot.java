@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+/**
+ * Immutable view of a store's entries and their issuer hierarchy at a specific point in time.
+ * <p>
+ * A snapshot is published by the store after each modification and may be accessed without any locking. Modifications
+ * applied to the store after the snapshot has been taken are not reflected by the snapshot. Subsequent snapshots
+ * structurally share all mappings which have not been affected by the modification in between; hence publishing a
+ * snapshot costs time proportional to the number of modified entries and not to the store's size. Note that the
+ * snapshot only captures the store's structure; the entries themselves are the store's live entry objects.
+ *
+ * @see UserCertStore#snapshot()
+ */
+public final class UserCertStoreSnapshot {
+
+	static final UserCertStoreSnapshot EMPTY = new UserCertStoreSnapshot(0, PersistentHashMap.empty(),
+			PersistentHashMap.empty(), PersistentHashMap.empty());
+
+	private final long generation;
+	private final PersistentHashMap<UserCertStoreEntry, UserCertStoreEntry> issuers;
+	private final PersistentHashMap<UserCertStoreEntry, PersistentHashMap<UserCertStoreEntry, Boolean>> issued;
+	private final PersistentHashMap<UserCertStoreEntry, Boolean> roots;
+
+	private UserCertStoreSnapshot(long generation, PersistentHashMap<UserCertStoreEntry, UserCertStoreEntry> issuers,
+			PersistentHashMap<UserCertStoreEntry, PersistentHashMap<UserCertStoreEntry, Boolean>> issued,
+			PersistentHashMap<UserCertStoreEntry, Boolean> roots) {
+		this.generation = generation;
+		this.issuers = issuers;
+		this.issued = issued;
+		this.roots = roots;
+	}
+
+	/**
+	 * Derive the next snapshot generation.
+	 * <p>
+	 * Only the submitted entries are updated; all other mappings are taken over from this snapshot.
+	 *
+	 * @param issuerUpdates The entries whose issuer has been (re-)linked since this snapshot (mapped to their current
+	 *        issuer).
+	 * @param removedEntries The entries which have been removed since this snapshot.
+	 * @return The derived snapshot.
+	 */
+	UserCertStoreSnapshot next(Map<UserCertStoreEntry, UserCertStoreEntry> issuerUpdates,
+			Set<UserCertStoreEntry> removedEntries) {
+		PersistentHashMap<UserCertStoreEntry, UserCertStoreEntry> nextIssuers = this.issuers;
+		PersistentHashMap<UserCertStoreEntry, PersistentHashMap<UserCertStoreEntry, Boolean>> nextIssued = this.issued;
+		PersistentHashMap<UserCertStoreEntry, Boolean> nextRoots = this.roots;
+
+		for (UserCertStoreEntry removedEntry : removedEntries) {
+			UserCertStoreEntry previousIssuer = nextIssuers.get(removedEntry);
+
+			if (previousIssuer != null) {
+				nextIssued = unlinkIssued(nextIssued, previousIssuer, removedEntry);
+				nextIssuers = nextIssuers.remove(removedEntry);
+				nextRoots = nextRoots.remove(removedEntry);
+			}
+		}
+		for (Map.Entry<UserCertStoreEntry, UserCertStoreEntry> issuerUpdate : issuerUpdates.entrySet()) {
+			UserCertStoreEntry entry = issuerUpdate.getKey();
+			UserCertStoreEntry issuer = issuerUpdate.getValue();
+			UserCertStoreEntry previousIssuer = nextIssuers.get(entry);
+
+			// Always re-link to make sure the current entry objects are recorded
+			if (previousIssuer != null) {
+				nextIssued = unlinkIssued(nextIssued, previousIssuer, entry);
+			}
+			if (issuer.equals(entry)) {
+				nextRoots = nextRoots.put(entry, Boolean.TRUE);
+			} else {
+				PersistentHashMap<UserCertStoreEntry, Boolean> issuedEntries = nextIssued.get(issuer);
+
+				nextIssued = nextIssued.put(issuer,
+						(issuedEntries != null ? issuedEntries : PersistentHashMap.<UserCertStoreEntry, Boolean>empty())
+								.put(entry, Boolean.TRUE));
+				nextRoots = nextRoots.remove(entry);
+			}
+			nextIssuers = nextIssuers.put(entry, issuer);
+		}
+		return new UserCertStoreSnapshot(this.generation + 1, nextIssuers, nextIssued, nextRoots);
+	}
+
+	private static PersistentHashMap<UserCertStoreEntry, PersistentHashMap<UserCertStoreEntry, Boolean>> unlinkIssued(
+			PersistentHashMap<UserCertStoreEntry, PersistentHashMap<UserCertStoreEntry, Boolean>> issued,
+			UserCertStoreEntry issuer, UserCertStoreEntry entry) {
+		PersistentHashMap<UserCertStoreEntry, Boolean> issuedEntries = issued.get(issuer);
+		PersistentHashMap<UserCertStoreEntry, PersistentHashMap<UserCertStoreEntry, Boolean>> unlinked = issued;
+
+		if (issuedEntries != null && issuedEntries.containsKey(entry)) {
+			PersistentHashMap<UserCertStoreEntry, Boolean> remainingEntries = issuedEntries.remove(entry);
+
+			unlinked = (remainingEntries.size() > 0 ? issued.put(issuer, remainingEntries) : issued.remove(issuer));
+		}
+		return unlinked;
+	}
+
+	/**
+	 * Get this snapshot's generation.
+	 * <p>
+	 * The generation is incremented with every published snapshot. Hence two snapshots of the same store with the
+	 * same generation are identical.
+	 *
+	 * @return This snapshot's generation.
+	 */
+	public long generation() {
+		return this.generation;
+	}
+
+	/**
+	 * Get this snapshot's entry count.
+	 *
+	 * @return This snapshot's entry count.
+	 */
+	public int size() {
+		return this.issuers.size();
+	}
+
+	/**
+	 * Get this snapshot's entries.
+	 *
+	 * @return This snapshot's entries (read-only).
+	 */
+	public Set<UserCertStoreEntry> getEntries() {
+		return this.issuers.keySet();
+	}
+
+	/**
+	 * Get this snapshot's root entries.
+	 *
+	 * @return This snapshot's root entries (read-only).
+	 */
+	public Set<UserCertStoreEntry> getRootEntries() {
+		return this.roots.keySet();
+	}
+
+	/**
+	 * Check whether a store entry is part of this snapshot.
+	 *
+	 * @param entry The store entry to check.
+	 * @return {@code true} if the store entry is part of this snapshot.
+	 */
+	public boolean contains(UserCertStoreEntry entry) {
+		return this.issuers.containsKey(entry);
+	}
+
+	/**
+	 * Get a store entry's issuer as recorded by this snapshot.
+	 *
+	 * @param entry The store entry to get the issuer for.
+	 * @return The store entry's issuer (which is the entry itself for self-signed entries) or {@code null} if the entry
+	 *         is not part of this snapshot.
+	 */
+	@Nullable
+	public UserCertStoreEntry getIssuer(UserCertStoreEntry entry) {
+		return this.issuers.get(entry);
+	}
+
+	/**
+	 * Get this snapshot's entries which are issued by a specific store entry.
+	 *
+	 * @param entry The store entry to get the issued entries for.
+	 * @return The store entries which are issued by the submitted store entry (read-only).
+	 */
+	public Set<UserCertStoreEntry> getIssuedEntries(UserCertStoreEntry entry) {
+		PersistentHashMap<UserCertStoreEntry, Boolean> issuedEntries = this.issued.get(entry);
+
+		return (issuedEntries != null ? issuedEntries.keySet() : Collections.emptySet());
+	}
+
+	@Override
+	public String toString() {
+		return "Snapshot#" + this.generation + " (" + this.issuers.size() + " entries)";
+	}
+
+}
@@ -56,6 +56,7 @@ import de.carne.certmgr.certs.CertObjectStore;
 import de.carne.certmgr.certs.CertProviderException;
 import de.carne.certmgr.certs.PasswordCallback;
 import de.carne.certmgr.certs.PasswordRequiredException;
+import de.carne.certmgr.certs.metrics.StoreMetrics;
 import de.carne.certmgr.certs.spi.CertReader;
 import de.carne.certmgr.certs.spi.CertWriter;
 import de.carne.certmgr.certs.x509.KeyHelper;
@@ -121,6 +122,7 @@ public class DERCertReaderWriter extends JCAConversion implements CertReader, Ce
 	public CertObjectStore readBinary(IOResource<InputStream> in, PasswordCallback password) throws IOException {
 		LOG.debug("Trying to read DER objects from: ''{0}''...", in);
 
+		long start = StoreMetrics.start();
 		CertObjectStore certObjects = null;
 
 		try (ASN1InputStream derStream = new ASN1InputStream(in.io())) {
@@ -174,6 +176,7 @@ public class DERCertReaderWriter extends JCAConversion implements CertReader, Ce
 			// the file is not a DER stream
 			throw new CertProviderException(e);
 		}
+		StoreMetrics.record(StoreMetrics.Operation.DER_DECODE, start);
 		return certObjects;
 	}
 
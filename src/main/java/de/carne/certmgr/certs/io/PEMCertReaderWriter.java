@@ -25,7 +25,10 @@ import java.nio.charset.StandardCharsets;
 import java.security.KeyPair;
 import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Objects;
+import java.util.concurrent.Future;
 
 import org.bouncycastle.cert.X509CRLHolder;
 import org.bouncycastle.cert.X509CertificateHolder;
@@ -46,6 +49,8 @@ import de.carne.certmgr.certs.CertObjectStore;
 import de.carne.certmgr.certs.NoPassword;
 import de.carne.certmgr.certs.PasswordCallback;
 import de.carne.certmgr.certs.PasswordRequiredException;
+import de.carne.certmgr.certs.StoreExecutor;
+import de.carne.certmgr.certs.metrics.StoreMetrics;
 import de.carne.certmgr.certs.spi.CertReader;
 import de.carne.certmgr.certs.spi.CertWriter;
 import de.carne.certmgr.certs.x509.PKCS10CertificateRequest;
@@ -73,6 +78,16 @@ public class PEMCertReaderWriter extends JCAConversion implements CertReader, Ce
 
 	private static final JcaPEMKeyConverter PEM_KEY_CONVERTER = new JcaPEMKeyConverter();
 
+	/**
+	 * The maximum number of PEM objects being decoded concurrently during streaming reads.
+	 * <p>
+	 * The window size is controlled via the system property {@code de.carne.certmgr.certs.io.decodeWindow} and
+	 * defaults to four times the number of available processors.
+	 */
+	public static final int DECODE_WINDOW = Math.max(1,
+			SystemProperties.intValue(PEMCertReaderWriter.class.getPackage().getName() + ".decodeWindow",
+					4 * Runtime.getRuntime().availableProcessors()));
+
 	@Override
 	public String providerName() {
 		return PROVIDER_NAME;
@@ -194,9 +209,55 @@ public class PEMCertReaderWriter extends JCAConversion implements CertReader, Ce
 	@Nullable
 	public static CertObjectStore readObjectsString(IOResource<Reader> in, PasswordCallback password)
 			throws IOException {
+		CertObjectStore certObjects = new CertObjectStore();
+		long pemObjectCount = readObjectsString(in, password, certObjects::add);
+
+		return (pemObjectCount > 0 ? certObjects : null);
+	}
+
+	/**
+	 * Stream all available certificate objects from a PEM encoded {@link InputStream} resource.
+	 *
+	 * @param in The stream resource to read from.
+	 * @param password The callback to use for querying passwords (if needed).
+	 * @param consumer The consumer to feed the read certificate objects to.
+	 * @return The number of read PEM objects (including unrecognized ones), or {@code 0} if the input is not
+	 *         recognized.
+	 * @throws IOException if an I/O error occurs while reading or consuming.
+	 * @see #readObjectsString(IOResource, PasswordCallback, ObjectConsumer)
+	 */
+	public static long readObjectsBinary(IOResource<InputStream> in, PasswordCallback password,
+			ObjectConsumer consumer) throws IOException {
+		long pemObjectCount;
+
+		try (IOResource<Reader> inReader = IOResource.streamReader(in, StandardCharsets.US_ASCII)) {
+			pemObjectCount = readObjectsString(inReader, password, consumer);
+		}
+		return pemObjectCount;
+	}
+
+	/**
+	 * Stream all available certificate objects from a PEM encoded {@link Reader} resource.
+	 * <p>
+	 * In contrast to {@link #readObjectsString(IOResource, PasswordCallback)} the read certificate objects are not
+	 * collected but handed to the submitted consumer one by one (in input order). PEM parsing is performed by the
+	 * calling thread, whereas the decoding and fingerprinting of the parsed objects is performed by worker threads.
+	 * At most {@link #DECODE_WINDOW} objects are pending at any time; hence the memory required for reading is
+	 * independent of the input size.
+	 *
+	 * @param in The reader resource to read from.
+	 * @param password The callback to use for querying passwords (if needed).
+	 * @param consumer The consumer to feed the read certificate objects to.
+	 * @return The number of read PEM objects (including unrecognized ones), or {@code 0} if the input is not
+	 *         recognized.
+	 * @throws IOException if an I/O error occurs while reading or consuming.
+	 */
+	public static long readObjectsString(IOResource<Reader> in, PasswordCallback password, ObjectConsumer consumer)
+			throws IOException {
 		LOG.debug("Trying to read PEM objects from: ''{0}''...", in);
 
-		CertObjectStore certObjects = null;
+		long pemObjectCount = 0;
+		Deque<Future<CertObjectStore.Entry>> pendingObjects = new ArrayDeque<>(DECODE_WINDOW);
 
 		try (PEMParser parser = new PEMParser(in.io())) {
 			Object pemObject;
@@ -207,30 +268,82 @@ public class PEMCertReaderWriter extends JCAConversion implements CertReader, Ce
 				LOG.info(e, "No PEM objects recognized in: ''{0}''", in);
 				pemObject = null;
 			}
+
+			ObjectAliases aliases = new ObjectAliases();
+
 			while (pemObject != null) {
-				if (certObjects == null) {
-					certObjects = new CertObjectStore();
-				}
+				pemObjectCount++;
 
 				LOG.info("Decoding PEM object of type {0}", pemObject.getClass().getName());
 
-				if (pemObject instanceof X509CertificateHolder) {
-					certObjects.addCRT(convertCRT((X509CertificateHolder) pemObject));
-				} else if (pemObject instanceof PEMKeyPair) {
-					certObjects.addKey(convertKey((PEMKeyPair) pemObject));
-				} else if (pemObject instanceof PEMEncryptedKeyPair) {
-					certObjects.addKey(convertKey((PEMEncryptedKeyPair) pemObject, in.resource(), password));
-				} else if (pemObject instanceof PKCS10CertificationRequest) {
-					certObjects.addCSR(convertCSR((PKCS10CertificationRequest) pemObject));
-				} else if (pemObject instanceof X509CRLHolder) {
-					certObjects.addCRL(convertCRL((X509CRLHolder) pemObject));
+				Future<CertObjectStore.Entry> pendingObject = decodeObject(pemObject, aliases, in.resource(),
+						password);
+
+				if (pendingObject != null) {
+					pendingObjects.add(pendingObject);
+					while (pendingObjects.size() >= DECODE_WINDOW) {
+						consumer.accept(StoreExecutor.get(pendingObjects.remove()));
+					}
 				} else {
 					LOG.warning("Ignoring unrecognized PEM object of type {0}", pemObject.getClass().getName());
 				}
 				pemObject = parser.readObject();
 			}
+			while (!pendingObjects.isEmpty()) {
+				consumer.accept(StoreExecutor.get(pendingObjects.remove()));
+			}
+		} finally {
+			for (Future<CertObjectStore.Entry> pendingObject : pendingObjects) {
+				pendingObject.cancel(false);
+			}
 		}
-		return certObjects;
+		return pemObjectCount;
+	}
+
+	@Nullable
+	private static Future<CertObjectStore.Entry> decodeObject(Object pemObject, ObjectAliases aliases,
+			String resource, PasswordCallback password) throws IOException {
+		Future<CertObjectStore.Entry> pendingObject = null;
+
+		if (pemObject instanceof X509CertificateHolder) {
+			String alias = aliases.nextCRT();
+
+			pendingObject = StoreExecutor.submit(() -> decodeEntry(
+					certObjects -> certObjects.addCRT(alias, convertCRT((X509CertificateHolder) pemObject))));
+		} else if (pemObject instanceof PEMKeyPair) {
+			String alias = aliases.nextKey();
+
+			pendingObject = StoreExecutor.submit(() -> decodeEntry(
+					certObjects -> certObjects.addKey(alias, convertKey((PEMKeyPair) pemObject))));
+		} else if (pemObject instanceof PEMEncryptedKeyPair) {
+			String alias = aliases.nextKey();
+			// Password callbacks may be interactive; hence encrypted keys are always decrypted by the calling thread
+			PEMKeyPair pemKeyPair = decryptKey((PEMEncryptedKeyPair) pemObject, resource, password);
+
+			pendingObject = StoreExecutor.submit(
+					() -> decodeEntry(certObjects -> certObjects.addKey(alias, convertKey(pemKeyPair))));
+		} else if (pemObject instanceof PKCS10CertificationRequest) {
+			String alias = aliases.nextCSR();
+
+			pendingObject = StoreExecutor.submit(() -> decodeEntry(
+					certObjects -> certObjects.addCSR(alias, convertCSR((PKCS10CertificationRequest) pemObject))));
+		} else if (pemObject instanceof X509CRLHolder) {
+			String alias = aliases.nextCRL();
+
+			pendingObject = StoreExecutor.submit(
+					() -> decodeEntry(certObjects -> certObjects.addCRL(alias, convertCRL((X509CRLHolder) pemObject))));
+		}
+		return pendingObject;
+	}
+
+	// Only the decoding itself is recorded (neither the waiting for a pending object nor its consumption)
+	private static CertObjectStore.Entry decodeEntry(EntryDecoder decoder) throws IOException {
+		long start = StoreMetrics.start();
+		CertObjectStore certObjects = new CertObjectStore();
+
+		decoder.decode(certObjects);
+		StoreMetrics.record(StoreMetrics.Operation.PEM_DECODE, start);
+		return certObjects.iterator().next();
 	}
 
 	/**
@@ -521,7 +634,7 @@ public class PEMCertReaderWriter extends JCAConversion implements CertReader, Ce
 		writer.writeObject(object, PEM_ENCRYPTOR_BUILDER.build(passwordChars));
 	}
 
-	private static KeyPair convertKey(PEMEncryptedKeyPair pemObject, String resource, PasswordCallback password)
+	private static PEMKeyPair decryptKey(PEMEncryptedKeyPair pemObject, String resource, PasswordCallback password)
 			throws IOException {
 		PEMKeyPair pemKeyPair = null;
 		Throwable passwordException = null;
@@ -542,7 +655,7 @@ public class PEMCertReaderWriter extends JCAConversion implements CertReader, Ce
 				passwordException = e;
 			}
 		}
-		return convertKey(pemKeyPair);
+		return pemKeyPair;
 	}
 
 	private static KeyPair convertKey(PEMKeyPair pemObject) throws IOException {
@@ -554,4 +667,57 @@ public class PEMCertReaderWriter extends JCAConversion implements CertReader, Ce
 		return fileType();
 	}
 
+	/**
+	 * Callback interface used for streaming certificate objects.
+	 */
+	@FunctionalInterface
+	public interface ObjectConsumer {
+
+		/**
+		 * Consume a single certificate object.
+		 *
+		 * @param certObject The certificate object to consume.
+		 * @throws IOException if an I/O error occurs while consuming the certificate object.
+		 */
+		void accept(CertObjectStore.Entry certObject) throws IOException;
+
+	}
+
+	@FunctionalInterface
+	private interface EntryDecoder {
+
+		void decode(CertObjectStore certObjects) throws IOException;
+
+	}
+
+	// Generates the same aliases as the CertObjectStore.addXXX functions without explicit alias
+	private static final class ObjectAliases {
+
+		private int crtNumber = 1;
+		private int keyNumber = 1;
+		private int csrNumber = 1;
+		private int crlNumber = 1;
+
+		ObjectAliases() {
+			// Nothing to do here
+		}
+
+		String nextCRT() {
+			return "crt" + this.crtNumber++;
+		}
+
+		String nextKey() {
+			return "key" + this.keyNumber++;
+		}
+
+		String nextCSR() {
+			return "csr" + this.csrNumber++;
+		}
+
+		String nextCRL() {
+			return "crl" + this.crlNumber++;
+		}
+
+	}
+
 }
@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram using power of two buckets.
+ * <p>
+ * Recording a latency is lock free and takes constant time; hence a histogram may be updated by any number of threads
+ * concurrently. Percentiles are reported with the precision of the bucket boundaries (i.e. they are rounded up to the
+ * next power of two).
+ */
+public final class LatencyHistogram {
+
+	private static final int BUCKET_COUNT = Long.SIZE;
+
+	private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+	private final LongAdder count = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+
+	/**
+	 * Record a single latency.
+	 *
+	 * @param nanos The latency (in nanoseconds) to record.
+	 */
+	public void record(long nanos) {
+		long checkedNanos = Math.max(0, nanos);
+
+		this.buckets.incrementAndGet(Long.SIZE - Long.numberOfLeadingZeros(checkedNanos));
+		this.count.increment();
+		this.totalNanos.add(checkedNanos);
+		this.maxNanos.accumulateAndGet(checkedNanos, Math::max);
+	}
+
+	/**
+	 * Get the number of recorded latencies.
+	 *
+	 * @return The number of recorded latencies.
+	 */
+	public long count() {
+		return this.count.sum();
+	}
+
+	/**
+	 * Get the sum of all recorded latencies.
+	 *
+	 * @return The sum of all recorded latencies (in nanoseconds).
+	 */
+	public long totalNanos() {
+		return this.totalNanos.sum();
+	}
+
+	/**
+	 * Get the maximum recorded latency.
+	 *
+	 * @return The maximum recorded latency (in nanoseconds).
+	 */
+	public long maxNanos() {
+		return this.maxNanos.get();
+	}
+
+	/**
+	 * Get the mean of all recorded latencies.
+	 *
+	 * @return The mean of all recorded latencies (in nanoseconds) or {@code 0} if no latency has been recorded yet.
+	 */
+	public double meanNanos() {
+		long currentCount = count();
+
+		return (currentCount > 0 ? (double) totalNanos() / currentCount : 0.0);
+	}
+
+	/**
+	 * Get a percentile of the recorded latencies.
+	 *
+	 * @param percentile The percentile to get (between {@code 0.0} and {@code 100.0}).
+	 * @return The upper bound (in nanoseconds) of the bucket containing the requested percentile or {@code 0} if no
+	 *         latency has been recorded yet.
+	 */
+	public long percentileNanos(double percentile) {
+		if (percentile < 0.0 || percentile > 100.0) {
+			throw new IllegalArgumentException("Invalid percentile: " + percentile);
+		}
+
+		long[] snapshot = new long[BUCKET_COUNT];
+		long snapshotCount = 0;
+
+		for (int bucketIndex = 0; bucketIndex < BUCKET_COUNT; bucketIndex++) {
+			snapshot[bucketIndex] = this.buckets.get(bucketIndex);
+			snapshotCount += snapshot[bucketIndex];
+		}
+
+		long rank = (long) Math.ceil(snapshotCount * percentile / 100.0);
+		long percentileNanos = 0;
+		long seen = 0;
+
+		for (int bucketIndex = 0; bucketIndex < BUCKET_COUNT && snapshotCount > 0; bucketIndex++) {
+			seen += snapshot[bucketIndex];
+			if (seen >= Math.max(1, rank)) {
+				percentileNanos = Math.min(bucketUpperBound(bucketIndex), maxNanos());
+				break;
+			}
+		}
+		return percentileNanos;
+	}
+
+	private static long bucketUpperBound(int bucketIndex) {
+		return (bucketIndex < Long.SIZE - 1 ? (1L << bucketIndex) - 1 : Long.MAX_VALUE);
+	}
+
+	/**
+	 * Discard all recorded latencies.
+	 */
+	public void reset() {
+		for (int bucketIndex = 0; bucketIndex < BUCKET_COUNT; bucketIndex++) {
+			this.buckets.set(bucketIndex, 0);
+		}
+		this.count.reset();
+		this.totalNanos.reset();
+		this.maxNanos.set(0);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("count=%d mean=%.3fms p99=%.3fms max=%.3fms", count(), toMillis(meanNanos()),
+				toMillis(percentileNanos(99.0)), toMillis(maxNanos()));
+	}
+
+	static double toMillis(double nanos) {
+		return nanos / TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import de.carne.boot.logging.Log;
+
+/**
+ * Runtime metrics of the certificate store functionality.
+ * <p>
+ * For every {@linkplain Operation operation} the number of executions and their latencies are recorded. The recorded
+ * metrics are accessible via this class, via JMX (see {@link #registerMBean()}) and can be forwarded to any number of
+ * additional {@linkplain Sink sinks} (e.g. an external monitoring system).
+ * <p>
+ * Recording is lock free; hence instrumented code paths may be executed concurrently without any contention.
+ */
+public final class StoreMetrics {
+
+	private static final Log LOG = new Log();
+
+	/**
+	 * The name the metrics MBean is registered with.
+	 */
+	public static final String MBEAN_NAME = StoreMetrics.class.getPackage().getName() + ":type="
+			+ StoreMetrics.class.getSimpleName();
+
+	private static final Map<Operation, LatencyHistogram> HISTOGRAMS = new EnumMap<>(Operation.class);
+
+	private static final List<Sink> SINKS = new CopyOnWriteArrayList<>();
+
+	static {
+		for (Operation operation : Operation.values()) {
+			HISTOGRAMS.put(operation, new LatencyHistogram());
+		}
+	}
+
+	private StoreMetrics() {
+		// Make sure this class is not instantiated from outside
+	}
+
+	/**
+	 * Start timing an operation.
+	 *
+	 * @return The start time to submit to {@link #record(Operation, long)} once the operation has finished.
+	 */
+	public static long start() {
+		return System.nanoTime();
+	}
+
+	/**
+	 * Get the time elapsed since an operation has been started (without recording it).
+	 *
+	 * @param startNanos The start time of the operation as returned by {@link #start()}.
+	 * @return The elapsed time (in nanoseconds).
+	 */
+	public static long elapsed(long startNanos) {
+		return System.nanoTime() - startNanos;
+	}
+
+	/**
+	 * Record the execution of an operation.
+	 *
+	 * @param operation The executed operation.
+	 * @param startNanos The start time of the operation as returned by {@link #start()}.
+	 * @return The recorded latency (in nanoseconds).
+	 */
+	public static long record(Operation operation, long startNanos) {
+		long nanos = elapsed(startNanos);
+
+		recordNanos(operation, nanos);
+		return nanos;
+	}
+
+	/**
+	 * Record the execution of an operation.
+	 *
+	 * @param operation The executed operation.
+	 * @param nanos The latency (in nanoseconds) of the operation.
+	 */
+	public static void recordNanos(Operation operation, long nanos) {
+		histogram(operation).record(nanos);
+		for (Sink sink : SINKS) {
+			try {
+				sink.record(operation, nanos);
+			} catch (RuntimeException e) {
+				LOG.warning(e, "Metrics sink failed while recording operation {0}", operation);
+			}
+		}
+	}
+
+	/**
+	 * Get the latency histogram of an operation.
+	 *
+	 * @param operation The operation to get the histogram for.
+	 * @return The operation's latency histogram.
+	 */
+	public static LatencyHistogram histogram(Operation operation) {
+		LatencyHistogram histogram = HISTOGRAMS.get(operation);
+
+		if (histogram == null) {
+			throw new IllegalArgumentException("Unknown operation: " + operation);
+		}
+		return histogram;
+	}
+
+	/**
+	 * Discard all recorded metrics.
+	 */
+	public static void reset() {
+		for (LatencyHistogram histogram : HISTOGRAMS.values()) {
+			histogram.reset();
+		}
+	}
+
+	/**
+	 * Register a sink for forwarding recorded operations.
+	 *
+	 * @param sink The sink to register.
+	 */
+	public static void addSink(Sink sink) {
+		SINKS.add(sink);
+	}
+
+	/**
+	 * Remove a previously registered sink.
+	 *
+	 * @param sink The sink to remove.
+	 */
+	public static void removeSink(Sink sink) {
+		SINKS.remove(sink);
+	}
+
+	/**
+	 * Register the metrics MBean with the platform MBean server.
+	 * <p>
+	 * Calling this function multiple times is harmless.
+	 *
+	 * @return {@code true} if the MBean is registered. {@code false} if the registration failed.
+	 * @see #MBEAN_NAME
+	 * @see StoreMetricsMXBean
+	 */
+	public static boolean registerMBean() {
+		boolean registered = false;
+
+		try {
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+
+			mbeanServer.registerMBean(new StoreMetricsBean(), new ObjectName(MBEAN_NAME));
+			registered = true;
+			LOG.info("Registered metrics MBean ''{0}''", MBEAN_NAME);
+		} catch (InstanceAlreadyExistsException e) {
+			registered = true;
+		} catch (JMException | SecurityException e) {
+			LOG.warning(e, "Failed to register metrics MBean ''{0}''", MBEAN_NAME);
+		}
+		return registered;
+	}
+
+	/**
+	 * The instrumented operations.
+	 */
+	public enum Operation {
+
+		/**
+		 * Opening of a persistent store (including reading its index or scanning its files).
+		 */
+		STORE_OPEN,
+
+		/**
+		 * Merging of certificate objects into a store.
+		 */
+		MERGE,
+
+		/**
+		 * Resolving the issuers of modified store entries.
+		 */
+		ISSUER_RESOLUTION,
+
+		/**
+		 * Verification of a CRT or CRL signature (not answered by the verification cache).
+		 */
+		SIGNATURE_VERIFY,
+
+		/**
+		 * Decoding of a single PEM object.
+		 */
+		PEM_DECODE,
+
+		/**
+		 * Decoding of DER data.
+		 */
+		DER_DECODE,
+
+		/**
+		 * Decoding and fingerprinting of the certificate objects of a bulk import.
+		 */
+		IMPORT_DECODE,
+
+		/**
+		 * Reading of a store file.
+		 */
+		FILE_READ,
+
+		/**
+		 * Writing of a store file.
+		 */
+		FILE_WRITE,
+
+		/**
+		 * Generation of a key pair.
+		 */
+		KEY_GENERATION,
+
+		/**
+		 * Generation of a CRL.
+		 */
+		CRL_GENERATION
+
+	}
+
+	/**
+	 * Sink interface used to forward recorded operations.
+	 */
+	@FunctionalInterface
+	public interface Sink {
+
+		/**
+		 * Called for every recorded operation.
+		 * <p>
+		 * The sink is invoked on the thread executing the operation; hence it should return quickly.
+		 *
+		 * @param operation The executed operation.
+		 * @param nanos The latency (in nanoseconds) of the operation.
+		 */
+		void record(Operation operation, long nanos);
+
+	}
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * {@link StoreMetricsMXBean} implementation.
+ */
+final class StoreMetricsBean implements StoreMetricsMXBean {
+
+	@Override
+	public Map<String, Long> getCounts() {
+		return collect(LatencyHistogram::count);
+	}
+
+	@Override
+	public Map<String, Double> getTotalMillis() {
+		return collect(histogram -> LatencyHistogram.toMillis(histogram.totalNanos()));
+	}
+
+	@Override
+	public Map<String, Double> getMeanMillis() {
+		return collect(histogram -> LatencyHistogram.toMillis(histogram.meanNanos()));
+	}
+
+	@Override
+	public Map<String, Double> getP99Millis() {
+		return collect(histogram -> LatencyHistogram.toMillis(histogram.percentileNanos(99.0)));
+	}
+
+	@Override
+	public Map<String, Double> getMaxMillis() {
+		return collect(histogram -> LatencyHistogram.toMillis(histogram.maxNanos()));
+	}
+
+	@Override
+	public double percentileMillis(String operation, double percentile) {
+		return LatencyHistogram.toMillis(
+				StoreMetrics.histogram(StoreMetrics.Operation.valueOf(operation)).percentileNanos(percentile));
+	}
+
+	@Override
+	public void reset() {
+		StoreMetrics.reset();
+	}
+
+	private static <T> Map<String, T> collect(Function<LatencyHistogram, T> value) {
+		Map<String, T> values = new LinkedHashMap<>();
+
+		for (StoreMetrics.Operation operation : StoreMetrics.Operation.values()) {
+			values.put(operation.name(), value.apply(StoreMetrics.histogram(operation)));
+		}
+		return values;
+	}
+
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs.metrics;
+
+import java.util.Map;
+
+/**
+ * JMX management interface for accessing the {@link StoreMetrics}.
+ * <p>
+ * All attributes are reported per operation (using the {@linkplain StoreMetrics.Operation operation's} name as key).
+ */
+public interface StoreMetricsMXBean {
+
+	/**
+	 * Get the number of executions.
+	 *
+	 * @return The number of executions per operation.
+	 */
+	Map<String, Long> getCounts();
+
+	/**
+	 * Get the total execution times.
+	 *
+	 * @return The total execution time (in milliseconds) per operation.
+	 */
+	Map<String, Double> getTotalMillis();
+
+	/**
+	 * Get the mean execution times.
+	 *
+	 * @return The mean execution time (in milliseconds) per operation.
+	 */
+	Map<String, Double> getMeanMillis();
+
+	/**
+	 * Get the 99th percentile of the execution times.
+	 *
+	 * @return The 99th percentile of the execution time (in milliseconds) per operation.
+	 */
+	Map<String, Double> getP99Millis();
+
+	/**
+	 * Get the maximum execution times.
+	 *
+	 * @return The maximum execution time (in milliseconds) per operation.
+	 */
+	Map<String, Double> getMaxMillis();
+
+	/**
+	 * Get a specific percentile of an operation's execution times.
+	 *
+	 * @param operation The name of the operation to get the percentile for.
+	 * @param percentile The percentile to get (between {@code 0.0} and {@code 100.0}).
+	 * @return The requested percentile (in milliseconds).
+	 */
+	double percentileMillis(String operation, double percentile);
+
+	/**
+	 * Discard all recorded metrics.
+	 */
+	void reset();
+
+}
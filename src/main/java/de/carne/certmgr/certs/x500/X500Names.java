@@ -19,14 +19,18 @@ package de.carne.certmgr.certs.x500;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.WeakReference;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.WeakHashMap;
 
 import javax.security.auth.x500.X500Principal;
 
+import org.eclipse.jdt.annotation.Nullable;
+
 import de.carne.boot.logging.Log;
 import de.carne.boot.Exceptions;
 import de.carne.util.Strings;
@@ -51,6 +55,9 @@ public final class X500Names {
 
 	private static final Map<String, String> NAMES = new HashMap<>();
 
+	// The pooled names only keep weak references to their principals; hence unused names are released automatically
+	private static final Map<X500Principal, PooledName> NAME_POOL = new WeakHashMap<>();
+
 	static {
 		try (InputStream oidsStream = X500Names.class.getResourceAsStream(OIDS_RESOURCE)) {
 			readOIDs(oidsStream);
@@ -84,13 +91,55 @@ public final class X500Names {
 	/**
 	 * Convert {@link X500Principal} to it's string representation.
 	 * <p>
-	 * This function uses the configured OID informations to resolve any known OID to a human readable string.
+	 * This function uses the configured OID informations to resolve any known OID to a human readable string. The
+	 * string representation is computed only once per distinct name and then served from the name pool.
 	 *
 	 * @param principal The principal to convert.
 	 * @return The principal's string representation.
+	 * @see #intern(X500Principal)
 	 */
 	public static String toString(X500Principal principal) {
-		return principal.getName(X500Principal.RFC2253, OIDS);
+		PooledName pooledName;
+
+		synchronized (NAME_POOL) {
+			pooledName = pooledName(principal);
+		}
+		return pooledName.displayName(principal);
+	}
+
+	/**
+	 * Get the canonical instance of a {@link X500Principal}.
+	 * <p>
+	 * All equal principals submitted to this function are mapped to the same instance. Holders of large numbers of
+	 * principals (like certificate stores) use this function to share a single instance per distinct name. As the
+	 * principal's canonical form is computed once per instance (when the principal is compared or hashed), sharing
+	 * the instance also avoids re-computing it.
+	 *
+	 * @param principal The principal to intern.
+	 * @return The canonical instance of the submitted principal.
+	 */
+	public static X500Principal intern(X500Principal principal) {
+		X500Principal internedPrincipal;
+
+		synchronized (NAME_POOL) {
+			internedPrincipal = pooledName(principal).principal();
+			if (internedPrincipal == null) {
+				NAME_POOL.put(principal, new PooledName(principal));
+				internedPrincipal = principal;
+			}
+		}
+		return internedPrincipal;
+	}
+
+	private static PooledName pooledName(X500Principal principal) {
+		PooledName pooledName = NAME_POOL.get(principal);
+
+		// The pooled principal may already have been collected
+		if (pooledName == null || pooledName.principal() == null) {
+			pooledName = new PooledName(principal);
+			NAME_POOL.put(principal, pooledName);
+		}
+		return pooledName;
 	}
 
 	/**
@@ -113,4 +162,32 @@ public final class X500Names {
 		return Collections.unmodifiableSet(NAMES.keySet());
 	}
 
+	private static final class PooledName {
+
+		private final WeakReference<X500Principal> principalReference;
+
+		@Nullable
+		private volatile String displayName = null;
+
+		PooledName(X500Principal principal) {
+			this.principalReference = new WeakReference<>(principal);
+		}
+
+		@Nullable
+		X500Principal principal() {
+			return this.principalReference.get();
+		}
+
+		String displayName(X500Principal principal) {
+			String checkedDisplayName = this.displayName;
+
+			if (checkedDisplayName == null) {
+				checkedDisplayName = principal.getName(X500Principal.RFC2253, OIDS);
+				this.displayName = checkedDisplayName;
+			}
+			return checkedDisplayName;
+		}
+
+	}
+
 }
@@ -0,0 +1,126 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs.x509;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PublicKey;
+import java.util.Arrays;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.boot.Exceptions;
+
+/**
+ * Value class representing the SHA-256 digest of an encoded certificate object.
+ * <p>
+ * Fingerprints are used as compact and cheap to compare keys whenever certificate objects or keys have to be looked
+ * up.
+ */
+public final class Fingerprint {
+
+	private static final String DIGEST_ALGORITHM = "SHA-256";
+
+	private static final int DIGEST_LENGTH = 32;
+
+	private final byte[] digest;
+
+	private final int hashCode;
+
+	private Fingerprint(byte[] digest) {
+		this.digest = digest;
+		this.hashCode = Arrays.hashCode(digest);
+	}
+
+	/**
+	 * Compute the fingerprint of arbitrary encoded data.
+	 *
+	 * @param encoded The encoded data to compute the fingerprint for.
+	 * @return The computed fingerprint.
+	 */
+	public static Fingerprint of(byte[] encoded) {
+		MessageDigest messageDigest;
+
+		try {
+			messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw Exceptions.toRuntime(e);
+		}
+		return new Fingerprint(messageDigest.digest(encoded));
+	}
+
+	/**
+	 * Re-create a fingerprint from its digest bytes.
+	 *
+	 * @param digest The digest bytes as returned by {@link #getDigest()}.
+	 * @return The re-created fingerprint.
+	 * @throws IllegalArgumentException if the submitted digest bytes are of invalid length.
+	 */
+	public static Fingerprint valueOf(byte[] digest) {
+		if (digest.length != DIGEST_LENGTH) {
+			throw new IllegalArgumentException("Invalid digest length: " + digest.length);
+		}
+		return new Fingerprint(digest.clone());
+	}
+
+	/**
+	 * Compute the fingerprint of a public key.
+	 *
+	 * @param publicKey The public key to compute the fingerprint for.
+	 * @return The computed fingerprint.
+	 */
+	public static Fingerprint of(PublicKey publicKey) {
+		return of(publicKey.getEncoded());
+	}
+
+	/**
+	 * Get the fingerprint's digest bytes.
+	 *
+	 * @return The fingerprint's digest bytes.
+	 */
+	public byte[] getDigest() {
+		return this.digest.clone();
+	}
+
+	@Override
+	public int hashCode() {
+		return this.hashCode;
+	}
+
+	@Override
+	public boolean equals(@Nullable Object obj) {
+		boolean equal = false;
+
+		if (this == obj) {
+			equal = true;
+		} else if (obj instanceof Fingerprint) {
+			equal = Arrays.equals(this.digest, ((Fingerprint) obj).digest);
+		}
+		return equal;
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder buffer = new StringBuilder(this.digest.length * 2);
+
+		for (byte b : this.digest) {
+			buffer.append(String.format("%02x", b & 0xff));
+		}
+		return buffer.toString();
+	}
+
+}
@@ -24,9 +24,11 @@ import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import java.security.PrivateKey;
 import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.security.interfaces.ECPublicKey;
 import java.security.interfaces.RSAPublicKey;
 
+import org.bouncycastle.cert.jcajce.JcaX509ExtensionUtils;
 import org.bouncycastle.openssl.PEMKeyPair;
 import org.bouncycastle.openssl.PEMParser;
 import org.bouncycastle.openssl.jcajce.JcaPEMKeyConverter;
@@ -35,6 +37,7 @@ import org.eclipse.jdt.annotation.Nullable;
 
 import de.carne.boot.logging.Log;
 import de.carne.certmgr.certs.CertProviderException;
+import de.carne.certmgr.certs.metrics.StoreMetrics;
 import de.carne.certmgr.certs.security.KeyPairAlgorithm;
 
 /**
@@ -141,6 +144,28 @@ public final class KeyHelper {
 		return keySize;
 	}
 
+	/**
+	 * Compute the key identifier of a public key.
+	 * <p>
+	 * The key identifier is computed as described in
+	 * <a href="https://tools.ietf.org/html/rfc5280#section-4.2.1.2">RFC 5280 (method 1)</a> and therefore matches the
+	 * key identifiers generated by this application.
+	 *
+	 * @param publicKey The public key to compute the key identifier for.
+	 * @return The computed key identifier.
+	 * @throws IOException if an error occurs during computation.
+	 */
+	public static byte[] computeKeyIdentifier(PublicKey publicKey) throws IOException {
+		byte[] keyIdentifier;
+
+		try {
+			keyIdentifier = new JcaX509ExtensionUtils().createSubjectKeyIdentifier(publicKey).getKeyIdentifier();
+		} catch (GeneralSecurityException e) {
+			throw new CertProviderException(e);
+		}
+		return keyIdentifier;
+	}
+
 	/**
 	 * Get the public key's string representation.
 	 *
@@ -172,6 +197,23 @@ public final class KeyHelper {
 	 * @throws IOException if an error occurs during generation.
 	 */
 	public static KeyPair generateKey(KeyPairAlgorithm algorithm, int keySize) throws IOException {
+		return generateKey(algorithm, keySize, null);
+	}
+
+	/**
+	 * Generate a Key object using a specific source of randomness.
+	 * <p>
+	 * Submitting a deterministically seeded {@link SecureRandom} results in reproducible keys.
+	 *
+	 * @param algorithm The key pair algorithm to use.
+	 * @param keySize The key size to use.
+	 * @param random The source of randomness to use or {@code null} to use the provider's default.
+	 * @return The generated Key object.
+	 * @throws IOException if an error occurs during generation.
+	 */
+	public static KeyPair generateKey(KeyPairAlgorithm algorithm, int keySize, @Nullable SecureRandom random)
+			throws IOException {
+		long start = StoreMetrics.start();
 		KeyPair keyPair;
 
 		try {
@@ -179,13 +221,18 @@ public final class KeyHelper {
 
 			KeyPairGenerator keyGenerator = algorithm.getInstance();
 
-			keyGenerator.initialize(keySize);
+			if (random != null) {
+				keyGenerator.initialize(keySize, random);
+			} else {
+				keyGenerator.initialize(keySize);
+			}
 			keyPair = keyGenerator.generateKeyPair();
 
 			LOG.info("Key pair generation {0} done...", KeyHelper.toString(keyPair.getPublic()));
 		} catch (GeneralSecurityException e) {
 			throw new CertProviderException(e);
 		}
+		StoreMetrics.record(StoreMetrics.Operation.KEY_GENERATION, start);
 		return keyPair;
 	}
 
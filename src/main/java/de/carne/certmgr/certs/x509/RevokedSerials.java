@@ -0,0 +1,165 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs.x509;
+
+import java.math.BigInteger;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+
+import javax.security.auth.x500.X500Principal;
+
+/**
+ * Lookup index for the serial numbers revoked by a specific CRL.
+ * <p>
+ * Serial numbers fitting into a {@code long} (which is the common case) are kept in a sorted primitive array. Any
+ * larger serial number is kept in a sorted {@link BigInteger} array. In both cases lookup is done via binary search.
+ * CRL entries referring to a certificate issuer different from the CRL issuer (indirect CRLs) are not indexed and
+ * are checked directly via the CRL.
+ */
+public final class RevokedSerials {
+
+	private static final BigInteger LONG_MIN = BigInteger.valueOf(Long.MIN_VALUE);
+
+	private static final BigInteger LONG_MAX = BigInteger.valueOf(Long.MAX_VALUE);
+
+	private final X500Principal issuerDN;
+
+	private final long[] longSerials;
+
+	private final BigInteger[] bigSerials;
+
+	private final boolean indirect;
+
+	private RevokedSerials(X509CRL crl, long[] longSerials, BigInteger[] bigSerials, boolean indirect) {
+		this.issuerDN = crl.getIssuerX500Principal();
+		this.longSerials = longSerials;
+		this.bigSerials = bigSerials;
+		this.indirect = indirect;
+	}
+
+	/**
+	 * Build the index for a specific CRL.
+	 *
+	 * @param crl The CRL to build the index for.
+	 * @return The created index.
+	 */
+	public static RevokedSerials of(X509CRL crl) {
+		Set<? extends X509CRLEntry> crlEntries = crl.getRevokedCertificates();
+		X500Principal crlIssuerDN = crl.getIssuerX500Principal();
+		long[] longSerials = new long[crlEntries != null ? crlEntries.size() : 0];
+		int longSerialCount = 0;
+		List<BigInteger> bigSerials = new ArrayList<>();
+		boolean indirect = false;
+
+		if (crlEntries != null) {
+			for (X509CRLEntry crlEntry : crlEntries) {
+				X500Principal certificateIssuerDN = crlEntry.getCertificateIssuer();
+
+				if (certificateIssuerDN == null || certificateIssuerDN.equals(crlIssuerDN)) {
+					BigInteger serial = crlEntry.getSerialNumber();
+
+					if (serial.compareTo(LONG_MIN) >= 0 && serial.compareTo(LONG_MAX) <= 0) {
+						longSerials[longSerialCount] = serial.longValue();
+						longSerialCount++;
+					} else {
+						bigSerials.add(serial);
+					}
+				} else {
+					indirect = true;
+				}
+			}
+		}
+
+		long[] sortedLongSerials = Arrays.copyOf(longSerials, longSerialCount);
+		BigInteger[] sortedBigSerials = bigSerials.toArray(new BigInteger[bigSerials.size()]);
+
+		Arrays.sort(sortedLongSerials);
+		Arrays.sort(sortedBigSerials);
+		return new RevokedSerials(crl, sortedLongSerials, sortedBigSerials, indirect);
+	}
+
+	/**
+	 * Check whether the indexed CRL contains entries referring to a certificate issuer different from the CRL issuer.
+	 * <p>
+	 * Such entries are not covered by the index and have to be checked directly via the CRL.
+	 *
+	 * @return {@code true} if the indexed CRL is an indirect CRL.
+	 */
+	public boolean isIndirect() {
+		return this.indirect;
+	}
+
+	/**
+	 * Get the number of indexed serial numbers.
+	 *
+	 * @return The number of indexed serial numbers.
+	 */
+	public int size() {
+		return this.longSerials.length + this.bigSerials.length;
+	}
+
+	/**
+	 * Check whether a specific serial number has been revoked.
+	 * <p>
+	 * Only serial numbers of certificates issued by the CRL issuer are considered.
+	 *
+	 * @param serial The serial number to check.
+	 * @return {@code true} if the serial number has been revoked.
+	 */
+	public boolean contains(BigInteger serial) {
+		boolean contains;
+
+		if (serial.compareTo(LONG_MIN) >= 0 && serial.compareTo(LONG_MAX) <= 0) {
+			contains = Arrays.binarySearch(this.longSerials, serial.longValue()) >= 0;
+		} else {
+			contains = Arrays.binarySearch(this.bigSerials, serial) >= 0;
+		}
+		return contains;
+	}
+
+	/**
+	 * Check whether a specific CRT has been revoked according to the index.
+	 * <p>
+	 * Only CRTs issued by the CRL issuer are covered by the index. For indirect CRLs (see {@link #isIndirect()}) use
+	 * {@link #isRevoked(X509CRL, X509Certificate)} instead.
+	 *
+	 * @param crt The CRT to check.
+	 * @return {@code true} if the CRT has been revoked.
+	 */
+	public boolean isRevoked(X509Certificate crt) {
+		return this.issuerDN.equals(crt.getIssuerX500Principal()) && contains(crt.getSerialNumber());
+	}
+
+	/**
+	 * Check whether a specific CRT has been revoked.
+	 * <p>
+	 * The result is equivalent to {@link X509CRL#isRevoked(java.security.cert.Certificate)} on the indexed CRL.
+	 *
+	 * @param crl The indexed CRL (used for CRTs not covered by the index).
+	 * @param crt The CRT to check.
+	 * @return {@code true} if the CRT has been revoked.
+	 */
+	public boolean isRevoked(X509CRL crl, X509Certificate crt) {
+		return isRevoked(crt) || (this.indirect && crl.isRevoked(crt));
+	}
+
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.certs.x509;
+
+import java.io.IOException;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.certmgr.certs.CertProviderException;
+import de.carne.util.SystemProperties;
+
+/**
+ * Bounded cache for signature verification results.
+ * <p>
+ * Results are keyed by the fingerprint of the signed object (covering the to-be-signed data as well as the signature)
+ * and the fingerprint of the public key used for verification. The cache is shared by {@link X509CertificateHelper}
+ * and {@link X509CRLHelper} and is safe for concurrent use.
+ */
+public final class SignatureVerificationCache {
+
+	/**
+	 * The maximum number of signed objects to keep verification results for.
+	 */
+	public static final int CACHE_LIMIT = SystemProperties
+			.intValue(SignatureVerificationCache.class.getPackage().getName() + ".verificationCacheLimit", 1 << 12);
+
+	private static final SignatureVerificationCache INSTANCE = new SignatureVerificationCache(CACHE_LIMIT);
+
+	private final Map<Fingerprint, Map<Fingerprint, Boolean>> results;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private SignatureVerificationCache(int limit) {
+		this.results = new LinkedHashMap<Fingerprint, Map<Fingerprint, Boolean>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.@Nullable Entry<Fingerprint, Map<Fingerprint, Boolean>> eldest) {
+				return size() > limit;
+			}
+
+		};
+	}
+
+	/**
+	 * Get the shared cache instance.
+	 *
+	 * @return The shared cache instance.
+	 */
+	public static SignatureVerificationCache getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Compute the fingerprint used to identify a CRT object.
+	 *
+	 * @param crt The CRT object to get the fingerprint for.
+	 * @return The CRT object's fingerprint.
+	 * @throws IOException if an encoding error occurs.
+	 */
+	public static Fingerprint fingerprint(X509Certificate crt) throws IOException {
+		try {
+			return Fingerprint.of(crt.getEncoded());
+		} catch (CertificateEncodingException e) {
+			throw new CertProviderException(e);
+		}
+	}
+
+	/**
+	 * Compute the fingerprint used to identify a CRL object.
+	 *
+	 * @param crl The CRL object to get the fingerprint for.
+	 * @return The CRL object's fingerprint.
+	 * @throws IOException if an encoding error occurs.
+	 */
+	public static Fingerprint fingerprint(X509CRL crl) throws IOException {
+		try {
+			return Fingerprint.of(crl.getEncoded());
+		} catch (CRLException e) {
+			throw new CertProviderException(e);
+		}
+	}
+
+	/**
+	 * Look up a verification result.
+	 *
+	 * @param signed The fingerprint of the signed object.
+	 * @param publicKey The fingerprint of the public key.
+	 * @return The cached verification result or {@code null} if no result has been cached yet.
+	 */
+	@Nullable
+	public synchronized Boolean get(Fingerprint signed, Fingerprint publicKey) {
+		Map<Fingerprint, Boolean> signedResults = this.results.get(signed);
+		Boolean result = (signedResults != null ? signedResults.get(publicKey) : null);
+
+		if (result != null) {
+			this.hits.incrementAndGet();
+		} else {
+			this.misses.incrementAndGet();
+		}
+		return result;
+	}
+
+	/**
+	 * Record a verification result.
+	 *
+	 * @param signed The fingerprint of the signed object.
+	 * @param publicKey The fingerprint of the public key.
+	 * @param result The verification result.
+	 */
+	public synchronized void put(Fingerprint signed, Fingerprint publicKey, boolean result) {
+		this.results.computeIfAbsent(signed, key -> new HashMap<>()).put(publicKey, Boolean.valueOf(result));
+	}
+
+	/**
+	 * Discard all verification results recorded for a specific signed object.
+	 *
+	 * @param signed The fingerprint of the signed object.
+	 */
+	public synchronized void invalidate(Fingerprint signed) {
+		this.results.remove(signed);
+	}
+
+	/**
+	 * Discard all recorded verification results.
+	 */
+	public synchronized void clear() {
+		this.results.clear();
+	}
+
+	/**
+	 * Get the number of signed objects currently cached.
+	 *
+	 * @return The number of signed objects currently cached.
+	 */
+	public synchronized int size() {
+		return this.results.size();
+	}
+
+	/**
+	 * Get the number of cache hits so far.
+	 *
+	 * @return The number of cache hits so far.
+	 */
+	public long hits() {
+		return this.hits.get();
+	}
+
+	/**
+	 * Get the number of cache misses so far.
+	 *
+	 * @return The number of cache misses so far.
+	 */
+	public long misses() {
+		return this.misses.get();
+	}
+
+}
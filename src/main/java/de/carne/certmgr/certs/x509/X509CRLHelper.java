@@ -22,6 +22,7 @@ import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.security.SignatureException;
 import java.security.cert.CRLReason;
 import java.security.cert.X509CRL;
@@ -45,6 +46,7 @@ import org.eclipse.jdt.annotation.Nullable;
 import de.carne.boot.Exceptions;
 import de.carne.boot.logging.Log;
 import de.carne.certmgr.certs.CertProviderException;
+import de.carne.certmgr.certs.metrics.StoreMetrics;
 import de.carne.certmgr.certs.security.SignatureAlgorithm;
 import de.carne.certmgr.certs.x500.X500Names;
 
@@ -111,8 +113,28 @@ public final class X509CRLHelper {
 	 * @param publicKey The public key of the key pair to check.
 	 * @return {@code true} if the CRL object has been signed by the public key's key pair.
 	 * @throws IOException if a general security error occurs during the check.
+	 * @see SignatureVerificationCache
 	 */
 	public static boolean isCRLSignedBy(X509CRL crl, PublicKey publicKey) throws IOException {
+		SignatureVerificationCache verificationCache = SignatureVerificationCache.getInstance();
+		Fingerprint crlFingerprint = SignatureVerificationCache.fingerprint(crl);
+		Fingerprint publicKeyFingerprint = Fingerprint.of(publicKey);
+		Boolean cachedIsSignedBy = verificationCache.get(crlFingerprint, publicKeyFingerprint);
+		boolean isSignedBy;
+
+		if (cachedIsSignedBy != null) {
+			isSignedBy = cachedIsSignedBy.booleanValue();
+		} else {
+			long verifyStart = StoreMetrics.start();
+
+			isSignedBy = verifyCRL(crl, publicKey);
+			StoreMetrics.record(StoreMetrics.Operation.SIGNATURE_VERIFY, verifyStart);
+			verificationCache.put(crlFingerprint, publicKeyFingerprint, isSignedBy);
+		}
+		return isSignedBy;
+	}
+
+	private static boolean verifyCRL(X509CRL crl, PublicKey publicKey) throws IOException {
 		boolean isSignedBy = false;
 
 		try {
@@ -142,6 +164,29 @@ public final class X509CRLHelper {
 	public static X509CRL generateCRL(@Nullable X509CRL currentCRL, Date lastUpdate, @Nullable Date nextUpdate,
 			Map<BigInteger, ReasonFlag> revokeEntries, X500Principal issuerDN, KeyPair issuerKey,
 			SignatureAlgorithm signatureAlgorithm) throws IOException {
+		return generateCRL(currentCRL, lastUpdate, nextUpdate, revokeEntries, issuerDN, issuerKey, signatureAlgorithm,
+				null);
+	}
+
+	/**
+	 * Generate a CRL object using a specific source of randomness for signing.
+	 *
+	 * @param currentCRL The current CRL object in case of an update (may be {@code null}).
+	 * @param lastUpdate The last update timestamp to set.
+	 * @param nextUpdate The next update timestamp to set (may be {@code null}).
+	 * @param revokeEntries The revoked entries.
+	 * @param issuerDN The CRL issuer's DN.
+	 * @param issuerKey The CRL issuer's key pair.
+	 * @param signatureAlgorithm The signature algorithm to use for signing.
+	 * @param random The source of randomness to use for signing or {@code null} to use the provider's default.
+	 * @return The generated CRL object.
+	 * @throws IOException if an error occurs during generation.
+	 */
+	public static X509CRL generateCRL(@Nullable X509CRL currentCRL, Date lastUpdate, @Nullable Date nextUpdate,
+			Map<BigInteger, ReasonFlag> revokeEntries, X500Principal issuerDN, KeyPair issuerKey,
+			SignatureAlgorithm signatureAlgorithm, @Nullable SecureRandom random) throws IOException {
+		long start = StoreMetrics.start();
+
 		LOG.info("CRL generation ''{0}'' started...", issuerDN);
 
 		// Initialize CRL builder
@@ -169,8 +214,13 @@ public final class X509CRLHelper {
 			crlBuilder.addExtension(Extension.cRLNumber, false, new CRLNumber(nextCRLNumber));
 
 			// Sign and create CRL object
-			ContentSigner crlSigner = new JcaContentSignerBuilder(signatureAlgorithm.algorithm())
-					.build(issuerKey.getPrivate());
+			JcaContentSignerBuilder crlSignerBuilder = new JcaContentSignerBuilder(signatureAlgorithm.algorithm());
+
+			if (random != null) {
+				crlSignerBuilder.setSecureRandom(random);
+			}
+
+			ContentSigner crlSigner = crlSignerBuilder.build(issuerKey.getPrivate());
 
 			crl = new JcaX509CRLConverter().getCRL(crlBuilder.build(crlSigner));
 		} catch (GeneralSecurityException | OperatorCreationException e) {
@@ -178,7 +228,7 @@ public final class X509CRLHelper {
 		}
 
 		LOG.info("CRT generation ''{0}'' done", issuerDN);
-
+		StoreMetrics.record(StoreMetrics.Operation.CRL_GENERATION, start);
 		return crl;
 	}
 
@@ -22,6 +22,7 @@ import java.security.GeneralSecurityException;
 import java.security.InvalidKeyException;
 import java.security.KeyPair;
 import java.security.PublicKey;
+import java.security.SecureRandom;
 import java.security.SignatureException;
 import java.security.cert.X509Certificate;
 import java.util.Date;
@@ -38,10 +39,12 @@ import org.bouncycastle.cert.jcajce.JcaX509v3CertificateBuilder;
 import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.eclipse.jdt.annotation.Nullable;
 
 import de.carne.boot.Exceptions;
 import de.carne.boot.logging.Log;
 import de.carne.certmgr.certs.CertProviderException;
+import de.carne.certmgr.certs.metrics.StoreMetrics;
 import de.carne.certmgr.certs.security.SignatureAlgorithm;
 import de.carne.certmgr.certs.x500.X500Names;
 
@@ -84,8 +87,28 @@ public final class X509CertificateHelper {
 	 * @param publicKey The public key of the key pair to check.
 	 * @return {@code true} if the certificate has been signed by the public key's key pair.
 	 * @throws IOException if a general security error occurs during the check.
+	 * @see SignatureVerificationCache
 	 */
 	public static boolean isCRTSignedBy(X509Certificate crt, PublicKey publicKey) throws IOException {
+		SignatureVerificationCache verificationCache = SignatureVerificationCache.getInstance();
+		Fingerprint crtFingerprint = SignatureVerificationCache.fingerprint(crt);
+		Fingerprint publicKeyFingerprint = Fingerprint.of(publicKey);
+		Boolean cachedIsSignedBy = verificationCache.get(crtFingerprint, publicKeyFingerprint);
+		boolean isSignedBy;
+
+		if (cachedIsSignedBy != null) {
+			isSignedBy = cachedIsSignedBy.booleanValue();
+		} else {
+			long verifyStart = StoreMetrics.start();
+
+			isSignedBy = verifyCRT(crt, publicKey);
+			StoreMetrics.record(StoreMetrics.Operation.SIGNATURE_VERIFY, verifyStart);
+			verificationCache.put(crtFingerprint, publicKeyFingerprint, isSignedBy);
+		}
+		return isSignedBy;
+	}
+
+	private static boolean verifyCRT(X509Certificate crt, PublicKey publicKey) throws IOException {
 		boolean isSignedBy = false;
 
 		try {
@@ -99,6 +122,48 @@ public final class X509CertificateHelper {
 		return isSignedBy;
 	}
 
+	/**
+	 * Get a CRT object's Subject Key Identifier.
+	 *
+	 * @param crt The CRT object to get the key identifier for.
+	 * @return The CRT object's Subject Key Identifier or {@code null} if the CRT object does not define one.
+	 * @throws IOException if an error occurs while decoding the extension.
+	 */
+	public static byte @Nullable [] getSubjectKeyIdentifier(X509Certificate crt) throws IOException {
+		byte[] encoded = crt.getExtensionValue(SubjectKeyIdentifierExtensionData.OID);
+		byte[] keyIdentifier = null;
+
+		if (encoded != null) {
+			SubjectKeyIdentifierExtensionData extensionData = (SubjectKeyIdentifierExtensionData) X509ExtensionData
+					.decode(SubjectKeyIdentifierExtensionData.OID, SubjectKeyIdentifierExtensionData.CRITICAL_DEFAULT,
+							encoded);
+
+			keyIdentifier = extensionData.getKeyIdentifier();
+		}
+		return keyIdentifier;
+	}
+
+	/**
+	 * Get a CRT object's Authority Key Identifier.
+	 *
+	 * @param crt The CRT object to get the key identifier for.
+	 * @return The CRT object's Authority Key Identifier or {@code null} if the CRT object does not define one.
+	 * @throws IOException if an error occurs while decoding the extension.
+	 */
+	public static byte @Nullable [] getAuthorityKeyIdentifier(X509Certificate crt) throws IOException {
+		byte[] encoded = crt.getExtensionValue(AuthorityKeyIdentifierExtensionData.OID);
+		byte[] keyIdentifier = null;
+
+		if (encoded != null) {
+			AuthorityKeyIdentifierExtensionData extensionData = (AuthorityKeyIdentifierExtensionData) X509ExtensionData
+					.decode(AuthorityKeyIdentifierExtensionData.OID,
+							AuthorityKeyIdentifierExtensionData.CRITICAL_DEFAULT, encoded);
+
+			keyIdentifier = extensionData.getKeyIdentifier();
+		}
+		return keyIdentifier;
+	}
+
 	/**
 	 * Generate a CRT object.
 	 *
@@ -117,6 +182,29 @@ public final class X509CertificateHelper {
 	public static X509Certificate generateCRT(X500Principal dn, KeyPair key, BigInteger serial, Date notBefore,
 			Date notAfter, List<X509ExtensionData> extensions, X500Principal issuerDN, KeyPair issuerKey,
 			SignatureAlgorithm signatureAlgorithm) throws IOException {
+		return generateCRT(dn, key, serial, notBefore, notAfter, extensions, issuerDN, issuerKey, signatureAlgorithm,
+				null);
+	}
+
+	/**
+	 * Generate a CRT object using a specific source of randomness for signing.
+	 *
+	 * @param dn The CRT's Distinguished Name (DN).
+	 * @param key The CRT's key pair
+	 * @param serial The CRT's serial.
+	 * @param notBefore The CRT's validity start.
+	 * @param notAfter The CRT's validity end.
+	 * @param extensions The CRT's extension objects.
+	 * @param issuerDN The issuer's Distinguished Name (DN).
+	 * @param issuerKey The issuer's key pair.
+	 * @param signatureAlgorithm The signature algorithm to use.
+	 * @param random The source of randomness to use for signing or {@code null} to use the provider's default.
+	 * @return The generated CRT object.
+	 * @throws IOException if an error occurs during generation.
+	 */
+	public static X509Certificate generateCRT(X500Principal dn, KeyPair key, BigInteger serial, Date notBefore,
+			Date notAfter, List<X509ExtensionData> extensions, X500Principal issuerDN, KeyPair issuerKey,
+			SignatureAlgorithm signatureAlgorithm, @Nullable SecureRandom random) throws IOException {
 		LOG.info("CRT generation ''{0}'' started...", dn);
 
 		// Initialize CRT builder
@@ -161,8 +249,13 @@ public final class X509CertificateHelper {
 			}
 
 			// Sign CRT
-			ContentSigner crtSigner = new JcaContentSignerBuilder(signatureAlgorithm.algorithm())
-					.build(issuerKey.getPrivate());
+			JcaContentSignerBuilder crtSignerBuilder = new JcaContentSignerBuilder(signatureAlgorithm.algorithm());
+
+			if (random != null) {
+				crtSignerBuilder.setSecureRandom(random);
+			}
+
+			ContentSigner crtSigner = crtSignerBuilder.build(issuerKey.getPrivate());
 
 			crt = new JcaX509CertificateConverter().getCertificate(crtBuilder.build(crtSigner));
 		} catch (OperatorCreationException | GeneralSecurityException e) {
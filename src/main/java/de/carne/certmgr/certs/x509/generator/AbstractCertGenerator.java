@@ -52,25 +52,7 @@ abstract class AbstractCertGenerator implements CertGenerator {
 	}
 
 	protected BigInteger getNextSerial(UserCertStoreEntry issuer) throws IOException {
-		UserCertStoreEntry rootIssuer = issuer;
-
-		while (!rootIssuer.isSelfSigned()) {
-			rootIssuer = rootIssuer.issuer();
-		}
-		return getNextSerialHelper(rootIssuer, BigInteger.ONE).add(BigInteger.ONE);
-	}
-
-	private BigInteger getNextSerialHelper(UserCertStoreEntry issuer, BigInteger serial) throws IOException {
-		BigInteger maxSerial = serial;
-
-		if (!issuer.hasCRT()) {
-			throw new IOException("Incomplete CA; unable to determine next serial");
-		}
-		maxSerial = maxSerial.max(issuer.getCRT().getSerialNumber());
-		for (UserCertStoreEntry issuedEntry : issuer.issuedEntries()) {
-			maxSerial = getNextSerialHelper(issuedEntry, maxSerial);
-		}
-		return maxSerial;
+		return issuer.store().nextSerial(issuer);
 	}
 
 	protected static <T> T requiredParameter(@Nullable T parameter, String name) throws IllegalArgumentException {
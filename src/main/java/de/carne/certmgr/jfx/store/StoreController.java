@@ -28,6 +28,7 @@ import java.text.NumberFormat;
 import java.util.Date;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
 import java.util.prefs.Preferences;
@@ -36,8 +37,11 @@ import java.util.stream.Collectors;
 import org.eclipse.jdt.annotation.Nullable;
 
 import de.carne.boot.Exceptions;
+import de.carne.boot.logging.Log;
 import de.carne.certmgr.certs.UserCertStore;
+import de.carne.certmgr.certs.UserCertStoreChange;
 import de.carne.certmgr.certs.UserCertStoreEntry;
+import de.carne.certmgr.certs.UserCertStoreExpiryScheduler;
 import de.carne.certmgr.certs.x509.Attributes;
 import de.carne.certmgr.certs.x509.PKCS10CertificateRequest;
 import de.carne.certmgr.certs.x509.ReasonFlag;
@@ -94,6 +98,8 @@ import javafx.stage.Stage;
  */
 public class StoreController extends StageController {
 
+	private static final Log LOG = new Log();
+
 	private static final int DETAILS_VIEW_ATTRIBUTE_LIMIT = 100;
 
 	private final Preferences preferences = Preferences.systemNodeForPackage(StoreController.class);
@@ -108,6 +114,11 @@ public class StoreController extends StageController {
 
 	private ObjectProperty<UserCertStore> storeProperty = new SimpleObjectProperty<>(null);
 
+	@Nullable
+	private UserCertStoreExpiryScheduler expiryScheduler = null;
+
+	private final UserCertStoreChange.Listener storeChangeListener = this::onStoreContentChanged;
+
 	@SuppressWarnings("null")
 	@FXML
 	MenuItem cmdStorePreferences;
@@ -415,7 +426,6 @@ public class StoreController extends StageController {
 					Alerts.unexpected(e).showAndWait();
 				}
 			}
-			updateStoreEntryView();
 		}
 	}
 
@@ -430,7 +440,6 @@ public class StoreController extends StageController {
 						getSelectedStoreEntry(), this.userPreferences.expertMode.getBoolean(false));
 
 				certOptions.showAndWait();
-				updateStoreEntryView();
 			} catch (IOException e) {
 				Alerts.unexpected(e).showAndWait();
 			}
@@ -452,7 +461,6 @@ public class StoreController extends StageController {
 
 					crlOptionsController.revokeStoreEntry(entry, ReasonFlag.UNSPECIFIED);
 					crlOptionsController.showAndWait();
-					updateStoreEntryView();
 				} catch (IOException e) {
 					Alerts.unexpected(e).showAndWait();
 				}
@@ -475,7 +483,6 @@ public class StoreController extends StageController {
 							this.userPreferences.expertMode.getBoolean(false));
 
 					crlOptionsController.showAndWait();
-					updateStoreEntryView();
 				} catch (IOException e) {
 					Alerts.unexpected(e).showAndWait();
 				}
@@ -511,7 +518,6 @@ public class StoreController extends StageController {
 					.init(this.storeProperty.get());
 
 			importController.showAndWait();
-			updateStoreEntryView();
 		} catch (IOException e) {
 			Alerts.unexpected(e).showAndWait();
 		}
@@ -606,6 +612,49 @@ public class StoreController extends StageController {
 		updateDetailsView(selection);
 	}
 
+	private void onStoreChanged(@Nullable UserCertStore oldStore, @Nullable UserCertStore store) {
+		UserCertStoreExpiryScheduler checkedExpiryScheduler = this.expiryScheduler;
+
+		if (checkedExpiryScheduler != null) {
+			checkedExpiryScheduler.close();
+			this.expiryScheduler = null;
+		}
+		if (oldStore != null) {
+			oldStore.removeChangeListener(this.storeChangeListener);
+			try {
+				oldStore.close();
+			} catch (IOException e) {
+				LOG.warning(e, "Failed to close store ''{0}''", oldStore.storeHome());
+			}
+		}
+		if (store != null) {
+			store.addChangeListener(this.storeChangeListener);
+			this.expiryScheduler = UserCertStoreExpiryScheduler.start(store, this::onStoreExpiryEvent);
+		}
+	}
+
+	private void onStoreContentChanged(UserCertStore store, List<UserCertStoreChange> changes) {
+		PlatformHelper.runLater(() -> {
+			if (store.equals(this.storeProperty.get())) {
+				this.storeEntryViewHelper.get().apply(changes);
+			}
+		});
+	}
+
+	private void onStoreExpiryEvent(UserCertStoreExpiryScheduler.Event event, Set<UserCertStoreEntry> entries) {
+		for (UserCertStoreEntry entry : entries) {
+			if (event == UserCertStoreExpiryScheduler.Event.EXPIRING) {
+				LOG.notice("Certificate ''{0}'' is about to expire", entry.getName());
+			} else {
+				LOG.warning("Certificate ''{0}'' has expired", entry.getName());
+			}
+		}
+		// Expired entries are rendered differently
+		if (event == UserCertStoreExpiryScheduler.Event.EXPIRED) {
+			PlatformHelper.runLater(this::updateStoreEntryView);
+		}
+	}
+
 	private void onUpdateHeapStatus() {
 		Runtime rt = Runtime.getRuntime();
 		long usedMemory = rt.totalMemory() - rt.freeMemory();
@@ -728,6 +777,7 @@ public class StoreController extends StageController {
 		this.ctlDetailsViewValue.setCellValueFactory(new TreeItemPropertyValueFactory<>("value"));
 		this.ctlStoreEntryView.getSelectionModel().selectedItemProperty()
 				.addListener((p, o, n) -> onStoreViewSelectionChanged(n));
+		this.storeProperty.addListener((p, o, n) -> onStoreChanged(o, n));
 		Windows.onHiding(stage, (ScheduledFuture<?> f) -> f.cancel(true), getExecutorService().scheduleAtFixedRate(
 				PlatformHelper.runLaterRunnable(() -> onUpdateHeapStatus()), 0, 500, TimeUnit.MILLISECONDS));
 	}
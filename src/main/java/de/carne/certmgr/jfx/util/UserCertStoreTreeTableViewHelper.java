@@ -19,6 +19,7 @@ package de.carne.certmgr.jfx.util;
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -27,6 +28,7 @@ import java.util.function.Function;
 import org.eclipse.jdt.annotation.Nullable;
 
 import de.carne.certmgr.certs.UserCertStore;
+import de.carne.certmgr.certs.UserCertStoreChange;
 import de.carne.certmgr.certs.UserCertStoreEntry;
 import javafx.collections.ObservableList;
 import javafx.scene.control.TreeItem;
@@ -43,6 +45,7 @@ public final class UserCertStoreTreeTableViewHelper<T extends UserCertStoreEntry
 
 	private final TreeTableView<T> treeTableView;
 	private final Function<UserCertStoreEntry, T> modelFactory;
+	private final Map<UserCertStoreEntry, TreeItem<T>> entryItems = new HashMap<>();
 
 	/**
 	 * Construct {@code UserCertStoreTreeTableViewHelper}.
@@ -62,16 +65,121 @@ public final class UserCertStoreTreeTableViewHelper<T extends UserCertStoreEntry
 	 * @param store The certificate store providing the data to display (may be {@code null}).
 	 */
 	public void update(@Nullable UserCertStore store) {
+		TreeItem<T> root = getRoot();
+
+		if (store != null) {
+			updateHelper(root, store.getRootEntries());
+		} else {
+			root.getChildren().clear();
+			this.entryItems.clear();
+		}
+	}
+
+	/**
+	 * Apply a batch of store changes to the {@link TreeTableView}'s model.
+	 * <p>
+	 * In contrast to {@link #update(UserCertStore)} only the items affected by the submitted changes are touched.
+	 * Changes already reflected by the model (e.g. because the model has been updated after the changes occurred) are
+	 * ignored.
+	 *
+	 * @param changes The store changes to apply.
+	 * @see UserCertStoreChange.Listener
+	 */
+	public void apply(List<UserCertStoreChange> changes) {
+		TreeItem<T> root = getRoot();
+		Set<TreeItem<T>> itemsToSort = new HashSet<>();
+
+		for (UserCertStoreChange change : changes) {
+			UserCertStoreEntry entry = change.entry();
+
+			switch (change.type()) {
+			case ENTRY_ADDED:
+				if (!this.entryItems.containsKey(entry)) {
+					this.entryItems.put(entry, createItem(entry));
+				}
+				break;
+			case ENTRY_REMOVED:
+				detachItem(this.entryItems.remove(entry));
+				break;
+			case ISSUER_CHANGED:
+				moveItem(root, entry, change.issuer(), itemsToSort);
+				break;
+			case OBJECT_ATTACHED:
+			case CRL_UPDATED:
+				refreshItem(entry, change.type() == UserCertStoreChange.Type.CRL_UPDATED, itemsToSort);
+				break;
+			}
+		}
+		for (TreeItem<T> item : itemsToSort) {
+			item.getChildren().sort(this.comparator);
+		}
+	}
+
+	private TreeItem<T> getRoot() {
 		TreeItem<T> root = this.treeTableView.getRoot();
 
 		if (root == null) {
 			root = new TreeItem<>();
 			this.treeTableView.setRoot(root);
 		}
-		if (store != null) {
-			updateHelper(root, store.getRootEntries());
-		} else {
-			root.getChildren().clear();
+		return root;
+	}
+
+	private TreeItem<T> createItem(UserCertStoreEntry entry) {
+		TreeItem<T> item = new TreeItem<>(this.modelFactory.apply(entry));
+
+		item.graphicProperty().bind(item.getValue().graphicProperty());
+		return item;
+	}
+
+	private void detachItem(@Nullable TreeItem<T> item) {
+		if (item != null) {
+			TreeItem<T> parent = item.getParent();
+
+			if (parent != null) {
+				parent.getChildren().remove(item);
+			}
+		}
+	}
+
+	private void moveItem(TreeItem<T> root, UserCertStoreEntry entry, @Nullable UserCertStoreEntry issuer,
+			Set<TreeItem<T>> itemsToSort) {
+		TreeItem<T> item = this.entryItems.get(entry);
+
+		if (item != null) {
+			TreeItem<T> issuerItem = (issuer != null && !issuer.equals(entry) ? this.entryItems.get(issuer) : null);
+			TreeItem<T> parent = (issuerItem != null ? issuerItem : root);
+
+			if (parent != item.getParent()) {
+				detachItem(item);
+				parent.getChildren().add(item);
+				itemsToSort.add(parent);
+			}
+		}
+	}
+
+	private void refreshItem(UserCertStoreEntry entry, boolean refreshIssued, Set<TreeItem<T>> itemsToSort) {
+		TreeItem<T> item = this.entryItems.get(entry);
+
+		if (item != null) {
+			// The model's properties are evaluated during construction; hence the model has to be re-created
+			T model = this.modelFactory.apply(entry);
+
+			item.graphicProperty().unbind();
+			item.setValue(model);
+			item.graphicProperty().bind(model.graphicProperty());
+
+			TreeItem<T> parent = item.getParent();
+
+			if (parent != null) {
+				itemsToSort.add(parent);
+			}
+			// A CRL update may revoke issued entries
+			if (refreshIssued) {
+				for (TreeItem<T> issuedItem : item.getChildren()) {
+					issuedItem.getValue().updateGraphic();
+				}
+			}
 		}
 	}
 
@@ -87,6 +195,7 @@ public final class UserCertStoreTreeTableViewHelper<T extends UserCertStoreEntry
 			} else {
 				// entry no longer in store -> remember for remove
 				itemsToRemove.add(item);
+				forgetItems(item);
 			}
 		}
 		items.removeAll(itemsToRemove);
@@ -94,8 +203,8 @@ public final class UserCertStoreTreeTableViewHelper<T extends UserCertStoreEntry
 			TreeItem<T> entryItem = itemsToUpdate.get(entry);
 
 			if (entryItem == null) {
-				entryItem = new TreeItem<>(this.modelFactory.apply(entry));
-				entryItem.graphicProperty().bind(entryItem.getValue().graphicProperty());
+				entryItem = createItem(entry);
+				this.entryItems.put(entry, entryItem);
 				items.add(entryItem);
 			} else {
 				entryItem.getValue().updateGraphic();
@@ -105,4 +214,11 @@ public final class UserCertStoreTreeTableViewHelper<T extends UserCertStoreEntry
 		items.sort(this.comparator);
 	}
 
+	private void forgetItems(TreeItem<T> item) {
+		this.entryItems.remove(item.getValue().getEntry(), item);
+		for (TreeItem<T> issuedItem : item.getChildren()) {
+			forgetItems(issuedItem);
+		}
+	}
+
 }
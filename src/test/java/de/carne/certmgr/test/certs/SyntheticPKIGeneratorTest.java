@@ -0,0 +1,171 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.test.certs;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.Security;
+import java.security.cert.CRLException;
+import java.security.cert.CertificateEncodingException;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.carne.certmgr.certs.UserCertStore;
+import de.carne.certmgr.certs.UserCertStoreEntry;
+import de.carne.certmgr.certs.security.KeyPairAlgorithm;
+import de.carne.certmgr.fixture.certs.SyntheticPKIGenerator;
+import de.carne.certmgr.fixture.certs.SyntheticPKIRequest;
+import de.carne.nio.file.FileUtil;
+import de.carne.util.Late;
+
+/**
+ * Test {@link SyntheticPKIGenerator} class functionality.
+ */
+public class SyntheticPKIGeneratorTest {
+
+	private static final Late<Path> tempPath = new Late<>();
+
+	private static final long SEED = 42;
+
+	private static final Date NOT_BEFORE = new Date(1600000000000L);
+
+	private static final Date NOT_AFTER = new Date(NOT_BEFORE.getTime() + 365L * 24 * 60 * 60 * 1000);
+
+	/**
+	 * Register BouncyCastle Provider.
+	 */
+	@BeforeClass
+	public static void registerBouncyCastle() {
+		Security.addProvider(new BouncyCastleProvider());
+	}
+
+	/**
+	 * Setup temporary directory for all tests.
+	 *
+	 * @throws IOException
+	 */
+	@BeforeClass
+	public static void setupTempPath() throws IOException {
+		tempPath.set(Files.createTempDirectory(SyntheticPKIGeneratorTest.class.getSimpleName()));
+	}
+
+	/**
+	 * Clean up temporary directory be deleting it including all content.
+	 *
+	 * @throws java.lang.Exception
+	 */
+	@AfterClass
+	public static void deleteTempPath() throws Exception {
+		FileUtil.delete(tempPath.get());
+	}
+
+	/**
+	 * Test synthetic PKI generation.
+	 */
+	@Test
+	public void testSyntheticPKIGenerator() {
+		SyntheticPKIRequest request = new SyntheticPKIRequest(SEED, NOT_BEFORE, NOT_AFTER);
+
+		request.addLevel(1);
+		request.addLevel(2);
+		request.addLevel(3);
+		request.addKeyType(keyPairAlgorithm("EC"), 256, 3);
+		request.addKeyType(keyPairAlgorithm("RSA"), 1024, 1);
+		request.setRevocationRatio(0.5);
+
+		SyntheticPKIGenerator generator = new SyntheticPKIGenerator(request);
+
+		try (UserCertStore store1 = generator.generate(tempPath.get().resolve("store1"), TestCerts.password())) {
+			try (UserCertStore store2 = generator.generate(tempPath.get().resolve("store2"), TestCerts.password())) {
+				Assert.assertEquals(9, request.getEntryCount());
+				Assert.assertEquals(9, store1.size());
+				Assert.assertEquals(1, store1.getRootEntries().size());
+				Assert.assertEquals(3, store1.getEntries().stream().filter(UserCertStoreEntry::hasCRL).count());
+				try (UserCertStore reopenedStore1 = UserCertStore.openStore(tempPath.get().resolve("store1"))) {
+					Assert.assertEquals(9, reopenedStore1.size());
+				}
+
+				// Same request --> same certificate objects
+				Map<String, byte[]> encodings1 = encodings(store1);
+				Map<String, byte[]> encodings2 = encodings(store2);
+
+				Assert.assertEquals(encodings1.keySet(), encodings2.keySet());
+				for (Map.Entry<String, byte[]> encoding1 : encodings1.entrySet()) {
+					Assert.assertArrayEquals(encoding1.getKey(), encoding1.getValue(),
+							encodings2.get(encoding1.getKey()));
+				}
+			}
+		} catch (IOException | CertificateEncodingException | CRLException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Test synthetic PKI generation parameter checks.
+	 */
+	@Test
+	public void testSyntheticPKIRequestChecks() {
+		SyntheticPKIRequest request = new SyntheticPKIRequest(SEED, NOT_BEFORE, NOT_AFTER);
+
+		try {
+			new SyntheticPKIGenerator(request);
+			Assert.fail("Generator construction succeeded, but should not");
+		} catch (IllegalArgumentException e) {
+			Assert.assertNotNull(e.getMessage());
+		}
+		try {
+			request.setRevocationRatio(1.5);
+			Assert.fail("Setting revocation ratio succeeded, but should not");
+		} catch (IllegalArgumentException e) {
+			Assert.assertEquals(0.0, request.getRevocationRatio(), 0.0);
+		}
+	}
+
+	private static KeyPairAlgorithm keyPairAlgorithm(String algorithm) {
+		KeyPairAlgorithm keyPairAlgorithm = Objects.requireNonNull(KeyPairAlgorithm.getDefaultSet(algorithm, false)
+				.getDefault());
+
+		Assert.assertEquals(algorithm, keyPairAlgorithm.algorithm());
+		return keyPairAlgorithm;
+	}
+
+	private static Map<String, byte[]> encodings(UserCertStore store)
+			throws IOException, CertificateEncodingException, CRLException {
+		Map<String, byte[]> encodings = new HashMap<>();
+
+		for (UserCertStoreEntry entry : store.getEntries()) {
+			encodings.put(entry.id().getAlias() + ".crt", entry.getCRT().getEncoded());
+			encodings.put(entry.id().getAlias() + ".key",
+					entry.getKey(TestCerts.password()).getPrivate().getEncoded());
+			if (entry.hasCRL()) {
+				encodings.put(entry.id().getAlias() + ".crl", entry.getCRL().getEncoded());
+			}
+		}
+		return encodings;
+	}
+
+}
@@ -17,20 +17,46 @@
 package de.carne.certmgr.test.certs;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.math.BigInteger;
 import java.net.URL;
 import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchService;
 import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileTime;
 import java.security.Security;
+import java.security.cert.CertificateParsingException;
+import java.security.cert.X509Certificate;
 import java.security.cert.X509Extension;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.prefs.BackingStoreException;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -41,15 +67,29 @@ import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.eclipse.jdt.annotation.Nullable;
 import org.junit.AfterClass;
 import org.junit.Assert;
+import org.junit.Assume;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import de.carne.boot.Exceptions;
+import de.carne.certmgr.certs.CertObjectStore;
+import de.carne.certmgr.certs.CertObjectType;
 import de.carne.certmgr.certs.NoPassword;
 import de.carne.certmgr.certs.UserCertStore;
+import de.carne.certmgr.certs.UserCertStoreBackend;
+import de.carne.certmgr.certs.UserCertStoreChange;
+import de.carne.certmgr.certs.UserCertStoreDurability;
 import de.carne.certmgr.certs.UserCertStoreEntry;
 import de.carne.certmgr.certs.UserCertStoreEntryId;
+import de.carne.certmgr.certs.UserCertStoreExpiryScheduler;
+import de.carne.certmgr.certs.UserCertStoreImportResult;
+import de.carne.certmgr.certs.UserCertStoreLayout;
 import de.carne.certmgr.certs.UserCertStorePreferences;
+import de.carne.certmgr.certs.UserCertStoreQuery;
+import de.carne.certmgr.certs.UserCertStoreSnapshot;
+import de.carne.certmgr.certs.io.CertReaders;
+import de.carne.certmgr.certs.io.IOResource;
+import de.carne.certmgr.certs.io.PEMCertReaderWriter;
 import de.carne.certmgr.certs.net.SSLPeer.Protocol;
 import de.carne.certmgr.certs.security.KeyPairAlgorithm;
 import de.carne.certmgr.certs.security.PlatformKeyStore;
@@ -120,8 +160,7 @@ public class UserCertStoreTest {
 	public void testCreateAndOpenStore() {
 		Path storeHome = tempPath.get().resolve(NAME_STORE1);
 
-		try {
-			UserCertStore createdStore = UserCertStore.createStore(storeHome);
+		try (UserCertStore createdStore = UserCertStore.createStore(storeHome)) {
 			GenerateCertRequest request1 = generateRequest(createdStore, CertGenerators.DEFAULT, true);
 			UserCertStoreEntry generated1 = createdStore.generateEntry(CertGenerators.DEFAULT, request1,
 					TestCerts.password(), TestCerts.password(), "TestCert");
@@ -146,9 +185,7 @@ public class UserCertStoreTest {
 			e.printStackTrace();
 			Assert.fail(e.getMessage());
 		}
-		try {
-			UserCertStore openendStore = UserCertStore.openStore(storeHome);
-
+		try (UserCertStore openendStore = UserCertStore.openStore(storeHome)) {
 			Assert.assertEquals(2, openendStore.size());
 		} catch (IOException e) {
 			e.printStackTrace();
@@ -190,9 +227,7 @@ public class UserCertStoreTest {
 	 */
 	@Test
 	public void testAccessStore() {
-		try {
-			UserCertStore store = UserCertStore.openStore(testStorePath.get());
-
+		try (UserCertStore store = UserCertStore.openStore(testStorePath.get())) {
 			Assert.assertEquals(11, store.size());
 			Assert.assertEquals(TestCerts.TEST_STORE_NAME, store.storeName());
 			Assert.assertEquals(11, store.getEntries().size());
@@ -439,6 +474,977 @@ public class UserCertStoreTest {
 		}
 	}
 
+	private static final String NAME_STORE3 = "store3";
+
+	/**
+	 * Test bulk import of certificate objects.
+	 */
+	@Test
+	public void testImportEntries() {
+		Path storeHome = tempPath.get().resolve(NAME_STORE3);
+
+		try {
+			List<CertObjectStore> certObjectStores = new ArrayList<>();
+
+			for (Path file : collectDirectoryFiles(testStorePath.get())) {
+				try {
+					CertObjectStore certObjectStore = CertReaders.readFile(file, TestCerts.password());
+
+					if (certObjectStore != null) {
+						certObjectStores.add(certObjectStore);
+					}
+				} catch (IOException e) {
+					System.out.println("Skipping non-certificate file: " + file);
+				}
+			}
+
+			int objectCount = certObjectStores.stream().mapToInt(CertObjectStore::size).sum();
+
+			// Submit everything twice to exercise duplicate detection
+			certObjectStores.addAll(new ArrayList<>(certObjectStores));
+
+			try (UserCertStore store = UserCertStore.createStore(storeHome)) {
+				UserCertStoreImportResult result = store.importEntries(certObjectStores, TestCerts.password(), null);
+				UserCertStore referenceStore = UserCertStore.createFromFiles(collectDirectoryFiles(testStorePath.get()),
+						TestCerts.password());
+
+				Assert.assertEquals(objectCount * 2, result.objectCount());
+				Assert.assertEquals(objectCount, result.duplicateCount());
+				Assert.assertEquals(store.getEntries().stream().filter(entry -> !entry.isExternal()).count(),
+						result.importedEntries().size());
+				Assert.assertEquals(referenceStore.size(), store.size());
+				Assert.assertEquals(referenceStore.getRootEntries().size(), store.getRootEntries().size());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	private static final String NAME_STORE3_PEM = "store3pem";
+
+	private static final String PEM_BUNDLE = "bundle.pem";
+
+	/**
+	 * Test streaming import of a PEM bundle.
+	 */
+	@Test
+	public void testImportPEMEntries() {
+		Path storeHome = tempPath.get().resolve(NAME_STORE3_PEM);
+		Path bundleFile = tempPath.get().resolve(PEM_BUNDLE);
+
+		try {
+			List<Path> pemFiles = collectDirectoryFiles(testStorePath.get()).stream()
+					.filter(file -> file.getFileName().toString().matches(".*\\.(crt|key|csr|crl)"))
+					.collect(Collectors.toList());
+
+			// Bundle everything twice to exercise duplicate detection
+			try (OutputStream bundle = Files.newOutputStream(bundleFile)) {
+				for (int round = 0; round < 2; round++) {
+					for (Path pemFile : pemFiles) {
+						Files.copy(pemFile, bundle);
+						bundle.write('\n');
+					}
+				}
+			}
+
+			List<CertObjectStore.Entry> streamedObjects = new ArrayList<>();
+			CertObjectStore readObjects;
+
+			try (IOResource<InputStream> in = IOResource.newInputStream(PEM_BUNDLE, bundleFile)) {
+				PEMCertReaderWriter.readObjectsBinary(in, TestCerts.password(), streamedObjects::add);
+			}
+			try (IOResource<InputStream> in = IOResource.newInputStream(PEM_BUNDLE, bundleFile)) {
+				readObjects = Objects.requireNonNull(PEMCertReaderWriter.readObjectsBinary(in, TestCerts.password()));
+			}
+
+			CertObjectStore collectedObjects = new CertObjectStore();
+
+			streamedObjects.forEach(collectedObjects::add);
+
+			Iterator<CertObjectStore.Entry> collectedObjectsIterator = collectedObjects.iterator();
+
+			Assert.assertEquals(readObjects.size(), collectedObjects.size());
+			for (CertObjectStore.Entry readObject : readObjects) {
+				CertObjectStore.Entry collectedObject = collectedObjectsIterator.next();
+
+				Assert.assertEquals(readObject, collectedObject);
+				Assert.assertEquals(readObject.alias(), collectedObject.alias());
+			}
+
+			try (UserCertStore store = UserCertStore.createStore(storeHome)) {
+				UserCertStoreImportResult result;
+
+				try (IOResource<InputStream> in = IOResource.newInputStream(PEM_BUNDLE, bundleFile)) {
+					result = store.importPEMEntries(in, TestCerts.password(), TestCerts.password(), null);
+				}
+
+				UserCertStore referenceStore = UserCertStore.createFromFiles(pemFiles, TestCerts.password());
+
+				Assert.assertEquals(streamedObjects.size(), result.objectCount());
+				Assert.assertTrue(result.duplicateCount() >= streamedObjects.size() / 2);
+				Assert.assertEquals(referenceStore.size(), store.size());
+				Assert.assertEquals(referenceStore.getRootEntries().size(), store.getRootEntries().size());
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	private static final String NAME_STORE4 = "store4";
+
+	private static final String ALIAS_HINT = "alias";
+
+	/**
+	 * Test alias allocation.
+	 */
+	@Test
+	public void testAliasAllocation() {
+		Path storeHome = tempPath.get().resolve(NAME_STORE4);
+
+		try {
+			UserCertStore sourceStore = UserCertStore.createFromFiles(collectDirectoryFiles(testStorePath.get()),
+					TestCerts.password());
+			List<UserCertStoreEntry> sourceEntries = sourceStore.getEntries().stream()
+					.filter(UserCertStoreEntry::hasCRT).limit(3).collect(Collectors.toList());
+			try (UserCertStore store = UserCertStore.createStore(storeHome)) {
+				Assert.assertEquals(ALIAS_HINT, store.generateEntryId(ALIAS_HINT).getAlias());
+
+				List<UserCertStoreEntryId> entryIds = new ArrayList<>();
+
+				for (UserCertStoreEntry sourceEntry : sourceEntries) {
+					entryIds.add(Objects
+							.requireNonNull(store.importEntry(sourceEntry, TestCerts.password(), ALIAS_HINT)).id());
+				}
+				Assert.assertEquals(ALIAS_HINT, entryIds.get(0).getAlias());
+				Assert.assertEquals(ALIAS_HINT + "1", entryIds.get(1).getAlias());
+				Assert.assertEquals(ALIAS_HINT + "2", entryIds.get(2).getAlias());
+				Assert.assertEquals(ALIAS_HINT + "3", store.generateEntryId(ALIAS_HINT).getAlias());
+
+				// Allocation continues after the highest allocated alias (even if a lower one has been freed)
+				store.deleteEntry(entryIds.get(1));
+				Assert.assertEquals(ALIAS_HINT + "3", store.generateEntryId(ALIAS_HINT).getAlias());
+
+				// A re-opened store starts probing from scratch and therefore re-uses the freed alias
+				try (UserCertStore reopenedStore = UserCertStore.openStore(storeHome)) {
+					Assert.assertEquals(ALIAS_HINT + "1", reopenedStore.generateEntryId(ALIAS_HINT).getAlias());
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	private static final String NAME_STORE5 = "store5";
+
+	/**
+	 * Test store modifications for all durability levels.
+	 */
+	@Test
+	public void testDurability() {
+		try {
+			UserCertStore sourceStore = UserCertStore.createFromFiles(collectDirectoryFiles(testStorePath.get()),
+					TestCerts.password());
+
+			for (UserCertStoreDurability durability : UserCertStoreDurability.values()) {
+				Path storeHome = tempPath.get().resolve(NAME_STORE5 + durability.name());
+
+				try (UserCertStore createdStore = UserCertStore.createStore(storeHome)) {
+					UserCertStorePreferences preferences = Objects.requireNonNull(createdStore.storePreferences());
+
+					preferences.durability.put(durability.name());
+					preferences.sync();
+				}
+
+				try (UserCertStore store = UserCertStore.openStore(storeHome)) {
+					Assert.assertEquals(durability, Objects.requireNonNull(store.storePreferences()).getDurability());
+
+					for (UserCertStoreEntry sourceEntry : sourceStore.getEntries()) {
+						if (!sourceEntry.isExternal()) {
+							store.importEntry(sourceEntry, TestCerts.password(), ALIAS_HINT);
+						}
+					}
+					Assert.assertEquals(sourceStore.size(), store.size());
+					Assert.assertTrue(collectDirectoryFiles(storeHome).stream()
+							.noneMatch(file -> file.getFileName().toString().endsWith(".tmp")));
+
+					// Simulate a write which has never been committed as well as one still pending elsewhere
+					Path staleTempFile = Files.write(storeHome.resolve("certs").resolve("stale.crt.tmp"), new byte[0]);
+					Path pendingTempFile = Files.write(storeHome.resolve("certs").resolve("pending.crt.tmp"),
+							new byte[0]);
+
+					Files.setLastModifiedTime(staleTempFile, FileTime.fromMillis(0));
+
+					try (UserCertStore reopenedStore = UserCertStore.openStore(storeHome)) {
+						Assert.assertFalse(Files.exists(staleTempFile));
+						Assert.assertTrue(Files.exists(pendingTempFile));
+						Assert.assertEquals(store.size(), reopenedStore.size());
+						for (UserCertStoreEntry entry : reopenedStore.getEntries()) {
+							if (entry.hasCRT()) {
+								Assert.assertNotNull(entry.getCRT());
+							}
+						}
+					}
+				}
+			}
+		} catch (IOException | BackingStoreException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	private static final String NAME_STORE6 = "store6";
+
+	private static final String LOG_FILENAME = "store.log";
+
+	/**
+	 * Test log based store creation, migration and recovery.
+	 */
+	@Test
+	public void testLogStore() {
+		Path storeHome = tempPath.get().resolve(NAME_STORE6);
+
+		try (UserCertStore sourceStore = UserCertStore.openStore(testStorePath.get())) {
+			try (UserCertStore store = UserCertStore.migrateStore(testStorePath.get(), storeHome)) {
+				Path logFile = storeHome.resolve(LOG_FILENAME);
+
+				Assert.assertTrue(Files.isRegularFile(logFile));
+				Assert.assertFalse(Files.exists(storeHome.resolve("certs")));
+				Assert.assertEquals(storeIssuers(sourceStore), storeIssuers(store));
+				for (UserCertStoreEntry entry : store.getEntries()) {
+					if (entry.hasKey()) {
+						Assert.assertNotNull(entry.getKey(TestCerts.password()));
+					}
+					Assert.assertTrue(entry.getFilePaths().isEmpty());
+				}
+
+				// Appended garbage (e.g. a torn write) is discarded while opening the store
+				long logSize = Files.size(logFile);
+
+				try (OutputStream out = Files.newOutputStream(logFile, StandardOpenOption.APPEND)) {
+					out.write(new byte[] { 0, 0, 1, 0, 1, 2, 3 });
+				}
+
+				try (UserCertStore reopenedStore = UserCertStore.openStore(storeHome)) {
+					Assert.assertEquals(logSize, Files.size(logFile));
+					Assert.assertEquals(storeIssuers(sourceStore), storeIssuers(reopenedStore));
+
+					// Deletions survive re-opening
+					UserCertStoreEntry deleteEntry = reopenedStore.getEntries().stream()
+							.filter(entry -> !entry.isExternal() && reopenedStore.getIssuedEntries(entry).isEmpty())
+							.findFirst().get();
+
+					reopenedStore.deleteEntry(deleteEntry.id());
+					Assert.assertEquals(storeIssuers(reopenedStore), reopenedStoreIssuers(storeHome));
+
+					Path createdStoreHome = tempPath.get().resolve(NAME_STORE6 + LOG_FILENAME);
+
+					try (UserCertStore createdStore = UserCertStore.createStore(createdStoreHome,
+							UserCertStoreBackend.LOG)) {
+						Assert.assertEquals(0, createdStore.size());
+					}
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	private static final String NAME_STORE7 = "store7";
+
+	/**
+	 * Test online migration between the directory layouts.
+	 */
+	@Test
+	public void testLayoutMigration() {
+		Path storeHome = tempPath.get().resolve(NAME_STORE7);
+
+		try {
+			UserCertStore sourceStore = UserCertStore.createFromFiles(collectDirectoryFiles(testStorePath.get()),
+					TestCerts.password());
+			try (UserCertStore store = UserCertStore.createStore(storeHome)) {
+				for (UserCertStoreEntry sourceEntry : sourceStore.getEntries()) {
+					if (!sourceEntry.isExternal()) {
+						store.importEntry(sourceEntry, TestCerts.password(), ALIAS_HINT);
+					}
+				}
+
+				Map<String, String> storeIssuers = storeIssuers(store);
+
+				store.migrateLayout(UserCertStoreLayout.SHARDED);
+				Assert.assertEquals(storeIssuers, storeIssuers(store));
+				for (UserCertStoreEntry entry : store.getEntries()) {
+					for (Path file : entry.getFilePaths()) {
+						Assert.assertTrue(Files.isRegularFile(file));
+						Assert.assertEquals(4, storeHome.relativize(file).getNameCount());
+					}
+					if (entry.hasCRT()) {
+						Assert.assertNotNull(entry.getCRT());
+					}
+				}
+
+				try (UserCertStore reopenedStore = UserCertStore.openStore(storeHome)) {
+					Assert.assertEquals(UserCertStoreLayout.SHARDED,
+							Objects.requireNonNull(reopenedStore.storePreferences()).getLayout());
+					Assert.assertEquals(storeIssuers, storeIssuers(reopenedStore));
+
+					UserCertStoreEntry deleteEntry = reopenedStore.getEntries().stream()
+							.filter(entry -> !entry.isExternal() && reopenedStore.getIssuedEntries(entry).isEmpty())
+							.findFirst().get();
+					List<Path> deleteEntryFiles = deleteEntry.getFilePaths();
+
+					reopenedStore.deleteEntry(deleteEntry.id());
+					for (Path file : deleteEntryFiles) {
+						Assert.assertFalse(Files.exists(file));
+					}
+
+					reopenedStore.migrateLayout(UserCertStoreLayout.FLAT);
+					for (UserCertStoreEntry entry : reopenedStore.getEntries()) {
+						for (Path file : entry.getFilePaths()) {
+							Assert.assertEquals(2, storeHome.relativize(file).getNameCount());
+						}
+					}
+					Assert.assertEquals(storeIssuers(reopenedStore), reopenedStoreIssuers(storeHome));
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Test store snapshot isolation.
+	 */
+	@Test
+	public void testSnapshot() {
+		try {
+			UserCertStore store = UserCertStore.createFromFiles(collectDirectoryFiles(testStorePath.get()),
+					TestCerts.password());
+			UserCertStoreSnapshot snapshot = store.snapshot();
+
+			Assert.assertSame(snapshot, store.snapshot());
+			Assert.assertEquals(store.size(), snapshot.size());
+			Assert.assertEquals(store.getEntries(), snapshot.getEntries());
+			Assert.assertEquals(store.getRootEntries(), snapshot.getRootEntries());
+			for (UserCertStoreEntry entry : snapshot.getEntries()) {
+				Assert.assertEquals(entry.issuer(), snapshot.getIssuer(entry));
+				Assert.assertEquals(store.getIssuedEntries(entry), snapshot.getIssuedEntries(entry));
+			}
+
+			UserCertStoreEntry deleteEntry = snapshot.getEntries().stream()
+					.filter(entry -> !entry.isExternal() && !entry.isSelfSigned()
+							&& snapshot.getIssuedEntries(entry).isEmpty())
+					.findFirst().get();
+			UserCertStoreEntry deleteEntryIssuer = Objects.requireNonNull(snapshot.getIssuer(deleteEntry));
+			Set<UserCertStoreEntry> issuedEntries = new HashSet<>(snapshot.getIssuedEntries(deleteEntryIssuer));
+
+			store.deleteEntry(deleteEntry.id());
+
+			UserCertStoreSnapshot nextSnapshot = store.snapshot();
+
+			Assert.assertTrue(nextSnapshot.generation() > snapshot.generation());
+			Assert.assertTrue(snapshot.contains(deleteEntry));
+			Assert.assertEquals(issuedEntries, snapshot.getIssuedEntries(deleteEntryIssuer));
+			Assert.assertFalse(nextSnapshot.contains(deleteEntry));
+			Assert.assertFalse(nextSnapshot.getIssuedEntries(deleteEntryIssuer).contains(deleteEntry));
+			Assert.assertEquals(snapshot.size() - 1, nextSnapshot.size());
+			for (UserCertStoreEntry rootEntry : nextSnapshot.getRootEntries()) {
+				if (!rootEntry.equals(deleteEntryIssuer)) {
+					Assert.assertSame(snapshot.getIssuedEntries(rootEntry), nextSnapshot.getIssuedEntries(rootEntry));
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	private static final String NAME_STORE9 = "store9";
+
+	/**
+	 * Test store change reporting.
+	 */
+	@Test
+	public void testChangeListener() {
+		Path storeHome = tempPath.get().resolve(NAME_STORE9);
+
+		try (UserCertStore store = UserCertStore.createStore(storeHome)) {
+			List<List<UserCertStoreChange>> batches = new ArrayList<>();
+			Map<UserCertStoreEntry, UserCertStoreEntry> replayedIssuers = new HashMap<>();
+
+			store.addChangeListener((changedStore, changes) -> {
+				Assert.assertSame(store, changedStore);
+				batches.add(changes);
+				replayChanges(replayedIssuers, changes);
+			});
+
+			UserCertStore importStore = UserCertStore.createFromFiles(collectDirectoryFiles(testStorePath.get()),
+					TestCerts.password());
+
+			for (UserCertStoreEntry importStoreEntry : importStore.getEntries()) {
+				store.importEntry(importStoreEntry, TestCerts.password(), "Imported");
+			}
+			checkReplayedIssuers(store, replayedIssuers);
+
+			// CRL update
+			UserCertStoreEntry revokeEntry = store.getEntries().stream()
+					.filter(entry -> entry.hasCRT() && !entry.isSelfSigned() && !entry.isExternal()
+							&& entry.issuer().canIssue())
+					.findFirst().get();
+			UserCertStoreEntry issuerEntry = revokeEntry.issuer();
+			Date lastUpdate = new Date(System.currentTimeMillis());
+			SignatureAlgorithm signatureAlgorithm = Objects.requireNonNull(
+					SignatureAlgorithm.getDefaultSet(issuerEntry.getPublicKey().getAlgorithm(),
+							revokeEntry.getCRT().getSigAlgName(), false).getDefault());
+			UpdateCRLRequest updateCRLRequest = new UpdateCRLRequest(lastUpdate,
+					new Date(lastUpdate.getTime() + 1000), signatureAlgorithm);
+
+			updateCRLRequest.addRevokeEntry(revokeEntry.getCRT().getSerialNumber(), ReasonFlag.UNSPECIFIED);
+			batches.clear();
+			issuerEntry.updateCRL(updateCRLRequest, TestCerts.password());
+			Assert.assertEquals(1, batches.size());
+			Assert.assertEquals(1, batches.get(0).size());
+
+			UserCertStoreChange crlChange = batches.get(0).get(0);
+
+			Assert.assertEquals(UserCertStoreChange.Type.CRL_UPDATED, crlChange.type());
+			Assert.assertEquals(issuerEntry, crlChange.entry());
+			Assert.assertEquals(CertObjectType.CRL, crlChange.objectType());
+
+			// Delete (including re-linking of the issued entries)
+			batches.clear();
+			store.deleteEntry(issuerEntry.id());
+			Assert.assertEquals(1, batches.size());
+			Assert.assertTrue(batches.get(0).stream()
+					.anyMatch(change -> change.type() == UserCertStoreChange.Type.ENTRY_REMOVED
+							&& change.entry().equals(issuerEntry)));
+			checkReplayedIssuers(store, replayedIssuers);
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	private static void replayChanges(Map<UserCertStoreEntry, UserCertStoreEntry> issuers,
+			List<UserCertStoreChange> changes) {
+		for (UserCertStoreChange change : changes) {
+			switch (change.type()) {
+			case ENTRY_ADDED:
+				issuers.put(change.entry(), change.entry());
+				break;
+			case ENTRY_REMOVED:
+				issuers.remove(change.entry());
+				break;
+			case ISSUER_CHANGED:
+				Assert.assertTrue(issuers.containsKey(change.entry()));
+				issuers.put(change.entry(), Objects.requireNonNull(change.issuer()));
+				break;
+			default:
+				Assert.assertTrue(issuers.containsKey(change.entry()));
+			}
+		}
+	}
+
+	private static void checkReplayedIssuers(UserCertStore store, Map<UserCertStoreEntry, UserCertStoreEntry> issuers) {
+		Assert.assertEquals(store.getEntries(), issuers.keySet());
+		for (UserCertStoreEntry entry : store.getEntries()) {
+			Assert.assertEquals(entry.issuer(), issuers.get(entry));
+		}
+	}
+
+	private static final String NAME_STORE8 = "store8";
+
+	private static final long EXPIRY_TIMEOUT = 10000;
+
+	/**
+	 * Test expiry event scheduling.
+	 */
+	@Test
+	public void testExpiryScheduler() {
+		Path storeHome = tempPath.get().resolve(NAME_STORE8);
+		BlockingQueue<UserCertStoreExpiryScheduler.Event> events = new LinkedBlockingQueue<>();
+		// Start on a whole second as CRT validity dates are encoded in seconds
+		long now = (System.currentTimeMillis() / 1000) * 1000;
+		TestClock clock = new TestClock(now);
+
+		try (UserCertStore store = UserCertStore.createStore(storeHome)) {
+			UserCertStoreExpiryScheduler scheduler = UserCertStoreExpiryScheduler.start(store, 1,
+					(event, entries) -> events.addAll(Collections.nCopies(entries.size(), event)), clock);
+
+			try {
+				UserCertStoreEntry entry = generateExpiryTestEntry(store, "TestCert", now,
+						now + TimeUnit.HOURS.toMillis(1));
+
+				Assert.assertEquals(UserCertStoreExpiryScheduler.Event.EXPIRING,
+						events.poll(EXPIRY_TIMEOUT, TimeUnit.MILLISECONDS));
+				Assert.assertTrue(entry.isValid());
+
+				// Any CRT change triggers a check; hence adding a CRT outside the warning period reports the expiry
+				clock.set(now + TimeUnit.HOURS.toMillis(2));
+				generateExpiryTestEntry(store, "TestCert2", now, now + TimeUnit.DAYS.toMillis(30));
+
+				Assert.assertEquals(UserCertStoreExpiryScheduler.Event.EXPIRED,
+						events.poll(EXPIRY_TIMEOUT, TimeUnit.MILLISECONDS));
+				Assert.assertTrue(events.isEmpty());
+			} finally {
+				scheduler.close();
+			}
+		} catch (IOException | InterruptedException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	private static UserCertStoreEntry generateExpiryTestEntry(UserCertStore store, String name, long notBefore,
+			long notAfter) throws IOException {
+		KeyPairAlgorithm keyPairAlgorithm = Objects
+				.requireNonNull(KeyPairAlgorithm.getDefaultSet("EC", false).getDefault());
+		Integer keySize = Objects.requireNonNull(keyPairAlgorithm.getStandardKeySizes(null).getDefault());
+		GenerateCertRequest request = new GenerateCertRequest(X500Names.fromString("CN=" + name), keyPairAlgorithm,
+				keySize.intValue());
+
+		request.setIssuer(CertGenerators.DEFAULT.getIssuers(store, null).getDefault());
+		request.setSignatureAlgorithm(Objects.requireNonNull(CertGenerators.DEFAULT
+				.getSignatureAlgorithms(request.getIssuer(), keyPairAlgorithm, null, false).getDefault()));
+		request.setNotBefore(new Date(notBefore));
+		request.setNotAfter(new Date(notAfter));
+		return store.generateEntry(CertGenerators.DEFAULT, request, TestCerts.password(), TestCerts.password(),
+				name);
+	}
+
+	private static class TestClock extends Clock {
+
+		private volatile long millis;
+
+		TestClock(long millis) {
+			this.millis = millis;
+		}
+
+		void set(long newMillis) {
+			this.millis = newMillis;
+		}
+
+		@Override
+		public ZoneId getZone() {
+			return ZoneOffset.UTC;
+		}
+
+		@Override
+		public Clock withZone(ZoneId zone) {
+			return this;
+		}
+
+		@Override
+		public Instant instant() {
+			return Instant.ofEpochMilli(this.millis);
+		}
+
+	}
+
+	private static final String NAME_STORE2 = "store2";
+
+	private static final int CONCURRENT_READERS = 4;
+
+	/**
+	 * Test concurrent read access while the store is being modified.
+	 */
+	@Test
+	public void testConcurrentAccess() {
+		Path storeHome = tempPath.get().resolve(NAME_STORE2);
+		ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_READERS);
+
+		try {
+			UserCertStore sourceStore = UserCertStore.createFromFiles(collectDirectoryFiles(testStorePath.get()),
+					TestCerts.password());
+			try (UserCertStore store = UserCertStore.createStore(storeHome)) {
+				AtomicBoolean writing = new AtomicBoolean(true);
+				List<Future<Integer>> readers = new ArrayList<>();
+
+				for (int readerIndex = 0; readerIndex < CONCURRENT_READERS; readerIndex++) {
+					readers.add(executor.submit(() -> readStoreWhile(store, writing)));
+				}
+				try {
+					for (int round = 0; round < 3; round++) {
+						for (UserCertStoreEntry sourceEntry : sourceStore.getEntries()) {
+							store.importEntry(sourceEntry, TestCerts.password(), sourceEntry.id().getAlias());
+						}
+						for (UserCertStoreEntry entry : store.getEntries()) {
+							if (!entry.isExternal()) {
+								store.deleteEntry(entry.id());
+							}
+						}
+					}
+					for (UserCertStoreEntry sourceEntry : sourceStore.getEntries()) {
+						store.importEntry(sourceEntry, TestCerts.password(), sourceEntry.id().getAlias());
+					}
+				} finally {
+					writing.set(false);
+				}
+				for (Future<Integer> reader : readers) {
+					Assert.assertTrue(reader.get().intValue() > 0);
+				}
+				Assert.assertEquals(sourceStore.size(), store.size());
+				Assert.assertEquals(sourceStore.getRootEntries().size(), store.getRootEntries().size());
+			}
+		} catch (IOException | InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static int readStoreWhile(UserCertStore store, AtomicBoolean writing) {
+		int reads = 0;
+
+		do {
+			Set<UserCertStoreEntry> entries = store.getEntries();
+
+			for (UserCertStoreEntry rootEntry : store.getRootEntries()) {
+				for (UserCertStoreEntry issuedEntry : store.getIssuedEntries(rootEntry)) {
+					Assert.assertNotEquals(rootEntry, issuedEntry);
+				}
+			}
+			for (UserCertStoreEntry entry : entries) {
+				Assert.assertNotNull(entry.dn());
+			}
+			reads++;
+		} while (writing.get());
+		return reads;
+	}
+
+	/**
+	 * Test serial number allocation.
+	 */
+	@Test
+	public void testNextSerial() {
+		ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_READERS);
+
+		try {
+			Path storeHome = createTempDirFromZIPResource(TestCerts.testStoreZIPURL(), tempPath.get(), null)
+					.resolve(TestCerts.TEST_STORE_NAME);
+			try (UserCertStore store = UserCertStore.openStore(storeHome)) {
+				UserCertStoreEntry issuerEntry = store.getRootEntries().stream()
+						.filter(entry -> entry.hasCRT() && !store.getIssuedEntries(entry).isEmpty()).findFirst()
+						.orElseThrow(() -> new IOException("No CA entry found"));
+				BigInteger maxSerial = maxSerial(issuerEntry, BigInteger.ONE);
+				BigInteger serial1 = store.nextSerial(issuerEntry);
+
+				Assert.assertEquals(maxSerial.add(BigInteger.ONE), serial1);
+
+				try (UserCertStore reopenedStore = UserCertStore.openStore(storeHome)) {
+					UserCertStoreEntry reopenedIssuerEntry = reopenedStore.getEntries().stream()
+							.filter(entry -> entry.id().equals(issuerEntry.id())).findFirst()
+							.orElseThrow(() -> new IOException("CA entry not found"));
+					BigInteger serial2 = reopenedStore.nextSerial(reopenedIssuerEntry);
+
+					Assert.assertEquals(serial1.add(BigInteger.ONE), serial2);
+
+					List<Future<BigInteger>> serialFutures = new ArrayList<>();
+
+					for (int serialIndex = 0; serialIndex < 100; serialIndex++) {
+						serialFutures.add(executor.submit(() -> reopenedStore.nextSerial(reopenedIssuerEntry)));
+					}
+
+					Set<BigInteger> serials = new HashSet<>();
+
+					for (Future<BigInteger> serialFuture : serialFutures) {
+						Assert.assertTrue(serials.add(serialFuture.get()));
+					}
+					Assert.assertEquals(serial2.add(BigInteger.valueOf(serialFutures.size())),
+							Collections.max(serials));
+				}
+			}
+		} catch (IOException | InterruptedException | ExecutionException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static final String INDEX_FILENAME = ".index.properties";
+
+	/**
+	 * Test store opening via the store index.
+	 */
+	@Test
+	public void testStoreIndex() {
+		try {
+			Path storeHome = createTempDirFromZIPResource(TestCerts.testStoreZIPURL(), tempPath.get(), null)
+					.resolve(TestCerts.TEST_STORE_NAME);
+			Path indexFile = storeHome.resolve(INDEX_FILENAME);
+			try (UserCertStore store = UserCertStore.openStore(storeHome)) {
+				Assert.assertTrue(Files.exists(indexFile));
+
+				Map<String, String> storeIssuers = storeIssuers(store);
+				try (UserCertStore indexedStore = UserCertStore.openStore(storeHome)) {
+					Assert.assertEquals(storeIssuers, storeIssuers(indexedStore));
+					Assert.assertEquals(store.getRootEntries().size(), indexedStore.getRootEntries().size());
+
+					// Touch an entry's file to make it's index row stale
+					UserCertStoreEntry touchedEntry = store.getEntries().stream().filter(UserCertStoreEntry::hasCRT)
+							.findFirst().orElseThrow(() -> new IOException("No CRT entry found"));
+
+					for (Path touchedFile : touchedEntry.getFilePaths()) {
+						Files.setLastModifiedTime(touchedFile, FileTime.fromMillis(System.currentTimeMillis() + 60000));
+					}
+					Assert.assertEquals(storeIssuers, reopenedStoreIssuers(storeHome));
+
+					// Delete an issuing entry and compare against opening the store without index
+					UserCertStoreEntry deletedEntry = store.getEntries().stream()
+							.filter(entry -> !entry.isSelfSigned() && !store.getIssuedEntries(entry).isEmpty())
+							.findFirst().orElseThrow(() -> new IOException("No intermediate CA entry found"));
+
+					for (Path deletedFile : deletedEntry.getFilePaths()) {
+						Files.delete(deletedFile);
+					}
+
+					Map<String, String> updatedStoreIssuers = reopenedStoreIssuers(storeHome);
+
+					Files.delete(indexFile);
+					Assert.assertEquals(updatedStoreIssuers, reopenedStoreIssuers(storeHome));
+					Assert.assertFalse(updatedStoreIssuers.containsKey(deletedEntry.id().toString()));
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Test indexed entry queries.
+	 */
+	@Test
+	public void testFindEntries() {
+		try {
+			Path storeHome = createTempDirFromZIPResource(TestCerts.testStoreZIPURL(), tempPath.get(), null)
+					.resolve(TestCerts.TEST_STORE_NAME);
+			try (UserCertStore store = UserCertStore.openStore(storeHome)) {
+				checkFindEntries(store);
+				// Re-open to query the entries taken from the store index
+				try (UserCertStore reopenedStore = UserCertStore.openStore(storeHome)) {
+					checkFindEntries(reopenedStore);
+				}
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	private static void checkFindEntries(UserCertStore store) throws IOException {
+		Date now = new Date();
+		Set<UserCertStoreEntry> expiredEntries = new HashSet<>();
+		Set<UserCertStoreEntry> validEntries = new HashSet<>();
+		Set<UserCertStoreEntry> rsaEntries = new HashSet<>();
+		Map<String, Set<UserCertStoreEntry>> dnsNameEntries = new HashMap<>();
+
+		for (UserCertStoreEntry entry : store.getEntries()) {
+			if (entry.hasCRT()) {
+				X509Certificate crt = entry.getCRT();
+
+				if (crt.getNotAfter().after(now)) {
+					validEntries.add(entry);
+				} else {
+					expiredEntries.add(entry);
+				}
+				if ("RSA".equals(crt.getPublicKey().getAlgorithm())) {
+					rsaEntries.add(entry);
+				}
+				try {
+					Collection<List<?>> subjectAlternativeNames = crt.getSubjectAlternativeNames();
+
+					if (subjectAlternativeNames != null) {
+						for (List<?> subjectAlternativeName : subjectAlternativeNames) {
+							if (Integer.valueOf(2).equals(subjectAlternativeName.get(0))) {
+								dnsNameEntries.computeIfAbsent(
+										subjectAlternativeName.get(1).toString().toLowerCase(Locale.ROOT),
+										key -> new HashSet<>()).add(entry);
+							}
+						}
+					}
+				} catch (CertificateParsingException e) {
+					throw new IOException(e);
+				}
+			}
+		}
+		Assert.assertEquals(store.getEntries(), store.findEntries(new UserCertStoreQuery()));
+		Assert.assertEquals(validEntries, store.findEntries(new UserCertStoreQuery().expiresBetween(now, null)));
+		Assert.assertEquals(expiredEntries, store.findEntries(new UserCertStoreQuery().expiresBetween(null, now)));
+		Assert.assertTrue(store.findEntries(new UserCertStoreQuery().expiresBetween(now, now)).isEmpty());
+		Assert.assertEquals(rsaEntries, store.findEntries(new UserCertStoreQuery().keyAlgorithm("rsa", 0)));
+		Assert.assertTrue(store.findEntries(new UserCertStoreQuery().keyAlgorithm("RSA", 1 << 16)).isEmpty());
+		for (Map.Entry<String, Set<UserCertStoreEntry>> dnsNameEntry : dnsNameEntries.entrySet()) {
+			if (!dnsNameEntry.getKey().startsWith("*")) {
+				Assert.assertTrue(store.findEntries(new UserCertStoreQuery().dnsName(dnsNameEntry.getKey()))
+						.containsAll(dnsNameEntry.getValue()));
+			}
+		}
+		for (UserCertStoreEntry entry : store.getEntries()) {
+			Set<UserCertStoreEntry> issuedEntries = store.findEntries(new UserCertStoreQuery().issuer(entry));
+
+			Assert.assertEquals(store.getIssuedEntries(entry), issuedEntries);
+
+			Set<UserCertStoreEntry> validRSAIssuedEntries = new HashSet<>(issuedEntries);
+
+			validRSAIssuedEntries.retainAll(validEntries);
+			validRSAIssuedEntries.retainAll(rsaEntries);
+			Assert.assertEquals(validRSAIssuedEntries, store.findEntries(
+					new UserCertStoreQuery().issuer(entry).keyAlgorithm("RSA", 0).expiresBetween(now, null)));
+		}
+	}
+
+	private static final long WATCH_TIMEOUT = 10000;
+
+	/**
+	 * Test pick up of external store modifications.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Test
+	public void testExternalModification() throws IOException {
+		try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+			Assume.assumeFalse(watchService.getClass().getName().endsWith("PollingWatchService"));
+		}
+		try {
+			Path storeHome = createTempDirFromZIPResource(TestCerts.testStoreZIPURL(), tempPath.get(), null)
+					.resolve(TestCerts.TEST_STORE_NAME);
+			try (UserCertStore store = UserCertStore.openStore(storeHome)) {
+				UserCertStoreEntry leafEntry = store.getEntries().stream()
+						.filter(entry -> entry.hasCRT() && !entry.isSelfSigned()
+								&& store.getIssuedEntries(entry).isEmpty())
+						.findFirst().orElseThrow(() -> new IOException("No leaf entry found"));
+				Path backupDir = Files.createTempDirectory(tempPath.get(), null);
+				List<Path> leafFiles = leafEntry.getFilePaths();
+
+				for (Path leafFile : leafFiles) {
+					Files.move(leafFile, backupDir.resolve(leafFile.getFileName()));
+				}
+				Assert.assertTrue(awaitEntry(store, leafEntry.id(), false));
+				for (Path leafFile : leafFiles) {
+					Files.move(backupDir.resolve(leafFile.getFileName()), leafFile);
+				}
+				Assert.assertTrue(awaitEntry(store, leafEntry.id(), true));
+
+				UserCertStoreEntry reloadedLeafEntry = store.getEntries().stream()
+						.filter(entry -> entry.id().equals(leafEntry.id())).findFirst()
+						.orElseThrow(() -> new IOException("Leaf entry not found"));
+
+				Assert.assertEquals(leafEntry.dn(), reloadedLeafEntry.dn());
+				Assert.assertEquals(leafEntry.issuer().id(), reloadedLeafEntry.issuer().id());
+			}
+		} catch (IOException | InterruptedException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	/**
+	 * Test change reporting for an externally modified issuer entry.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Test
+	public void testExternalIssuerModification() throws IOException {
+		try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+			Assume.assumeFalse(watchService.getClass().getName().endsWith("PollingWatchService"));
+		}
+		try {
+			Path storeHome = createTempDirFromZIPResource(TestCerts.testStoreZIPURL(), tempPath.get(), null)
+					.resolve(TestCerts.TEST_STORE_NAME);
+			try (UserCertStore store = UserCertStore.openStore(storeHome)) {
+				UserCertStoreEntry issuerEntry = store.getEntries().stream()
+						.filter(entry -> entry.hasCRT() && !entry.isExternal()
+								&& !store.getIssuedEntries(entry).isEmpty())
+						.findFirst().orElseThrow(() -> new IOException("No issuer entry found"));
+				Set<UserCertStoreEntryId> issuedIds = store.getIssuedEntries(issuerEntry).stream()
+						.map(UserCertStoreEntry::id).filter(id -> !id.equals(issuerEntry.id()))
+						.collect(Collectors.toSet());
+				BlockingQueue<List<UserCertStoreChange>> batches = new LinkedBlockingQueue<>();
+
+				store.addChangeListener((changedStore, changes) -> batches.add(changes));
+
+				Path crtFile = issuerEntry.getFilePaths().stream()
+						.filter(file -> file.getFileName().toString().endsWith(".crt")).findFirst()
+						.orElseThrow(() -> new IOException("No CRT file found"));
+
+				Files.write(crtFile, Files.readAllBytes(crtFile));
+				Files.setLastModifiedTime(crtFile, FileTime.fromMillis(System.currentTimeMillis() + 2000));
+
+				List<UserCertStoreChange> changes = batches.poll(WATCH_TIMEOUT, TimeUnit.MILLISECONDS);
+
+				Assert.assertNotNull(changes);
+
+				UserCertStoreEntry rebuiltIssuerEntry = Objects.requireNonNull(changes).stream()
+						.filter(change -> change.type() == UserCertStoreChange.Type.ENTRY_ADDED
+								&& change.entry().id().equals(issuerEntry.id()))
+						.map(UserCertStoreChange::entry).findFirst()
+						.orElseThrow(() -> new IOException("Issuer entry not re-added"));
+				Set<UserCertStoreEntryId> relinkedIds = changes.stream()
+						.filter(change -> change.type() == UserCertStoreChange.Type.ISSUER_CHANGED
+								&& change.issuer() == rebuiltIssuerEntry)
+						.map(change -> change.entry().id()).collect(Collectors.toSet());
+
+				Assert.assertTrue(relinkedIds.containsAll(issuedIds));
+			}
+		} catch (IOException | InterruptedException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+	private static boolean awaitEntry(UserCertStore store, UserCertStoreEntryId entryId, boolean present)
+			throws InterruptedException {
+		long timeout = System.currentTimeMillis() + WATCH_TIMEOUT;
+		boolean isPresent = !present;
+
+		while (isPresent != present && System.currentTimeMillis() < timeout) {
+			isPresent = store.getEntries().stream().anyMatch(entry -> entry.id().equals(entryId));
+			if (isPresent != present) {
+				Thread.sleep(100);
+			}
+		}
+		return isPresent == present;
+	}
+
+	private static Map<String, String> reopenedStoreIssuers(Path storeHome) throws IOException {
+		Map<String, String> storeIssuers;
+
+		try (UserCertStore store = UserCertStore.openStore(storeHome)) {
+			storeIssuers = storeIssuers(store);
+		}
+		return storeIssuers;
+	}
+
+	private static Map<String, String> storeIssuers(UserCertStore store) {
+		Map<String, String> storeIssuers = new HashMap<>();
+
+		for (UserCertStoreEntry entry : store.getEntries()) {
+			UserCertStoreEntry issuer = entry.issuer();
+
+			if (!entry.isExternal()) {
+				storeIssuers.put(entry.id().toString(), (issuer.isExternal() ? issuer.dn().toString()
+						: issuer.id().toString()));
+			}
+		}
+		return storeIssuers;
+	}
+
+	private static BigInteger maxSerial(UserCertStoreEntry entry, BigInteger serial) throws IOException {
+		BigInteger maxSerial = serial.max(entry.getCRT().getSerialNumber());
+
+		for (UserCertStoreEntry issuedEntry : entry.issuedEntries()) {
+			maxSerial = maxSerial(issuedEntry, maxSerial);
+		}
+		return maxSerial;
+	}
+
 	private List<Path> collectDirectoryFiles(Path directory) throws IOException {
 		List<Path> files;
 
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.test.certs.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import de.carne.certmgr.certs.metrics.LatencyHistogram;
+import de.carne.certmgr.certs.metrics.StoreMetrics;
+
+/**
+ * Test {@link StoreMetrics} class functionality.
+ */
+public class StoreMetricsTest {
+
+	/**
+	 * Test {@link LatencyHistogram} class functionality.
+	 */
+	@Test
+	public void testLatencyHistogram() {
+		LatencyHistogram histogram = new LatencyHistogram();
+
+		Assert.assertEquals(0, histogram.count());
+		Assert.assertEquals(0.0, histogram.percentileNanos(99.0), 0.0);
+		for (long nanos = 1; nanos <= 1000; nanos++) {
+			histogram.record(nanos);
+		}
+		Assert.assertEquals(1000, histogram.count());
+		Assert.assertEquals(500500, histogram.totalNanos());
+		Assert.assertEquals(1000, histogram.maxNanos());
+		Assert.assertEquals(500.5, histogram.meanNanos(), 0.0);
+
+		double p50 = histogram.percentileNanos(50.0);
+		double p99 = histogram.percentileNanos(99.0);
+
+		// Buckets are powers of two; hence percentiles are accurate up to a factor of 2
+		Assert.assertTrue(p50 >= 250.0 && p50 <= 1000.0);
+		Assert.assertTrue(p99 >= p50 && p99 <= 1000.0);
+		histogram.reset();
+		Assert.assertEquals(0, histogram.count());
+		Assert.assertEquals(0, histogram.maxNanos());
+	}
+
+	/**
+	 * Test {@link StoreMetrics} recording and sinks.
+	 */
+	@Test
+	public void testStoreMetrics() {
+		List<StoreMetrics.Operation> recorded = new ArrayList<>();
+		StoreMetrics.Sink sink = (operation, nanos) -> recorded.add(operation);
+		LatencyHistogram histogram = StoreMetrics.histogram(StoreMetrics.Operation.CRL_GENERATION);
+		long count = histogram.count();
+
+		StoreMetrics.addSink(sink);
+		try {
+			StoreMetrics.record(StoreMetrics.Operation.CRL_GENERATION, StoreMetrics.start());
+		} finally {
+			StoreMetrics.removeSink(sink);
+		}
+		StoreMetrics.recordNanos(StoreMetrics.Operation.CRL_GENERATION, 1000);
+		Assert.assertEquals(count + 2, histogram.count());
+		Assert.assertEquals(1, recorded.size());
+		Assert.assertEquals(StoreMetrics.Operation.CRL_GENERATION, recorded.get(0));
+	}
+
+	/**
+	 * Test {@link StoreMetrics} MBean access.
+	 */
+	@Test
+	public void testStoreMetricsMBean() {
+		Assert.assertTrue(StoreMetrics.registerMBean());
+		Assert.assertTrue(StoreMetrics.registerMBean());
+		StoreMetrics.recordNanos(StoreMetrics.Operation.KEY_GENERATION, 1000000);
+		try {
+			MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+			ObjectName mbeanName = new ObjectName(StoreMetrics.MBEAN_NAME);
+			Map<?, ?> counts = (Map<?, ?>) mbeanServer.getAttribute(mbeanName, "Counts");
+
+			Assert.assertNotNull(counts);
+			Assert.assertEquals(StoreMetrics.Operation.values().length, counts.size());
+		} catch (JMException e) {
+			e.printStackTrace();
+			Assert.fail(e.getMessage());
+		}
+	}
+
+}
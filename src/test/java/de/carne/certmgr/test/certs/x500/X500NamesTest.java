@@ -42,4 +42,21 @@ public class X500NamesTest {
 		Assert.assertEquals(DN_TEST1, X500Names.toString(principal));
 	}
 
+	/**
+	 * Test {@link X500Names#intern(X500Principal)} function.
+	 */
+	@Test
+	public void testIntern() {
+		X500Principal principal1 = new X500Principal(DN_TEST1);
+		X500Principal principal2 = X500Names.fromString(DN_TEST1);
+		X500Principal internedPrincipal = X500Names.intern(principal1);
+
+		Assert.assertSame(principal1, internedPrincipal);
+		Assert.assertNotSame(principal1, principal2);
+		Assert.assertSame(internedPrincipal, X500Names.intern(principal2));
+		Assert.assertNotSame(internedPrincipal, X500Names.intern(new X500Principal("CN=Other")));
+		Assert.assertSame(X500Names.toString(principal1), X500Names.toString(principal2));
+		Assert.assertEquals(DN_TEST1, X500Names.toString(principal2));
+	}
+
 }
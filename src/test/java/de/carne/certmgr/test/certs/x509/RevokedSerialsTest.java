@@ -0,0 +1,106 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.test.certs.x509;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.carne.certmgr.certs.security.KeyPairAlgorithm;
+import de.carne.certmgr.certs.security.SignatureAlgorithm;
+import de.carne.certmgr.certs.x509.KeyHelper;
+import de.carne.certmgr.certs.x509.ReasonFlag;
+import de.carne.certmgr.certs.x509.RevokedSerials;
+import de.carne.certmgr.certs.x509.X509CRLHelper;
+import de.carne.certmgr.certs.x509.X509CertificateHelper;
+
+/**
+ * Test {@link RevokedSerials} class functionality.
+ */
+public class RevokedSerialsTest {
+
+	/**
+	 * Register BouncyCastle Provider.
+	 */
+	@BeforeClass
+	public static void registerBouncyCastle() {
+		Security.addProvider(new BouncyCastleProvider());
+	}
+
+	/**
+	 * Test revocation lookup.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Test
+	public void testRevocationLookup() throws IOException {
+		KeyPairAlgorithm keyPairAlgorithm = Objects
+				.requireNonNull(KeyPairAlgorithm.getDefaultSet(null, false).getDefault());
+		int keySize = Objects.requireNonNull(keyPairAlgorithm.getStandardKeySizes(null).getDefault()).intValue();
+		KeyPair issuerKey = KeyHelper.generateKey(keyPairAlgorithm, keySize);
+		SignatureAlgorithm signatureAlgorithm = Objects.requireNonNull(
+				SignatureAlgorithm.getDefaultSet(keyPairAlgorithm.algorithm(), null, false).getDefault());
+		X500Principal issuerDN = new X500Principal("CN=RevokedSerialsTest CA");
+		Date lastUpdate = new Date();
+		BigInteger bigSerial = BigInteger.ONE.shiftLeft(100);
+		Map<BigInteger, ReasonFlag> revokeEntries = new HashMap<>();
+
+		for (long serial = 2; serial < 1000; serial += 2) {
+			revokeEntries.put(BigInteger.valueOf(serial), ReasonFlag.KEY_COMPROMISE);
+		}
+		revokeEntries.put(bigSerial, ReasonFlag.CA_COMPROMISE);
+
+		X509CRL crl = X509CRLHelper.generateCRL(null, lastUpdate, null, revokeEntries, issuerDN, issuerKey,
+				signatureAlgorithm);
+		RevokedSerials revokedSerials = RevokedSerials.of(crl);
+
+		Assert.assertFalse(revokedSerials.isIndirect());
+		Assert.assertEquals(revokeEntries.size(), revokedSerials.size());
+		Assert.assertTrue(revokedSerials.contains(BigInteger.valueOf(998)));
+		Assert.assertFalse(revokedSerials.contains(BigInteger.valueOf(999)));
+		Assert.assertTrue(revokedSerials.contains(bigSerial));
+		Assert.assertFalse(revokedSerials.contains(bigSerial.add(BigInteger.ONE)));
+
+		KeyPair key = KeyHelper.generateKey(keyPairAlgorithm, keySize);
+		Date notAfter = new Date(lastUpdate.getTime() + 1000 * 60 * 24);
+
+		for (long serial = 1; serial < 10; serial++) {
+			X500Principal dn = new X500Principal("CN=RevokedSerialsTest " + serial);
+			X509Certificate crt = X509CertificateHelper.generateCRT(dn, key, BigInteger.valueOf(serial), lastUpdate,
+					notAfter, Collections.emptyList(), issuerDN, issuerKey, signatureAlgorithm);
+
+			Assert.assertEquals(crl.isRevoked(crt), revokedSerials.isRevoked(crl, crt));
+			Assert.assertEquals(crl.isRevoked(crt), revokedSerials.isRevoked(crt));
+		}
+	}
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.test.certs.x509;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.Security;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Objects;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import de.carne.certmgr.certs.security.KeyPairAlgorithm;
+import de.carne.certmgr.certs.security.SignatureAlgorithm;
+import de.carne.certmgr.certs.x509.KeyHelper;
+import de.carne.certmgr.certs.x509.SignatureVerificationCache;
+import de.carne.certmgr.certs.x509.X509CertificateHelper;
+
+/**
+ * Test {@link SignatureVerificationCache} class functionality.
+ */
+public class SignatureVerificationCacheTest {
+
+	/**
+	 * Register BouncyCastle Provider.
+	 */
+	@BeforeClass
+	public static void registerBouncyCastle() {
+		Security.addProvider(new BouncyCastleProvider());
+	}
+
+	/**
+	 * Test caching of CRT signature verification results.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Test
+	public void testCRTVerification() throws IOException {
+		KeyPairAlgorithm keyPairAlgorithm = Objects
+				.requireNonNull(KeyPairAlgorithm.getDefaultSet(null, false).getDefault());
+		int keySize = Objects.requireNonNull(keyPairAlgorithm.getStandardKeySizes(null).getDefault()).intValue();
+		KeyPair key = KeyHelper.generateKey(keyPairAlgorithm, keySize);
+		KeyPair otherKey = KeyHelper.generateKey(keyPairAlgorithm, keySize);
+		SignatureAlgorithm signatureAlgorithm = Objects.requireNonNull(
+				SignatureAlgorithm.getDefaultSet(keyPairAlgorithm.algorithm(), null, false).getDefault());
+		X500Principal dn = new X500Principal("CN=SignatureVerificationCacheTest");
+		Date notBefore = new Date();
+		Date notAfter = new Date(notBefore.getTime() + 1000 * 60 * 24);
+		X509Certificate crt = X509CertificateHelper.generateCRT(dn, key, BigInteger.ONE, notBefore, notAfter,
+				Collections.emptyList(), dn, key, signatureAlgorithm);
+		SignatureVerificationCache cache = SignatureVerificationCache.getInstance();
+
+		cache.clear();
+
+		long hits = cache.hits();
+		long misses = cache.misses();
+
+		Assert.assertTrue(X509CertificateHelper.isCRTSignedBy(crt, key.getPublic()));
+		Assert.assertFalse(X509CertificateHelper.isCRTSignedBy(crt, otherKey.getPublic()));
+		Assert.assertEquals(hits, cache.hits());
+		Assert.assertEquals(misses + 2, cache.misses());
+		Assert.assertTrue(X509CertificateHelper.isCRTSignedBy(crt, key.getPublic()));
+		Assert.assertFalse(X509CertificateHelper.isCRTSignedBy(crt, otherKey.getPublic()));
+		Assert.assertEquals(hits + 2, cache.hits());
+		Assert.assertEquals(1, cache.size());
+
+		cache.invalidate(SignatureVerificationCache.fingerprint(crt));
+
+		Assert.assertEquals(0, cache.size());
+		Assert.assertTrue(X509CertificateHelper.isCRTSignedBy(crt, key.getPublic()));
+		Assert.assertEquals(misses + 3, cache.misses());
+	}
+
+}
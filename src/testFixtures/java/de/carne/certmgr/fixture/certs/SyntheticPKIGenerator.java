@@ -0,0 +1,418 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.fixture.certs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.security.cert.X509CRL;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.eclipse.jdt.annotation.Nullable;
+
+import de.carne.boot.logging.Log;
+import de.carne.certmgr.certs.CertObjectStore;
+import de.carne.certmgr.certs.CertProviderException;
+import de.carne.certmgr.certs.NoPassword;
+import de.carne.certmgr.certs.PasswordCallback;
+import de.carne.certmgr.certs.UserCertStore;
+import de.carne.certmgr.certs.security.KeyPairAlgorithm;
+import de.carne.certmgr.certs.security.SignatureAlgorithm;
+import de.carne.certmgr.certs.x500.X500Names;
+import de.carne.certmgr.certs.x509.BasicConstraintsExtensionData;
+import de.carne.certmgr.certs.x509.KeyHelper;
+import de.carne.certmgr.certs.x509.ReasonFlag;
+import de.carne.certmgr.certs.x509.X509CRLHelper;
+import de.carne.certmgr.certs.x509.X509CertificateHelper;
+import de.carne.certmgr.certs.x509.X509ExtensionData;
+
+/**
+ * Generator for synthetic PKI hierarchies (e.g. for load tests and benchmarks).
+ * <p>
+ * Generation is deterministic: every certificate object is generated with its own source of randomness derived from
+ * the request's seed and the certificate's position within the hierarchy. Hence the generated certificate objects
+ * depend only on the request, but neither on the number of worker threads nor on the order in which they are
+ * generated. Certificate objects are generated in parallel and merged into the target store batch by batch (which
+ * commits each batch's files in parallel). Only the CA keys are kept in memory during generation.
+ */
+public final class SyntheticPKIGenerator {
+
+	private static final Log LOG = new Log();
+
+	private static final String RANDOM_ALGORITHM = "SHA1PRNG";
+
+	private static final int BATCH_SIZE = 1024;
+
+	private static final String DN_ORGANIZATION = "Synthetic PKI";
+
+	private final SyntheticPKIRequest request;
+
+	private final List<SyntheticPKIRequest.KeyType> keyTypes;
+
+	private final Map<KeyPairAlgorithm, SignatureAlgorithm> signatureAlgorithms = new HashMap<>();
+
+	private final int totalWeight;
+
+	/**
+	 * Construct {@code SyntheticPKIGenerator}.
+	 *
+	 * @param request The request defining the PKI to generate.
+	 * @throws IllegalArgumentException if the request does not define any hierarchy level or key type, or one of the
+	 *         requested key types is not usable for signing.
+	 */
+	public SyntheticPKIGenerator(SyntheticPKIRequest request) {
+		if (request.getLevels().isEmpty()) {
+			throw new IllegalArgumentException("No hierarchy level defined");
+		}
+
+		List<SyntheticPKIRequest.KeyType> requestKeyTypes = request.getKeyTypes();
+
+		if (requestKeyTypes.isEmpty()) {
+			throw new IllegalArgumentException("No key type defined");
+		}
+
+		int weight = 0;
+
+		for (SyntheticPKIRequest.KeyType keyType : requestKeyTypes) {
+			KeyPairAlgorithm algorithm = keyType.algorithm();
+			SignatureAlgorithm signatureAlgorithm = SignatureAlgorithm.getDefaultSet(algorithm.algorithm(), null, false)
+					.getDefault();
+
+			if (signatureAlgorithm == null) {
+				throw new IllegalArgumentException("No signature algorithm available for key type: " + keyType);
+			}
+			this.signatureAlgorithms.put(algorithm, signatureAlgorithm);
+			weight += keyType.weight();
+		}
+		this.request = request;
+		this.keyTypes = requestKeyTypes;
+		this.totalWeight = weight;
+	}
+
+	/**
+	 * Generate the requested PKI into a new store.
+	 *
+	 * @param storeHome The home directory of the store to create.
+	 * @param newPassword The password callback to use for key encryption.
+	 * @return The created store.
+	 * @throws IOException if an I/O error occurs during generation.
+	 */
+	public UserCertStore generate(Path storeHome, PasswordCallback newPassword) throws IOException {
+		UserCertStore store = UserCertStore.createStore(storeHome);
+
+		generate(store, newPassword);
+		return store;
+	}
+
+	/**
+	 * Generate the requested PKI into an existing store.
+	 *
+	 * @param store The store to generate the PKI into.
+	 * @param newPassword The password callback to use for key encryption.
+	 * @throws IOException if an I/O error occurs during generation.
+	 */
+	public void generate(UserCertStore store, PasswordCallback newPassword) throws IOException {
+		LOG.info("Generating synthetic PKI with {0} entries (levels: {1}, key types: {2})...",
+				this.request.getEntryCount(), this.request.getLevels(), this.keyTypes);
+
+		long start = System.nanoTime();
+		List<Integer> levels = this.request.getLevels();
+		List<Node> issuers = Collections.emptyList();
+		List<Node> cas = new ArrayList<>();
+
+		for (int levelIndex = 0; levelIndex < levels.size(); levelIndex++) {
+			int fanOut = levels.get(levelIndex).intValue();
+			boolean ca = levelIndex + 1 < levels.size();
+			List<Slot> batch = new ArrayList<>(BATCH_SIZE);
+			List<Node> levelNodes = new ArrayList<>();
+
+			// The first level's certificates are self-signed
+			int issuerCount = (levelIndex > 0 ? issuers.size() : 1);
+
+			for (int issuerIndex = 0; issuerIndex < issuerCount; issuerIndex++) {
+				Node issuer = (levelIndex > 0 ? issuers.get(issuerIndex) : null);
+
+				for (int serial = 1; serial <= fanOut; serial++) {
+					batch.add(new Slot(issuer, serial, ca));
+					if (batch.size() == BATCH_SIZE) {
+						levelNodes.addAll(generateBatch(store, batch, newPassword));
+						batch.clear();
+					}
+				}
+			}
+			levelNodes.addAll(generateBatch(store, batch, newPassword));
+			if (ca) {
+				for (Node levelNode : levelNodes) {
+					levelNode.setIssuedCount(levels.get(levelIndex + 1).intValue());
+				}
+				cas.addAll(levelNodes);
+				issuers = levelNodes;
+			}
+		}
+		if (this.request.getRevocationRatio() > 0.0) {
+			for (int casIndex = 0; casIndex < cas.size(); casIndex += BATCH_SIZE) {
+				generateCRLs(store, cas.subList(casIndex, Math.min(casIndex + BATCH_SIZE, cas.size())));
+			}
+		}
+		LOG.info("Generated synthetic PKI with {0} entries in {1} ms", this.request.getEntryCount(),
+				(System.nanoTime() - start) / 1000000);
+	}
+
+	private List<Node> generateBatch(UserCertStore store, List<Slot> batch, PasswordCallback newPassword)
+			throws IOException {
+		List<Node> nodes = map(batch, this::generateNode);
+		List<CertObjectStore> certObjectStores = new ArrayList<>(nodes.size());
+
+		for (Node node : nodes) {
+			CertObjectStore certObjects = new CertObjectStore();
+
+			certObjects.addCRT(node.alias(), node.crt());
+			certObjects.addKey(node.alias(), node.key());
+			certObjectStores.add(certObjects);
+		}
+		store.importEntries(certObjectStores, newPassword, null);
+
+		List<Node> caNodes = new ArrayList<>(nodes.size());
+
+		// Leaf keys are no longer needed
+		for (Node node : nodes) {
+			if (node.isCA()) {
+				caNodes.add(node);
+			}
+		}
+		return caNodes;
+	}
+
+	private Node generateNode(Slot slot) throws IOException {
+		Node issuer = slot.issuer();
+		String id = (issuer != null ? issuer.id() + "-" : "") + slot.serial();
+		SecureRandom random = random(id);
+		SyntheticPKIRequest.KeyType keyType = keyType(random);
+		KeyPair key = KeyHelper.generateKey(keyType.algorithm(), keyType.keySize(), random);
+		X500Principal dn = X500Names
+				.fromString("CN=" + (slot.isCA() ? "CA " : "Leaf ") + id + ",O=" + DN_ORGANIZATION);
+		List<X509ExtensionData> extensions = Collections.singletonList(
+				new BasicConstraintsExtensionData(BasicConstraintsExtensionData.CRITICAL_DEFAULT, slot.isCA(), null));
+		X509Certificate crt;
+
+		if (issuer != null) {
+			crt = X509CertificateHelper.generateCRT(dn, key, BigInteger.valueOf(slot.serial()),
+					this.request.notBefore(), this.request.notAfter(), extensions, issuer.dn(), issuer.key(),
+					issuer.signatureAlgorithm(), random);
+		} else {
+			crt = X509CertificateHelper.generateCRT(dn, key, BigInteger.valueOf(slot.serial()),
+					this.request.notBefore(), this.request.notAfter(), extensions, dn, key,
+					signatureAlgorithm(keyType), random);
+		}
+		return new Node((slot.isCA() ? "ca" : "leaf") + id, id, dn, key, signatureAlgorithm(keyType), crt,
+				slot.isCA());
+	}
+
+	private void generateCRLs(UserCertStore store, List<Node> cas) throws IOException {
+		List<X509CRL> crls = map(cas, this::generateCRL);
+		List<CertObjectStore> certObjectStores = new ArrayList<>(crls.size());
+
+		for (int crlIndex = 0; crlIndex < crls.size(); crlIndex++) {
+			CertObjectStore certObjects = new CertObjectStore();
+
+			certObjects.addCRL(cas.get(crlIndex).alias(), crls.get(crlIndex));
+			certObjectStores.add(certObjects);
+		}
+		store.importEntries(certObjectStores, NoPassword.getInstance(), null);
+	}
+
+	private X509CRL generateCRL(Node ca) throws IOException {
+		SecureRandom random = random(ca.id() + "/crl");
+		Map<BigInteger, ReasonFlag> revokeEntries = new HashMap<>();
+		double revocationRatio = this.request.getRevocationRatio();
+
+		for (int serial = 1; serial <= ca.issuedCount(); serial++) {
+			if (random.nextDouble() < revocationRatio) {
+				revokeEntries.put(BigInteger.valueOf(serial), ReasonFlag.UNSPECIFIED);
+			}
+		}
+		return X509CRLHelper.generateCRL(null, this.request.notBefore(), this.request.notAfter(), revokeEntries,
+				ca.dn(), ca.key(), ca.signatureAlgorithm(), random);
+	}
+
+	private static <T, R> List<R> map(List<T> elements, Task<T, R> task) throws IOException {
+		List<R> results;
+
+		try {
+			results = elements.parallelStream().map(element -> {
+				try {
+					return task.run(element);
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}).collect(Collectors.toList());
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+		return results;
+	}
+
+	private SecureRandom random(String id) throws IOException {
+		SecureRandom random;
+
+		try {
+			random = SecureRandom.getInstance(RANDOM_ALGORITHM);
+		} catch (NoSuchAlgorithmException e) {
+			throw new CertProviderException(e);
+		}
+
+		byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+
+		// Seeding before first use replaces the generator's own seed; hence the sequence is fully determined
+		random.setSeed(ByteBuffer.allocate(Long.BYTES + idBytes.length).putLong(this.request.seed()).put(idBytes)
+				.array());
+		return random;
+	}
+
+	private SyntheticPKIRequest.KeyType keyType(SecureRandom random) {
+		int weight = random.nextInt(this.totalWeight);
+		SyntheticPKIRequest.KeyType keyType = this.keyTypes.get(0);
+
+		for (SyntheticPKIRequest.KeyType candidate : this.keyTypes) {
+			keyType = candidate;
+			weight -= candidate.weight();
+			if (weight < 0) {
+				break;
+			}
+		}
+		return keyType;
+	}
+
+	private SignatureAlgorithm signatureAlgorithm(SyntheticPKIRequest.KeyType keyType) {
+		SignatureAlgorithm signatureAlgorithm = this.signatureAlgorithms.get(keyType.algorithm());
+
+		if (signatureAlgorithm == null) {
+			throw new IllegalStateException("Unexpected key type: " + keyType);
+		}
+		return signatureAlgorithm;
+	}
+
+	@FunctionalInterface
+	private interface Task<T, R> {
+
+		R run(T element) throws IOException;
+
+	}
+
+	private static final class Slot {
+
+		@Nullable
+		private final Node issuer;
+		private final int serial;
+		private final boolean ca;
+
+		Slot(@Nullable Node issuer, int serial, boolean ca) {
+			this.issuer = issuer;
+			this.serial = serial;
+			this.ca = ca;
+		}
+
+		@Nullable
+		Node issuer() {
+			return this.issuer;
+		}
+
+		int serial() {
+			return this.serial;
+		}
+
+		boolean isCA() {
+			return this.ca;
+		}
+
+	}
+
+	private static final class Node {
+
+		private final String alias;
+		private final String id;
+		private final X500Principal dn;
+		private final KeyPair key;
+		private final SignatureAlgorithm signatureAlgorithm;
+		private final X509Certificate crt;
+		private final boolean ca;
+		private int issuedCount = 0;
+
+		Node(String alias, String id, X500Principal dn, KeyPair key, SignatureAlgorithm signatureAlgorithm,
+				X509Certificate crt, boolean ca) {
+			this.alias = alias;
+			this.id = id;
+			this.dn = dn;
+			this.key = key;
+			this.signatureAlgorithm = signatureAlgorithm;
+			this.crt = crt;
+			this.ca = ca;
+		}
+
+		String alias() {
+			return this.alias;
+		}
+
+		String id() {
+			return this.id;
+		}
+
+		X500Principal dn() {
+			return this.dn;
+		}
+
+		KeyPair key() {
+			return this.key;
+		}
+
+		SignatureAlgorithm signatureAlgorithm() {
+			return this.signatureAlgorithm;
+		}
+
+		X509Certificate crt() {
+			return this.crt;
+		}
+
+		boolean isCA() {
+			return this.ca;
+		}
+
+		int issuedCount() {
+			return this.issuedCount;
+		}
+
+		void setIssuedCount(int issuedCount) {
+			this.issuedCount = issuedCount;
+		}
+
+	}
+
+}
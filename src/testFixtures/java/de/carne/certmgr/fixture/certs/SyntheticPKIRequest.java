@@ -0,0 +1,221 @@
+/*
+ * Copyright (c) 2015-2021 Holger de Carne and contributors, All Rights Reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package de.carne.certmgr.fixture.certs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import de.carne.certmgr.certs.security.KeyPairAlgorithm;
+
+/**
+ * Parameter container for synthetic PKI generation.
+ * <p>
+ * The generated hierarchy is defined by its levels. The first level defines the number of root CAs, each following
+ * level defines the number of certificates issued by every CA of the previous level. The certificates of the last
+ * level are leaf certificates, all other certificates are CA certificates.
+ */
+public class SyntheticPKIRequest {
+
+	private final long seed;
+	private final Date notBefore;
+	private final Date notAfter;
+	private final List<Integer> levels = new ArrayList<>();
+	private final List<KeyType> keyTypes = new ArrayList<>();
+	private double revocationRatio = 0.0;
+
+	/**
+	 * Construct {@code SyntheticPKIRequest}.
+	 *
+	 * @param seed The seed to use for generation. Submitting the same seed and parameters results in the very same
+	 *        certificate objects.
+	 * @param notBefore The validity start of the generated certificate objects.
+	 * @param notAfter The validity end of the generated certificate objects.
+	 */
+	public SyntheticPKIRequest(long seed, Date notBefore, Date notAfter) {
+		this.seed = seed;
+		this.notBefore = notBefore;
+		this.notAfter = notAfter;
+	}
+
+	/**
+	 * Get the seed to use for generation.
+	 *
+	 * @return The seed to use for generation.
+	 */
+	public long seed() {
+		return this.seed;
+	}
+
+	/**
+	 * Get the validity start of the generated certificate objects.
+	 *
+	 * @return The validity start of the generated certificate objects.
+	 */
+	public Date notBefore() {
+		return this.notBefore;
+	}
+
+	/**
+	 * Get the validity end of the generated certificate objects.
+	 *
+	 * @return The validity end of the generated certificate objects.
+	 */
+	public Date notAfter() {
+		return this.notAfter;
+	}
+
+	/**
+	 * Add a hierarchy level.
+	 *
+	 * @param fanOut The number of certificates to issue per CA of the previous level (or the number of root CAs in
+	 *        case of the first level).
+	 * @throws IllegalArgumentException if the submitted fan-out is less than 1.
+	 */
+	public void addLevel(int fanOut) {
+		if (fanOut < 1) {
+			throw new IllegalArgumentException("Invalid fan-out: " + fanOut);
+		}
+		this.levels.add(fanOut);
+	}
+
+	/**
+	 * Get the hierarchy levels.
+	 *
+	 * @return The fan-out of each hierarchy level.
+	 */
+	public List<Integer> getLevels() {
+		return Collections.unmodifiableList(this.levels);
+	}
+
+	/**
+	 * Get the total number of certificates defined by the hierarchy levels.
+	 *
+	 * @return The total number of certificates defined by the hierarchy levels.
+	 */
+	public long getEntryCount() {
+		long entryCount = 0;
+		long levelCount = 1;
+
+		for (int fanOut : this.levels) {
+			levelCount *= fanOut;
+			entryCount += levelCount;
+		}
+		return entryCount;
+	}
+
+	/**
+	 * Add a key type to the key type mix.
+	 * <p>
+	 * The key type of every generated certificate is chosen randomly according to the key types' weights.
+	 *
+	 * @param algorithm The key pair algorithm to use.
+	 * @param keySize The key size to use.
+	 * @param weight The key type's weight within the key type mix.
+	 * @throws IllegalArgumentException if the submitted weight is less than 1.
+	 */
+	public void addKeyType(KeyPairAlgorithm algorithm, int keySize, int weight) {
+		if (weight < 1) {
+			throw new IllegalArgumentException("Invalid weight: " + weight);
+		}
+		this.keyTypes.add(new KeyType(algorithm, keySize, weight));
+	}
+
+	/**
+	 * Get the key type mix.
+	 *
+	 * @return The key type mix.
+	 */
+	public List<KeyType> getKeyTypes() {
+		return Collections.unmodifiableList(this.keyTypes);
+	}
+
+	/**
+	 * Set the ratio of issued certificates to revoke.
+	 * <p>
+	 * If the ratio is greater than {@code 0.0} a CRL is generated for every CA.
+	 *
+	 * @param revocationRatio The ratio of issued certificates to revoke (between {@code 0.0} and {@code 1.0}).
+	 * @throws IllegalArgumentException if the submitted ratio is out of range.
+	 */
+	public void setRevocationRatio(double revocationRatio) {
+		if (!(0.0 <= revocationRatio && revocationRatio <= 1.0)) {
+			throw new IllegalArgumentException("Invalid revocation ratio: " + revocationRatio);
+		}
+		this.revocationRatio = revocationRatio;
+	}
+
+	/**
+	 * Get the ratio of issued certificates to revoke.
+	 *
+	 * @return The ratio of issued certificates to revoke.
+	 */
+	public double getRevocationRatio() {
+		return this.revocationRatio;
+	}
+
+	/**
+	 * Key type of the key type mix.
+	 */
+	public static final class KeyType {
+
+		private final KeyPairAlgorithm algorithm;
+		private final int keySize;
+		private final int weight;
+
+		KeyType(KeyPairAlgorithm algorithm, int keySize, int weight) {
+			this.algorithm = algorithm;
+			this.keySize = keySize;
+			this.weight = weight;
+		}
+
+		/**
+		 * Get the key pair algorithm to use.
+		 *
+		 * @return The key pair algorithm to use.
+		 */
+		public KeyPairAlgorithm algorithm() {
+			return this.algorithm;
+		}
+
+		/**
+		 * Get the key size to use.
+		 *
+		 * @return The key size to use.
+		 */
+		public int keySize() {
+			return this.keySize;
+		}
+
+		/**
+		 * Get the key type's weight within the key type mix.
+		 *
+		 * @return The key type's weight within the key type mix.
+		 */
+		public int weight() {
+			return this.weight;
+		}
+
+		@Override
+		public String toString() {
+			return this.algorithm + "/" + this.keySize + " (" + this.weight + ")";
+		}
+
+	}
+
+}